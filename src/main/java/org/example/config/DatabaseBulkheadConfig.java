@@ -0,0 +1,54 @@
+package org.example.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Оборачивает DataSource приложения в BulkheadDataSource. По умолчанию разрешений столько же, сколько соединений в пуле:
+ * перегородка не урезает пропускную способность, а делает очередь за соединением дешёвой и ограниченной по времени.
+ * С репликой (ReadReplicaConfig) перегородка у каждого пула своя, а прокси, выбирающий пул, не оборачивается;
+ * перед шардами (ShardingConfig) перегородка одна, разрешений в ней — сколько соединений во всех пулах шардов.
+ */
+@Configuration
+@ConditionalOnProperty(name = "wallet.db-bulkhead.enabled", havingValue = "true", matchIfMissing = true)
+public class DatabaseBulkheadConfig {
+
+    // Статический метод: постпроцессор создаётся раньше остальных бинов и не тянет за собой эту конфигурацию.
+    @Bean
+    public static BeanPostProcessor databaseBulkheadPostProcessor(Environment environment) {
+        int poolSize = environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+        Integer maxConcurrent = environment.getProperty("wallet.db-bulkhead.max-concurrent", Integer.class);
+        long maxWaitMs = environment.getProperty("wallet.db-bulkhead.max-wait-ms", Long.class, 1000L);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                // Обёртки над пулами (в том числе уже поставленная перегородка) пропускаем: перегородка стоит у самого пула.
+                if (!(bean instanceof DataSource) || bean instanceof DelegatingDataSource) {
+                    return bean;
+                }
+                int permits = maxConcurrent != null ? maxConcurrent
+                        : bean instanceof HikariDataSource ? ((HikariDataSource) bean).getMaximumPoolSize()
+                        : bean instanceof ShardRoutingDataSource ? ((ShardRoutingDataSource) bean).getMaximumPoolSize() : poolSize;
+                if (maxConcurrent == null && permits < 1) {
+                    permits = poolSize; // Hikari без maximum-pool-size до старта пула сообщает -1
+                }
+                Bulkhead bulkhead = Bulkhead.of(beanName, BulkheadConfig.custom()
+                        .maxConcurrentCalls(permits)
+                        .maxWaitDuration(Duration.ofMillis(maxWaitMs))
+                        .fairCallHandlingStrategyEnabled(true)
+                        .build());
+                return new BulkheadDataSource((DataSource) bean, bulkhead);
+            }
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Чтение с реплики: при заданном wallet.datasource.replica.jdbc-url у приложения два пула — основной
+ * (spring.datasource.*) и реплики (wallet.datasource.replica.*, свойства Hikari). Транзакции только для чтения
+ * получают соединение реплики, все остальные — основной БД.
+ * <p>
+ * Выбор делает LazyConnectionDataSourceProxy: соединение берётся из пула только при первом запросе, когда
+ * транзакция уже пометила его setReadOnly(true). Реплика отстаёт, поэтому WalletService читает кошелёк,
+ * в который недавно писали, обычной транзакцией — то есть из основной БД (WalletBalanceCache.isRecentlyWritten).
+ * Это работает, только пока сессия JPA не живёт весь HTTP-запрос (spring.jpa.open-in-view=false): иначе
+ * соединение первой транзакции запроса достаётся и всем следующим.
+ */
+@Configuration
+@ConditionalOnProperty(name = "wallet.datasource.replica.jdbc-url")
+public class ReadReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    // Свойства привязываются здесь, а не через @ConfigurationProperties: размер пула нужен уже перегородке,
+    // а до старта пула Hikari без maximum-pool-size сообщает -1.
+    @Bean
+    public HikariDataSource replicaDataSource(Environment environment) {
+        HikariDataSource replica = Binder.get(environment).bind("wallet.datasource.replica", HikariDataSource.class)
+                .orElseThrow(() -> new IllegalStateException("wallet.datasource.replica.jdbc-url is not set"));
+        replica.setPoolName("replica");
+        // Пул реплики без своего maximum-pool-size — того же размера, что и основной пул.
+        if (replica.getMaximumPoolSize() < 1) {
+            replica.setMaximumPoolSize(environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10));
+        }
+        return replica;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica) {
+        LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(primary);
+        routing.setReadOnlyDataSource(replica);
+        return routing;
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.example.service.shard.WalletShards;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Пулы всех шардов за одним DataSource: соединение берётся из пула шарда, выбранного в текущем потоке
+ * (WalletShards.current()), а без выбора — из первого шарда, где лежат справочник переносов и основная копия клиентов.
+ * Шард выбирается до начала транзакции: соединение, взятое транзакцией, до её конца остаётся в этом шарде.
+ * Поэтому сессия JPA на весь HTTP-запрос (spring.jpa.open-in-view) выключена: она удержала бы соединение первой
+ * транзакции запроса, и транзакции остальных шардов выполнились бы в первом.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    private final List<HikariDataSource> shards;
+
+    public ShardRoutingDataSource(List<HikariDataSource> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = new ArrayList<>(shards);
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(WalletShards.HOME));
+        setLenientFallback(false); // неизвестный номер шарда — ошибка, а не тихое чтение первого шарда
+        afterPropertiesSet();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    // Соединений во всех пулах вместе: по нему перегородка перед шардами выдаёт разрешения.
+    public int getMaximumPoolSize() {
+        int total = 0;
+        for (HikariDataSource shard : shards) {
+            total += shard.getMaximumPoolSize();
+        }
+        return total;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return WalletShards.current();
+    }
+
+    @Override
+    public void close() {
+        for (HikariDataSource shard : shards) {
+            shard.close();
+        }
+    }
+}
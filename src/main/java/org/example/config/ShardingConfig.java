@@ -0,0 +1,72 @@
+package org.example.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.example.service.shard.WalletShards;
+import org.hibernate.SessionFactory;
+import org.hibernate.relational.SchemaManager;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Шардирование кошельков (wallet.sharding.enabled=true): вместо spring.datasource.* у приложения пулы
+ * wallet.sharding.shards[0..n-1] (свойства Hikari) за ShardRoutingDataSource. Какой шард у кошелька, решает WalletShards.
+ * <p>
+ * Схему Hibernate создаёт (spring.jpa.hibernate.ddl-auto=create) только в первом шарде; в остальных её создаёт
+ * эта конфигурация тем же набором таблиц.
+ */
+@Configuration
+@ConditionalOnProperty(name = "wallet.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    @Bean
+    @Primary
+    public DataSource dataSource(Environment environment) {
+        List<HikariDataSource> shards = Binder.get(environment)
+                .bind("wallet.sharding.shards", Bindable.listOf(HikariDataSource.class))
+                .orElseThrow(() -> new IllegalStateException("wallet.sharding.enabled needs wallet.sharding.shards[0].jdbc-url"));
+        // Пул шарда без своего maximum-pool-size — того же размера, что и пул единственной БД.
+        int poolSize = environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+        for (int i = 0; i < shards.size(); i++) {
+            shards.get(i).setPoolName("shard-" + i);
+            if (shards.get(i).getMaximumPoolSize() < 1) {
+                shards.get(i).setMaximumPoolSize(poolSize);
+            }
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    @Bean
+    public SmartInitializingSingleton shardSchemaInitializer(EntityManagerFactory entityManagerFactory, DataSource dataSource,
+                                                             @Value("${spring.jpa.hibernate.ddl-auto:none}") String ddlAuto) {
+        return () -> {
+            if (!"create".equals(ddlAuto) && !"create-drop".equals(ddlAuto)) {
+                return;
+            }
+            SchemaManager schema = entityManagerFactory.unwrap(SessionFactory.class).getSchemaManager();
+            int shardCount;
+            try {
+                shardCount = dataSource.unwrap(ShardRoutingDataSource.class).getShardCount();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            for (int shard = WalletShards.HOME + 1; shard < shardCount; shard++) {
+                try (WalletShards.Scope scope = WalletShards.enter(shard)) {
+                    schema.dropMappedObjects(false);
+                    schema.exportMappedObjects(false);
+                }
+            }
+        };
+    }
+}
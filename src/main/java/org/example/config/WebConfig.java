@@ -0,0 +1,30 @@
+package org.example.config;
+
+import org.example.controller.MetricsInterceptor;
+import org.example.service.WalletMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Подключает учёт запросов к API кошельков и клиентов. В срезах @WebMvcTest WalletMetrics нет — тогда учёт не подключается.
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+    private final ObjectProvider<WalletMetrics> metrics;
+
+    @Autowired
+    public WebConfig(ObjectProvider<WalletMetrics> metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        WalletMetrics walletMetrics = metrics.getIfAvailable();
+        if (walletMetrics != null) {
+            registry.addInterceptor(new MetricsInterceptor(walletMetrics)).addPathPatterns("/api/v1/wallet/**", "/api/v1/clients/**");
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.example.controller;
+
+import org.example.dto.ClientPortfolio;
+import org.example.exception.ClientNotFoundException;
+import org.example.service.WalletService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/v1/clients")
+public class ClientController {
+
+    private final WalletService walletService;
+
+    @Autowired
+    public ClientController(WalletService walletService) {
+        this.walletService = walletService;
+    }
+
+    // Кошельки клиента с балансами и итогами покупок.
+    @GetMapping("/{clientId}/portfolio")
+    public ResponseEntity<ClientPortfolio> getPortfolio(@PathVariable UUID clientId) throws ClientNotFoundException {
+        return ResponseEntity.ok(walletService.getPortfolio(clientId));
+    }
+}
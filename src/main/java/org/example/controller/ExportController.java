@@ -0,0 +1,48 @@
+package org.example.controller;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.service.export.DataExporter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.Locale;
+
+@RestController
+@RequestMapping("/api/v1/export")
+public class ExportController {
+    private final DataExporter exporter;
+
+    @Autowired
+    public ExportController(DataExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    // Кошельки с текущими балансами: wallet_id, client_id, balance.
+    @GetMapping("/wallets")
+    public void exportWallets(@RequestParam(defaultValue = "NDJSON") DataExporter.Format format,
+                              HttpServletResponse response) throws IOException {
+        export(DataExporter.Dataset.WALLETS, format, response);
+    }
+
+    // Онлайн- и офлайн-покупки: purchase_id, wallet_id, type, amount, store, created_at.
+    @GetMapping("/purchases")
+    public void exportPurchases(@RequestParam(defaultValue = "NDJSON") DataExporter.Format format,
+                                HttpServletResponse response) throws IOException {
+        export(DataExporter.Dataset.PURCHASES, format, response);
+    }
+
+    // Ответ пишется по мере чтения строк (chunked), размер заранее неизвестен.
+    private void export(DataExporter.Dataset dataset, DataExporter.Format format, HttpServletResponse response) throws IOException {
+        response.setContentType(format.getContentType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + dataset.name().toLowerCase(Locale.ROOT)
+                + "." + (format == DataExporter.Format.CSV ? "csv" : "ndjson") + "\"");
+        exporter.export(dataset, format, response.getOutputStream());
+        response.flushBuffer();
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.controller;
+
+import org.example.dto.ImportResult;
+import org.example.service.export.DataExporter;
+import org.example.service.provision.ProvisioningImporter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@RestController
+@RequestMapping("/api/v1/import")
+public class ImportController {
+    private final ProvisioningImporter importer;
+    private final Path rejectDirectory;
+
+    @Autowired
+    public ImportController(ProvisioningImporter importer, @Value("${wallet.import.reject-dir:${java.io.tmpdir}}") String rejectDirectory) {
+        this.importer = importer;
+        this.rejectDirectory = Paths.get(rejectDirectory);
+    }
+
+    // Клиенты и кошельки с начальными балансами из тела запроса (CSV с заголовком или NDJSON), читается потоком.
+    // Файл отказов остаётся на сервере в wallet.import.reject-dir; его путь — в ответе.
+    @PostMapping(value = "/clients", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<?> importClients(@RequestParam(defaultValue = "NDJSON") DataExporter.Format format,
+                                           InputStream body) throws IOException {
+        Files.createDirectories(rejectDirectory);
+        Path rejectFile = Files.createTempFile(rejectDirectory, "import-", ".rejects.csv");
+        try {
+            ImportResult result = importer.importRecords(body, format, rejectFile);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            Files.deleteIfExists(rejectFile);
+            return ResponseEntity.badRequest().body(e.getMessage()); // заголовок CSV не разобран
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.controller;
+
+import org.example.service.WalletMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/metrics")
+public class MetricsController {
+    private final WalletMetrics metrics;
+
+    @Autowired
+    public MetricsController(WalletMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Накопленные с запуска таймеры фаз, исходы и повторы по эндпоинтам кошелька.
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        return ResponseEntity.ok(metrics.snapshot());
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.service.WalletMetrics;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Время и исход каждого запроса к WalletController и ClientController, включая commit транзакции и обработку исключения
+ * в GlobalExceptionHandler. Исключение, которое обработал @ExceptionHandler, Spring кладёт в атрибут запроса.
+ * <p>
+ * Время начала хранится не в атрибуте запроса (там оно было бы новым Long на каждый запрос), а в ячейке потока:
+ * контроллеры синхронные, preHandle и afterCompletion одного запроса идут в одном потоке.
+ */
+public class MetricsInterceptor implements HandlerInterceptor {
+    // Ячейка создаётся один раз на поток сервера и переиспользуется всеми его запросами.
+    private static final ThreadLocal<Started> STARTED = ThreadLocal.withInitial(Started::new);
+    private static final Map<String, WalletMetrics.Endpoint> ENDPOINTS = new HashMap<>();
+
+    static {
+        ENDPOINTS.put("performOperation", WalletMetrics.Endpoint.OPERATION);
+        ENDPOINTS.put("getBalance", WalletMetrics.Endpoint.BALANCE);
+        ENDPOINTS.put("performBatch", WalletMetrics.Endpoint.BATCH);
+        ENDPOINTS.put("addOnlinePurchase", WalletMetrics.Endpoint.PURCHASE_ONLINE);
+        ENDPOINTS.put("addOfflinePurchase", WalletMetrics.Endpoint.PURCHASE_OFFLINE);
+        ENDPOINTS.put("addPurchases", WalletMetrics.Endpoint.PURCHASE_BATCH);
+        ENDPOINTS.put("getPurchases", WalletMetrics.Endpoint.PURCHASE_HISTORY);
+        ENDPOINTS.put("createClient", WalletMetrics.Endpoint.CREATE_CLIENT);
+        ENDPOINTS.put("transfer", WalletMetrics.Endpoint.TRANSFER);
+        ENDPOINTS.put("transfers", WalletMetrics.Endpoint.TRANSFER_BATCH);
+        ENDPOINTS.put("getPortfolio", WalletMetrics.Endpoint.PORTFOLIO);
+        ENDPOINTS.put("getSpend", WalletMetrics.Endpoint.SPEND);
+    }
+
+    private final WalletMetrics metrics;
+
+    public MetricsInterceptor(WalletMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (endpointOf(handler) != null) {
+            Started started = STARTED.get();
+            started.nanos = System.nanoTime();
+            started.active = true;
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        WalletMetrics.Endpoint endpoint = endpointOf(handler);
+        Started started = STARTED.get();
+        if (endpoint == null || !started.active) {
+            return;
+        }
+        started.active = false;
+        Throwable failure = ex != null ? ex : (Throwable) request.getAttribute(DispatcherServlet.EXCEPTION_ATTRIBUTE);
+        metrics.recordRequest(endpoint, started.nanos, failure);
+    }
+
+    private static WalletMetrics.Endpoint endpointOf(Object handler) {
+        if (!(handler instanceof HandlerMethod)) {
+            return null;
+        }
+        Class<?> controller = ((HandlerMethod) handler).getBeanType();
+        if (controller != WalletController.class && controller != ClientController.class) {
+            return null;
+        }
+        return ENDPOINTS.get(((HandlerMethod) handler).getMethod().getName());
+    }
+
+    private static final class Started {
+        private long nanos;
+        private boolean active; // preHandle отметил запрос, afterCompletion его ещё не записал
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.controller;
+
+import org.example.exception.WalletNotFoundException;
+import org.example.service.shard.WalletResharder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/v1/shards")
+@ConditionalOnProperty(name = "wallet.sharding.enabled", havingValue = "true")
+public class ShardController {
+    private final WalletResharder resharder;
+
+    @Autowired
+    public ShardController(WalletResharder resharder) {
+        this.resharder = resharder;
+    }
+
+    // Переносит кошелёк с покупками в шард shard.
+    @PostMapping("/wallets/{walletId}")
+    public ResponseEntity<?> move(@PathVariable UUID walletId, @RequestParam int shard) throws WalletNotFoundException {
+        try {
+            resharder.move(walletId, shard);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    // Переносит кошельки в шарды по хэшу среди hashShards шардов; в ответе — сколько перенесено.
+    @PostMapping("/rebalance")
+    public ResponseEntity<?> rebalance(@RequestParam int hashShards) {
+        try {
+            return ResponseEntity.ok(Collections.singletonMap("moved", resharder.rebalance(hashShards)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
@@ -1,20 +1,41 @@
 package org.example.controller;
 
-import org.aspectj.weaver.ast.Var;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletResponse;
 import org.example.dto.ClientDto;
+import org.example.dto.PurchasePage;
+import org.example.dto.PurchaseRequest;
+import org.example.dto.PurchaseResult;
+import org.example.dto.SpendSummary;
+import org.example.dto.TransferRequest;
+import org.example.dto.TransferResult;
 import org.example.dto.WalletOperationRequest;
-import org.example.entity.Client;
+import org.example.dto.WalletOperationResult;
+import org.example.entity.Money;
 import org.example.exception.AlreadyExistWIthThisEmail;
+import org.example.exception.ClientAlreadyExistsException;
 import org.example.exception.InsufficientFundsException;
+import org.example.exception.InvalidCursorException;
+import org.example.exception.InvalidTransferException;
 import org.example.exception.WalletNotFoundException;
-import org.example.repository.OnlinePurchaseRepository;
-import org.example.repository.UserRepository;
 import org.example.service.WalletService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.UUID;
 
 import java.math.BigDecimal;
@@ -23,16 +44,16 @@ import java.math.BigDecimal;
 @RestController // Аннотация, которая указывает, что этот класс является REST контроллером и возвращает данные непосредственно в HTTP-ответе.
 @RequestMapping("/api/v1/wallet") // Устанавливает базовый URL для всех методов в этом контроллере.
 public class WalletController {
+    // Самое длинное окно трат: столько часов или дней.
+    private static final int MAX_SPEND_BUCKETS = 1000;
 
     private final WalletService walletService; // Сервис для обработки операций с кошельками.
-    private final UserRepository userRepository;
-    private final OnlinePurchaseRepository onlinePurchaseRepository;
+    private final ObjectMapper objectMapper; // Потоковое чтение пакетных запросов и запись результатов.
 
     @Autowired // Аннотация, указывающая Spring автоматически внедрит зависимость через конструктор.
-    public WalletController(WalletService walletService, UserRepository userRepository, OnlinePurchaseRepository onlinePurchaseRepository) {
+    public WalletController(WalletService walletService, ObjectMapper objectMapper) {
         this.walletService = walletService; // Инициализация сервиса через конструктор.
-        this.userRepository = userRepository;
-        this.onlinePurchaseRepository = onlinePurchaseRepository;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping // Обрабатывает HTTP POST запросы по пути "/api/v1/wallet".
@@ -45,25 +66,104 @@ public class WalletController {
 
     }
 
+    // Принимает JSON-массив или NDJSON с операциями и построчно (NDJSON) возвращает результат каждой операции.
+    // Ни запрос, ни ответ целиком в памяти не держатся: операции читаются и применяются частями.
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public void performBatch(InputStream body, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        ServletOutputStream out = response.getOutputStream();
+        ObjectWriter writer = objectMapper.writerFor(WalletOperationResult.class);
+        try (MappingIterator<WalletOperationRequest> requests = objectMapper.readerFor(WalletOperationRequest.class).readValues(body)) {
+            walletService.processBatch(requests, result -> {
+                try {
+                    out.write(writer.writeValueAsBytes(result));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (JsonProcessingException | RuntimeJsonMappingException e) {
+            writeMalformedInput(out, writer);
+        } catch (RuntimeException e) {
+            // Ошибку разбора MappingIterator оборачивает в RuntimeException. Остальное — отключившийся клиент
+            // (UncheckedIOException) или сбой сервиса — не про входной поток и уходит в GlobalExceptionHandler.
+            if (e instanceof UncheckedIOException || !(e.getCause() instanceof JsonProcessingException)) {
+                throw e;
+            }
+            writeMalformedInput(out, writer);
+        }
+        out.flush();
+    }
+
+    // Входной поток испорчен: уже прочитанные операции обработаны, остальное не читаем.
+    private static void writeMalformedInput(ServletOutputStream out, ObjectWriter writer) throws IOException {
+        WalletOperationResult error = new WalletOperationResult();
+        error.setStatus(WalletOperationResult.Status.ERROR);
+        error.setMessage("Malformed batch input");
+        out.write(writer.writeValueAsBytes(error));
+        out.write('\n');
+    }
+
     @GetMapping("/{walletId}")
     public ResponseEntity<String> getBalance(@PathVariable UUID walletId) throws WalletNotFoundException {
 
-            BigDecimal balance = walletService.getBalance(walletId);
-            return ResponseEntity.ok(String.valueOf(balance));
+            Money balance = walletService.getBalance(walletId);
+            return ResponseEntity.ok(balance.toString());
         }
-        @PostMapping("/{client}")
-    public ResponseEntity<String> createClient(@RequestBody ClientDto clientDto) throws AlreadyExistWIthThisEmail {
+
+    // История покупок кошелька страницами от новых к старым; следующую страницу запрашивают с cursor = nextCursor.
+    @GetMapping("/{walletId}/purchases")
+    public ResponseEntity<PurchasePage> getPurchases(@PathVariable UUID walletId,
+                                                     @RequestParam(required = false) String cursor,
+                                                     @RequestParam(defaultValue = "50") int limit) throws WalletNotFoundException, InvalidCursorException {
+        int pageSize = Math.max(1, Math.min(limit, 500)); // страница ограничена, чтобы запрос оставался коротким диапазоном индекса
+        return ResponseEntity.ok(walletService.getPurchases(walletId, cursor, pageSize));
+    }
+
+    // Траты кошелька по готовым агрегатам: всего, по магазинам и по часам или дням окна [from, to).
+    // По умолчанию окно — последние сутки по часам или последние 30 дней по дням.
+    @GetMapping("/{walletId}/spend")
+    public ResponseEntity<SpendSummary> getSpend(@PathVariable UUID walletId,
+                                                 @RequestParam(defaultValue = "DAY") SpendSummary.Granularity granularity,
+                                                 @RequestParam(required = false) Instant from,
+                                                 @RequestParam(required = false) Instant to) throws WalletNotFoundException {
+        ChronoUnit unit = granularity == SpendSummary.Granularity.HOUR ? ChronoUnit.HOURS : ChronoUnit.DAYS;
+        Instant end = to != null ? to : Instant.now().truncatedTo(unit).plus(1, unit);
+        Instant start = from != null ? from : end.minus(granularity == SpendSummary.Granularity.HOUR ? 24 : 30, unit);
+        // Окно ограничено, чтобы запрос оставался коротким диапазоном ключа.
+        Instant earliest = end.minus(MAX_SPEND_BUCKETS, unit);
+        return ResponseEntity.ok(walletService.getSpend(walletId, granularity, start.isBefore(earliest) ? earliest : start, end));
+    }
+
+        @PostMapping("/client")
+    public ResponseEntity<String> createClient(@RequestBody ClientDto clientDto) throws AlreadyExistWIthThisEmail, ClientAlreadyExistsException {
         walletService.createUser(clientDto);
         return ResponseEntity.ok("Client has been created");
     }
-    @PostMapping("/{online}")
-    public ResponseEntity<String> addOnlinePurchase (@RequestParam String storeAddress,@RequestParam BigDecimal amount,@RequestParam UUID walletId) throws WalletNotFoundException, InsufficientFundsException {
-        walletService.addOnlinePurchase(storeAddress, amount, walletId);
+    @PostMapping("/online")
+    public ResponseEntity<String> addOnlinePurchase (@RequestParam String storeUrl,@RequestParam BigDecimal amount,@RequestParam UUID walletId) throws WalletNotFoundException, InsufficientFundsException {
+        walletService.addOnlinePurchase(storeUrl, amount, walletId);
         return ResponseEntity.ok("Purchase has been saved");
     }
-    @PostMapping("/{online}")
-    public ResponseEntity<String> addOfflinePurchase (@RequestParam String storeUrl,@RequestParam BigDecimal amount,@RequestParam UUID walletId) throws WalletNotFoundException, InsufficientFundsException {
-        walletService.addOnlinePurchase(storeUrl, amount, walletId);
+    // Пачка покупок от кассовой интеграции: результат по каждой покупке в порядке запроса.
+    @PostMapping("/purchases")
+    public ResponseEntity<List<PurchaseResult>> addPurchases(@RequestBody List<PurchaseRequest> purchases) {
+        return ResponseEntity.ok(walletService.addPurchases(purchases));
+    }
+    // Перевод с кошелька на кошелёк: списание и зачисление в одной транзакции.
+    @PostMapping("/transfer")
+    public ResponseEntity<String> transfer(@RequestBody TransferRequest transfer) throws WalletNotFoundException, InsufficientFundsException, InvalidTransferException {
+        walletService.transfer(transfer);
+        return ResponseEntity.ok("Transfer successful");
+    }
+    // Пачка переводов: результат по каждому переводу в порядке запроса.
+    @PostMapping("/transfers")
+    public ResponseEntity<List<TransferResult>> transfers(@RequestBody List<TransferRequest> transfers) {
+        return ResponseEntity.ok(walletService.transfers(transfers));
+    }
+    @PostMapping("/offline")
+    public ResponseEntity<String> addOfflinePurchase (@RequestParam String storeAddress,@RequestParam BigDecimal amount,@RequestParam UUID walletId) throws WalletNotFoundException, InsufficientFundsException {
+        walletService.addOfflinePurchase(storeAddress, amount, walletId);
         return ResponseEntity.ok("Purchase has been saved");
     }
     }
\ No newline at end of file
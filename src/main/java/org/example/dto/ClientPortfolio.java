@@ -0,0 +1,22 @@
+package org.example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.example.entity.Money;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClientPortfolio {
+    private UUID clientId;
+    private String username;
+    private String userSurname;
+    private Money totalBalance; // сумма балансов всех кошельков
+    private BigDecimal purchaseTotal; // сумма всех покупок по всем кошелькам
+    private List<WalletSummary> wallets; // по возрастанию id
+}
@@ -0,0 +1,15 @@
+package org.example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportResult {
+    private long clients; // созданных клиентов
+    private long wallets; // созданных кошельков
+    private long rejected; // строк в файле отказов
+    private String rejectFile; // null, если отказов нет
+}
@@ -0,0 +1,22 @@
+package org.example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.example.entity.Money;
+
+import java.util.UUID;
+
+// Строка файла массового импорта: кошелёк с начальным балансом и, если указан email, новый клиент-владелец.
+// Без email кошелёк принадлежит уже существующему клиенту clientId (или никому, если clientId пуст).
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProvisioningRecord {
+    private UUID clientId; // пусто — id нового клиента выдаёт генератор
+    private String email;
+    private String username;
+    private String userSurname;
+    private UUID walletId; // пусто — id выдаёт генератор
+    private Money balance;
+}
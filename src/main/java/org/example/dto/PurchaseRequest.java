@@ -0,0 +1,18 @@
+package org.example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurchaseRequest {
+    private UUID walletId;
+    private PurchaseView.Type type;
+    private BigDecimal amount;
+    private String store; // адрес сайта для онлайн-покупки, адрес магазина для офлайн
+}
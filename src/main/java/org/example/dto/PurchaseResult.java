@@ -0,0 +1,18 @@
+package org.example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurchaseResult {
+    private long index; // позиция покупки в запросе
+    private UUID purchaseId; // только для SUCCESS
+    private UUID walletId;
+    private WalletOperationResult.Status status;
+    private String message;
+}
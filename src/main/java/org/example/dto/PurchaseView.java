@@ -0,0 +1,25 @@
+package org.example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+// Покупка в истории кошелька: только нужные столбцы, без загрузки сущностей и связанного кошелька.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PurchaseView {
+    private UUID id;
+    private Type type;
+    private BigDecimal amount;
+    private String store; // адрес сайта для онлайн-покупки, адрес магазина для офлайн
+    private Instant createdAt;
+
+    public enum Type {
+        ONLINE, OFFLINE
+    }
+}
@@ -0,0 +1,17 @@
+package org.example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpendBucket {
+    private Instant start; // начало часа или дня по UTC
+    private long purchaseCount;
+    private BigDecimal purchaseTotal;
+}
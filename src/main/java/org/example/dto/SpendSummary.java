@@ -0,0 +1,26 @@
+package org.example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+// Траты кошелька из готовых агрегатов: всего, по магазинам и по часам или дням окна.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpendSummary {
+    private UUID walletId;
+    private long purchaseCount;
+    private BigDecimal purchaseTotal;
+    private List<StoreSpend> stores; // по типу и адресу магазина
+    private Granularity granularity;
+    private List<SpendBucket> buckets; // по возрастанию времени; часы и дни без покупок пропущены
+
+    public enum Granularity {
+        HOUR, DAY
+    }
+}
@@ -0,0 +1,17 @@
+package org.example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoreSpend {
+    private PurchaseView.Type type;
+    private String store; // адрес сайта для онлайн-покупки, адрес магазина для офлайн
+    private long purchaseCount;
+    private BigDecimal purchaseTotal;
+}
@@ -0,0 +1,17 @@
+package org.example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.example.entity.Money;
+
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransferRequest {
+    private UUID fromWalletId; // кошелёк, с которого списывается сумма
+    private UUID toWalletId; // кошелёк, на который она зачисляется
+    private Money amount;
+}
@@ -0,0 +1,18 @@
+package org.example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransferResult {
+    private long index; // позиция перевода в запросе
+    private UUID fromWalletId;
+    private UUID toWalletId;
+    private WalletOperationResult.Status status;
+    private String message;
+}
@@ -3,8 +3,8 @@ package org.example.dto;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.example.entity.Money;
 
-import java.math.BigDecimal;
 import java.util.UUID;
 
 @Data
@@ -13,7 +13,7 @@ import java.util.UUID;
 public class WalletOperationRequest {
     private UUID walletId;
     private OperationType operationType;
-    private BigDecimal amount;
+    private Money amount; // в JSON — обычное число, например 150.25
 
     public enum OperationType {
         DEPOSIT, WITHDRAW
@@ -0,0 +1,23 @@
+package org.example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.example.entity.Money;
+
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletOperationResult {
+    private long index; // позиция операции во входном потоке
+    private UUID walletId;
+    private Status status;
+    private Money balance; // баланс после операции, только для SUCCESS
+    private String message;
+
+    public enum Status {
+        SUCCESS, INSUFFICIENT_FUNDS, NOT_FOUND, ERROR
+    }
+}
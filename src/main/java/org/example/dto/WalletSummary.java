@@ -0,0 +1,19 @@
+package org.example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.example.entity.Money;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WalletSummary {
+    private UUID walletId;
+    private Money balance;
+    private long purchaseCount; // онлайн и офлайн вместе
+    private BigDecimal purchaseTotal;
+}
@@ -3,6 +3,7 @@ package org.example.entity;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
 
@@ -10,10 +11,14 @@ import java.util.List;
 import java.util.UUID;
 
 @Entity
+// Уникальный индекс: проверка занятости email — поиск по индексу, а не просмотр таблицы; он же отсекает гонку двух регистраций.
+@Table(indexes = @Index(name = "uk_client_email", columnList = "email", unique = true))
 @NoArgsConstructor
 @Data
 @AllArgsConstructor
-@ToString(exclude = {"email"})
+// Без ленивой коллекции кошельков: иначе toString/hashCode загружают её и по ссылке wallet.client уходят в цикл.
+@ToString(exclude = {"email", "wallets"})
+@EqualsAndHashCode(exclude = {"wallets"})
 public class Client {
     @Id
     private UUID id;
@@ -22,6 +27,7 @@ public class Client {
         this.id = id;
         this.username = username;
         this.userSurname = userSurname;
+        this.email = email;
     }
     private String email;
     private String username;
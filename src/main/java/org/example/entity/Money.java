@@ -0,0 +1,230 @@
+package org.example.entity;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.example.exception.InvalidAmountException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Денежная сумма в копейках (две цифры после запятой, как столбец DECIMAL(19, 2)) в одном long.
+ * Неизменяемый объект из одного поля: сравнение и арифметика — целочисленные, без промежуточных BigDecimal,
+ * а короткоживущие значения на горячем пути JIT обычно вообще не размещает в куче.
+ * <p>
+ * Арифметика проверяет переполнение (InvalidAmountException), а не заворачивает значение через ноль.
+ * Диапазон long — около ±9,2·10^16 рублей, чуть меньше DECIMAL(19, 2); больше в кошельке не бывает.
+ * В JSON сумма — обычное число: читается из числа или строки без BigDecimal, пишется без экспоненты.
+ */
+@JsonSerialize(using = Money.Serializer.class)
+@JsonDeserialize(using = Money.Deserializer.class)
+public final class Money implements Comparable<Money> {
+    public static final int SCALE = 2;
+    public static final Money ZERO = new Money(0);
+
+    private static final long MINOR_PER_UNIT = 100;
+    // Цифр в целой части, больше которых long не вмещает при любом значении (Long.MAX_VALUE — 19 цифр).
+    private static final int MAX_PRECISION = 19;
+
+    private final long minor;
+
+    private Money(long minor) {
+        this.minor = minor;
+    }
+
+    public static Money ofMinor(long minor) {
+        return minor == 0 ? ZERO : new Money(minor);
+    }
+
+    public static Money of(long units) {
+        try {
+            return ofMinor(Math.multiplyExact(units, MINOR_PER_UNIT));
+        } catch (ArithmeticException e) {
+            throw outOfRange(units);
+        }
+    }
+
+    // Точное преобразование: больше двух знаков после запятой или выход за диапазон — InvalidAmountException.
+    // Порядок и дробная часть проверяются до setScale: иначе 1e999999999 развернулся бы в число из миллиарда цифр.
+    public static Money of(BigDecimal amount) {
+        BigDecimal exact = amount.stripTrailingZeros();
+        if (exact.scale() > SCALE) {
+            throw new InvalidAmountException("More than " + SCALE + " fraction digits: " + amount);
+        }
+        if (exact.precision() - exact.scale() > MAX_PRECISION) {
+            throw outOfRange(amount);
+        }
+        try {
+            return ofMinor(exact.setScale(SCALE).unscaledValue().longValueExact());
+        } catch (ArithmeticException e) {
+            throw outOfRange(amount);
+        }
+    }
+
+    // Разбор десятичной записи вида -123.45 без BigDecimal; экспоненциальная запись — через BigDecimal.
+    public static Money parse(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i = 1;
+        }
+        long minor = 0;
+        int fraction = -1; // цифр после точки; -1 — точки ещё не было
+        boolean digits = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && fraction < 0) {
+                fraction = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                if (c == 'e' || c == 'E') {
+                    return of(new BigDecimal(text.toString()));
+                }
+                throw new NumberFormatException("Not a money amount: " + text);
+            }
+            if (fraction >= 0 && ++fraction > SCALE) {
+                if (c != '0') {
+                    if (hasExponent(text, i)) {
+                        return of(new BigDecimal(text.toString())); // 1.2345E3: лишние цифры снимает порядок
+                    }
+                    throw new InvalidAmountException("More than " + SCALE + " fraction digits: " + text);
+                }
+                continue; // незначащие нули после копеек
+            }
+            try {
+                minor = Math.addExact(Math.multiplyExact(minor, 10), negative ? -(c - '0') : c - '0');
+            } catch (ArithmeticException e) {
+                throw outOfRange(text);
+            }
+            digits = true;
+        }
+        if (!digits) {
+            throw new NumberFormatException("Not a money amount: " + text);
+        }
+        try {
+            for (int f = Math.max(fraction, 0); f < SCALE; f++) {
+                minor = Math.multiplyExact(minor, 10);
+            }
+        } catch (ArithmeticException e) {
+            throw outOfRange(text);
+        }
+        return ofMinor(minor);
+    }
+
+    private static boolean hasExponent(CharSequence text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == 'e' || text.charAt(i) == 'E') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static InvalidAmountException outOfRange(Object amount) {
+        return new InvalidAmountException("Amount out of range: " + amount);
+    }
+
+    public long minorUnits() {
+        return minor;
+    }
+
+    public Money plus(Money other) {
+        long sum = minor + other.minor;
+        if (((minor ^ sum) & (other.minor ^ sum)) < 0) {
+            throw outOfRange(this + " + " + other);
+        }
+        return ofMinor(sum);
+    }
+
+    public Money minus(Money other) {
+        long difference = minor - other.minor;
+        if (((minor ^ other.minor) & (minor ^ difference)) < 0) {
+            throw outOfRange(this + " - " + other);
+        }
+        return ofMinor(difference);
+    }
+
+    public Money negate() {
+        if (minor == Long.MIN_VALUE) {
+            throw outOfRange("-(" + this + ")");
+        }
+        return ofMinor(-minor);
+    }
+
+    public int signum() {
+        return Long.signum(minor);
+    }
+
+    public boolean isLessThan(Money other) {
+        return minor < other.minor;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor, other.minor);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).minor == minor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minor);
+    }
+
+    // Всегда две цифры после точки, как в столбце: 150.00, -0.05.
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(24);
+        if (minor < 0) {
+            text.append('-');
+        }
+        // Через беззнаковое деление, чтобы и Long.MIN_VALUE печатался без переполнения.
+        long abs = minor < 0 ? -minor : minor;
+        long units = Long.divideUnsigned(abs, MINOR_PER_UNIT);
+        long cents = Long.remainderUnsigned(abs, MINOR_PER_UNIT);
+        text.append(Long.toUnsignedString(units)).append('.');
+        if (cents < 10) {
+            text.append('0');
+        }
+        return text.append(cents).toString();
+    }
+
+    public static final class Serializer extends JsonSerializer<Money> {
+        @Override
+        public void serialize(Money value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeNumber(value.toString());
+        }
+    }
+
+    public static final class Deserializer extends JsonDeserializer<Money> {
+        @Override
+        public Money deserialize(JsonParser p, DeserializationContext context) throws IOException {
+            JsonToken token = p.currentToken();
+            if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_STRING) {
+                return (Money) context.handleUnexpectedToken(Money.class, p);
+            }
+            try {
+                return parse(p.getText());
+            } catch (ArithmeticException | NumberFormatException e) {
+                return (Money) context.handleWeirdStringValue(Money.class, p.getText(), e.getMessage());
+            }
+        }
+    }
+}
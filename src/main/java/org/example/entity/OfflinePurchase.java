@@ -1,11 +1,15 @@
 package org.example.entity;
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+// История покупок кошелька читается диапазоном этого индекса, от новых к старым.
 @Entity
+@Table(indexes = @Index(name = "idx_offline_purchase_wallet_created", columnList = "wallet_id, created_at, id"))
 @NoArgsConstructor
 @Data
 @AllArgsConstructor
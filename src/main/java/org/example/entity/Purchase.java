@@ -6,6 +6,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.UUID;
 
 @Entity
@@ -20,4 +22,14 @@ public abstract class Purchase {
     @ManyToOne
     @JoinColumn(name = "wallet_id")
     private Wallet wallet;
+    // Время покупки с точностью до микросекунд (как хранит БД), чтобы курсор истории совпадал с сохранённым значением.
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package org.example.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+// Сумма и число покупок кошелька в одном разрезе: всего, по магазину или за час/день. Строки ведёт SpendAggregateRepository.
+@Entity
+@Table(name = "wallet_spend")
+@IdClass(SpendAggregate.Key.class)
+@NoArgsConstructor
+@Data
+@AllArgsConstructor
+public class SpendAggregate {
+    @Id
+    @Column(name = "wallet_id")
+    private UUID walletId;
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private Kind kind;
+    @Id
+    @Column(nullable = false)
+    private String store; // магазин для ONLINE/OFFLINE, иначе пустая строка
+    @Id
+    @Column(name = "bucket_start")
+    private Instant bucketStart; // начало часа/дня для HOUR/DAY, иначе начало эпохи
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal amount;
+    @Column(name = "purchase_count", nullable = false)
+    private long purchaseCount;
+
+    public enum Kind {
+        TOTAL, ONLINE, OFFLINE, HOUR, DAY
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private UUID walletId;
+        private Kind kind;
+        private String store;
+        private Instant bucketStart;
+    }
+}
@@ -3,8 +3,9 @@ package org.example.entity;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
-import org.springframework.data.annotation.Version;
+import lombok.ToString;
 
 
 import java.math.BigDecimal;
@@ -12,19 +13,25 @@ import java.util.List;
 import java.util.UUID;
 
 @Entity
+// Кошельки клиента (сводка клиента) — диапазон индекса; Postgres не создаёт индекс под внешний ключ сам.
+@Table(indexes = @Index(name = "idx_wallet_client_id", columnList = "client_id"))
 @NoArgsConstructor
 @AllArgsConstructor
 @Data
+// Покупки ссылаются на кошелёк обратно: без исключения toString/hashCode загружали бы их и зацикливались.
+@ToString(exclude = {"purchases"})
+@EqualsAndHashCode(exclude = {"purchases"})
 public class Wallet {
 
     @Id
     private UUID id;
-    private BigDecimal balance;
+    private Money balance; // DECIMAL(19, 2) через MoneyConverter
     // Обозначает поле, используемое для оптимистичной блокировки. Это поле автоматически увеличивается при каждом обновлении.
+    // Аннотация JPA (jakarta.persistence.Version), а не Spring Data: только её Hibernate проверяет при UPDATE.
     @Version
     private Long version;
 
-    public Wallet(UUID id, BigDecimal balance, Long version, Client client) {
+    public Wallet(UUID id, Money balance, Long version, Client client) {
         this.id = id;
         this.balance = balance;
         this.version = version;
@@ -0,0 +1,32 @@
+package org.example.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.example.dto.WalletOperationRequest;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+// Запись журнала операций: строки только добавляются, баланс кошелька из них выводится.
+@Entity
+@Table(name = "wallet_operation", indexes = @Index(name = "idx_wallet_operation_wallet_id", columnList = "wallet_id, id"))
+@NoArgsConstructor
+@Data
+@AllArgsConstructor
+public class WalletOperation {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "wallet_id", nullable = false)
+    private Wallet wallet;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "operation_type", nullable = false, length = 16)
+    private WalletOperationRequest.OperationType operationType;
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal amount;
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+}
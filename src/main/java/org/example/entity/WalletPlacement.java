@@ -0,0 +1,22 @@
+package org.example.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+// Шард кошелька, перенесённого решардингом (wallet.sharding): перекрывает шард по хэшу id. Читается на первом шарде.
+@Entity
+@Table(name = "wallet_placement")
+@NoArgsConstructor
+@Data
+@AllArgsConstructor
+public class WalletPlacement {
+    @Id
+    @Column(name = "wallet_id")
+    private UUID walletId;
+    @Column(nullable = false)
+    private int shard;
+}
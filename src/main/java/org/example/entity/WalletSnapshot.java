@@ -0,0 +1,28 @@
+package org.example.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+// Последний снимок баланса: сумма всех операций кошелька с id не больше lastOperationId.
+@Entity
+@Table(name = "wallet_snapshot")
+@NoArgsConstructor
+@Data
+@AllArgsConstructor
+public class WalletSnapshot {
+    @Id
+    @Column(name = "wallet_id")
+    private UUID walletId;
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal balance;
+    @Column(name = "last_operation_id", nullable = false)
+    private Long lastOperationId;
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+}
@@ -0,0 +1,9 @@
+package org.example.exception;
+
+import java.util.UUID;
+
+public class ClientAlreadyExistsException extends Exception {
+    public ClientAlreadyExistsException(UUID clientId) {
+        super("Client already exists with UUID: " + clientId.toString());
+    }
+}
@@ -0,0 +1,9 @@
+package org.example.exception;
+
+import java.util.UUID;
+
+public class ClientNotFoundException extends Exception {
+    public ClientNotFoundException(UUID clientId) {
+        super("Client not found with UUID: " + clientId.toString());
+    }
+}
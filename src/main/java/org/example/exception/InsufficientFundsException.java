@@ -1,9 +1,9 @@
 package org.example.exception;
 
-import java.math.BigDecimal;
+import org.example.entity.Money;
 
 public class InsufficientFundsException extends Exception {
-    public InsufficientFundsException(BigDecimal amount) {
+    public InsufficientFundsException(Money amount) {
         super("Insufficient funds for amount: " + amount.toString());
     }
 }
@@ -0,0 +1,8 @@
+package org.example.exception;
+
+// Наследник ArithmeticException: там, где Money уже ловили как арифметическую ошибку, поведение не меняется.
+public class InvalidAmountException extends ArithmeticException {
+    public InvalidAmountException(String reason) {
+        super(reason);
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.exception;
+
+public class InvalidTransferException extends Exception {
+    public InvalidTransferException(String reason) {
+        super("Invalid transfer: " + reason);
+    }
+}
@@ -0,0 +1,16 @@
+package org.example.exception;
+
+import java.util.UUID;
+
+public class RateLimitExceededException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public RateLimitExceededException(UUID walletId, long retryAfterSeconds) {
+        super("Too many requests for wallet with UUID: " + walletId.toString());
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
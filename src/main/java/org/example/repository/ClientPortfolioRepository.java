@@ -0,0 +1,72 @@
+package org.example.repository;
+
+import org.example.dto.ClientPortfolio;
+import org.example.dto.WalletSummary;
+import org.example.entity.Money;
+import org.example.service.engine.EventLedgerEngine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.UUID;
+
+/**
+ * Сводка клиента одним запросом: клиент, его кошельки и итоги покупок по каждому кошельку — строками, без сущностей.
+ * Через сущности это был бы запрос клиента, затем ленивые коллекции кошельков и покупок каждого кошелька (N+1),
+ * а сами покупки читались бы целиком ради суммы.
+ * <p>
+ * Итоги — коррелированные подзапросы по кошельку: каждый читает только диапазон индекса (wallet_id, created_at, id)
+ * своей таблицы, а не агрегирует всю таблицу покупок перед соединением.
+ * <p>
+ * В режиме ledger столбец balance — лишь исходный баланс: текущий выводится из снимка и операций тем же запросом
+ * (EventLedgerEngine.BALANCE_COLUMN), а не отдельным запросом к движку на каждый кошелёк.
+ */
+@Repository
+public class ClientPortfolioRepository {
+
+    private static final String PORTFOLIO_SQL =
+            "SELECT c.username, c.user_surname, w.id AS wallet_id, w.balance, " +
+            "(SELECT COUNT(*) FROM online_purchase p WHERE p.wallet_id = w.id) + " +
+            "(SELECT COUNT(*) FROM offline_purchase p WHERE p.wallet_id = w.id) AS purchase_count, " +
+            "COALESCE((SELECT SUM(p.amount) FROM online_purchase p WHERE p.wallet_id = w.id), 0) + " +
+            "COALESCE((SELECT SUM(p.amount) FROM offline_purchase p WHERE p.wallet_id = w.id), 0) AS purchase_total " +
+            "FROM client c LEFT JOIN %s w ON w.client_id = c.id " +
+            "WHERE c.id = ? ORDER BY w.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String portfolioSql;
+
+    @Autowired
+    public ClientPortfolioRepository(JdbcTemplate jdbcTemplate, @Value("${wallet.engine.mode:database}") String engineMode) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.portfolioSql = String.format(PORTFOLIO_SQL, "ledger".equals(engineMode)
+                ? "(SELECT w.id, w.client_id, " + EventLedgerEngine.BALANCE_COLUMN + " AS balance " + EventLedgerEngine.BALANCE_FROM + ")"
+                : "wallet");
+    }
+
+    // null, если клиента нет; клиент без кошельков — сводка с пустым списком.
+    public ClientPortfolio find(UUID clientId) {
+        return jdbcTemplate.query(portfolioSql, rs -> {
+            ClientPortfolio portfolio = null;
+            while (rs.next()) {
+                if (portfolio == null) {
+                    portfolio = new ClientPortfolio(clientId, rs.getString("username"), rs.getString("user_surname"),
+                            Money.ZERO, BigDecimal.ZERO, new ArrayList<>());
+                }
+                UUID walletId = rs.getObject("wallet_id", UUID.class);
+                if (walletId == null) {
+                    continue; // LEFT JOIN: у клиента нет кошельков
+                }
+                WalletSummary wallet = new WalletSummary(walletId, Money.of(rs.getBigDecimal("balance")),
+                        rs.getLong("purchase_count"), rs.getBigDecimal("purchase_total"));
+                portfolio.getWallets().add(wallet);
+                portfolio.setTotalBalance(portfolio.getTotalBalance().plus(wallet.getBalance()));
+                portfolio.setPurchaseTotal(portfolio.getPurchaseTotal().add(wallet.getPurchaseTotal()));
+            }
+            return portfolio;
+        }, clientId);
+    }
+}
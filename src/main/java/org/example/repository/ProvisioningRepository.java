@@ -0,0 +1,161 @@
+package org.example.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.example.entity.Client;
+import org.example.entity.Money;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Массовая загрузка клиентов и кошельков для импорта, без сущностей JPA и без обращения к БД на строку.
+ * На Postgres строки идут одной командой COPY ... FROM STDIN на таблицу (разбор и вставка внутри сервера, без
+ * выполнения INSERT на строку); на остальных БД (H2 в тестах) — JDBC batch. COPY неделим: одна плохая строка
+ * отменяет всю команду, поэтому вызывающий заранее отсеивает дубли запросами exists*.
+ */
+@Repository
+public class ProvisioningRepository {
+    private static final String CLIENT_COLUMNS = "id, email, username, user_surname";
+    private static final String WALLET_COLUMNS = "id, balance, version, client_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean postgres;
+
+    @Autowired
+    public ProvisioningRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.postgres = "PostgreSQL".equals(jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName()));
+    }
+
+    // Какие из адресов уже заняты.
+    public Set<String> existingEmails(Collection<String> emails) {
+        return existing("SELECT email FROM client WHERE email IN ", emails, String.class);
+    }
+
+    public Set<UUID> existingClients(Collection<UUID> clientIds) {
+        return existing("SELECT id FROM client WHERE id IN ", clientIds, UUID.class);
+    }
+
+    public Set<UUID> existingWallets(Collection<UUID> walletIds) {
+        return existing("SELECT id FROM wallet WHERE id IN ", walletIds, UUID.class);
+    }
+
+    public void insertClients(List<Client> clients) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        if (postgres) {
+            StringBuilder csv = new StringBuilder(clients.size() * 96);
+            for (Client client : clients) {
+                csv.append(client.getId()).append(',');
+                quote(csv, client.getEmail()).append(',');
+                quote(csv, client.getUsername()).append(',');
+                quote(csv, client.getUserSurname()).append('\n');
+            }
+            copy("client", CLIENT_COLUMNS, csv);
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(clients.size());
+        for (Client client : clients) {
+            rows.add(new Object[]{client.getId(), client.getEmail(), client.getUsername(), client.getUserSurname()});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO client (" + CLIENT_COLUMNS + ") VALUES (?, ?, ?, ?)", rows);
+    }
+
+    // Копии клиентов в шарде, кроме уже записанных под тем же id: повтор импорта после сбоя их не дублирует.
+    // Всегда batch: COPY не умеет пропускать существующие строки.
+    public void insertMissingClients(List<Client> clients) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(clients.size());
+        for (Client client : clients) {
+            rows.add(new Object[]{client.getId(), client.getEmail(), client.getUsername(), client.getUserSurname(), client.getId()});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO client (" + CLIENT_COLUMNS + ") SELECT ?, ?, ?, ? "
+                + "WHERE NOT EXISTS (SELECT 1 FROM client WHERE id = ?)", rows);
+    }
+
+    public void insertWallets(List<WalletRow> wallets) {
+        if (wallets.isEmpty()) {
+            return;
+        }
+        if (postgres) {
+            StringBuilder csv = new StringBuilder(wallets.size() * 96);
+            for (WalletRow wallet : wallets) {
+                csv.append(wallet.getId()).append(',').append(wallet.getBalance()).append(",0,");
+                if (wallet.getClientId() != null) {
+                    csv.append(wallet.getClientId());
+                }
+                csv.append('\n');
+            }
+            copy("wallet", WALLET_COLUMNS, csv);
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(wallets.size());
+        for (WalletRow wallet : wallets) {
+            rows.add(new Object[]{wallet.getId(), wallet.getBalance().toBigDecimal(), 0L, wallet.getClientId()});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO wallet (" + WALLET_COLUMNS + ") VALUES (?, ?, ?, ?)", rows);
+    }
+
+    private <T> Set<T> existing(String sql, Collection<T> values, Class<T> type) {
+        if (values.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList(sql + "(" + String.join(", ", Collections.nCopies(values.size(), "?")) + ")",
+                type, values.toArray()));
+    }
+
+    // Соединение транзакции вызывающего: COPY фиксируется и откатывается вместе с ней.
+    private void copy(String table, String columns, CharSequence csv) {
+        jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI()
+                        .copyIn("COPY " + table + " (" + columns + ") FROM STDIN (FORMAT csv)", new StringReader(csv.toString()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // В CSV для COPY пустое поле без кавычек — NULL, а строка, даже пустая, всегда в кавычках.
+    private static StringBuilder quote(StringBuilder csv, String value) {
+        if (value == null) {
+            return csv;
+        }
+        csv.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                csv.append('"');
+            }
+            csv.append(c);
+        }
+        return csv.append('"');
+    }
+
+    // Строка кошелька для вставки; clientId может быть null.
+    @Data
+    @AllArgsConstructor
+    public static class WalletRow {
+        private UUID id;
+        private UUID clientId;
+        private Money balance;
+    }
+}
@@ -0,0 +1,108 @@
+package org.example.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.example.dto.PurchaseView;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Пакетная вставка покупок: один JDBC batch на таблицу, без сущностей и без отдельного обращения к БД на строку.
+ * На Postgres с reWriteBatchedInserts=true драйвер дополнительно склеивает пачку в многострочные INSERT.
+ * Вставленные покупки тут же прибавляются к агрегатам трат (SpendAggregateRepository) в той же транзакции.
+ */
+@Repository
+public class PurchaseBatchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SpendAggregateRepository spendRepository;
+
+    @Autowired
+    public PurchaseBatchRepository(JdbcTemplate jdbcTemplate, SpendAggregateRepository spendRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.spendRepository = spendRepository;
+    }
+
+    public void insertAll(List<PurchaseRow> purchases) {
+        insert(purchases, false);
+    }
+
+    // Как insertAll, но покупки, уже записанные под тем же id, пропускаются: повторная запись пачки ничего не меняет.
+    // Для журнала покупок, когда неизвестно, успела ли пачка зафиксироваться до сбоя. Возвращает вставленные покупки.
+    public List<PurchaseRow> insertMissing(List<PurchaseRow> purchases) {
+        return insert(purchases, true);
+    }
+
+    // Списывает суммы покупок с их кошельков — для покупок, чьё списание пишется вместе с ними (журнал покупок).
+    public void debitWallets(List<PurchaseRow> purchases) {
+        if (purchases.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(purchases.size());
+        for (PurchaseRow purchase : purchases) {
+            rows.add(new Object[]{purchase.getAmount(), purchase.getWalletId()});
+        }
+        jdbcTemplate.batchUpdate("UPDATE wallet SET balance = balance - ? WHERE id = ?", rows);
+    }
+
+    private List<PurchaseRow> insert(List<PurchaseRow> purchases, boolean skipExisting) {
+        List<PurchaseRow> online = new ArrayList<>();
+        List<PurchaseRow> offline = new ArrayList<>();
+        for (PurchaseRow purchase : purchases) {
+            (purchase.getType() == PurchaseView.Type.ONLINE ? online : offline).add(purchase);
+        }
+        List<PurchaseRow> inserted = new ArrayList<>(purchases.size());
+        insert(online, "online_purchase", "store_url", skipExisting, inserted);
+        insert(offline, "offline_purchase", "store_address", skipExisting, inserted);
+        spendRepository.add(inserted);
+        return inserted;
+    }
+
+    // Пропущенная при skipExisting покупка (0 строк) в inserted не попадает: повтор пачки не учитывается в агрегатах дважды.
+    private void insert(List<PurchaseRow> purchases, String table, String storeColumn, boolean skipExisting, List<PurchaseRow> inserted) {
+        if (purchases.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(purchases.size());
+        for (PurchaseRow purchase : purchases) {
+            Object[] row = {purchase.getId(), purchase.getAmount(), purchase.getWalletId(),
+                    purchase.getCreatedAt().atOffset(ZoneOffset.UTC), purchase.getStore(), purchase.getId()};
+            rows.add(skipExisting ? row : Arrays.copyOf(row, 5));
+        }
+        int[] counts = jdbcTemplate.batchUpdate(insertSql(table, storeColumn, skipExisting), rows);
+        for (int i = 0; i < purchases.size(); i++) {
+            if (!skipExisting || counts[i] != 0) {
+                inserted.add(purchases.get(i));
+            }
+        }
+    }
+
+    // При skipExisting id передаётся ещё раз — последним параметром, для проверки NOT EXISTS.
+    private static String insertSql(String table, String storeColumn, boolean skipExisting) {
+        String insert = "INSERT INTO " + table + " (id, amount, wallet_id, created_at, " + storeColumn + ") ";
+        return skipExisting
+                ? insert + "SELECT ?, ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM " + table + " WHERE id = ?)"
+                : insert + "VALUES (?, ?, ?, ?, ?)";
+    }
+
+    // Строка покупки для вставки; store пишется в store_url или store_address в зависимости от типа.
+    @Data
+    @AllArgsConstructor
+    public static class PurchaseRow {
+        private UUID id;
+        private UUID walletId;
+        private PurchaseView.Type type;
+        private BigDecimal amount;
+        private String store;
+        private Instant createdAt;
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.repository;
+
+import org.example.dto.PurchaseView;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * История покупок кошелька страницами по ключу (created_at, id), от новых к старым.
+ * Purchase хранится таблицей на класс, поэтому вместо полиморфного UNION по всем покупкам
+ * каждая таблица читается своим запросом по индексу (wallet_id, created_at, id), а результаты сливаются.
+ * Каждый запрос читает не больше limit + 1 строк, поэтому страница стоит одинаково на любой глубине истории.
+ */
+@Repository
+public class PurchaseHistoryRepository {
+
+    // Курсор первой страницы: позже любой покупки.
+    public static final Instant NEWEST = Instant.parse("9999-12-31T00:00:00Z");
+    public static final UUID MAX_ID = new UUID(-1L, -1L);
+
+    // Порядок страницы, как в БД: UUID сравниваются как беззнаковые байты.
+    public static final Comparator<PurchaseView> NEWEST_FIRST = Comparator
+            .comparing(PurchaseView::getCreatedAt)
+            .thenComparing(PurchaseView::getId, (a, b) -> {
+                int high = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+                return high != 0 ? high : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+            })
+            .reversed();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public PurchaseHistoryRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Не больше limit + 1 покупок строго старше курсора: лишняя строка говорит, что есть следующая страница.
+    public List<PurchaseView> findOlderThan(UUID walletId, Instant createdAt, UUID id, int limit) {
+        List<PurchaseView> page = new ArrayList<>(2 * (limit + 1));
+        page.addAll(query("online_purchase", "store_url", PurchaseView.Type.ONLINE, walletId, createdAt, id, limit + 1));
+        page.addAll(query("offline_purchase", "store_address", PurchaseView.Type.OFFLINE, walletId, createdAt, id, limit + 1));
+        page.sort(NEWEST_FIRST);
+        return page.size() > limit + 1 ? new ArrayList<>(page.subList(0, limit + 1)) : page;
+    }
+
+    private List<PurchaseView> query(String table, String storeColumn, PurchaseView.Type type,
+                                     UUID walletId, Instant createdAt, UUID id, int limit) {
+        RowMapper<PurchaseView> mapper = (rs, rowNum) -> new PurchaseView(
+                rs.getObject("id", UUID.class), type, rs.getBigDecimal("amount"), rs.getString(storeColumn),
+                rs.getObject("created_at", OffsetDateTime.class).toInstant());
+        // Сравнение строк (created_at, id) < (?, ?) — диапазон индекса, а не фильтр после чтения.
+        return jdbcTemplate.query("SELECT id, amount, " + storeColumn + ", created_at FROM " + table +
+                        " WHERE wallet_id = ? AND (created_at, id) < (?, ?) ORDER BY created_at DESC, id DESC LIMIT ?",
+                mapper, walletId, createdAt.atOffset(ZoneOffset.UTC), id, limit);
+    }
+}
@@ -0,0 +1,161 @@
+package org.example.repository;
+
+import org.example.dto.PurchaseView;
+import org.example.dto.SpendBucket;
+import org.example.dto.SpendSummary;
+import org.example.dto.StoreSpend;
+import org.example.entity.SpendAggregate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Агрегаты трат (wallet_spend), которые пишутся в той же транзакции, что и покупки: на кошелёк — строка «всего»,
+ * строка на магазин и строки за час и за день покупки (по UTC). Пачка покупок сначала складывается в памяти, так что
+ * каждая строка агрегата обновляется один раз за пачку; строки пишутся в порядке ключа, и параллельные пачки не
+ * блокируют друг друга крест-накрест.
+ * <p>
+ * Сводка читается двумя диапазонами первичного ключа одного кошелька: её цена зависит от числа магазинов кошелька
+ * и длины окна, но не от числа покупок.
+ */
+@Repository
+public class SpendAggregateRepository {
+    // bucket_start строк без времени (TOTAL, ONLINE, OFFLINE).
+    public static final Instant ALL_TIME = Instant.EPOCH;
+
+    private static final String COLUMNS = "wallet_id, kind, store, bucket_start, amount, purchase_count";
+    // Postgres: параллельная вставка той же строки не падает на первичном ключе, а прибавляет к ней.
+    private static final String UPSERT_POSTGRES_SQL = "INSERT INTO wallet_spend (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?) "
+            + "ON CONFLICT (wallet_id, kind, store, bucket_start) DO UPDATE SET amount = wallet_spend.amount + EXCLUDED.amount, "
+            + "purchase_count = wallet_spend.purchase_count + EXCLUDED.purchase_count";
+    // Остальные БД (H2 в тестах): стандартный MERGE.
+    private static final String UPSERT_MERGE_SQL = "MERGE INTO wallet_spend t USING (SELECT CAST(? AS UUID) wallet_id, "
+            + "CAST(? AS VARCHAR(8)) kind, CAST(? AS VARCHAR(255)) store, CAST(? AS TIMESTAMP(6) WITH TIME ZONE) bucket_start, "
+            + "CAST(? AS NUMERIC(19, 2)) amount, CAST(? AS BIGINT) purchase_count) s "
+            + "ON (t.wallet_id = s.wallet_id AND t.kind = s.kind AND t.store = s.store AND t.bucket_start = s.bucket_start) "
+            + "WHEN MATCHED THEN UPDATE SET amount = t.amount + s.amount, purchase_count = t.purchase_count + s.purchase_count "
+            + "WHEN NOT MATCHED THEN INSERT (" + COLUMNS + ") "
+            + "VALUES (s.wallet_id, s.kind, s.store, s.bucket_start, s.amount, s.purchase_count)";
+    private static final Comparator<SpendAggregate.Key> KEY_ORDER = Comparator
+            .comparing(SpendAggregate.Key::getWalletId)
+            .thenComparing(SpendAggregate.Key::getKind)
+            .thenComparing(SpendAggregate.Key::getStore)
+            .thenComparing(SpendAggregate.Key::getBucketStart);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String upsertSql;
+
+    @Autowired
+    public SpendAggregateRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        boolean postgres = "PostgreSQL".equals(jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName()));
+        this.upsertSql = postgres ? UPSERT_POSTGRES_SQL : UPSERT_MERGE_SQL;
+    }
+
+    // Прибавляет покупки к агрегатам их кошельков; вызывается в транзакции, которая вставляет эти покупки.
+    public void add(List<PurchaseBatchRepository.PurchaseRow> purchases) {
+        Map<SpendAggregate.Key, SpendAggregate> aggregates = new TreeMap<>(KEY_ORDER);
+        for (PurchaseBatchRepository.PurchaseRow purchase : purchases) {
+            accumulate(aggregates, purchase.getWalletId(), purchase.getType(), purchase.getStore(), purchase.getAmount(), purchase.getCreatedAt());
+        }
+        write(aggregates.values());
+    }
+
+    // Сводка за окно [from, to) с шагом granularity; null, если у кошелька нет ни одной учтённой покупки.
+    public SpendSummary find(UUID walletId, SpendSummary.Granularity granularity, Instant from, Instant to) {
+        SpendSummary summary = new SpendSummary(walletId, 0, BigDecimal.ZERO, new ArrayList<>(), granularity, new ArrayList<>());
+        boolean[] found = {false};
+        jdbcTemplate.query("SELECT kind, store, amount, purchase_count FROM wallet_spend "
+                        + "WHERE wallet_id = ? AND kind IN ('TOTAL', 'ONLINE', 'OFFLINE') ORDER BY kind, store",
+                (RowCallbackHandler) rs -> {
+                    SpendAggregate.Kind kind = SpendAggregate.Kind.valueOf(rs.getString("kind"));
+                    if (kind == SpendAggregate.Kind.TOTAL) {
+                        found[0] = true;
+                        summary.setPurchaseCount(rs.getLong("purchase_count"));
+                        summary.setPurchaseTotal(rs.getBigDecimal("amount"));
+                    } else {
+                        summary.getStores().add(new StoreSpend(PurchaseView.Type.valueOf(kind.name()), rs.getString("store"),
+                                rs.getLong("purchase_count"), rs.getBigDecimal("amount")));
+                    }
+                }, walletId);
+        if (!found[0]) {
+            return null;
+        }
+        summary.getBuckets().addAll(jdbcTemplate.query("SELECT bucket_start, amount, purchase_count FROM wallet_spend "
+                        + "WHERE wallet_id = ? AND kind = ? AND store = '' AND bucket_start >= ? AND bucket_start < ? ORDER BY bucket_start",
+                (rs, rowNum) -> new SpendBucket(rs.getObject("bucket_start", OffsetDateTime.class).toInstant(),
+                        rs.getLong("purchase_count"), rs.getBigDecimal("amount")),
+                walletId, granularity.name(), from.atOffset(ZoneOffset.UTC), to.atOffset(ZoneOffset.UTC)));
+        return summary;
+    }
+
+    // Пересчитывает агрегаты кошельков заново по их покупкам. Строки кошельков блокируются до конца транзакции:
+    // покупки этих кошельков, которые блокируют кошелёк, ждут пересчёта и не теряются между чтением и записью.
+    public void rebuild(Collection<UUID> walletIds) {
+        if (walletIds.isEmpty()) {
+            return;
+        }
+        String in = String.join(", ", Collections.nCopies(walletIds.size(), "?"));
+        Object[] ids = walletIds.toArray();
+        jdbcTemplate.queryForList("SELECT id FROM wallet WHERE id IN (" + in + ") ORDER BY id FOR UPDATE", UUID.class, ids);
+        Map<SpendAggregate.Key, SpendAggregate> aggregates = new TreeMap<>(KEY_ORDER);
+        scan(aggregates, "online_purchase", "store_url", PurchaseView.Type.ONLINE, in, ids);
+        scan(aggregates, "offline_purchase", "store_address", PurchaseView.Type.OFFLINE, in, ids);
+        jdbcTemplate.update("DELETE FROM wallet_spend WHERE wallet_id IN (" + in + ")", ids);
+        write(aggregates.values());
+    }
+
+    // Покупки читаются потоком: в памяти только агрегаты, а не строки покупок.
+    private void scan(Map<SpendAggregate.Key, SpendAggregate> aggregates, String table, String storeColumn,
+                      PurchaseView.Type type, String in, Object[] ids) {
+        jdbcTemplate.query("SELECT wallet_id, amount, " + storeColumn + ", created_at FROM " + table + " WHERE wallet_id IN (" + in + ")",
+                (RowCallbackHandler) rs -> accumulate(aggregates, rs.getObject("wallet_id", UUID.class), type, rs.getString(storeColumn),
+                        rs.getBigDecimal("amount"), rs.getObject("created_at", OffsetDateTime.class).toInstant()),
+                ids);
+    }
+
+    private static void accumulate(Map<SpendAggregate.Key, SpendAggregate> aggregates, UUID walletId, PurchaseView.Type type,
+                                   String store, BigDecimal amount, Instant createdAt) {
+        SpendAggregate.Kind storeKind = type == PurchaseView.Type.ONLINE ? SpendAggregate.Kind.ONLINE : SpendAggregate.Kind.OFFLINE;
+        accumulate(aggregates, new SpendAggregate.Key(walletId, SpendAggregate.Kind.TOTAL, "", ALL_TIME), amount);
+        accumulate(aggregates, new SpendAggregate.Key(walletId, storeKind, store == null ? "" : store, ALL_TIME), amount);
+        accumulate(aggregates, new SpendAggregate.Key(walletId, SpendAggregate.Kind.HOUR, "", createdAt.truncatedTo(ChronoUnit.HOURS)), amount);
+        accumulate(aggregates, new SpendAggregate.Key(walletId, SpendAggregate.Kind.DAY, "", createdAt.truncatedTo(ChronoUnit.DAYS)), amount);
+    }
+
+    private static void accumulate(Map<SpendAggregate.Key, SpendAggregate> aggregates, SpendAggregate.Key key, BigDecimal amount) {
+        SpendAggregate aggregate = aggregates.computeIfAbsent(key, k -> new SpendAggregate(
+                k.getWalletId(), k.getKind(), k.getStore(), k.getBucketStart(), BigDecimal.ZERO, 0));
+        aggregate.setAmount(aggregate.getAmount().add(amount));
+        aggregate.setPurchaseCount(aggregate.getPurchaseCount() + 1);
+    }
+
+    private void write(Collection<SpendAggregate> aggregates) {
+        if (aggregates.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(aggregates.size());
+        for (SpendAggregate aggregate : aggregates) {
+            rows.add(new Object[]{aggregate.getWalletId(), aggregate.getKind().name(), aggregate.getStore(),
+                    aggregate.getBucketStart().atOffset(ZoneOffset.UTC), aggregate.getAmount(), aggregate.getPurchaseCount()});
+        }
+        jdbcTemplate.batchUpdate(upsertSql, rows);
+    }
+}
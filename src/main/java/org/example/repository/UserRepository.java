@@ -1,6 +1,5 @@
 package org.example.repository;
 
-import org.apache.catalina.User;
 import org.example.entity.Client;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -13,5 +12,8 @@ import java.util.UUID;
 @Repository
 public interface UserRepository extends JpaRepository<Client, UUID> {
     @Query("SELECT u FROM Client u WHERE u.email = :email")
-    Optional<User> findByEmail(@Param("email") String email);
+    Optional<Client> findByEmail(@Param("email") String email);
+
+    // Проверка занятости без загрузки клиента: только поиск по уникальному индексу email.
+    boolean existsByEmail(String email);
 }
@@ -0,0 +1,11 @@
+package org.example.repository;
+
+import org.example.entity.WalletPlacement;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+@Repository
+public interface WalletPlacementRepository extends JpaRepository<WalletPlacement, UUID> {
+}
@@ -1,13 +1,18 @@
 package org.example.repository;
 
 import jakarta.persistence.LockModeType;
+import org.example.entity.Money;
 import org.example.entity.Wallet;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -16,5 +21,21 @@ public interface WalletRepository extends JpaRepository<Wallet, UUID> {
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("SELECT w FROM Wallet w WHERE w.id = :id")
     Optional<Wallet> findByIdWithLock(@Param("id") UUID id);
-    
+
+    // Блокирует несколько кошельков одним запросом; строки блокируются в порядке id, поэтому пачки не взаимоблокируются.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w FROM Wallet w WHERE w.id IN :ids ORDER BY w.id")
+    List<Wallet> findAllByIdWithLock(@Param("ids") Collection<UUID> ids);
+
+    // Меняет баланс на delta, только если он не станет отрицательным; возвращает 0, если кошелька нет или не хватает средств.
+    // Версия увеличивается, чтобы параллельные оптимистичные записи того же кошелька увидели конфликт.
+    // Нативный SQL: баланс в сущности — Money через конвертер, а арифметику со столбцом DECIMAL делает сама БД.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE wallet SET balance = balance + :delta, version = COALESCE(version, 0) + 1 " +
+            "WHERE id = :id AND balance + :delta >= 0", nativeQuery = true)
+    int applyDelta(@Param("id") UUID id, @Param("delta") BigDecimal delta);
+
+    // Читает только баланс, без блокировки и без загрузки связанного клиента.
+    @Query("SELECT w.balance FROM Wallet w WHERE w.id = :id")
+    Optional<Money> findBalanceById(@Param("id") UUID id);
 }
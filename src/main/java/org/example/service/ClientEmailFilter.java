@@ -0,0 +1,146 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Фильтр Блума по email клиентов: «точно не занят» без запроса к БД, иначе — «возможно занят», и тогда решает
+ * поиск по уникальному индексу. Ложноположительный ответ стоит лишь лишнего запроса, ложноотрицательных не бывает
+ * для адресов, прошедших через этот экземпляр или загруженных при старте. Адрес, записанный другим экземпляром
+ * после прогрева, фильтр не знает — такой дубль отсекает уникальный индекс при вставке.
+ * <p>
+ * До окончания прогрева фильтр на всё отвечает «возможно», поэтому регистрации во время старта просто идут в БД.
+ */
+@Component
+public class ClientEmailFilter {
+    private static final Logger log = LoggerFactory.getLogger(ClientEmailFilter.class);
+
+    private static final long SECOND_SEED = 0x9e3779b97f4a7c15L;
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionOperations readOnlyTransaction;
+    private volatile boolean warm;
+
+    @Autowired
+    public ClientEmailFilter(@Value("${wallet.email-filter.expected-clients:10000000}") long expectedClients,
+                             @Value("${wallet.email-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                             JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager) {
+        if (expectedClients <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("wallet.email-filter: expected-clients must be positive and false-positive-rate in (0, 1)");
+        }
+        // Оптимальные размер и число хэшей: m = -n ln p / (ln 2)^2, k = m / n ln 2.
+        long words = (long) Math.ceil(-expectedClients * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)) / 64);
+        if (words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("wallet.email-filter.expected-clients is too large: " + expectedClients);
+        }
+        this.bits = new AtomicLongArray((int) Math.max(1, words));
+        this.bitCount = bits.length() * 64L;
+        this.hashCount = (int) Math.max(1, Math.round((double) bitCount / expectedClients * Math.log(2)));
+        if (jdbcTemplate != null) {
+            // Fetch size действует только внутри транзакции: иначе драйвер Postgres читает весь результат в память.
+            this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+            this.jdbcTemplate.setFetchSize(10_000);
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            this.readOnlyTransaction = readOnly;
+        } else {
+            this.jdbcTemplate = null;
+            this.readOnlyTransaction = null;
+        }
+    }
+
+    // Фильтр без загрузки из БД; пока не вызван markWarm, он на всё отвечает «возможно».
+    public ClientEmailFilter(long expectedClients, double falsePositiveRate) {
+        this(expectedClients, falsePositiveRate, null, null);
+    }
+
+    // false — адрес точно не занят; true — возможно занят, нужна проверка в БД.
+    public boolean mightContain(String email) {
+        if (!warm) {
+            return true;
+        }
+        long h1 = hash(email);
+        long h2 = mix(h1 ^ SECOND_SEED);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void add(String email) {
+        long h1 = hash(email);
+        long h2 = mix(h1 ^ SECOND_SEED);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            long current = bits.get(word);
+            // Бит уже стоит у большинства адресов при повторной загрузке: запись только когда нужна.
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+    }
+
+    public void markWarm() {
+        warm = true;
+    }
+
+    // Загружает все email одним потоковым запросом. Адреса, добавленные через add во время загрузки, не теряются.
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (jdbcTemplate == null) {
+            return;
+        }
+        long started = System.nanoTime();
+        long[] loaded = new long[1];
+        readOnlyTransaction.executeWithoutResult(status ->
+                jdbcTemplate.query("SELECT email FROM client WHERE email IS NOT NULL", rs -> {
+                    add(rs.getString(1));
+                    loaded[0]++;
+                }));
+        markWarm();
+        log.info("Client email filter warmed with {} emails in {} ms", loaded[0], (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private long index(long combined) {
+        return (combined & Long.MAX_VALUE) % bitCount;
+    }
+
+    // 64-битный FNV-1a по символам, перемешанный fmix64 из murmur3; второй хэш для двойного хэширования — от первого.
+    private static long hash(String email) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < email.length(); i++) {
+            h ^= email.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
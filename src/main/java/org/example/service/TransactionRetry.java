@@ -0,0 +1,118 @@
+package org.example.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Повтор транзакций кошелька, откатившихся из-за конкурентного доступа: ошибка сериализации (SQLSTATE 40001),
+ * взаимоблокировка (40P01), таймаут блокировки (55P03) и конфликт версии. Такие откаты не ошибка запроса —
+ * та же транзакция чуть позже, как правило, проходит.
+ * <p>
+ * Между попытками — экспоненциальная пауза со случайным разбросом («full jitter»): столкнувшиеся транзакции
+ * расходятся во времени, а не повторяют конфликт синхронно. Повторы ограничены числом попыток и бюджетом времени
+ * на запрос; когда они исчерпаны, наружу уходит ConcurrencyFailureException (клиенту — 503 с Retry-After).
+ * Внутри уже открытой транзакции не повторяем: она всё равно помечена на откат, повторять должен её владелец.
+ */
+@Component
+public class TransactionRetry {
+
+    private final int maxAttempts;
+    private final long budgetNanos;
+    private final long baseBackoffNanos;
+    private final long maxBackoffNanos;
+    private final WalletMetrics metrics;
+
+    @Autowired
+    public TransactionRetry(@Value("${wallet.retry.max-attempts:5}") int maxAttempts,
+                            @Value("${wallet.retry.budget-ms:1000}") long budgetMs,
+                            @Value("${wallet.retry.base-backoff-ms:5}") long baseBackoffMs,
+                            @Value("${wallet.retry.max-backoff-ms:200}") long maxBackoffMs,
+                            WalletMetrics metrics) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("wallet.retry.max-attempts must be positive: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        this.baseBackoffNanos = TimeUnit.MILLISECONDS.toNanos(baseBackoffMs);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoffMs);
+        this.metrics = metrics;
+    }
+
+    // Настройки по умолчанию, как у бина; для сервиса без Spring (юнит-тесты).
+    public TransactionRetry(WalletMetrics metrics) {
+        this(5, 1000, 5, 200, metrics);
+    }
+
+    public <T> T execute(WalletMetrics.Endpoint endpoint, TransactionOperations transaction, TransactionCallback<T> action) {
+        return execute(endpoint, maxAttempts, transaction, action);
+    }
+
+    // attempts — собственный предел вызывающего (например, wallet.concurrency.optimistic.max-attempts).
+    public <T> T execute(WalletMetrics.Endpoint endpoint, int attempts, TransactionOperations transaction, TransactionCallback<T> action) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return transaction.execute(action);
+        }
+        long deadline = System.nanoTime() + budgetNanos;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transaction.execute(action);
+            } catch (RuntimeException e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                long backoff = backoffNanos(attempt);
+                if (attempt >= attempts || System.nanoTime() + backoff > deadline) {
+                    throw exhausted(e);
+                }
+                metrics.recordRetry(endpoint);
+                try {
+                    TimeUnit.NANOSECONDS.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw exhausted(e);
+                }
+            }
+        }
+    }
+
+    // Конфликт конкурентного доступа: по типу, в который Spring перевёл ошибку, или по SQLSTATE в цепочке причин.
+    static boolean isRetryable(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof ConcurrencyFailureException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                if ("40001".equals(state) || "40P01".equals(state) || "55P03".equals(state)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Случайная пауза от нуля до base * 2^(attempt - 1), но не больше maxBackoff.
+    private long backoffNanos(int attempt) {
+        long ceiling = baseBackoffNanos << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffNanos) {
+            ceiling = maxBackoffNanos;
+        }
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static RuntimeException exhausted(RuntimeException failure) {
+        // Драйвер мог прислать конфликт в исключении другого типа — наружу всегда ConcurrencyFailureException.
+        return failure instanceof ConcurrencyFailureException
+                ? failure
+                : new ConcurrencyFailureException("Transaction retries exhausted", failure);
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.example.entity.Money;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Ограниченный по размеру кэш балансов для чтения без блокировок.
+ * Одновременные промахи по одному кошельку схлопываются в один запрос к БД: остальные читатели ждут его результата.
+ * Запрос выполняет сам первый читатель, но не под блокировкой кэша: в кэш кладётся незавершённый future, остальные
+ * ждут его через join(), то есть паркуются (виртуальный поток не прикрепляется к потоку ОС, как в synchronized).
+ * Пишущие методы сбрасывают запись после commit; сброшенный во время загрузки future в кэш уже не вернётся,
+ * поэтому загруженное до commit старое значение видят только те, кто ждал именно его.
+ * Срок жизни записи ограничивает устаревание от записей других экземпляров.
+ * <p>
+ * Сброшенный кошелёк ещё read-your-writes-ms помечен как недавно изменённый: при чтении с реплики
+ * (wallet.datasource.replica) такие кошельки читаются из основной БД, пока реплика не догнала запись.
+ */
+@Component
+public class WalletBalanceCache {
+    private final AsyncCache<UUID, Money> balances;
+    private final Cache<UUID, Boolean> recentWrites;
+
+    @Autowired
+    public WalletBalanceCache(@Value("${wallet.balance-cache.max-size:100000}") long maxSize,
+                              @Value("${wallet.balance-cache.expire-after-write-ms:2000}") long expireAfterWriteMs,
+                              @Value("${wallet.read-your-writes.window-ms:2000}") long readYourWritesMs) {
+        this.balances = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(expireAfterWriteMs))
+                .buildAsync();
+        // Вытесненный по размеру кошелёк раньше срока вернётся к чтению с реплики — размер берём тот же, что у кэша.
+        this.recentWrites = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(readYourWritesMs))
+                .build();
+    }
+
+    public WalletBalanceCache(long maxSize, long expireAfterWriteMs) {
+        this(maxSize, expireAfterWriteMs, 2000);
+    }
+
+    // Возвращает баланс из кэша или загружает его; null, если загрузчик не нашёл кошелёк (такое не кэшируется).
+    public Money get(UUID walletId, Function<UUID, Money> loader) {
+        ConcurrentMap<UUID, CompletableFuture<Money>> entries = balances.asMap();
+        CompletableFuture<Money> loading = new CompletableFuture<>();
+        CompletableFuture<Money> existing = entries.putIfAbsent(walletId, loading);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            Money balance = loader.apply(walletId);
+            if (balance == null) {
+                entries.remove(walletId, loading); // ненайденный кошелёк не кэшируется
+            }
+            loading.complete(balance);
+            return balance;
+        } catch (RuntimeException e) {
+            entries.remove(walletId, loading);
+            loading.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public void invalidate(UUID walletId) {
+        recentWrites.put(walletId, Boolean.TRUE);
+        balances.synchronous().invalidate(walletId);
+    }
+
+    // Сбрасывает запись после фиксации текущей транзакции, а вне транзакции — сразу.
+    // Пометка ставится и сразу: чтения во время commit тоже идут в основную БД.
+    public void invalidateAfterCommit(UUID walletId) {
+        recentWrites.put(walletId, Boolean.TRUE);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(walletId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidate(walletId);
+            }
+        });
+    }
+
+    // В кошелёк недавно писали: реплика может ещё не видеть запись.
+    public boolean isRecentlyWritten(UUID walletId) {
+        return recentWrites.getIfPresent(walletId) != null;
+    }
+}
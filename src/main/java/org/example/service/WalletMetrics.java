@@ -0,0 +1,197 @@
+package org.example.service;
+
+import org.example.exception.AlreadyExistWIthThisEmail;
+import org.example.exception.ClientNotFoundException;
+import org.example.exception.InsufficientFundsException;
+import org.example.exception.InvalidCursorException;
+import org.example.exception.InvalidTransferException;
+import org.example.exception.RateLimitExceededException;
+import org.example.exception.WalletNotFoundException;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики и таймеры горячего пути по эндпоинтам: время запроса целиком, ожидание ограничителя, ожидание блокировки
+ * строк, транзакция от начала до commit (flush выполняется при commit), исходы запросов и число повторов.
+ * <p>
+ * Запись ничего не выделяет в куче: все ячейки (LongAdder, гистограмма по степеням двойки микросекунд) создаются
+ * при старте, аргументы — перечисления и примитивы. Поэтому учёт включён всегда, в том числе под полной нагрузкой.
+ * Перцентили в снимке — верхние границы корзин, то есть оценка сверху с точностью до двух раз.
+ */
+@Component
+public class WalletMetrics {
+    private static final int BUCKETS = 40; // до 2^39 мкс, больше любого разумного запроса
+
+    public enum Endpoint {
+        OPERATION, BALANCE, BATCH, PURCHASE_ONLINE, PURCHASE_OFFLINE, PURCHASE_BATCH, PURCHASE_HISTORY, CREATE_CLIENT,
+        TRANSFER, TRANSFER_BATCH, PORTFOLIO, SPEND
+    }
+
+    public enum Phase {
+        REQUEST, RATE_LIMIT, LOCK_WAIT, TRANSACTION
+    }
+
+    public enum Outcome {
+        SUCCESS, RATE_LIMITED, INSUFFICIENT_FUNDS, NOT_FOUND, INVALID_REQUEST,
+        SERIALIZATION_FAILURE, LOCK_TIMEOUT, DATABASE_BUSY, ERROR
+    }
+
+    private final Timer[][] timers = new Timer[Endpoint.values().length][Phase.values().length];
+    private final LongAdder[][] outcomes = new LongAdder[Endpoint.values().length][Outcome.values().length];
+    private final LongAdder[] retries = new LongAdder[Endpoint.values().length];
+
+    public WalletMetrics() {
+        for (int e = 0; e < timers.length; e++) {
+            for (int p = 0; p < timers[e].length; p++) {
+                timers[e][p] = new Timer();
+            }
+            for (int o = 0; o < outcomes[e].length; o++) {
+                outcomes[e][o] = new LongAdder();
+            }
+            retries[e] = new LongAdder();
+        }
+    }
+
+    // Фаза, начавшаяся в startedNanos (System.nanoTime()), закончилась сейчас.
+    public void record(Endpoint endpoint, Phase phase, long startedNanos) {
+        timers[endpoint.ordinal()][phase.ordinal()].record(System.nanoTime() - startedNanos);
+    }
+
+    // Запрос закончился сейчас; failure — исключение, с которым он завершился, или null.
+    public void recordRequest(Endpoint endpoint, long startedNanos, Throwable failure) {
+        record(endpoint, Phase.REQUEST, startedNanos);
+        outcomes[endpoint.ordinal()][outcomeOf(failure).ordinal()].increment();
+    }
+
+    public void recordRetry(Endpoint endpoint) {
+        retries[endpoint.ordinal()].increment();
+    }
+
+    public long count(Endpoint endpoint, Outcome outcome) {
+        return outcomes[endpoint.ordinal()][outcome.ordinal()].sum();
+    }
+
+    public long count(Endpoint endpoint, Phase phase) {
+        return timers[endpoint.ordinal()][phase.ordinal()].count.sum();
+    }
+
+    // Исход по исключению и его причинам: сервисы и Spring заворачивают исходную ошибку в свои исключения.
+    static Outcome outcomeOf(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof RateLimitExceededException) {
+                return Outcome.RATE_LIMITED;
+            } else if (cause instanceof InsufficientFundsException) {
+                return Outcome.INSUFFICIENT_FUNDS;
+            } else if (cause instanceof WalletNotFoundException || cause instanceof ClientNotFoundException) {
+                return Outcome.NOT_FOUND;
+            } else if (cause instanceof InvalidCursorException || cause instanceof InvalidTransferException
+                    || cause instanceof AlreadyExistWIthThisEmail) {
+                return Outcome.INVALID_REQUEST;
+            } else if (cause instanceof PessimisticLockingFailureException) {
+                return Outcome.LOCK_TIMEOUT; // не дождались блокировки строки или выбраны жертвой взаимоблокировки
+            } else if (cause instanceof ConcurrencyFailureException) {
+                return Outcome.SERIALIZATION_FAILURE;
+            } else if (cause instanceof CannotCreateTransactionException || cause instanceof CannotGetJdbcConnectionException) {
+                return Outcome.DATABASE_BUSY;
+            }
+        }
+        return failure == null ? Outcome.SUCCESS : Outcome.ERROR;
+    }
+
+    // Снимок для /api/v1/metrics: только эндпоинты, по которым что-то было; времена в миллисекундах.
+    public Map<String, Object> snapshot() {
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            Map<String, Object> phases = new LinkedHashMap<>();
+            for (Phase phase : Phase.values()) {
+                Timer timer = timers[endpoint.ordinal()][phase.ordinal()];
+                if (timer.count.sum() > 0) {
+                    phases.put(phase.name(), timer.snapshot());
+                }
+            }
+            Map<String, Long> counts = new LinkedHashMap<>();
+            for (Outcome outcome : Outcome.values()) {
+                long count = count(endpoint, outcome);
+                if (count > 0) {
+                    counts.put(outcome.name(), count);
+                }
+            }
+            long retryCount = retries[endpoint.ordinal()].sum();
+            if (phases.isEmpty() && retryCount == 0) {
+                continue;
+            }
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("phases", phases);
+            stats.put("outcomes", counts);
+            stats.put("retries", retryCount);
+            endpoints.put(endpoint.name(), stats);
+        }
+        return endpoints;
+    }
+
+    private static final class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] buckets = new LongAdder[BUCKETS]; // корзина b — до 2^b мкс
+
+        private Timer() {
+            for (int b = 0; b < BUCKETS; b++) {
+                buckets[b] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos) {
+            long micros = Math.max(0, nanos) / 1000;
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros))].increment();
+        }
+
+        private Map<String, Object> snapshot() {
+            long total = count.sum();
+            long[] counts = new long[BUCKETS];
+            for (int b = 0; b < BUCKETS; b++) {
+                counts[b] = buckets[b].sum();
+            }
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", total);
+            stats.put("meanMs", millis(totalNanos.sum() / Math.max(1, total)));
+            stats.put("p50Ms", percentile(counts, 0.50));
+            stats.put("p99Ms", percentile(counts, 0.99));
+            stats.put("p999Ms", percentile(counts, 0.999));
+            stats.put("maxMs", millis(maxNanos.get()));
+            return stats;
+        }
+
+        private static double percentile(long[] counts, double quantile) {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= rank) {
+                    return (1L << b) / 1000.0;
+                }
+            }
+            return (1L << (counts.length - 1)) / 1000.0;
+        }
+
+        private static double millis(long nanos) {
+            return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.example.service;
+
+import org.example.exception.RateLimitExceededException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Ограничение частоты запросов к кошельку: не больше limitForPeriod операций за period, с мгновенным отказом
+ * вместо ожидания. Состояние кошелька — одно число (алгоритм GCRA: теоретическое время следующего запроса),
+ * хранится в заранее выделенных массивах, поэтому память не растёт с числом кошельков.
+ * Таблица наборно-ассоциативная: кошелёк может занять один из WAYS слотов своего набора. Слот, у которого
+ * лимит полностью восстановился, ничем не отличается от пустого и переиспользуется. Если простаивающих слотов нет,
+ * вытесняется кошелёк, ближе всех к восстановлению — это единственное место, где лимит может быть мягче заданного.
+ */
+@Component
+public class WalletRateLimiter {
+    private static final int WAYS = 8;
+
+    private final long emissionIntervalNanos; // интервал между запросами при равномерной нагрузке
+    private final long burstToleranceNanos;   // насколько можно опередить равномерный график (запас на всплеск)
+    private final LongSupplier clock;
+    private final long clockOrigin;
+    private final int setMask;
+    private final long[] keyHigh;
+    private final long[] keyLow;
+    private final long[] theoreticalArrival; // 0 — слот пуст
+    private final Object[] locks;
+
+    @Autowired
+    public WalletRateLimiter(@Value("${wallet.rate-limit.limit-for-period:10}") int limitForPeriod,
+                             @Value("${wallet.rate-limit.period-ms:60000}") long periodMs,
+                             @Value("${wallet.rate-limit.max-wallets:262144}") int maxWallets) {
+        this(limitForPeriod, TimeUnit.MILLISECONDS.toNanos(periodMs), maxWallets, System::nanoTime);
+    }
+
+    WalletRateLimiter(int limitForPeriod, long periodNanos, int maxWallets, LongSupplier clock) {
+        if (limitForPeriod <= 0 || periodNanos <= 0 || maxWallets < WAYS) {
+            throw new IllegalArgumentException("Invalid rate limit configuration");
+        }
+        this.emissionIntervalNanos = periodNanos / limitForPeriod;
+        this.burstToleranceNanos = emissionIntervalNanos * (limitForPeriod - 1);
+        this.clock = clock;
+        this.clockOrigin = clock.getAsLong();
+        int sets = Integer.highestOneBit(maxWallets / WAYS); // округляем вниз до степени двойки: лимит памяти жёсткий
+        this.setMask = sets - 1;
+        this.keyHigh = new long[sets * WAYS];
+        this.keyLow = new long[sets * WAYS];
+        this.theoreticalArrival = new long[sets * WAYS];
+        this.locks = new Object[Math.min(sets, 1024)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // Пропускает запрос или сразу бросает исключение со временем, через которое стоит повторить.
+    public void acquire(UUID walletId) {
+        long waitNanos = tryAcquire(walletId);
+        if (waitNanos > 0) {
+            throw new RateLimitExceededException(walletId, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        }
+    }
+
+    // 0 — запрос разрешён; иначе сколько наносекунд ждать до следующего разрешённого запроса.
+    long tryAcquire(UUID walletId) {
+        long high = walletId.getMostSignificantBits();
+        long low = walletId.getLeastSignificantBits();
+        int set = spread(high, low) & setMask;
+        long now = clock.getAsLong() - clockOrigin + 1; // +1, чтобы момент создания не совпадал с пустым слотом
+        synchronized (locks[set & (locks.length - 1)]) {
+            int base = set * WAYS;
+            int slot = -1;
+            int victim = base;
+            for (int i = base; i < base + WAYS; i++) {
+                if (theoreticalArrival[i] != 0 && keyHigh[i] == high && keyLow[i] == low) {
+                    slot = i;
+                    break;
+                }
+                if (theoreticalArrival[i] < theoreticalArrival[victim]) {
+                    victim = i; // пустой слот (0) или кошелёк, раньше всех восстанавливающий лимит
+                }
+            }
+            long arrival;
+            if (slot < 0) {
+                slot = victim;
+                keyHigh[slot] = high;
+                keyLow[slot] = low;
+                arrival = now;
+            } else {
+                arrival = Math.max(theoreticalArrival[slot], now);
+            }
+            long allowedAt = arrival - burstToleranceNanos;
+            if (now < allowedAt) {
+                return allowedAt - now;
+            }
+            theoreticalArrival[slot] = arrival + emissionIntervalNanos;
+            return 0;
+        }
+    }
+
+    // Число кошельков, у которых лимит ещё не восстановился.
+    int trackedWallets() {
+        long now = clock.getAsLong() - clockOrigin + 1;
+        int tracked = 0;
+        for (long arrival : theoreticalArrival) {
+            if (arrival > now) {
+                tracked++;
+            }
+        }
+        return tracked;
+    }
+
+    int capacity() {
+        return theoreticalArrival.length;
+    }
+
+    private static int spread(long high, long low) {
+        long h = high ^ low;
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return (int) h;
+    }
+}
@@ -1,135 +1,366 @@
 package org.example.service;
 
-import io.github.resilience4j.ratelimiter.RateLimiter;
-import io.github.resilience4j.ratelimiter.RateLimiterConfig;
-import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
-import org.apache.catalina.User;
 import org.example.dto.ClientDto;
+import org.example.dto.ClientPortfolio;
+import org.example.dto.WalletSummary;
 import org.example.entity.Client;
+import org.example.entity.Money;
 import org.example.entity.OfflinePurchase;
 import org.example.entity.OnlinePurchase;
+import org.example.entity.Purchase;
 import org.example.exception.AlreadyExistWIthThisEmail;
+import org.example.exception.ClientAlreadyExistsException;
+import org.example.exception.ClientNotFoundException;
+import org.example.exception.InvalidCursorException;
+import org.example.exception.InvalidTransferException;
+import org.example.repository.ClientPortfolioRepository;
 import org.example.repository.OfflinePurchaseRepository;
 import org.example.repository.OnlinePurchaseRepository;
+import org.example.repository.PurchaseBatchRepository;
+import org.example.repository.PurchaseHistoryRepository;
+import org.example.repository.SpendAggregateRepository;
 import org.example.repository.UserRepository;
+import org.example.service.engine.BalanceLedger;
+import org.example.service.engine.OperationEngine;
+import org.example.service.id.IdGenerator;
+import org.example.service.id.TimeOrderedIdGenerator;
+import org.example.service.purchase.AsyncPurchaseIngestor;
+import org.example.service.shard.WalletShards;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.example.dto.PurchasePage;
+import org.example.dto.PurchaseRequest;
+import org.example.dto.PurchaseResult;
+import org.example.dto.PurchaseView;
+import org.example.dto.SpendSummary;
+import org.example.dto.TransferRequest;
+import org.example.dto.TransferResult;
 import org.example.dto.WalletOperationRequest;
+import org.example.dto.WalletOperationResult;
 import org.example.repository.WalletRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.example.entity.Wallet;
 import org.example.exception.WalletNotFoundException;
 import org.example.exception.InsufficientFundsException;
 
 import java.math.BigDecimal;
-import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import org.springframework.transaction.annotation.Isolation;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service  // Указывает, что этот класс является сервисом в бизнес-логике приложения.
 public class WalletService {
+    private static final String CROSS_SHARD_TRANSFER = "wallets are on different shards";
+    // Движок с балансами в памяти не откатывает и не повторяет списание и зачисление вместе с транзакцией.
+    private static final String NON_TRANSACTIONAL_TRANSFER = "transfers are not supported by the sharded engine";
+
     private final WalletRepository walletRepository;  // Репозиторий для работы с сущностями Wallet в базе данных.
     private final UserRepository userRepository;
     private final OnlinePurchaseRepository onlinePurchaseRepository;
     private final OfflinePurchaseRepository offlinePurchaseRepository;
+    private final WalletBalanceCache balanceCache; // Кэш балансов для чтения без блокировок.
+    private final WalletRateLimiter rateLimiter; // Ограничение числа запросов к одному кошельку.
+    private final PurchaseHistoryRepository purchaseHistoryRepository; // Постраничное чтение истории покупок.
+    private final PurchaseBatchRepository purchaseBatchRepository; // Пакетная вставка покупок.
 
     @Autowired
     // Автоматическая инъекция зависимости. Spring автоматически внедрит реализацию WalletRepository в конструктор.
-    public WalletService(WalletRepository walletRepository, UserRepository userRepository, OnlinePurchaseRepository onlinePurchaseRepository, OfflinePurchaseRepository offlinePurchaseRepository) {
+    public WalletService(WalletRepository walletRepository, UserRepository userRepository, OnlinePurchaseRepository onlinePurchaseRepository, OfflinePurchaseRepository offlinePurchaseRepository, WalletBalanceCache balanceCache, WalletRateLimiter rateLimiter, PurchaseHistoryRepository purchaseHistoryRepository, PurchaseBatchRepository purchaseBatchRepository) {
         this.walletRepository = walletRepository;  // Инициализация репозитория через конструктор.
         this.userRepository = userRepository;
         this.onlinePurchaseRepository = onlinePurchaseRepository;
         this.offlinePurchaseRepository = offlinePurchaseRepository;
+        this.balanceCache = balanceCache;
+        this.rateLimiter = rateLimiter;
+        this.purchaseHistoryRepository = purchaseHistoryRepository;
+        this.purchaseBatchRepository = purchaseBatchRepository;
     }
 
-    private final Map<UUID, RateLimiter> walletRateLimiters = new ConcurrentHashMap<>();
-    // Хранит RateLimiter для управления количеством запросов к кошелькам. Используется потокобезопасная коллекция.
-    // Нужен в первую очередь для того, чтобы запоминать уже существующие ограничения на обращения к каждому кошельку.
-    RateLimiterConfig config = RateLimiterConfig.custom()
-            .limitForPeriod(10) // Максимальное количество вызовов за период
-            .limitRefreshPeriod(Duration.ofMinutes(1)) // Период обновления лимита
-            .timeoutDuration(Duration.ofSeconds(2)) // Время ожидания при превышении лимита
-            .build();
+    // Движок операций из wallet.engine.mode; при значении database его нет.
+    @Autowired(required = false)
+    private OperationEngine operationEngine;
+
+    // Движок, который сам ведёт балансы (wallet.engine.mode=sharded или ledger); в остальных режимах его нет.
+    @Autowired(required = false)
+    private BalanceLedger ledgerEngine;
+
+    // Генератор первичных ключей (wallet.id.generator); без Spring (юнит-тесты) — UUIDv7 по умолчанию.
+    @Autowired
+    private IdGenerator idGenerator = new TimeOrderedIdGenerator();
+
+    // Таймеры фаз и счётчики исходов; без Spring (юнит-тесты) — собственный экземпляр.
+    @Autowired
+    private WalletMetrics metrics = new WalletMetrics();
+
+    // Повтор транзакций после конфликтов сериализации и блокировок.
+    @Autowired
+    private TransactionRetry transactionRetry = new TransactionRetry(metrics);
+
+    // Фильтр занятых email; без Spring (юнит-тесты) — непрогретый, то есть каждый email проверяется в БД.
+    @Autowired
+    private ClientEmailFilter emailFilter = new ClientEmailFilter(1024, 0.01);
+
+    // Асинхронный приём покупок через локальный журнал (wallet.purchase.mode=async); в синхронном режиме его нет.
+    @Autowired(required = false)
+    private AsyncPurchaseIngestor purchaseIngestor;
+
+    // Шарды кошельков (wallet.sharding.enabled=true); без шардирования его нет.
+    @Autowired(required = false)
+    private WalletShards shards;
+
+    // Сводка клиента одним запросом; есть только в контексте Spring.
+    @Autowired(required = false)
+    private ClientPortfolioRepository portfolioRepository;
+
+    // Агрегаты трат по покупкам; есть только в контексте Spring.
+    @Autowired(required = false)
+    private SpendAggregateRepository spendRepository;
+
+    // SERIALIZABLE-транзакция для пути с блокировкой строки. Без менеджера транзакций (юнит-тесты) код выполняется как есть.
+    private TransactionOperations serializableTransaction = TransactionOperations.withoutTransaction();
+    // Транзакция только для чтения для промахов кэша балансов; при настроенной реплике она читает с реплики.
+    private TransactionOperations readOnlyTransaction = TransactionOperations.withoutTransaction();
+    // Чтение кошелька, в который только что писали: обычная транзакция всегда идёт в основную БД.
+    private TransactionOperations primaryReadTransaction = TransactionOperations.withoutTransaction();
+    // Транзакция для пачки операций: кошельки блокируются явно, поэтому хватает уровня изоляции по умолчанию.
+    private TransactionOperations batchTransaction = TransactionOperations.withoutTransaction();
+    // Транзакция синхронной покупки: списание и вставка покупки.
+    private TransactionOperations purchaseTransaction = TransactionOperations.withoutTransaction();
+    // Копия нового клиента в остальных шардах: своя транзакция в каждом шарде, после commit в первом.
+    private TransactionOperations clientCopyTransaction = TransactionOperations.withoutTransaction();
+
+    // Сколько операций пакетного запроса применяется одной транзакцией.
+    @Value("${wallet.batch.chunk-size:500}")
+    private int batchChunkSize = 500;
 
-    @Transactional
-    public Client createUser(ClientDto userDto) throws AlreadyExistWIthThisEmail {
-        Optional<User> existingUser = userRepository.findByEmail(userDto.getEmail());
-            if (existingUser.isPresent()) {
-                throw new AlreadyExistWIthThisEmail(userDto.getEmail());
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+        this.serializableTransaction = template;
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        this.readOnlyTransaction = readOnly;
+        this.primaryReadTransaction = new TransactionTemplate(transactionManager);
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.purchaseTransaction = new TransactionTemplate(transactionManager);
+        TransactionTemplate clientCopy = new TransactionTemplate(transactionManager);
+        clientCopy.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.clientCopyTransaction = clientCopy;
+    }
+
+    // Откат и при AlreadyExistWIthThisEmail: после нарушения уникального индекса транзакция уже непригодна для commit.
+    @Transactional(rollbackFor = AlreadyExistWIthThisEmail.class)
+    public Client createUser(ClientDto userDto) throws AlreadyExistWIthThisEmail, ClientAlreadyExistsException {
+        String email = userDto.getEmail();
+        // Фильтр отвечает «точно свободен» для большинства новых адресов — тогда запрос в БД не нужен.
+        if (email != null && emailFilter.mightContain(email) && userRepository.existsByEmail(email)) {
+            throw new AlreadyExistWIthThisEmail(email);
+        }
+        UUID clientId = userDto.getId() != null ? userDto.getId() : idGenerator.next();
+        // id назначается приложением, поэтому save не вставляет, а сливает: существующий клиент был бы молча
+        // перезаписан. Заданный в запросе id проверяем явно; сгенерированный заведомо новый.
+        if (userDto.getId() != null && userRepository.existsById(clientId)) {
+            throw new ClientAlreadyExistsException(clientId);
+        }
+        Client client;
+        try {
+            // Сразу flush: дубль, которого не знал фильтр (записан другим экземпляром), отсекает уникальный индекс.
+            client = userRepository.saveAndFlush(new Client(clientId, userDto.getUsername(), userDto.getUserSurname(), email));
+        } catch (DataIntegrityViolationException e) {
+            if (!String.valueOf(e.getMostSpecificCause().getMessage()).toLowerCase(Locale.ROOT).contains("uk_client_email")) {
+                throw e; // нарушено другое ограничение
+            }
+            throw new AlreadyExistWIthThisEmail(email);
+        }
+        if (email != null) {
+            emailFilter.add(email);
         }
-         return userRepository.save(new Client(userDto.getId(), userDto.getUsername(), userDto.getUserSurname(), userDto.getEmail()));
+        if (shards != null) {
+            copyToOtherShards(client);
+        }
+        return client;
+    }
+
+    // Клиенты — справочная таблица: копия в каждом шарде, чтобы кошелёк ссылался на клиента в своей БД.
+    // Копируется после commit в первом шарде: уникальность email проверяет только он, и копий без оригинала не бывает.
+    private void copyToOtherShards(Client client) {
+        Client copy = new Client(client.getId(), client.getUsername(), client.getUserSurname(), client.getEmail());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (int shard = WalletShards.HOME + 1; shard < shards.getShardCount(); shard++) {
+                    try (WalletShards.Scope scope = WalletShards.enter(shard)) {
+                        clientCopyTransaction.executeWithoutResult(status -> userRepository.save(copy));
+                    }
+                }
+            }
+        });
     }
-    @Transactional
     public OnlinePurchase addOnlinePurchase(String storeAddress, BigDecimal amount, UUID walletId) throws WalletNotFoundException, InsufficientFundsException {
-        // Найти кошелек по ID
-        Wallet wallet = walletRepository.findById(walletId)
-                .orElseThrow(() -> new WalletNotFoundException(walletId));
-        if (wallet.getBalance().compareTo(amount) < 0) {
-            throw new InsufficientFundsException(amount);
-        }
         // Создать объект онлайн-покупки
         OnlinePurchase onlinePurchase = new OnlinePurchase();
-        onlinePurchase.setId(UUID.randomUUID()); // Генерируем новый UUID для покупки
         onlinePurchase.setAmount(amount);
-        onlinePurchase.setWallet(wallet);
         onlinePurchase.setStoreUrl(storeAddress);
-        // Обновить баланс кошелька
-        wallet.setBalance(wallet.getBalance().subtract(amount));
-        walletRepository.save(wallet);
-        // Сохранить покупку
-        return (onlinePurchaseRepository.save(onlinePurchase));
+        return savePurchase(WalletMetrics.Endpoint.PURCHASE_ONLINE, walletId, onlinePurchase, PurchaseView.Type.ONLINE, storeAddress, onlinePurchaseRepository);
     }
-    @Transactional
     public OfflinePurchase addOfflinePurchase(String storAddress, BigDecimal amount, UUID walletId) throws WalletNotFoundException, InsufficientFundsException {
-        // Найти кошелек по ID
-        Wallet wallet = walletRepository.findById(walletId)
-                .orElseThrow(() -> new WalletNotFoundException(walletId));
-        if (wallet.getBalance().compareTo(amount) < 0) {
-            throw new InsufficientFundsException(amount);
-        }
-        // Создать объект онлайн-покупки
+        // Создать объект офлайн-покупки
         OfflinePurchase offlinePurchase = new OfflinePurchase();
-        offlinePurchase.setId(UUID.randomUUID()); // Генерируем новый UUID для покупки
         offlinePurchase.setAmount(amount);
-        offlinePurchase.setWallet(wallet);
         offlinePurchase.setStoreAddress(storAddress);
+        return savePurchase(WalletMetrics.Endpoint.PURCHASE_OFFLINE, walletId, offlinePurchase, PurchaseView.Type.OFFLINE, storAddress, offlinePurchaseRepository);
+    }
+
+    // Списывает сумму покупки и сохраняет её одной транзакцией, а в асинхронном режиме — через журнал покупок, без БД.
+    private <P extends Purchase> P savePurchase(WalletMetrics.Endpoint endpoint, UUID walletId, P purchase, PurchaseView.Type type,
+                                                String store, JpaRepository<P, UUID> repository) throws WalletNotFoundException, InsufficientFundsException {
+        purchase.setId(idGenerator.next()); // Генерируем новый UUID для покупки
+        purchase.setCreatedAt(Instant.now().truncatedTo(ChronoUnit.MICROS));
+        if (purchaseIngestor != null) {
+            // Ответ — после записи в локальный журнал; в БД покупка попадёт фоновой пачкой, кошелёк в объект не загружается.
+            purchaseIngestor.submit(new PurchaseBatchRepository.PurchaseRow(purchase.getId(), walletId, type, purchase.getAmount(), store, purchase.getCreatedAt()));
+            return purchase;
+        }
+        Money debited = debitOutsideTransaction(walletId, purchase.getAmount());
+        try {
+            // Повторяется только транзакция: списание движком сделано один раз до неё.
+            return onWalletShard(walletId, () -> transactionRetry.execute(endpoint, purchaseTransaction, status -> {
+                try {
+                    // Найти кошелек по ID и списать сумму (или сослаться на кошелёк, уже списанный движком)
+                    purchase.setWallet(debited != null ? referenceOf(walletId) : debitForPurchase(endpoint, walletId, purchase.getAmount()));
+                } catch (WalletNotFoundException | InsufficientFundsException e) {
+                    throw new RuntimeException(e);
+                }
+                // Сохранить покупку и учесть её в агрегатах трат той же транзакцией
+                P saved = repository.save(purchase);
+                if (spendRepository != null) {
+                    spendRepository.add(Collections.singletonList(new PurchaseBatchRepository.PurchaseRow(
+                            purchase.getId(), walletId, type, purchase.getAmount(), store, purchase.getCreatedAt())));
+                }
+                return saved;
+            }));
+        } catch (RuntimeException e) {
+            if (debited != null) {
+                refund(walletId, debited, e);
+            }
+            if (e.getCause() instanceof WalletNotFoundException) {
+                throw (WalletNotFoundException) e.getCause();
+            } else if (e.getCause() instanceof InsufficientFundsException) {
+                throw (InsufficientFundsException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private Wallet debitForPurchase(WalletMetrics.Endpoint endpoint, UUID walletId, BigDecimal purchaseAmount) throws WalletNotFoundException, InsufficientFundsException {
+        Money amount = Money.of(purchaseAmount); // сумма покупки — в копейках, иначе InvalidAmountException
+        if (ledgerEngine != null) {
+            // Баланс ведёт движок: списываем через него, а покупку привязываем к ссылке на кошелёк без его загрузки.
+            ledgerEngine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, amount));
+            return referenceOf(walletId);
+        }
+        // Строка блокируется до конца транзакции покупки: параллельные покупки не теряют списания друг друга.
+        long lockRequested = System.nanoTime();
+        Optional<Wallet> locked = walletRepository.findByIdWithLock(walletId);
+        metrics.record(endpoint, WalletMetrics.Phase.LOCK_WAIT, lockRequested);
+        Wallet wallet = locked.orElseThrow(() -> new WalletNotFoundException(walletId));
+        if (wallet.getBalance().isLessThan(amount)) {
+            throw new InsufficientFundsException(amount);
+        }
         // Обновить баланс кошелька
-        wallet.setBalance(wallet.getBalance().subtract(amount));
+        wallet.setBalance(wallet.getBalance().minus(amount));
         walletRepository.save(wallet);
-        // Сохранить покупку
-        return (offlinePurchaseRepository.save(offlinePurchase));
+        balanceCache.invalidateAfterCommit(walletId);
+        return wallet;
+    }
+
+    private Wallet referenceOf(UUID walletId) {
+        balanceCache.invalidateAfterCommit(walletId); // баланс из кэша не читается, но история покупок — из основной БД
+        return walletRepository.getReferenceById(walletId);
+    }
+
+    // Движок с балансами в памяти (sharded) не откатывается с транзакцией: списание идёт один раз до неё,
+    // а не в каждой её попытке. Возвращает списанную сумму; null, если списывает сама транзакция.
+    private Money debitOutsideTransaction(UUID walletId, BigDecimal amount) throws WalletNotFoundException, InsufficientFundsException {
+        if (ledgerEngine == null || ledgerEngine.joinsTransaction()) {
+            return null;
+        }
+        Money debit = Money.of(amount);
+        ledgerEngine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, debit));
+        return debit;
+    }
+
+    // Транзакция после списания движком откатилась: покупки нет, списанное возвращается.
+    private void refund(UUID walletId, Money amount, RuntimeException failure) {
+        try {
+            ledgerEngine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, amount));
+        } catch (WalletNotFoundException | InsufficientFundsException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
     }
 
-    @Transactional(isolation = Isolation.SERIALIZABLE)
     public void processOperation(WalletOperationRequest request) throws WalletNotFoundException, InsufficientFundsException {
-        RateLimiter rateLimiter = walletRateLimiters.computeIfAbsent(request.getWalletId(), k ->
-                RateLimiter.of("myRateLimiter", config));
+        // Лимит проверяется до начала транзакции: при превышении запрос сразу отклоняется, ничего не заблокировав.
+        acquire(WalletMetrics.Endpoint.OPERATION, request.getWalletId());
 
+        if (operationEngine != null) {
+            // Движок сам управляет транзакциями (или обходится без них), внешняя транзакция не нужна.
+            operationEngine.apply(request);
+            return;
+        }
+        long transactionStarted = System.nanoTime();
         try {
-            Runnable operation = RateLimiter.decorateRunnable(rateLimiter, () -> {
+            onWalletShard(request.getWalletId(), () -> transactionRetry.execute(WalletMetrics.Endpoint.OPERATION, serializableTransaction, status -> {
                 try {
-                    Wallet wallet = walletRepository.findByIdWithLock(request.getWalletId())
-                            .orElseThrow(() -> new WalletNotFoundException(request.getWalletId()));
+                    long lockRequested = System.nanoTime();
+                    Optional<Wallet> locked = walletRepository.findByIdWithLock(request.getWalletId());
+                    metrics.record(WalletMetrics.Endpoint.OPERATION, WalletMetrics.Phase.LOCK_WAIT, lockRequested);
+                    Wallet wallet = locked.orElseThrow(() -> new WalletNotFoundException(request.getWalletId()));
 
                     if (request.getOperationType() == WalletOperationRequest.OperationType.WITHDRAW) {
-                        if (wallet.getBalance().compareTo(request.getAmount()) < 0) {
+                        if (wallet.getBalance().isLessThan(request.getAmount())) {
                             throw new InsufficientFundsException(request.getAmount());
                         }
-                        wallet.setBalance(wallet.getBalance().subtract(request.getAmount()));
+                        wallet.setBalance(wallet.getBalance().minus(request.getAmount()));
                     } else {
-                        wallet.setBalance(wallet.getBalance().add(request.getAmount()));
+                        wallet.setBalance(wallet.getBalance().plus(request.getAmount()));
                     }
 
                     walletRepository.save(wallet);
+                    balanceCache.invalidateAfterCommit(wallet.getId());
+                    return null;
                 } catch (WalletNotFoundException | InsufficientFundsException e) {
                     throw new RuntimeException(e);
                 }
-            });
-
-            operation.run();
+            }));
         } catch (RuntimeException e) {
             if (e.getCause() instanceof WalletNotFoundException) {
                 throw (WalletNotFoundException) e.getCause();
@@ -137,34 +368,677 @@ public class WalletService {
                 throw (InsufficientFundsException) e.getCause();
             }
             throw e;
+        } finally {
+            // От начала транзакции до конца commit: UPDATE кошелька отправляется при flush перед commit.
+            metrics.record(WalletMetrics.Endpoint.OPERATION, WalletMetrics.Phase.TRANSACTION, transactionStarted);
         }
     }
 
-    public BigDecimal getBalance(UUID walletId) throws WalletNotFoundException {
-        RateLimiter rateLimiter = walletRateLimiters.computeIfAbsent(walletId, k ->
-                RateLimiter.of("myRateLimiter", config));
-
-        final BigDecimal[] balance = new BigDecimal[1];
+    // Проверка ограничителя с учётом её времени.
+    private void acquire(WalletMetrics.Endpoint endpoint, UUID walletId) {
+        long started = System.nanoTime();
+        try {
+            rateLimiter.acquire(walletId);
+        } finally {
+            metrics.record(endpoint, WalletMetrics.Phase.RATE_LIMIT, started);
+        }
+    }
 
+    // Кошельки клиента с балансами и итогами покупок — один запрос без загрузки сущностей.
+    public ClientPortfolio getPortfolio(UUID clientId) throws ClientNotFoundException {
+        long started = System.nanoTime();
+        ClientPortfolio portfolio;
         try {
-            Runnable operation = RateLimiter.decorateRunnable(rateLimiter, () -> {
+            // Кошельки клиента разбросаны по шардам: запрос идёт во все шарды параллельно, сводки складываются.
+            portfolio = shards == null ? findPortfolio(clientId) : merge(shards.onEachShard(shard -> findPortfolio(clientId)));
+        } finally {
+            metrics.record(WalletMetrics.Endpoint.PORTFOLIO, WalletMetrics.Phase.TRANSACTION, started);
+        }
+        if (portfolio == null) {
+            throw new ClientNotFoundException(clientId);
+        }
+        if (ledgerEngine != null && !ledgerEngine.joinsTransaction()) {
+            // Балансы в памяти движка (sharded) опережают wallet.balance: берём их из движка, по обращению на кошелёк.
+            // Баланс журнала операций (ledger) сводка уже посчитала тем же запросом.
+            Money total = Money.ZERO;
+            for (WalletSummary wallet : portfolio.getWallets()) {
                 try {
-                    Wallet wallet = walletRepository.findByIdWithLock(walletId)
-                            .orElseThrow(() -> new WalletNotFoundException(walletId));
-                    balance[0] = wallet.getBalance();
+                    wallet.setBalance(ledgerEngine.getBalance(wallet.getWalletId()));
                 } catch (WalletNotFoundException e) {
-                    throw new RuntimeException(e);
+                    throw new IllegalStateException(e); // кошелёк только что вернул запрос сводки
+                }
+                total = total.plus(wallet.getBalance());
+            }
+            portfolio.setTotalBalance(total);
+        }
+        return portfolio;
+    }
+
+    private ClientPortfolio findPortfolio(UUID clientId) {
+        ClientPortfolio portfolio = readOnlyTransaction.execute(status -> portfolioRepository.find(clientId));
+        if (portfolio != null && hasRecentWrites(portfolio)) {
+            // Реплика может не видеть недавнюю запись в кошелёк клиента: повторяем запрос в основной БД.
+            portfolio = primaryReadTransaction.execute(status -> portfolioRepository.find(clientId));
+        }
+        return portfolio;
+    }
+
+    // Сводки клиента из всех шардов: в каждом шарде есть копия клиента и только свои кошельки.
+    private static ClientPortfolio merge(List<ClientPortfolio> parts) {
+        ClientPortfolio merged = null;
+        for (ClientPortfolio part : parts) {
+            if (part == null) {
+                continue; // копия клиента ещё не дошла до шарда — кошельков клиента там тоже нет
+            }
+            if (merged == null) {
+                merged = part;
+                continue;
+            }
+            merged.getWallets().addAll(part.getWallets());
+            merged.setTotalBalance(merged.getTotalBalance().plus(part.getTotalBalance()));
+            merged.setPurchaseTotal(merged.getPurchaseTotal().add(part.getPurchaseTotal()));
+        }
+        if (merged != null) {
+            merged.getWallets().sort(Comparator.comparing(WalletSummary::getWalletId));
+        }
+        return merged;
+    }
+
+    // Страница истории покупок от новых к старым; cursor — значение nextCursor предыдущей страницы или null для первой.
+    public PurchasePage getPurchases(UUID walletId, String cursor, int limit) throws WalletNotFoundException, InvalidCursorException {
+        Instant createdAt = PurchaseHistoryRepository.NEWEST;
+        UUID id = PurchaseHistoryRepository.MAX_ID;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("_");
+                createdAt = Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+                id = UUID.fromString(parts[2]);
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new InvalidCursorException(cursor);
+            }
+        }
+        Instant olderThan = createdAt;
+        UUID olderThanId = id;
+        TransactionOperations read = readTransaction(walletId);
+        List<PurchaseView> items;
+        try {
+            items = onWalletShard(walletId, () -> {
+                List<PurchaseView> page = read.execute(status -> purchaseHistoryRepository.findOlderThan(walletId, olderThan, olderThanId, limit));
+                // Пустая первая страница — единственный случай, когда нужно отдельно проверить, есть ли кошелёк.
+                if (page.isEmpty() && cursor == null && !read.execute(status -> walletRepository.existsById(walletId))) {
+                    throw new RuntimeException(new WalletNotFoundException(walletId));
                 }
+                return page;
             });
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof WalletNotFoundException) {
+                throw (WalletNotFoundException) e.getCause();
+            }
+            throw e;
+        }
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            PurchaseView last = items.get(limit - 1);
+            String key = last.getCreatedAt().getEpochSecond() + "_" + last.getCreatedAt().getNano() + "_" + last.getId();
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+        }
+        return new PurchasePage(items, nextCursor);
+    }
+
+    // Траты кошелька из агрегатов: всего, по магазинам и по часам или дням окна [from, to), без чтения покупок.
+    public SpendSummary getSpend(UUID walletId, SpendSummary.Granularity granularity, Instant from, Instant to) throws WalletNotFoundException {
+        long started = System.nanoTime();
+        TransactionOperations read = readTransaction(walletId);
+        try {
+            return onWalletShard(walletId, () -> read.execute(status -> {
+                SpendSummary summary = spendRepository.find(walletId, granularity, from, to);
+                if (summary != null) {
+                    return summary;
+                }
+                // Агрегатов нет — у кошелька нет покупок или нет самого кошелька.
+                if (!walletRepository.existsById(walletId)) {
+                    throw new RuntimeException(new WalletNotFoundException(walletId));
+                }
+                return new SpendSummary(walletId, 0, BigDecimal.ZERO, new ArrayList<>(), granularity, new ArrayList<>());
+            }));
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof WalletNotFoundException) {
+                throw (WalletNotFoundException) e.getCause();
+            }
+            throw e;
+        } finally {
+            metrics.record(WalletMetrics.Endpoint.SPEND, WalletMetrics.Phase.TRANSACTION, started);
+        }
+    }
+
+    public Money getBalance(UUID walletId) throws WalletNotFoundException {
+        acquire(WalletMetrics.Endpoint.BALANCE, walletId);
+
+        if (ledgerEngine != null) {
+            return ledgerEngine.getBalance(walletId);
+        }
+        // Чтение без блокировки строки: из кэша, а при промахе — одним запросом в транзакции только для чтения.
+        Money balance = balanceCache.get(walletId, this::loadBalance);
+        if (balance == null) {
+            throw new WalletNotFoundException(walletId);
+        }
+        return balance;
+    }
+    // Промах кэша: один запрос в транзакции только для чтения.
+    private Money loadBalance(UUID walletId) {
+        long started = System.nanoTime();
+        try {
+            // Ненайденный кошелёк — исключение, а не null: так onWalletShard замечает кошелёк, перенесённый в другой шард.
+            return onWalletShard(walletId, () -> readTransaction(walletId).execute(status -> walletRepository.findBalanceById(walletId)
+                    .orElseThrow(() -> new RuntimeException(new WalletNotFoundException(walletId)))));
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof WalletNotFoundException) {
+                return null;
+            }
+            throw e;
+        } finally {
+            metrics.record(WalletMetrics.Endpoint.BALANCE, WalletMetrics.Phase.TRANSACTION, started);
+        }
+    }
+
+    // Работа с одним кошельком: в его шарде, а без шардирования — как есть.
+    private <T> T onWalletShard(UUID walletId, Supplier<T> work) {
+        return shards == null ? work.get() : shards.onWallet(walletId, work);
+    }
+
+    // Кошельки части по шардам: каждая группа применяется своей транзакцией в своём шарде. Без шардирования группа одна.
+    private Map<Integer, Set<UUID>> byShard(Set<UUID> walletIds) {
+        if (walletIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        if (shards == null) {
+            return Collections.singletonMap(-1, walletIds);
+        }
+        Map<Integer, Set<UUID>> groups = new TreeMap<>();
+        for (UUID walletId : walletIds) {
+            groups.computeIfAbsent(shards.shardOf(walletId), shard -> new TreeSet<>()).add(walletId);
+        }
+        return groups;
+    }
+
+    // null без шардирования: try-with-resources пропускает закрытие null-ресурса.
+    private WalletShards.Scope enterShard(int shard) {
+        return shards == null ? null : WalletShards.enter(shard);
+    }
+
+    private boolean sameShard(TransferRequest transfer) {
+        return shards == null || shards.shardOf(transfer.getFromWalletId()) == shards.shardOf(transfer.getToWalletId());
+    }
+
+    // Чтение одного кошелька: с реплики, если в него давно не писали, иначе из основной БД (read-your-writes).
+    private TransactionOperations readTransaction(UUID walletId) {
+        return balanceCache.isRecentlyWritten(walletId) ? primaryReadTransaction : readOnlyTransaction;
+    }
+
+    private boolean hasRecentWrites(ClientPortfolio portfolio) {
+        for (WalletSummary wallet : portfolio.getWallets()) {
+            if (balanceCache.isRecentlyWritten(wallet.getWalletId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Применяет поток операций частями по batchChunkSize и отдаёт результат каждой операции в порядке поступления.
+    // Результаты части отдаются только после её commit; в памяти одновременно находится не больше одной части.
+    public void processBatch(Iterator<WalletOperationRequest> requests, Consumer<WalletOperationResult> results) {
+        List<WalletOperationRequest> chunk = new ArrayList<>(batchChunkSize);
+        long index = 0;
+        try {
+            while (requests.hasNext()) {
+                chunk.add(requests.next());
+                if (chunk.size() == batchChunkSize) {
+                    applyChunk(chunk, index, results);
+                    index += chunk.size();
+                    chunk.clear();
+                }
+            }
+        } finally {
+            // Даже если входной поток оборвался, уже прочитанные операции применяются и получают результат.
+            if (!chunk.isEmpty()) {
+                applyChunk(chunk, index, results);
+            }
+        }
+    }
 
-            operation.run();
+    private void applyChunk(List<WalletOperationRequest> chunk, long firstIndex, Consumer<WalletOperationResult> results) {
+        WalletOperationResult[] outcomes = new WalletOperationResult[chunk.size()];
+        Set<UUID> walletIds = new TreeSet<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            WalletOperationRequest request = chunk.get(i);
+            if (request == null || request.getWalletId() == null || request.getOperationType() == null
+                    || request.getAmount() == null || request.getAmount().signum() <= 0) {
+                outcomes[i] = new WalletOperationResult(firstIndex + i, request == null ? null : request.getWalletId(),
+                        WalletOperationResult.Status.ERROR, null, "Invalid operation");
+            } else {
+                walletIds.add(request.getWalletId());
+            }
+        }
+        if (ledgerEngine != null) {
+            // Балансы ведёт движок: операции идут через него, в обход блокировки кошельков части.
+            for (int i = 0; i < chunk.size(); i++) {
+                if (outcomes[i] == null) {
+                    outcomes[i] = applyThroughEngine(chunk.get(i), firstIndex + i);
+                }
+            }
+        } else {
+            for (Map.Entry<Integer, Set<UUID>> group : byShard(walletIds).entrySet()) {
+                Set<UUID> groupIds = group.getValue();
+                long transactionStarted = System.nanoTime();
+                WalletOperationResult[] validated = outcomes.clone();
+                try (WalletShards.Scope scope = enterShard(group.getKey())) {
+                    // Каждая попытка начинает с результатов проверки: исходы откатившейся попытки не в счёт.
+                    transactionRetry.execute(WalletMetrics.Endpoint.BATCH, batchTransaction, status -> {
+                        WalletOperationResult[] attempt = validated.clone();
+                        applyLocked(chunk, firstIndex, groupIds, attempt);
+                        System.arraycopy(attempt, 0, outcomes, 0, attempt.length);
+                        return null;
+                    });
+                } catch (RuntimeException e) {
+                    // Транзакция откатилась целиком: ни одна операция этой группы не применена.
+                    for (int i = 0; i < chunk.size(); i++) {
+                        if ((outcomes[i] == null || outcomes[i].getStatus() != WalletOperationResult.Status.ERROR)
+                                && groupIds.contains(chunk.get(i).getWalletId())) {
+                            outcomes[i] = new WalletOperationResult(firstIndex + i, chunk.get(i).getWalletId(),
+                                    WalletOperationResult.Status.ERROR, null, "Batch chunk failed");
+                        }
+                    }
+                } finally {
+                    metrics.record(WalletMetrics.Endpoint.BATCH, WalletMetrics.Phase.TRANSACTION, transactionStarted);
+                }
+            }
+        }
+        for (WalletOperationResult outcome : outcomes) {
+            results.accept(outcome);
+        }
+    }
+
+    // Каждый кошелёк части блокируется один раз, все вместе в порядке id; операции применяются в порядке поступления.
+    private void applyLocked(List<WalletOperationRequest> chunk, long firstIndex, Set<UUID> walletIds, WalletOperationResult[] outcomes) {
+        Map<UUID, Wallet> wallets = new HashMap<>();
+        long lockRequested = System.nanoTime();
+        List<Wallet> locked = walletRepository.findAllByIdWithLock(walletIds);
+        metrics.record(WalletMetrics.Endpoint.BATCH, WalletMetrics.Phase.LOCK_WAIT, lockRequested);
+        for (Wallet wallet : locked) {
+            wallets.put(wallet.getId(), wallet);
+        }
+        // По id, а не по самой сущности: hashCode из @Data зависит от меняющегося баланса.
+        Map<UUID, Wallet> changed = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            if (outcomes[i] != null) {
+                continue;
+            }
+            WalletOperationRequest request = chunk.get(i);
+            if (!walletIds.contains(request.getWalletId())) {
+                continue; // кошелёк другого шарда — применяется его транзакцией
+            }
+            Wallet wallet = wallets.get(request.getWalletId());
+            if (wallet == null) {
+                outcomes[i] = new WalletOperationResult(firstIndex + i, request.getWalletId(),
+                        WalletOperationResult.Status.NOT_FOUND, null, new WalletNotFoundException(request.getWalletId()).getMessage());
+                continue;
+            }
+            if (request.getOperationType() == WalletOperationRequest.OperationType.WITHDRAW) {
+                if (wallet.getBalance().isLessThan(request.getAmount())) {
+                    outcomes[i] = new WalletOperationResult(firstIndex + i, request.getWalletId(),
+                            WalletOperationResult.Status.INSUFFICIENT_FUNDS, null, new InsufficientFundsException(request.getAmount()).getMessage());
+                    continue;
+                }
+                wallet.setBalance(wallet.getBalance().minus(request.getAmount()));
+            } else {
+                wallet.setBalance(wallet.getBalance().plus(request.getAmount()));
+            }
+            changed.put(wallet.getId(), wallet);
+            outcomes[i] = new WalletOperationResult(firstIndex + i, request.getWalletId(),
+                    WalletOperationResult.Status.SUCCESS, wallet.getBalance(), null);
+        }
+        walletRepository.saveAll(changed.values());
+        for (UUID walletId : changed.keySet()) {
+            balanceCache.invalidateAfterCommit(walletId);
+        }
+    }
+
+    // Принимает пачку покупок. Каждые batchChunkSize покупок — одна транзакция: каждый кошелёк части блокируется
+    // и списывается один раз, а строки покупок вставляются JDBC batch. Результаты — в порядке запроса.
+    public List<PurchaseResult> addPurchases(List<PurchaseRequest> purchases) {
+        List<PurchaseResult> results = new ArrayList<>(purchases.size());
+        for (int from = 0; from < purchases.size(); from += batchChunkSize) {
+            applyPurchaseChunk(purchases.subList(from, Math.min(from + batchChunkSize, purchases.size())), from, results);
+        }
+        return results;
+    }
+
+    private void applyPurchaseChunk(List<PurchaseRequest> chunk, int firstIndex, List<PurchaseResult> results) {
+        PurchaseResult[] outcomes = new PurchaseResult[chunk.size()];
+        Set<UUID> walletIds = new TreeSet<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            PurchaseRequest purchase = chunk.get(i);
+            if (purchase == null || purchase.getWalletId() == null || purchase.getType() == null
+                    || purchase.getAmount() == null || purchase.getAmount().signum() <= 0
+                    || purchase.getAmount().stripTrailingZeros().scale() > Money.SCALE) {
+                outcomes[i] = new PurchaseResult(firstIndex + i, null, purchase == null ? null : purchase.getWalletId(),
+                        WalletOperationResult.Status.ERROR, "Invalid purchase");
+            } else {
+                walletIds.add(purchase.getWalletId());
+            }
+        }
+        for (Map.Entry<Integer, Set<UUID>> group : byShard(walletIds).entrySet()) {
+            Set<UUID> groupIds = group.getValue();
+            long transactionStarted = System.nanoTime();
+            PurchaseResult[] validated = outcomes.clone();
+            List<PurchaseBatchRepository.PurchaseRow> debited = null;
+            try (WalletShards.Scope scope = enterShard(group.getKey())) {
+                if (ledgerEngine != null && !ledgerEngine.joinsTransaction()) {
+                    // Движок не откатывается с транзакцией: списания — один раз до неё, повторы лишь вставляют покупки.
+                    debited = new ArrayList<>();
+                    debit(chunk, firstIndex, groupIds, validated, debited);
+                    List<PurchaseBatchRepository.PurchaseRow> rows = debited;
+                    transactionRetry.execute(WalletMetrics.Endpoint.PURCHASE_BATCH, batchTransaction, status -> {
+                        purchaseBatchRepository.insertAll(rows);
+                        return null;
+                    });
+                    System.arraycopy(validated, 0, outcomes, 0, validated.length);
+                } else {
+                    transactionRetry.execute(WalletMetrics.Endpoint.PURCHASE_BATCH, batchTransaction, status -> {
+                        PurchaseResult[] attempt = validated.clone();
+                        debitAndInsert(chunk, firstIndex, groupIds, attempt);
+                        System.arraycopy(attempt, 0, outcomes, 0, attempt.length);
+                        return null;
+                    });
+                }
+            } catch (RuntimeException e) {
+                if (debited != null) {
+                    for (PurchaseBatchRepository.PurchaseRow row : debited) {
+                        refund(row.getWalletId(), Money.of(row.getAmount()), e);
+                    }
+                }
+                // Транзакция откатилась целиком: ни одна покупка этой группы не сохранена.
+                for (int i = 0; i < chunk.size(); i++) {
+                    if ((outcomes[i] == null || outcomes[i].getStatus() != WalletOperationResult.Status.ERROR)
+                            && groupIds.contains(chunk.get(i).getWalletId())) {
+                        outcomes[i] = new PurchaseResult(firstIndex + i, null, chunk.get(i).getWalletId(),
+                                WalletOperationResult.Status.ERROR, "Batch chunk failed");
+                    }
+                }
+            } finally {
+                metrics.record(WalletMetrics.Endpoint.PURCHASE_BATCH, WalletMetrics.Phase.TRANSACTION, transactionStarted);
+            }
+        }
+        results.addAll(Arrays.asList(outcomes));
+    }
+
+    private void debitAndInsert(List<PurchaseRequest> chunk, int firstIndex, Set<UUID> walletIds, PurchaseResult[] outcomes) {
+        List<PurchaseBatchRepository.PurchaseRow> rows = new ArrayList<>(chunk.size());
+        Map<UUID, Wallet> changed = debit(chunk, firstIndex, walletIds, outcomes, rows);
+        walletRepository.saveAll(changed.values());
+        purchaseBatchRepository.insertAll(rows);
+        for (UUID walletId : changed.keySet()) {
+            balanceCache.invalidateAfterCommit(walletId);
+        }
+    }
+
+    // Списывает покупки части и собирает их строки в rows; возвращает кошельки, чей баланс изменён в памяти
+    // (при движке — пусто: он списывает сам).
+    private Map<UUID, Wallet> debit(List<PurchaseRequest> chunk, int firstIndex, Set<UUID> walletIds, PurchaseResult[] outcomes,
+                                    List<PurchaseBatchRepository.PurchaseRow> rows) {
+        Instant createdAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        Map<UUID, Wallet> wallets = new HashMap<>();
+        if (ledgerEngine == null) {
+            long lockRequested = System.nanoTime();
+            List<Wallet> locked = walletRepository.findAllByIdWithLock(walletIds);
+            metrics.record(WalletMetrics.Endpoint.PURCHASE_BATCH, WalletMetrics.Phase.LOCK_WAIT, lockRequested);
+            for (Wallet wallet : locked) {
+                wallets.put(wallet.getId(), wallet);
+            }
+        }
+        Map<UUID, Wallet> changed = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            if (outcomes[i] != null) {
+                continue;
+            }
+            PurchaseRequest purchase = chunk.get(i);
+            UUID walletId = purchase.getWalletId();
+            if (!walletIds.contains(walletId)) {
+                continue; // кошелёк другого шарда — списывается его транзакцией
+            }
+            Money amount = Money.of(purchase.getAmount());
+            try {
+                if (ledgerEngine != null) {
+                    ledgerEngine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, amount));
+                    balanceCache.invalidateAfterCommit(walletId);
+                } else {
+                    Wallet wallet = wallets.get(walletId);
+                    if (wallet == null) {
+                        throw new WalletNotFoundException(walletId);
+                    }
+                    if (wallet.getBalance().isLessThan(amount)) {
+                        throw new InsufficientFundsException(amount);
+                    }
+                    // Баланс меняется в памяти; UPDATE кошелька будет один на всю часть.
+                    wallet.setBalance(wallet.getBalance().minus(amount));
+                    changed.put(walletId, wallet);
+                }
+            } catch (WalletNotFoundException e) {
+                outcomes[i] = new PurchaseResult(firstIndex + i, null, walletId, WalletOperationResult.Status.NOT_FOUND, e.getMessage());
+                continue;
+            } catch (InsufficientFundsException e) {
+                outcomes[i] = new PurchaseResult(firstIndex + i, null, walletId, WalletOperationResult.Status.INSUFFICIENT_FUNDS, e.getMessage());
+                continue;
+            }
+            UUID purchaseId = idGenerator.next();
+            rows.add(new PurchaseBatchRepository.PurchaseRow(purchaseId, walletId, purchase.getType(), purchase.getAmount(), purchase.getStore(), createdAt));
+            outcomes[i] = new PurchaseResult(firstIndex + i, purchaseId, walletId, WalletOperationResult.Status.SUCCESS, null);
+        }
+        return changed;
+    }
+
+    // Перевод между кошельками одной транзакцией: оба кошелька блокируются одним запросом в порядке id,
+    // поэтому встречные переводы A→B и B→A не взаимоблокируются.
+    public void transfer(TransferRequest transfer) throws WalletNotFoundException, InsufficientFundsException, InvalidTransferException {
+        String invalid = validate(transfer);
+        if (invalid != null) {
+            throw new InvalidTransferException(invalid);
+        }
+        if (!transfersSupported()) {
+            throw new InvalidTransferException(NON_TRANSACTIONAL_TRANSFER);
+        }
+        if (!sameShard(transfer)) {
+            throw new InvalidTransferException(CROSS_SHARD_TRANSFER);
+        }
+        acquire(WalletMetrics.Endpoint.TRANSFER, transfer.getFromWalletId());
+        Set<UUID> walletIds = new TreeSet<>(Arrays.asList(transfer.getFromWalletId(), transfer.getToWalletId()));
+        long transactionStarted = System.nanoTime();
+        try {
+            onWalletShard(transfer.getFromWalletId(), () -> transactionRetry.execute(WalletMetrics.Endpoint.TRANSFER, batchTransaction, status -> {
+                Map<UUID, Wallet> wallets = lockForTransfer(WalletMetrics.Endpoint.TRANSFER, walletIds);
+                Map<UUID, Wallet> changed = new LinkedHashMap<>();
+                try {
+                    applyTransfer(transfer, wallets, changed);
+                } catch (WalletNotFoundException | InsufficientFundsException e) {
+                    throw new RuntimeException(e);
+                }
+                saveTransferred(changed);
+                return null;
+            }));
         } catch (RuntimeException e) {
             if (e.getCause() instanceof WalletNotFoundException) {
                 throw (WalletNotFoundException) e.getCause();
+            } else if (e.getCause() instanceof InsufficientFundsException) {
+                throw (InsufficientFundsException) e.getCause();
             }
             throw e;
+        } finally {
+            metrics.record(WalletMetrics.Endpoint.TRANSFER, WalletMetrics.Phase.TRANSACTION, transactionStarted);
+        }
+    }
+
+    // Пачка переводов: каждые batchChunkSize переводов — одна транзакция, в которой каждый кошелёк части
+    // блокируется один раз (все вместе, в порядке id), а переводы применяются в порядке запроса.
+    public List<TransferResult> transfers(List<TransferRequest> transfers) {
+        List<TransferResult> results = new ArrayList<>(transfers.size());
+        for (int from = 0; from < transfers.size(); from += batchChunkSize) {
+            applyTransferChunk(transfers.subList(from, Math.min(from + batchChunkSize, transfers.size())), from, results);
+        }
+        return results;
+    }
+
+    private void applyTransferChunk(List<TransferRequest> chunk, int firstIndex, List<TransferResult> results) {
+        TransferResult[] outcomes = new TransferResult[chunk.size()];
+        Set<UUID> walletIds = new TreeSet<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            TransferRequest transfer = chunk.get(i);
+            String invalid = validate(transfer);
+            if (invalid != null) {
+                outcomes[i] = new TransferResult(firstIndex + i, transfer == null ? null : transfer.getFromWalletId(),
+                        transfer == null ? null : transfer.getToWalletId(), WalletOperationResult.Status.ERROR,
+                        new InvalidTransferException(invalid).getMessage());
+            } else if (!transfersSupported()) {
+                outcomes[i] = new TransferResult(firstIndex + i, transfer.getFromWalletId(), transfer.getToWalletId(),
+                        WalletOperationResult.Status.ERROR, new InvalidTransferException(NON_TRANSACTIONAL_TRANSFER).getMessage());
+            } else if (!sameShard(transfer)) {
+                outcomes[i] = new TransferResult(firstIndex + i, transfer.getFromWalletId(), transfer.getToWalletId(),
+                        WalletOperationResult.Status.ERROR, new InvalidTransferException(CROSS_SHARD_TRANSFER).getMessage());
+            } else {
+                walletIds.add(transfer.getFromWalletId());
+                walletIds.add(transfer.getToWalletId());
+            }
+        }
+        // Оба кошелька перевода в одном шарде, поэтому группа по шарду содержит переводы целиком.
+        for (Map.Entry<Integer, Set<UUID>> group : byShard(walletIds).entrySet()) {
+            Set<UUID> groupIds = group.getValue();
+            long transactionStarted = System.nanoTime();
+            TransferResult[] validated = outcomes.clone();
+            try (WalletShards.Scope scope = enterShard(group.getKey())) {
+                transactionRetry.execute(WalletMetrics.Endpoint.TRANSFER_BATCH, batchTransaction, status -> {
+                    TransferResult[] attempt = validated.clone();
+                    applyTransfers(chunk, firstIndex, groupIds, attempt);
+                    System.arraycopy(attempt, 0, outcomes, 0, attempt.length);
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                // Транзакция откатилась целиком: ни один перевод этой группы не применён.
+                for (int i = 0; i < chunk.size(); i++) {
+                    if ((outcomes[i] == null || outcomes[i].getStatus() != WalletOperationResult.Status.ERROR)
+                            && groupIds.contains(chunk.get(i).getFromWalletId())) {
+                        outcomes[i] = new TransferResult(firstIndex + i, chunk.get(i).getFromWalletId(), chunk.get(i).getToWalletId(),
+                                WalletOperationResult.Status.ERROR, "Batch chunk failed");
+                    }
+                }
+            } finally {
+                metrics.record(WalletMetrics.Endpoint.TRANSFER_BATCH, WalletMetrics.Phase.TRANSACTION, transactionStarted);
+            }
+        }
+        results.addAll(Arrays.asList(outcomes));
+    }
+
+    private void applyTransfers(List<TransferRequest> chunk, int firstIndex, Set<UUID> walletIds, TransferResult[] outcomes) {
+        Map<UUID, Wallet> wallets = lockForTransfer(WalletMetrics.Endpoint.TRANSFER_BATCH, walletIds);
+        Map<UUID, Wallet> changed = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            if (outcomes[i] != null) {
+                continue;
+            }
+            TransferRequest transfer = chunk.get(i);
+            if (!walletIds.contains(transfer.getFromWalletId())) {
+                continue; // переводы другого шарда — в его транзакции
+            }
+            WalletOperationResult.Status status = WalletOperationResult.Status.SUCCESS;
+            String message = null;
+            try {
+                applyTransfer(transfer, wallets, changed);
+            } catch (WalletNotFoundException e) {
+                status = WalletOperationResult.Status.NOT_FOUND;
+                message = e.getMessage();
+            } catch (InsufficientFundsException e) {
+                status = WalletOperationResult.Status.INSUFFICIENT_FUNDS;
+                message = e.getMessage();
+            }
+            outcomes[i] = new TransferResult(firstIndex + i, transfer.getFromWalletId(), transfer.getToWalletId(), status, message);
+        }
+        saveTransferred(changed);
+    }
+
+    // Блокирует кошельки одним запросом: строки блокируются в порядке id, а не в порядке переводов.
+    // В режимах с движком это ещё и фиксирует порядок: его собственные блокировки тех же строк уже наши.
+    private Map<UUID, Wallet> lockForTransfer(WalletMetrics.Endpoint endpoint, Set<UUID> walletIds) {
+        long lockRequested = System.nanoTime();
+        List<Wallet> locked = walletRepository.findAllByIdWithLock(walletIds);
+        metrics.record(endpoint, WalletMetrics.Phase.LOCK_WAIT, lockRequested);
+        Map<UUID, Wallet> wallets = new HashMap<>();
+        for (Wallet wallet : locked) {
+            wallets.put(wallet.getId(), wallet);
         }
+        return wallets;
+    }
 
-        return balance[0];
+    // Списание и зачисление одного перевода по уже заблокированным кошелькам; при отказе ничего не меняется.
+    private void applyTransfer(TransferRequest transfer, Map<UUID, Wallet> wallets, Map<UUID, Wallet> changed)
+            throws WalletNotFoundException, InsufficientFundsException {
+        Wallet from = wallets.get(transfer.getFromWalletId());
+        if (from == null) {
+            throw new WalletNotFoundException(transfer.getFromWalletId());
+        }
+        Wallet to = wallets.get(transfer.getToWalletId());
+        if (to == null) {
+            throw new WalletNotFoundException(transfer.getToWalletId());
+        }
+        if (ledgerEngine != null) {
+            // Баланс ведёт движок, входящий в транзакцию (transfersSupported); получатель уже найден,
+            // поэтому после списания зачисление не откажет.
+            ledgerEngine.apply(new WalletOperationRequest(from.getId(), WalletOperationRequest.OperationType.WITHDRAW, transfer.getAmount()));
+            ledgerEngine.apply(new WalletOperationRequest(to.getId(), WalletOperationRequest.OperationType.DEPOSIT, transfer.getAmount()));
+            return;
+        }
+        if (from.getBalance().isLessThan(transfer.getAmount())) {
+            throw new InsufficientFundsException(transfer.getAmount());
+        }
+        from.setBalance(from.getBalance().minus(transfer.getAmount()));
+        to.setBalance(to.getBalance().plus(transfer.getAmount()));
+        changed.put(from.getId(), from);
+        changed.put(to.getId(), to);
+    }
+
+    // Один UPDATE на изменённый кошелёк, сколько бы переводов его ни затронуло.
+    private void saveTransferred(Map<UUID, Wallet> changed) {
+        walletRepository.saveAll(changed.values());
+        for (UUID walletId : changed.keySet()) {
+            balanceCache.invalidateAfterCommit(walletId);
+        }
+    }
+
+    // Обе ноги перевода откатываются и повторяются вместе с транзакцией только у движка, входящего в неё.
+    private boolean transfersSupported() {
+        return ledgerEngine == null || ledgerEngine.joinsTransaction();
+    }
+
+    // Причина, по которой перевод некорректен, или null.
+    private static String validate(TransferRequest transfer) {
+        if (transfer == null || transfer.getFromWalletId() == null || transfer.getToWalletId() == null) {
+            return "both wallets are required";
+        }
+        if (transfer.getAmount() == null || transfer.getAmount().signum() <= 0) {
+            return "amount must be positive";
+        }
+        if (transfer.getFromWalletId().equals(transfer.getToWalletId())) {
+            return "source and destination are the same wallet";
+        }
+        return null;
+    }
+
+    private WalletOperationResult applyThroughEngine(WalletOperationRequest request, long index) {
+        try {
+            Money balance = ledgerEngine.apply(request);
+            return new WalletOperationResult(index, request.getWalletId(), WalletOperationResult.Status.SUCCESS, balance, null);
+        } catch (WalletNotFoundException e) {
+            return new WalletOperationResult(index, request.getWalletId(), WalletOperationResult.Status.NOT_FOUND, null, e.getMessage());
+        } catch (InsufficientFundsException e) {
+            return new WalletOperationResult(index, request.getWalletId(), WalletOperationResult.Status.INSUFFICIENT_FUNDS, null, e.getMessage());
+        }
     }
     }
@@ -0,0 +1,21 @@
+package org.example.service.engine;
+
+import org.example.entity.Money;
+import org.example.exception.WalletNotFoundException;
+
+import java.util.UUID;
+
+/**
+ * Движок, который сам ведёт баланс кошелька: столбец wallet.balance для него не источник истины,
+ * поэтому чтения баланса и списания по покупкам тоже должны идти через движок.
+ */
+public interface BalanceLedger extends OperationEngine {
+
+    Money getBalance(UUID walletId) throws WalletNotFoundException;
+
+    // Входит ли apply в транзакцию вызывающего, то есть откатывается и повторяется вместе с ней.
+    // Иначе (балансы в памяти) списание остаётся в силе при откате, и вызывающий сам возвращает сумму.
+    default boolean joinsTransaction() {
+        return true;
+    }
+}
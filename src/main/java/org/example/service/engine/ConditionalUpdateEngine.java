@@ -0,0 +1,57 @@
+package org.example.service.engine;
+
+import org.example.dto.WalletOperationRequest;
+import org.example.entity.Money;
+import org.example.exception.InsufficientFundsException;
+import org.example.exception.WalletNotFoundException;
+import org.example.repository.WalletRepository;
+import org.example.service.WalletBalanceCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Атомарная стратегия: баланс меняется одним условным UPDATE (balance + delta >= 0) без чтения кошелька в приложение.
+ * Проверку средств и запись делает сама БД под блокировкой строки, которую держит только этот оператор,
+ * поэтому конфликтов и повторов не бывает. Если ни одна строка не обновилась, отдельный запрос выясняет причину.
+ */
+@Component
+@ConditionalOnExpression("'${wallet.engine.mode:database}' == 'database' and '${wallet.concurrency.strategy:pessimistic}' == 'atomic'")
+public class ConditionalUpdateEngine implements OperationEngine {
+
+    private final WalletRepository walletRepository;
+    private final WalletBalanceCache balanceCache;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public ConditionalUpdateEngine(WalletRepository walletRepository,
+                                   WalletBalanceCache balanceCache,
+                                   PlatformTransactionManager transactionManager) {
+        this.walletRepository = walletRepository;
+        this.balanceCache = balanceCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public Money apply(WalletOperationRequest request) throws WalletNotFoundException, InsufficientFundsException {
+        Money delta = request.getOperationType() == WalletOperationRequest.OperationType.WITHDRAW
+                ? request.getAmount().negate()
+                : request.getAmount();
+        // Баланс после операции читается в той же транзакции, пока строка ещё заблокирована нашим UPDATE.
+        Money balance = transactionTemplate.execute(status ->
+                walletRepository.applyDelta(request.getWalletId(), delta.toBigDecimal()) == 1
+                        ? walletRepository.findBalanceById(request.getWalletId()).orElse(null)
+                        : null);
+        if (balance == null) {
+            // Сюда попадают только отказы, поэтому лишний запрос не стоит ничего на успешном пути.
+            if (!walletRepository.existsById(request.getWalletId())) {
+                throw new WalletNotFoundException(request.getWalletId());
+            }
+            throw new InsufficientFundsException(request.getAmount());
+        }
+        balanceCache.invalidate(request.getWalletId());
+        return balance;
+    }
+}
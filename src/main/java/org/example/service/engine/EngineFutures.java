@@ -0,0 +1,41 @@
+package org.example.service.engine;
+
+import org.example.entity.Money;
+import org.example.exception.InsufficientFundsException;
+import org.example.exception.WalletNotFoundException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+// Ожидание результата операции, выполненной в потоке движка, с возвратом исключений кошелька вызывающему.
+final class EngineFutures {
+
+    private EngineFutures() {
+    }
+
+    static Money await(CompletableFuture<Money> future) throws WalletNotFoundException, InsufficientFundsException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for wallet operation", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (!isWalletException(cause) && cause != null && isWalletException(cause.getCause())) {
+                cause = cause.getCause(); // проверяемое исключение, завёрнутое для передачи через лямбду
+            }
+            if (cause instanceof WalletNotFoundException) {
+                throw (WalletNotFoundException) cause;
+            } else if (cause instanceof InsufficientFundsException) {
+                throw (InsufficientFundsException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static boolean isWalletException(Throwable e) {
+        return e instanceof WalletNotFoundException || e instanceof InsufficientFundsException;
+    }
+}
@@ -0,0 +1,185 @@
+package org.example.service.engine;
+
+import jakarta.annotation.PreDestroy;
+import org.example.dto.WalletOperationRequest;
+import org.example.entity.Money;
+import org.example.exception.InsufficientFundsException;
+import org.example.exception.WalletNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Журнал операций: каждое пополнение и списание — новая строка wallet_operation, строка wallet не обновляется.
+ * Баланс — последний снимок (wallet_snapshot, а до первого снимка — wallet.balance) плюс операции после него;
+ * фоновый уплотнитель периодически переносит накопившиеся операции в снимок.
+ * <p>
+ * Согласованность держится на блокировках строки wallet разной силы (на Postgres):
+ * пополнение берёт FOR KEY SHARE и не мешает другим пополнениям; списание — FOR NO KEY UPDATE, чтобы два списания
+ * не проверяли средства одновременно; уплотнитель — FOR UPDATE, то есть ждёт все незавершённые операции кошелька.
+ * Поэтому id операций, видимых уплотнителю, не могут «обогнать» ещё не зафиксированную операцию с меньшим id.
+ * На других БД (H2 в тестах) все три берут FOR UPDATE: корректно, но пополнения одного кошелька идут по очереди.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.engine.mode", havingValue = "ledger")
+public class EventLedgerEngine implements BalanceLedger {
+    private static final Logger log = LoggerFactory.getLogger(EventLedgerEngine.class);
+
+    // Снимок (или исходный баланс кошелька) плюс операции после него — одним оператором, то есть по одному снимку данных.
+    // Столбец и FROM открыты для выгрузки всех балансов одним запросом (DataExporter).
+    public static final String BALANCE_COLUMN =
+            "COALESCE(s.balance, w.balance) + COALESCE((SELECT SUM(CASE WHEN o.operation_type = 'WITHDRAW' " +
+            "THEN -o.amount ELSE o.amount END) FROM wallet_operation o " +
+            "WHERE o.wallet_id = w.id AND o.id > COALESCE(s.last_operation_id, 0)), 0)";
+    public static final String BALANCE_FROM = "FROM wallet w LEFT JOIN wallet_snapshot s ON s.wallet_id = w.id";
+    private static final String BALANCE_SQL = "SELECT " + BALANCE_COLUMN + " " + BALANCE_FROM + " WHERE w.id = ?";
+    private static final String INSERT_OPERATION_SQL =
+            "INSERT INTO wallet_operation (wallet_id, operation_type, amount, created_at) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int compactionThreshold;
+    private final int compactionBatch;
+    private final ScheduledExecutorService compactor;
+    private final String depositLockSql;
+    private final String withdrawLockSql;
+    private final String compactLockSql;
+    // Откуда уплотнитель ищет кошельки с новыми операциями; трогает только поток уплотнителя.
+    private long compactionScanFrom;
+
+    @Autowired
+    public EventLedgerEngine(JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${wallet.ledger.compaction-interval-ms:1000}") long compactionIntervalMs,
+                             @Value("${wallet.ledger.compaction-threshold:64}") int compactionThreshold,
+                             @Value("${wallet.ledger.compaction-batch:500}") int compactionBatch) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.compactionThreshold = compactionThreshold;
+        this.compactionBatch = compactionBatch;
+        boolean postgres = "PostgreSQL".equals(jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName()));
+        String lockPrefix = "SELECT id FROM wallet WHERE id = ? ";
+        this.depositLockSql = lockPrefix + (postgres ? "FOR KEY SHARE" : "FOR UPDATE");
+        this.withdrawLockSql = lockPrefix + (postgres ? "FOR NO KEY UPDATE" : "FOR UPDATE");
+        this.compactLockSql = lockPrefix + "FOR UPDATE";
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "ledger-compactor"));
+        compactor.scheduleWithFixedDelay(this::compactPending, compactionIntervalMs, compactionIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Money apply(WalletOperationRequest request) throws WalletNotFoundException, InsufficientFundsException {
+        UUID walletId = request.getWalletId();
+        boolean withdraw = request.getOperationType() == WalletOperationRequest.OperationType.WITHDRAW;
+        Object outcome = transactionTemplate.execute(status -> {
+            if (jdbcTemplate.queryForList(withdraw ? withdrawLockSql : depositLockSql, Object.class, walletId).isEmpty()) {
+                return new WalletNotFoundException(walletId);
+            }
+            if (withdraw) {
+                // Параллельные списания ждут блокировку, а незафиксированные пополнения не видны: проверка лишь строже.
+                Money balance = Money.of(balanceOf(walletId));
+                if (balance.isLessThan(request.getAmount())) {
+                    return new InsufficientFundsException(request.getAmount());
+                }
+            }
+            jdbcTemplate.update(INSERT_OPERATION_SQL, walletId, request.getOperationType().name(),
+                    request.getAmount().toBigDecimal(), Timestamp.from(Instant.now()));
+            return Money.of(balanceOf(walletId));
+        });
+        if (outcome instanceof WalletNotFoundException) {
+            throw (WalletNotFoundException) outcome;
+        }
+        if (outcome instanceof InsufficientFundsException) {
+            throw (InsufficientFundsException) outcome;
+        }
+        return (Money) outcome;
+    }
+
+    @Override
+    public Money getBalance(UUID walletId) throws WalletNotFoundException {
+        List<BigDecimal> balance = jdbcTemplate.queryForList(BALANCE_SQL, BigDecimal.class, walletId);
+        if (balance.isEmpty()) {
+            throw new WalletNotFoundException(walletId);
+        }
+        return Money.of(balance.get(0));
+    }
+
+    // Уплотняет кошельки, у которых после снимка накопилось не меньше compactionThreshold операций.
+    // Курсор лишь выбирает кандидатов — кошельки с операциями после прошлого прохода; считаются же все их операции
+    // после снимка, так что кошелёк, получающий меньше порога операций за проход, уплотнится, когда их наберётся порог.
+    // Кошелёк, чья операция зафиксировалась позже, чем её заметил проход, будет уплотнён после следующей операции.
+    public void compactPending() {
+        try {
+            Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM wallet_operation", Long.class);
+            if (maxId == null || maxId <= compactionScanFrom) {
+                return;
+            }
+            List<UUID> wallets = jdbcTemplate.queryForList(
+                    "SELECT o.wallet_id FROM wallet_operation o LEFT JOIN wallet_snapshot s ON s.wallet_id = o.wallet_id " +
+                    "WHERE o.wallet_id IN (SELECT c.wallet_id FROM wallet_operation c WHERE c.id > ? AND c.id <= ?) " +
+                    "AND o.id > COALESCE(s.last_operation_id, 0) " +
+                    "GROUP BY o.wallet_id HAVING COUNT(*) >= ?",
+                    UUID.class, compactionScanFrom, maxId, compactionThreshold);
+            for (int i = 0; i < wallets.size() && i < compactionBatch; i++) {
+                compact(wallets.get(i));
+            }
+            if (wallets.size() <= compactionBatch) {
+                compactionScanFrom = maxId; // иначе следующий проход снова просмотрит тот же хвост и доберёт остальных
+            }
+        } catch (RuntimeException e) {
+            log.error("Ledger compaction failed", e);
+        }
+    }
+
+    // Переносит все операции кошелька в снимок и обновляет wallet.balance; сами операции остаются как журнал аудита.
+    public void compact(UUID walletId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (jdbcTemplate.queryForList(compactLockSql, Object.class, walletId).isEmpty()) {
+                return;
+            }
+            Long lastOperationId = jdbcTemplate.queryForObject(
+                    "SELECT MAX(id) FROM wallet_operation WHERE wallet_id = ?", Long.class, walletId);
+            if (lastOperationId == null) {
+                return;
+            }
+            BigDecimal balance = balanceOf(walletId);
+            Timestamp now = Timestamp.from(Instant.now());
+            int updated = jdbcTemplate.update(
+                    "UPDATE wallet_snapshot SET balance = ?, last_operation_id = ?, created_at = ? WHERE wallet_id = ?",
+                    balance, lastOperationId, now, walletId);
+            if (updated == 0) {
+                jdbcTemplate.update(
+                        "INSERT INTO wallet_snapshot (wallet_id, balance, last_operation_id, created_at) VALUES (?, ?, ?, ?)",
+                        walletId, balance, lastOperationId, now);
+            }
+            // Копия баланса для чтений в обход журнала; версию увеличиваем, как и любая другая запись кошелька.
+            jdbcTemplate.update("UPDATE wallet SET balance = ?, version = COALESCE(version, 0) + 1 WHERE id = ?", balance, walletId);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        compactor.shutdown();
+        compactor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private BigDecimal balanceOf(UUID walletId) {
+        return jdbcTemplate.queryForObject(BALANCE_SQL, BigDecimal.class, walletId);
+    }
+}
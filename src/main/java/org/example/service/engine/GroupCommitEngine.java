@@ -0,0 +1,172 @@
+package org.example.service.engine;
+
+import jakarta.annotation.PreDestroy;
+import org.example.dto.WalletOperationRequest;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.example.exception.InsufficientFundsException;
+import org.example.exception.WalletNotFoundException;
+import org.example.repository.WalletRepository;
+import org.example.service.WalletBalanceCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Групповая фиксация: операции над одним кошельком, пришедшие в течение короткого окна (или до заполнения пачки),
+ * применяются одной транзакцией — одна блокировка строки, один UPDATE и один commit на всю пачку.
+ * Внутри пачки операции идут в порядке поступления; списание, уводящее баланс в минус, отклоняется
+ * только для своего вызывающего, остальные операции пачки применяются.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.engine.mode", havingValue = "group-commit")
+public class GroupCommitEngine implements OperationEngine {
+
+    private final WalletRepository walletRepository;
+    private final WalletBalanceCache balanceCache;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduledExecutorService committers;
+    private final long windowMicros;
+    private final int maxBatchSize;
+    private final ConcurrentHashMap<UUID, Batch> openBatches = new ConcurrentHashMap<>();
+
+    @Autowired
+    public GroupCommitEngine(WalletRepository walletRepository,
+                             WalletBalanceCache balanceCache,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${wallet.group-commit.window-micros:2000}") long windowMicros,
+                             @Value("${wallet.group-commit.max-batch-size:256}") int maxBatchSize,
+                             @Value("${wallet.group-commit.threads:8}") int threads) {
+        if (windowMicros <= 0) {
+            throw new IllegalArgumentException("wallet.group-commit.window-micros must be positive: " + windowMicros);
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("wallet.group-commit.max-batch-size must be positive: " + maxBatchSize);
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("wallet.group-commit.threads must be positive: " + threads);
+        }
+        this.walletRepository = walletRepository;
+        this.balanceCache = balanceCache;
+        // Блокировка строки уже упорядочивает пачки одного кошелька, поэтому SERIALIZABLE здесь не нужен.
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.windowMicros = windowMicros;
+        this.maxBatchSize = maxBatchSize;
+        this.committers = Executors.newScheduledThreadPool(threads, r -> new Thread(r, "group-commit"));
+    }
+
+    @Override
+    public Money apply(WalletOperationRequest request) throws WalletNotFoundException, InsufficientFundsException {
+        Pending pending = new Pending(request);
+        openBatches.compute(request.getWalletId(), (walletId, batch) -> {
+            if (batch == null) {
+                // Первая операция открывает пачку и заводит таймер окна.
+                Batch opened = new Batch(walletId);
+                committers.schedule(() -> commit(opened), windowMicros, TimeUnit.MICROSECONDS);
+                batch = opened;
+            }
+            batch.operations.add(pending);
+            if (batch.operations.size() >= maxBatchSize) {
+                // Пачка заполнена: фиксируем сразу, следующая операция откроет новую.
+                Batch full = batch;
+                committers.execute(() -> commit(full));
+                return null;
+            }
+            return batch;
+        });
+        return EngineFutures.await(pending.result);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        committers.shutdown();
+        committers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void commit(Batch batch) {
+        openBatches.remove(batch.walletId, batch); // новые операции больше не попадут в эту пачку
+        if (!batch.committed.compareAndSet(false, true)) {
+            return; // пачку уже зафиксировал другой триггер (таймер или заполнение)
+        }
+        List<Pending> operations = batch.operations;
+        Object[] outcomes = new Object[operations.size()];
+        try {
+            transactionTemplate.executeWithoutResult(status -> applyBatch(batch.walletId, operations, outcomes));
+        } catch (RuntimeException e) {
+            for (Pending pending : operations) {
+                pending.result.completeExceptionally(e);
+            }
+            return;
+        }
+        balanceCache.invalidate(batch.walletId);
+        // Результаты отдаются только после commit, чтобы никто не увидел незафиксированный баланс.
+        for (int i = 0; i < outcomes.length; i++) {
+            if (outcomes[i] instanceof Money) {
+                operations.get(i).result.complete((Money) outcomes[i]);
+            } else {
+                operations.get(i).result.completeExceptionally((Exception) outcomes[i]);
+            }
+        }
+    }
+
+    private void applyBatch(UUID walletId, List<Pending> operations, Object[] outcomes) {
+        Optional<Wallet> found = walletRepository.findByIdWithLock(walletId);
+        if (!found.isPresent()) {
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] = new WalletNotFoundException(walletId);
+            }
+            return;
+        }
+        Wallet wallet = found.get();
+        Money balance = wallet.getBalance();
+        for (int i = 0; i < operations.size(); i++) {
+            WalletOperationRequest request = operations.get(i).request;
+            if (request.getOperationType() == WalletOperationRequest.OperationType.WITHDRAW) {
+                if (balance.isLessThan(request.getAmount())) {
+                    outcomes[i] = new InsufficientFundsException(request.getAmount());
+                    continue;
+                }
+                balance = balance.minus(request.getAmount());
+            } else {
+                balance = balance.plus(request.getAmount());
+            }
+            outcomes[i] = balance;
+        }
+        wallet.setBalance(balance);
+        walletRepository.save(wallet);
+    }
+
+    private static final class Batch {
+        private final UUID walletId;
+        // Пополняется только внутри openBatches.compute, то есть под блокировкой ключа.
+        private final List<Pending> operations = new ArrayList<>();
+        private final AtomicBoolean committed = new AtomicBoolean();
+
+        private Batch(UUID walletId) {
+            this.walletId = walletId;
+        }
+    }
+
+    private static final class Pending {
+        private final WalletOperationRequest request;
+        private final CompletableFuture<Money> result = new CompletableFuture<>();
+
+        private Pending(WalletOperationRequest request) {
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.example.service.engine;
+
+import org.example.dto.WalletOperationRequest;
+import org.example.entity.Money;
+import org.example.exception.InsufficientFundsException;
+import org.example.exception.WalletNotFoundException;
+
+/**
+ * Альтернативный способ применить пополнение или списание вместо транзакции с блокировкой строки на каждую операцию.
+ * Реализация выбирается свойством wallet.engine.mode. При значении database движок задаётся стратегией
+ * wallet.concurrency.strategy: optimistic или atomic; при pessimistic движка нет и работает путь по умолчанию.
+ */
+public interface OperationEngine {
+
+    // Применяет операцию и возвращает баланс кошелька после неё.
+    Money apply(WalletOperationRequest request) throws WalletNotFoundException, InsufficientFundsException;
+}
@@ -0,0 +1,90 @@
+package org.example.service.engine;
+
+import org.example.dto.WalletOperationRequest;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.example.exception.InsufficientFundsException;
+import org.example.exception.WalletNotFoundException;
+import org.example.repository.WalletRepository;
+import org.example.service.WalletBalanceCache;
+import org.example.service.TransactionRetry;
+import org.example.service.WalletMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+/**
+ * Оптимистичная стратегия: кошелёк читается без блокировки, а UPDATE проверяет версию строки (@Version).
+ * Если кошелёк успели изменить, транзакция откатывается и операция повторяется (TransactionRetry), не больше maxAttempts раз.
+ * Выигрывает при редких конфликтах; на горячем кошельке повторы съедают выигрыш от отсутствия блокировок.
+ */
+@Component
+@ConditionalOnExpression("'${wallet.engine.mode:database}' == 'database' and '${wallet.concurrency.strategy:pessimistic}' == 'optimistic'")
+public class OptimisticVersionEngine implements OperationEngine {
+
+    private final WalletRepository walletRepository;
+    private final WalletBalanceCache balanceCache;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAttempts;
+    private final TransactionRetry transactionRetry;
+
+    @Autowired
+    public OptimisticVersionEngine(WalletRepository walletRepository,
+                                   WalletBalanceCache balanceCache,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${wallet.concurrency.optimistic.max-attempts:5}") int maxAttempts,
+                                   TransactionRetry transactionRetry) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("wallet.concurrency.optimistic.max-attempts must be positive: " + maxAttempts);
+        }
+        this.walletRepository = walletRepository;
+        this.balanceCache = balanceCache;
+        // Изоляция по умолчанию: от потерянного обновления защищает проверка версии, а не уровень изоляции.
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxAttempts = maxAttempts;
+        this.transactionRetry = transactionRetry;
+    }
+
+    @Override
+    public Money apply(WalletOperationRequest request) throws WalletNotFoundException, InsufficientFundsException {
+        try {
+            // Конфликт версии повторяется с паузой, как и прочие конфликты транзакций, но не больше maxAttempts раз.
+            Money balance = transactionRetry.execute(WalletMetrics.Endpoint.OPERATION, maxAttempts, transactionTemplate,
+                    status -> applyOnce(request));
+            balanceCache.invalidate(request.getWalletId());
+            return balance;
+        } catch (OperationRejected e) {
+            if (e.getCause() instanceof WalletNotFoundException) {
+                throw (WalletNotFoundException) e.getCause();
+            }
+            throw (InsufficientFundsException) e.getCause();
+        }
+    }
+
+    private Money applyOnce(WalletOperationRequest request) {
+        Wallet wallet = walletRepository.findById(request.getWalletId())
+                .orElseThrow(() -> new OperationRejected(new WalletNotFoundException(request.getWalletId())));
+        if (request.getOperationType() == WalletOperationRequest.OperationType.WITHDRAW) {
+            if (wallet.getBalance().isLessThan(request.getAmount())) {
+                throw new OperationRejected(new InsufficientFundsException(request.getAmount()));
+            }
+            wallet.setBalance(wallet.getBalance().minus(request.getAmount()));
+        } else {
+            wallet.setBalance(wallet.getBalance().plus(request.getAmount()));
+        }
+        // UPDATE ... WHERE version = ? выполнится при commit; конфликт версии приходит как OptimisticLockingFailureException.
+        walletRepository.save(wallet);
+        return wallet.getBalance();
+    }
+
+    // Выносит проверяемые исключения из лямбды транзакции; транзакция при этом откатывается.
+    private static final class OperationRejected extends RuntimeException {
+        private OperationRejected(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package org.example.service.engine;
+
+import jakarta.annotation.PreDestroy;
+import org.example.dto.WalletOperationRequest;
+import org.example.entity.Money;
+import org.example.exception.InsufficientFundsException;
+import org.example.exception.WalletNotFoundException;
+import org.example.repository.WalletRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Движок операций, в котором каждый кошелёк закреплён за одним из шардов по хешу walletId.
+ * Шард — это один поток, владеющий балансами своих кошельков в памяти: операции применяются
+ * последовательно без блокировок в БД, а изменённые балансы периодически сбрасываются в таблицу wallet.
+ * В памяти держатся только балансы с ещё не записанными изменениями: записанный и с тех пор не менявшийся
+ * кошелёк вытесняется, и следующая операция снова поднимает его из БД.
+ * <p>
+ * Сброс перезаписывает столбец balance значением из памяти, поэтому писатель у БД должен быть один: второй
+ * экземпляр приложения в этом режиме затирал бы чужие изменения. На Postgres это проверяется при запуске —
+ * движок держит сессионную advisory-блокировку и не стартует, если её уже держит другой экземпляр.
+ * <p>
+ * Списание hold (асинхронный приём покупок) в БД пишет не сброс, а вызывающий — в settle, одной транзакцией
+ * с покупкой, за которую списано. До этого сброс пишет баланс вместе с удержанной суммой, и в БД всегда либо есть
+ * и покупка, и её списание, либо нет ни того, ни другого. Кошелёк с удержанными суммами не вытесняется.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.engine.mode", havingValue = "sharded")
+public class ShardedLedgerEngine implements BalanceLedger {
+    private static final Logger log = LoggerFactory.getLogger(ShardedLedgerEngine.class);
+    // Ключ advisory-блокировки единственного писателя; значение произвольное, но общее для всех экземпляров.
+    private static final long SINGLE_WRITER_LOCK = 0x57414c4c4554L;
+
+    private final WalletRepository walletRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Shard[] shards;
+    private final ScheduledExecutorService flusher;
+    // Соединение, держащее блокировку единственного писателя (только Postgres), до остановки движка.
+    private final Connection writerLock;
+    // Сброс шарда и settle не идут одновременно: сброс пишет баланс, посчитанный с удержанными суммами.
+    private final Object persistLock = new Object();
+
+    @Autowired
+    public ShardedLedgerEngine(WalletRepository walletRepository,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${wallet.engine.shards:8}") int shardCount,
+                               @Value("${wallet.engine.flush-interval-ms:20}") long flushIntervalMs) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("wallet.engine.shards must be positive: " + shardCount);
+        }
+        this.walletRepository = walletRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.writerLock = acquireWriterLock(jdbcTemplate);
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+        // Один поток на все шарды: сброс идёт пачками и не участвует в пути обработки запроса.
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "ledger-flusher"));
+        flusher.scheduleWithFixedDelay(this::flushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Money apply(WalletOperationRequest request) throws WalletNotFoundException, InsufficientFundsException {
+        Shard shard = shardFor(request.getWalletId());
+        return EngineFutures.await(CompletableFuture.supplyAsync(() -> shard.apply(request), shard.executor));
+    }
+
+    @Override
+    public Money getBalance(UUID walletId) throws WalletNotFoundException {
+        Shard shard = shardFor(walletId);
+        try {
+            return EngineFutures.await(CompletableFuture.supplyAsync(() -> shard.peek(walletId), shard.executor));
+        } catch (InsufficientFundsException e) {
+            throw new IllegalStateException(e); // чтение баланса не может завершиться нехваткой средств
+        }
+    }
+
+    // Списывает сумму в памяти, как WITHDRAW, но в БД это списание запишет вызывающий (settle).
+    public Money hold(UUID walletId, Money amount) throws WalletNotFoundException, InsufficientFundsException {
+        Shard shard = shardFor(walletId);
+        return EngineFutures.await(CompletableFuture.supplyAsync(() -> shard.hold(walletId, amount), shard.executor));
+    }
+
+    // Удержанное списание записано не будет: сумма возвращается на баланс.
+    public void release(UUID walletId, Money amount) {
+        Shard shard = shardFor(walletId);
+        shard.executor.execute(() -> shard.release(walletId, amount));
+    }
+
+    // write в своей транзакции пишет в БД удержанные суммы amounts вместе с покупками, за которые они списаны;
+    // после него суммы больше не удерживаются. Если write бросил исключение, удержание остаётся.
+    public void settle(Map<UUID, Money> amounts, Runnable write) {
+        synchronized (persistLock) {
+            write.run();
+            List<CompletableFuture<Void>> settled = new ArrayList<>(amounts.size());
+            amounts.forEach((walletId, amount) -> {
+                Shard shard = shardFor(walletId);
+                settled.add(CompletableFuture.runAsync(() -> shard.settle(walletId, amount), shard.executor));
+            });
+            CompletableFuture.allOf(settled.toArray(new CompletableFuture[0])).join();
+        }
+    }
+
+    // Баланс меняется в памяти шарда сразу, а не при commit транзакции вызывающего.
+    @Override
+    public boolean joinsTransaction() {
+        return false;
+    }
+
+    // Сбрасывает в БД все накопленные изменения; вызывается по таймеру и при остановке.
+    public void flushAll() {
+        for (Shard shard : shards) {
+            synchronized (persistLock) {
+                try {
+                    Map<UUID, Money> dirty = CompletableFuture.supplyAsync(shard::takeDirty, shard.executor).get();
+                    if (!dirty.isEmpty()) {
+                        persist(shard, dirty);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    log.error("Failed to flush ledger shard {}", shard.index, e);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        flushAll();
+        for (Shard shard : shards) {
+            shard.executor.shutdown();
+        }
+        if (writerLock != null) {
+            try {
+                writerLock.close(); // сессионная блокировка снимается вместе с сессией
+            } catch (SQLException e) {
+                log.warn("Failed to release ledger single-writer lock", e);
+            }
+        }
+    }
+
+    // На Postgres берёт сессионную advisory-блокировку на отдельном соединении и держит его; на других БД
+    // (встроенная H2 в тестах — всегда один процесс) проверять нечего.
+    private static Connection acquireWriterLock(JdbcTemplate jdbcTemplate) {
+        boolean postgres = "PostgreSQL".equals(jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName()));
+        if (!postgres) {
+            return null;
+        }
+        Connection connection = null;
+        try {
+            connection = jdbcTemplate.getDataSource().getConnection();
+            connection.setAutoCommit(true);
+            try (PreparedStatement statement = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+                statement.setLong(1, SINGLE_WRITER_LOCK);
+                try (ResultSet result = statement.executeQuery()) {
+                    if (result.next() && result.getBoolean(1)) {
+                        return connection;
+                    }
+                }
+            }
+            connection.close();
+            throw new IllegalStateException("wallet.engine.mode=sharded allows a single application instance, "
+                    + "but another instance already holds the ledger writer lock");
+        } catch (SQLException e) {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw new IllegalStateException("Failed to acquire ledger single-writer lock", e);
+        }
+    }
+
+    private void persist(Shard shard, Map<UUID, Money> dirty) {
+        List<Object[]> rows = new ArrayList<>(dirty.size());
+        for (Map.Entry<UUID, Money> entry : dirty.entrySet()) {
+            rows.add(new Object[]{entry.getValue().toBigDecimal(), entry.getKey()});
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate("UPDATE wallet SET balance = ? WHERE id = ?", rows));
+        } catch (RuntimeException e) {
+            // Непрошедшие кошельки снова ждут сброса; значение посчитается заново при следующем.
+            CompletableFuture.runAsync(() -> shard.dirty.addAll(dirty.keySet()), shard.executor).join();
+            throw e;
+        }
+        // Ждём, пока шард отметит запись: до конца сброса состояние шарда должно совпадать с БД (settle).
+        CompletableFuture.runAsync(() -> shard.evictFlushed(dirty), shard.executor).join();
+    }
+
+    private Shard shardFor(UUID walletId) {
+        int hash = walletId.hashCode();
+        hash ^= (hash >>> 16); // перемешиваем старшие биты, чтобы соседние UUID не попадали в один шард
+        return shards[Math.floorMod(hash, shards.length)];
+    }
+
+    // Состояние шарда читается и меняется только из его собственного потока.
+    private final class Shard {
+        private final int index;
+        private final ExecutorService executor;
+        // Кошельки с изменениями, ещё не записанными в БД (в том числе записываемыми сейчас).
+        // Баланс в памяти уже без удержанных сумм (held): их в БД ещё нет, поэтому сброс прибавляет их обратно.
+        private final Map<UUID, Money> balances = new HashMap<>();
+        private final Map<UUID, Money> held = new HashMap<>();
+        private Set<UUID> dirty = new LinkedHashSet<>();
+
+        private Shard(int index) {
+            this.index = index;
+            this.executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "ledger-shard-" + index));
+        }
+
+        private Money apply(WalletOperationRequest request) {
+            UUID walletId = request.getWalletId();
+            Money balance = load(walletId);
+            if (request.getOperationType() == WalletOperationRequest.OperationType.WITHDRAW) {
+                if (balance.isLessThan(request.getAmount())) {
+                    throw new ShardException(new InsufficientFundsException(request.getAmount()));
+                }
+                balance = balance.minus(request.getAmount());
+            } else {
+                balance = balance.plus(request.getAmount());
+            }
+            balances.put(walletId, balance);
+            dirty.add(walletId);
+            return balance;
+        }
+
+        private Money hold(UUID walletId, Money amount) {
+            Money balance = load(walletId);
+            if (balance.isLessThan(amount)) {
+                throw new ShardException(new InsufficientFundsException(amount));
+            }
+            balance = balance.minus(amount);
+            balances.put(walletId, balance);
+            held.merge(walletId, amount, Money::plus);
+            return balance;
+        }
+
+        // Баланс вместе с удержанным в БД не менялся, но кошелёк отмечается к сбросу: сброс его и вытеснит.
+        private void release(UUID walletId, Money amount) {
+            balances.merge(walletId, amount, Money::plus);
+            unhold(walletId, amount);
+            dirty.add(walletId);
+        }
+
+        // Списание уже в БД. Если кошелёк не ждёт сброса, баланс в памяти теперь равен записанному.
+        private void settle(UUID walletId, Money amount) {
+            unhold(walletId, amount);
+            if (!held.containsKey(walletId) && !dirty.contains(walletId)) {
+                balances.remove(walletId);
+            }
+        }
+
+        private void unhold(UUID walletId, Money amount) {
+            Money rest = held.get(walletId).minus(amount);
+            if (rest.signum() == 0) {
+                held.remove(walletId);
+            } else {
+                held.put(walletId, rest);
+            }
+        }
+
+        private Money load(UUID walletId) {
+            Money balance = balances.get(walletId);
+            if (balance == null) {
+                // Кошелька нет в памяти: поднимаем баланс из БД, дальше до записи шард — единственный писатель.
+                balance = walletRepository.findBalanceById(walletId)
+                        .orElseThrow(() -> new ShardException(new WalletNotFoundException(walletId)));
+                balances.put(walletId, balance);
+            }
+            return balance;
+        }
+
+        // Баланс без загрузки в память: кошелька нет в balances — значит, в БД его актуальный баланс.
+        private Money peek(UUID walletId) {
+            Money balance = balances.get(walletId);
+            if (balance != null) {
+                return balance;
+            }
+            return walletRepository.findBalanceById(walletId)
+                    .orElseThrow(() -> new ShardException(new WalletNotFoundException(walletId)));
+        }
+
+        // После записи: кошельки, не менявшиеся с момента, когда их забрал сброс, и без удержаний больше не нужны в памяти.
+        private void evictFlushed(Map<UUID, Money> flushed) {
+            for (UUID walletId : flushed.keySet()) {
+                if (!dirty.contains(walletId) && !held.containsKey(walletId)) {
+                    balances.remove(walletId);
+                }
+            }
+        }
+
+        // Значения для записи: баланс плюс ещё не записанные вызывающим удержания.
+        private Map<UUID, Money> takeDirty() {
+            Map<UUID, Money> taken = new LinkedHashMap<>();
+            for (UUID walletId : dirty) {
+                taken.put(walletId, balances.get(walletId).plus(held.getOrDefault(walletId, Money.ZERO)));
+            }
+            dirty = new LinkedHashSet<>();
+            return taken;
+        }
+    }
+
+    // Переносит проверяемые исключения из потока шарда к вызывающему.
+    private static final class ShardException extends RuntimeException {
+        private ShardException(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package org.example.service.export;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.service.engine.EventLedgerEngine;
+import org.example.service.shard.WalletShards;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Потоковая выгрузка кошельков с балансами и покупок в CSV или NDJSON, без сущностей JPA и их связей.
+ * Каждый запрос выгрузки — однонаправленный курсор в read-only транзакции (с репликой — на реплике): драйвер берёт
+ * из БД по wallet.export.fetch-size строк, каждая строка сразу пишется в поток ответа и забывается. Запись в поток
+ * ждёт, пока клиент примет данные, и курсор всё это время стоит: медленный клиент замедляет чтение из БД, а не копит
+ * строки в памяти. Память выгрузки — одна пачка строк и буфер записи, сколько бы строк ни было в таблицах.
+ * <p>
+ * Строки идут в порядке хранения, без ORDER BY: сортировка всей таблицы стоила бы БД памяти или временных файлов.
+ * С шардированием шарды выгружаются по очереди, каждый своей транзакцией.
+ */
+@Component
+public class DataExporter {
+    private static final int WRITE_BUFFER_CHARS = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionOperations readOnlyTransaction;
+    private final JsonFactory jsonFactory;
+    private final String walletsSql;
+
+    // Шарды кошельков (wallet.sharding.enabled=true); без шардирования его нет.
+    @Autowired(required = false)
+    private WalletShards shards;
+
+    @Autowired
+    public DataExporter(JdbcTemplate jdbcTemplate,
+                        PlatformTransactionManager transactionManager,
+                        ObjectMapper objectMapper,
+                        @Value("${wallet.export.fetch-size:1000}") int fetchSize,
+                        @Value("${wallet.engine.mode:database}") String engineMode) {
+        // Fetch size действует только внутри транзакции: иначе драйвер Postgres читает весь результат в память.
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        this.readOnlyTransaction = readOnly;
+        this.jsonFactory = objectMapper.getFactory();
+        // В режиме ledger столбец balance — лишь исходный баланс, текущий выводится из снимка и операций.
+        // В режиме sharded он отстаёт от памяти движка на wallet.engine.flush-interval-ms.
+        this.walletsSql = "ledger".equals(engineMode)
+                ? "SELECT w.id, w.client_id, " + EventLedgerEngine.BALANCE_COLUMN + " " + EventLedgerEngine.BALANCE_FROM
+                : "SELECT id, client_id, balance FROM wallet";
+    }
+
+    // Пишет все строки набора в out и возвращает их число; out не закрывается.
+    public long export(Dataset dataset, Format format, OutputStream out) throws IOException {
+        RowWriter writer = format == Format.CSV ? new CsvWriter(out) : new NdjsonWriter(jsonFactory.createGenerator(out));
+        List<Column> columns = dataset.columns;
+        writer.header(columns);
+        Object[] values = new Object[columns.size()];
+        long[] rows = {0};
+        RowCallbackHandler handler = rs -> {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = columns.get(i).type.read(rs, i + 1);
+            }
+            try {
+                writer.row(columns, values);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // клиент отключился: транзакция откатывается, курсор закрывается
+            }
+            rows[0]++;
+        };
+        try {
+            for (int shard = 0; shard < (shards == null ? 1 : shards.getShardCount()); shard++) {
+                try (WalletShards.Scope scope = shards == null ? null : WalletShards.enter(shard)) {
+                    readOnlyTransaction.executeWithoutResult(status -> {
+                        for (String sql : queries(dataset)) {
+                            jdbcTemplate.query(sql, handler);
+                        }
+                    });
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.finish();
+        return rows[0];
+    }
+
+    private List<String> queries(Dataset dataset) {
+        if (dataset == Dataset.WALLETS) {
+            return Arrays.asList(walletsSql);
+        }
+        // Покупки лежат таблицей на класс: таблицы читаются одна за другой, тип — константой в строке.
+        return Arrays.asList(
+                "SELECT id, wallet_id, 'ONLINE', amount, store_url, created_at FROM online_purchase",
+                "SELECT id, wallet_id, 'OFFLINE', amount, store_address, created_at FROM offline_purchase");
+    }
+
+    public enum Dataset {
+        WALLETS(new Column("wallet_id", ColumnType.UUID), new Column("client_id", ColumnType.UUID),
+                new Column("balance", ColumnType.DECIMAL)),
+        PURCHASES(new Column("purchase_id", ColumnType.UUID), new Column("wallet_id", ColumnType.UUID),
+                new Column("type", ColumnType.TEXT), new Column("amount", ColumnType.DECIMAL),
+                new Column("store", ColumnType.TEXT), new Column("created_at", ColumnType.INSTANT));
+
+        private final List<Column> columns;
+
+        Dataset(Column... columns) {
+            this.columns = Arrays.asList(columns);
+        }
+    }
+
+    public enum Format {
+        CSV("text/csv"), NDJSON(MediaType.APPLICATION_NDJSON_VALUE);
+
+        private final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    private enum ColumnType {
+        UUID, TEXT, DECIMAL, INSTANT;
+
+        Object read(ResultSet rs, int index) throws SQLException {
+            switch (this) {
+                case UUID:
+                    return rs.getObject(index, java.util.UUID.class);
+                case DECIMAL:
+                    return rs.getBigDecimal(index);
+                case INSTANT:
+                    OffsetDateTime value = rs.getObject(index, OffsetDateTime.class);
+                    return value == null ? null : value.toInstant();
+                default:
+                    return rs.getString(index);
+            }
+        }
+    }
+
+    private static final class Column {
+        private final String name;
+        private final ColumnType type;
+
+        private Column(String name, ColumnType type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    private interface RowWriter {
+        void header(List<Column> columns) throws IOException;
+
+        void row(List<Column> columns, Object[] values) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    // RFC 4180: поле в кавычках, если в нём запятая, кавычка или перевод строки; null — пустое поле.
+    private static final class CsvWriter implements RowWriter {
+        private final Writer out;
+
+        private CsvWriter(OutputStream out) {
+            this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_CHARS);
+        }
+
+        @Override
+        public void header(List<Column> columns) throws IOException {
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write(columns.get(i).name);
+            }
+            out.write("\r\n");
+        }
+
+        @Override
+        public void row(List<Column> columns, Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                Object value = values[i];
+                if (value == null) {
+                    continue;
+                }
+                String text = value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+                if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+                    out.write(text);
+                } else {
+                    out.write('"');
+                    out.write(text.replace("\"", "\"\""));
+                    out.write('"');
+                }
+            }
+            out.write("\r\n");
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.flush();
+        }
+    }
+
+    // Объект на строку, без промежуточных DTO: поля пишутся генератором Jackson прямо в поток.
+    private static final class NdjsonWriter implements RowWriter {
+        private final JsonGenerator generator;
+
+        private NdjsonWriter(JsonGenerator generator) {
+            this.generator = generator;
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setPrettyPrinter(new MinimalPrettyPrinter("")); // строки разделяет '\n' из row, а не пробел
+        }
+
+        @Override
+        public void header(List<Column> columns) {
+        }
+
+        @Override
+        public void row(List<Column> columns, Object[] values) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                String name = columns.get(i).name;
+                if (value == null) {
+                    generator.writeNullField(name);
+                } else if (value instanceof BigDecimal) {
+                    generator.writeNumberField(name, (BigDecimal) value);
+                } else {
+                    generator.writeStringField(name, value.toString());
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.close();
+        }
+    }
+}
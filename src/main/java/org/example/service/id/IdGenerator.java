@@ -0,0 +1,11 @@
+package org.example.service.id;
+
+import java.util.UUID;
+
+/**
+ * Источник первичных ключей для покупок, клиентов и кошельков. Реализация выбирается свойством wallet.id.generator.
+ */
+public interface IdGenerator {
+
+    UUID next();
+}
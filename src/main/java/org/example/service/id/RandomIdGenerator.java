@@ -0,0 +1,19 @@
+package org.example.service.id;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Прежнее поведение: UUID.randomUUID(), то есть общий SecureRandom и случайные места вставки в индекс первичного ключа.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.id.generator", havingValue = "random")
+public class RandomIdGenerator implements IdGenerator {
+
+    @Override
+    public UUID next() {
+        return UUID.randomUUID();
+    }
+}
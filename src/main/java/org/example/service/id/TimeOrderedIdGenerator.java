@@ -0,0 +1,59 @@
+package org.example.service.id;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * UUID версии 7 (RFC 9562): 48 бит миллисекунд Unix-времени, 12 бит счётчика внутри миллисекунды и 62 случайных бита.
+ * Новые ключи ложатся в правый край B-дерева первичного ключа, а не в случайную страницу, как у UUID.randomUUID().
+ * <p>
+ * Блокировок нет: счётчик и последняя миллисекунда у каждого потока свои, случайные биты — из ThreadLocalRandom.
+ * В пределах потока id строго возрастают (при переполнении счётчика или отступлении часов берётся следующая миллисекунда);
+ * id разных потоков в одну миллисекунду различаются случайной частью.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.id.generator", havingValue = "time-ordered", matchIfMissing = true)
+public class TimeOrderedIdGenerator implements IdGenerator {
+    private static final int COUNTER_BITS = 12;
+    private static final long COUNTER_MAX = (1L << COUNTER_BITS) - 1;
+
+    private final LongSupplier clock;
+    private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+    public TimeOrderedIdGenerator() {
+        this(System::currentTimeMillis);
+    }
+
+    TimeOrderedIdGenerator(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public UUID next() {
+        State current = state.get();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long millis = clock.getAsLong();
+        if (millis > current.millis) {
+            current.millis = millis;
+            // Начинаем с первой половины диапазона, чтобы в миллисекунде оставалось место хотя бы для 2048 id.
+            current.counter = random.nextLong(COUNTER_MAX / 2 + 1);
+        } else if (current.counter < COUNTER_MAX) {
+            current.counter++;
+        } else {
+            current.millis++; // счётчик исчерпан — занимаем следующую миллисекунду
+            current.counter = 0;
+        }
+        long high = (current.millis << 16) | (0x7L << 12) | current.counter;
+        long low = (random.nextLong() >>> 2) | 0x8000000000000000L; // вариант 10xx
+        return new UUID(high, low);
+    }
+
+    private static final class State {
+        private long millis = Long.MIN_VALUE;
+        private long counter;
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.service.provision;
+
+import org.example.dto.ImportResult;
+import org.example.service.export.DataExporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Импорт из командной строки: java -jar wallet.jar --wallet.import.file=partner.csv --spring.main.web-application-type=none.
+ * Формат — по расширению (.csv — CSV, иначе NDJSON), отказы — в файл рядом с входным (partner.csv.rejects.csv).
+ * После импорта приложение завершается: код 0 — без отказов, 2 — с отказами, 1 — импорт не выполнен.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.import.file")
+public class ProvisioningImportRunner implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(ProvisioningImportRunner.class);
+
+    private final ProvisioningImporter importer;
+    private final ConfigurableApplicationContext context;
+    private final Path file;
+
+    @Autowired
+    public ProvisioningImportRunner(ProvisioningImporter importer, ConfigurableApplicationContext context,
+                                    @Value("${wallet.import.file}") String file) {
+        this.importer = importer;
+        this.context = context;
+        this.file = Paths.get(file);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        DataExporter.Format format = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv")
+                ? DataExporter.Format.CSV : DataExporter.Format.NDJSON;
+        int exitCode;
+        try (InputStream in = Files.newInputStream(file)) {
+            ImportResult result = importer.importRecords(in, format, Paths.get(file + ".rejects.csv"));
+            exitCode = result.getRejected() == 0 ? 0 : 2;
+            if (exitCode != 0) {
+                log.warn("{} rows of {} rejected, see {}", result.getRejected(), file, result.getRejectFile());
+            }
+        } catch (Exception e) {
+            log.error("Import of {} failed", file, e);
+            exitCode = 1;
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+}
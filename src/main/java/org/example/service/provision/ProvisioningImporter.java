@@ -0,0 +1,530 @@
+package org.example.service.provision;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.example.dto.ImportResult;
+import org.example.dto.ProvisioningRecord;
+import org.example.entity.Client;
+import org.example.entity.Money;
+import org.example.exception.AlreadyExistWIthThisEmail;
+import org.example.exception.InvalidAmountException;
+import org.example.repository.ProvisioningRepository;
+import org.example.service.ClientEmailFilter;
+import org.example.service.export.DataExporter;
+import org.example.service.id.IdGenerator;
+import org.example.service.shard.WalletShards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Массовый импорт клиентов и кошельков с начальными балансами из CSV или NDJSON (ProvisioningRecord на строку) —
+ * для переноса базы партнёра, которую createUser и save() по строке с отдельной транзакцией грузили бы днями.
+ * <p>
+ * Файл читается потоком, частями по wallet.import.chunk-size строк. Разбор и проверка строк части идут параллельно
+ * в wallet.import.threads потоков и перекрываются с загрузкой предыдущей части; в памяти не больше двух частей.
+ * Занятость email, id клиентов и кошельков проверяется одним запросом на часть (email — только «возможно занятые»
+ * по фильтру Блума), после чего часть грузится одной транзакцией: COPY на Postgres, JDBC batch на остальных БД.
+ * Если загрузка части всё же упала (тот же email успели зарегистрировать в обход импорта), часть грузится заново
+ * по строке, и в отказы уходят только виноватые строки.
+ * <p>
+ * Строка с полями клиента (email, username, userSurname) создаёт клиента; строка только с clientId добавляет кошелёк
+ * клиенту, созданному раньше — в БД или выше в том же файле. Отказы пишутся в CSV line,reason,record: номер строки
+ * файла, причина и сама строка. CSV читается построчно: переводы строк внутри полей в кавычках не поддерживаются.
+ * <p>
+ * С шардированием клиенты пишутся в первый шард, затем их копии и кошельки — в шарды кошельков. Строка, чей клиент
+ * записан, а кошелёк нет, попадает в отказы с пометкой: повторять её нужно с clientId и без полей клиента.
+ */
+@Component
+public class ProvisioningImporter {
+    private static final Logger log = LoggerFactory.getLogger(ProvisioningImporter.class);
+    private static final List<String> CSV_COLUMNS = Arrays.asList("clientId", "email", "username", "userSurname", "walletId", "balance");
+    private static final int MAX_TEXT = 255; // VARCHAR(255) столбцов клиента
+
+    private final ProvisioningRepository repository;
+    private final ClientEmailFilter emailFilter;
+    private final IdGenerator idGenerator;
+    private final ObjectReader recordReader;
+    private final TransactionTemplate transaction;
+    private final int threads;
+    private final int chunkSize;
+
+    // Шарды кошельков (wallet.sharding.enabled=true); без шардирования его нет.
+    @Autowired(required = false)
+    private WalletShards shards;
+
+    @Autowired
+    public ProvisioningImporter(ProvisioningRepository repository,
+                                ClientEmailFilter emailFilter,
+                                IdGenerator idGenerator,
+                                ObjectMapper objectMapper,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${wallet.import.threads:4}") int threads,
+                                @Value("${wallet.import.chunk-size:5000}") int chunkSize) {
+        this.repository = repository;
+        this.emailFilter = emailFilter;
+        this.idGenerator = idGenerator;
+        this.recordReader = objectMapper.readerFor(ProvisioningRecord.class);
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    // Импортирует записи из in (не закрывается); отказы пишутся в rejectFile, без отказов файл удаляется.
+    // Заголовок CSV — имена полей ProvisioningRecord в любом порядке; неизвестный столбец — IllegalArgumentException.
+    public ImportResult importRecords(InputStream in, DataExporter.Format format, Path rejectFile) throws IOException {
+        long started = System.nanoTime();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+        long lineNumber = 0;
+        Function<String, ProvisioningRecord> parser;
+        if (format == DataExporter.Format.CSV) {
+            String header = reader.readLine();
+            lineNumber++;
+            parser = csvParser(header == null ? "" : header);
+        } else {
+            parser = this::parseJson;
+        }
+        ImportResult result = new ImportResult();
+        AtomicInteger names = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "provision-import-" + names.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (Rejects rejects = new Rejects(rejectFile)) {
+            List<Row> validated = Collections.emptyList();
+            List<Future<?>> validation = Collections.emptyList();
+            while (true) {
+                List<Row> chunk = new ArrayList<>(chunkSize);
+                String line;
+                while (chunk.size() < chunkSize && (line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (!line.trim().isEmpty()) {
+                        chunk.add(new Row(lineNumber, line));
+                    }
+                }
+                // Следующая часть проверяется, пока грузится предыдущая.
+                List<Future<?>> next = validate(chunk, parser, workers);
+                await(validation);
+                load(validated, result, rejects);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                validated = chunk;
+                validation = next;
+            }
+            result.setRejected(rejects.count);
+        } finally {
+            workers.shutdownNow();
+        }
+        if (result.getRejected() == 0) {
+            Files.deleteIfExists(rejectFile);
+        } else {
+            result.setRejectFile(rejectFile.toString());
+        }
+        log.info("Imported {} clients and {} wallets, rejected {} rows in {} ms", result.getClients(), result.getWallets(),
+                result.getRejected(), (System.nanoTime() - started) / 1_000_000);
+        return result;
+    }
+
+    // Разбор и проверка без обращения к БД: строки части делятся между потоками поровну.
+    private List<Future<?>> validate(List<Row> chunk, Function<String, ProvisioningRecord> parser, ExecutorService workers) {
+        List<Future<?>> futures = new ArrayList<>(threads);
+        int slice = Math.max(1, (chunk.size() + threads - 1) / threads);
+        for (int from = 0; from < chunk.size(); from += slice) {
+            List<Row> rows = chunk.subList(from, Math.min(chunk.size(), from + slice));
+            futures.add(workers.submit(() -> {
+                for (Row row : rows) {
+                    try {
+                        row.record = parser.apply(row.text);
+                        row.error = check(row.record);
+                    } catch (IllegalArgumentException e) {
+                        row.error = "malformed: " + e.getMessage();
+                    }
+                }
+            }));
+        }
+        return futures;
+    }
+
+    private static String check(ProvisioningRecord record) {
+        if (record.getBalance() == null) {
+            return "balance is required";
+        }
+        if (record.getBalance().signum() < 0) {
+            return "balance must not be negative";
+        }
+        if (tooLong(record.getEmail()) || tooLong(record.getUsername()) || tooLong(record.getUserSurname())) {
+            return "client fields must not be longer than " + MAX_TEXT + " characters";
+        }
+        if (record.getEmail() != null && record.getEmail().indexOf('@') < 1) {
+            return "malformed email";
+        }
+        return null;
+    }
+
+    private static boolean tooLong(String value) {
+        return value != null && value.length() > MAX_TEXT;
+    }
+
+    // Проверки занятости и загрузка части, в порядке строк файла.
+    private void load(List<Row> chunk, ImportResult result, Rejects rejects) throws IOException {
+        List<Row> rows = new ArrayList<>(chunk.size());
+        Set<String> emails = new HashSet<>();
+        Set<UUID> newClientIds = new HashSet<>();
+        Set<UUID> referencedClientIds = new HashSet<>();
+        Set<UUID> walletIds = new HashSet<>();
+        for (Row row : chunk) {
+            ProvisioningRecord record = row.record;
+            if (row.error == null) {
+                row.newClient = record.getEmail() != null || record.getUsername() != null || record.getUserSurname() != null;
+                if (row.newClient && record.getClientId() != null && !newClientIds.add(record.getClientId())) {
+                    row.error = "duplicate clientId " + record.getClientId();
+                } else if (row.newClient && record.getEmail() != null && !emails.add(record.getEmail())) {
+                    row.error = new AlreadyExistWIthThisEmail(record.getEmail()).getMessage();
+                } else if (record.getWalletId() != null && !walletIds.add(record.getWalletId())) {
+                    row.error = "duplicate walletId " + record.getWalletId();
+                } else if (!row.newClient && record.getClientId() != null) {
+                    referencedClientIds.add(record.getClientId());
+                }
+            }
+            if (row.error == null) {
+                rows.add(row);
+            }
+        }
+
+        Set<String> takenEmails;
+        Set<UUID> takenClientIds;
+        Set<UUID> knownClientIds;
+        try (WalletShards.Scope scope = enter(WalletShards.HOME)) {
+            List<String> maybeTaken = new ArrayList<>();
+            for (String email : emails) {
+                if (emailFilter.mightContain(email)) {
+                    maybeTaken.add(email);
+                }
+            }
+            takenEmails = repository.existingEmails(maybeTaken);
+            takenClientIds = repository.existingClients(newClientIds);
+            knownClientIds = repository.existingClients(referencedClientIds);
+        }
+        Set<UUID> takenWalletIds = new HashSet<>();
+        for (int shard = 0; shard < shardCount(); shard++) {
+            List<UUID> ids = new ArrayList<>();
+            for (UUID walletId : walletIds) {
+                if (shardOf(walletId) == shard) {
+                    ids.add(walletId);
+                }
+            }
+            try (WalletShards.Scope scope = enter(shard)) {
+                takenWalletIds.addAll(repository.existingWallets(ids));
+            }
+        }
+
+        List<Row> accepted = new ArrayList<>(rows.size());
+        Set<UUID> created = new HashSet<>();
+        for (Row row : rows) {
+            ProvisioningRecord record = row.record;
+            String error = null;
+            if (row.newClient && record.getEmail() != null && takenEmails.contains(record.getEmail())) {
+                error = new AlreadyExistWIthThisEmail(record.getEmail()).getMessage();
+            } else if (row.newClient && record.getClientId() != null && takenClientIds.contains(record.getClientId())) {
+                error = "client " + record.getClientId() + " already exists";
+            } else if (!row.newClient && record.getClientId() != null
+                    && !knownClientIds.contains(record.getClientId()) && !created.contains(record.getClientId())) {
+                error = "client " + record.getClientId() + " not found";
+            } else if (record.getWalletId() != null && takenWalletIds.contains(record.getWalletId())) {
+                error = "wallet " + record.getWalletId() + " already exists";
+            }
+            if (error != null) {
+                row.error = error;
+                continue;
+            }
+            if (row.newClient) {
+                row.clientId = record.getClientId() != null ? record.getClientId() : idGenerator.next();
+                created.add(row.clientId);
+            } else {
+                row.clientId = record.getClientId();
+            }
+            row.walletId = record.getWalletId() != null ? record.getWalletId() : idGenerator.next();
+            row.shard = shardOf(row.walletId);
+            accepted.add(row);
+        }
+
+        // Первый шард — клиенты (уникальность email) и его кошельки; остальные — копии клиентов и свои кошельки.
+        for (int shard = 0; shard < shardCount(); shard++) {
+            List<Row> part = new ArrayList<>();
+            for (Row row : accepted) {
+                if (row.error == null && (row.newClient || row.shard == shard)) {
+                    part.add(row);
+                }
+            }
+            if (!part.isEmpty()) {
+                loadPart(shard, part, result);
+            }
+        }
+        // Отказы — в порядке строк файла.
+        for (Row row : chunk) {
+            if (row.error != null) {
+                rejects.write(row);
+            }
+        }
+    }
+
+    // Часть одной транзакцией; если она упала — по транзакции на строку, чтобы отказать только виноватым.
+    private void loadPart(int shard, List<Row> part, ImportResult result) {
+        try (WalletShards.Scope scope = enter(shard)) {
+            try {
+                insert(shard, part, result);
+                return;
+            } catch (DataAccessException e) {
+                log.warn("Import chunk failed in shard {}, loading it row by row: {}", shard, e.getMostSpecificCause().getMessage());
+            }
+            for (Row row : part) {
+                try {
+                    insert(shard, Collections.singletonList(row), result);
+                } catch (DataAccessException e) {
+                    String reason = String.valueOf(e.getMostSpecificCause().getMessage());
+                    if (shard != WalletShards.HOME && row.newClient) {
+                        // Клиент уже записан в первый шард: повторять строку нужно с clientId и без полей клиента.
+                        reason = "client " + row.clientId + " created, not loaded in shard " + shard + ": " + reason;
+                    }
+                    row.error = reason;
+                }
+            }
+        }
+    }
+
+    private void insert(int shard, List<Row> rows, ImportResult result) {
+        List<Client> clients = new ArrayList<>();
+        List<ProvisioningRepository.WalletRow> wallets = new ArrayList<>();
+        for (Row row : rows) {
+            ProvisioningRecord record = row.record;
+            if (row.newClient) {
+                clients.add(new Client(row.clientId, record.getUsername(), record.getUserSurname(), record.getEmail()));
+            }
+            if (row.shard == shard) {
+                wallets.add(new ProvisioningRepository.WalletRow(row.walletId, row.clientId, record.getBalance()));
+            }
+        }
+        transaction.executeWithoutResult(status -> {
+            if (shard == WalletShards.HOME) {
+                repository.insertClients(clients);
+            } else {
+                repository.insertMissingClients(clients);
+            }
+            repository.insertWallets(wallets);
+        });
+        if (shard == WalletShards.HOME) {
+            for (Client client : clients) {
+                if (client.getEmail() != null) {
+                    emailFilter.add(client.getEmail());
+                }
+            }
+            result.setClients(result.getClients() + clients.size());
+        }
+        result.setWallets(result.getWallets() + wallets.size());
+    }
+
+    private int shardCount() {
+        return shards == null ? 1 : shards.getShardCount();
+    }
+
+    private int shardOf(UUID walletId) {
+        return shards == null ? WalletShards.HOME : shards.shardOf(walletId);
+    }
+
+    // null без шардирования: try-with-resources пропускает закрытие null-ресурса.
+    private WalletShards.Scope enter(int shard) {
+        return shards == null ? null : WalletShards.enter(shard);
+    }
+
+    private ProvisioningRecord parseJson(String line) {
+        try {
+            ProvisioningRecord record = recordReader.readValue(line);
+            if (record == null) {
+                throw new IllegalArgumentException("not a JSON object");
+            }
+            return record;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e.getOriginalMessage());
+        }
+    }
+
+    // Разбор CSV по столбцам заголовка; пустое поле — null.
+    private static Function<String, ProvisioningRecord> csvParser(String header) {
+        List<String> columns = splitCsv(header);
+        for (String column : columns) {
+            if (!CSV_COLUMNS.contains(column)) {
+                throw new IllegalArgumentException("Unknown CSV column '" + column + "', expected " + String.join(",", CSV_COLUMNS));
+            }
+        }
+        if (!columns.contains("balance")) {
+            throw new IllegalArgumentException("CSV header has no balance column");
+        }
+        return line -> {
+            List<String> fields = splitCsv(line);
+            if (fields.size() != columns.size()) {
+                throw new IllegalArgumentException(fields.size() + " fields, header has " + columns.size());
+            }
+            ProvisioningRecord record = new ProvisioningRecord();
+            for (int i = 0; i < fields.size(); i++) {
+                String value = fields.get(i).isEmpty() ? null : fields.get(i);
+                switch (columns.get(i)) {
+                    case "clientId":
+                        record.setClientId(value == null ? null : UUID.fromString(value));
+                        break;
+                    case "email":
+                        record.setEmail(value);
+                        break;
+                    case "username":
+                        record.setUsername(value);
+                        break;
+                    case "userSurname":
+                        record.setUserSurname(value);
+                        break;
+                    case "walletId":
+                        record.setWalletId(value == null ? null : UUID.fromString(value));
+                        break;
+                    default:
+                        try {
+                            record.setBalance(value == null ? null : Money.parse(value));
+                        } catch (InvalidAmountException e) {
+                            throw new IllegalArgumentException(e.getMessage());
+                        }
+                }
+            }
+            return record;
+        };
+    }
+
+    // RFC 4180 в пределах одной строки: поле в кавычках, "" внутри него — кавычка.
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            if (i < line.length() && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        throw new IllegalArgumentException("unterminated quoted field");
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < line.length() && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+                if (i < line.length() && line.charAt(i) != ',') {
+                    throw new IllegalArgumentException("text after closing quote");
+                }
+            } else {
+                while (i < line.length() && line.charAt(i) != ',') {
+                    field.append(line.charAt(i++));
+                }
+            }
+            fields.add(field.toString());
+            if (i >= line.length()) {
+                return fields;
+            }
+            i++; // запятая
+        }
+    }
+
+    private static void await(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while validating import records", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private static final class Row {
+        private final long line;
+        private final String text;
+        private ProvisioningRecord record;
+        private String error; // причина отказа
+        private boolean newClient;
+        private UUID clientId;
+        private UUID walletId;
+        private int shard;
+
+        private Row(long line, String text) {
+            this.line = line;
+            this.text = text;
+        }
+    }
+
+    // Файл отказов: line,reason,record.
+    private static final class Rejects implements Closeable {
+        private final BufferedWriter out;
+        private long count;
+
+        private Rejects(Path file) throws IOException {
+            this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            out.write("line,reason,record\n");
+        }
+
+        private void write(Row row) throws IOException {
+            out.write(Long.toString(row.line));
+            out.write(',');
+            quote(row.error);
+            out.write(',');
+            quote(row.text);
+            out.write('\n');
+            count++;
+        }
+
+        private void quote(String value) throws IOException {
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
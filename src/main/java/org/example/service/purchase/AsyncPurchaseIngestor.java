@@ -0,0 +1,234 @@
+package org.example.service.purchase;
+
+import jakarta.annotation.PreDestroy;
+import org.example.entity.Money;
+import org.example.exception.InsufficientFundsException;
+import org.example.exception.WalletNotFoundException;
+import org.example.repository.PurchaseBatchRepository;
+import org.example.repository.PurchaseBatchRepository.PurchaseRow;
+import org.example.service.engine.BalanceLedger;
+import org.example.service.engine.ShardedLedgerEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронный приём покупок (wallet.purchase.mode=async): запрос не ждёт БД.
+ * Средства списываются синхронно в памяти движка с балансами в памяти (wallet.engine.mode=sharded, ShardedLedgerEngine.hold),
+ * покупка дописывается в локальный журнал (PurchaseJournal), и ответ уходит, как только журнал сброшен на диск.
+ * Дальше покупку через заранее выделенное кольцо забирает фоновый поток и записывает в БД пачками.
+ * <p>
+ * Пачка вставляется идемпотентно (insertMissing), и той же транзакцией с кошельков списываются суммы вставленных покупок:
+ * движок удерживает эти списания и сам их в БД не пишет (settle). После commit позиция журнала запоминается как checkpoint.
+ * При запуске всё, что записано в журнал после checkpoint, вставляется повторно — уже вставленное пропускается, а для
+ * остального списание повторяется вместе со вставкой. Покупка и её списание не теряются и не повторяются по отдельности.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.purchase.mode", havingValue = "async")
+public class AsyncPurchaseIngestor {
+    private static final Logger log = LoggerFactory.getLogger(AsyncPurchaseIngestor.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long RETRY_DELAY_MS = 100;
+
+    private final ShardedLedgerEngine ledger;
+    private final PurchaseBatchRepository purchaseBatchRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final PurchaseJournal journal;
+    private final int batchSize;
+    // Кольцо выделено целиком при старте: ячейки переиспользуются, на пути запроса новых объектов для очереди нет.
+    private final Slot[] ring;
+    private final int mask;
+    private final AtomicLong published = new AtomicLong(); // сколько покупок выложено в кольцо
+    private final AtomicLong consumed = new AtomicLong(); // сколько из них записано в БД
+    private long settled; // сколько из них записано вместе со списанием, хотя checkpoint, возможно, не удался
+    private final Object publishLock = new Object();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    @Autowired
+    public AsyncPurchaseIngestor(ObjectProvider<BalanceLedger> ledger,
+                                 PurchaseBatchRepository purchaseBatchRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${wallet.purchase.journal.dir:data/purchase-journal}") String directory,
+                                 @Value("${wallet.purchase.journal.segment-bytes:67108864}") int segmentBytes,
+                                 @Value("${wallet.purchase.journal.ring-size:65536}") int ringSize,
+                                 @Value("${wallet.purchase.journal.batch-size:500}") int batchSize) throws IOException {
+        this(requireLedger(ledger.getIfAvailable()), purchaseBatchRepository, transactionManager,
+                new PurchaseJournal(Paths.get(directory), segmentBytes), ringSize, batchSize);
+    }
+
+    public AsyncPurchaseIngestor(ShardedLedgerEngine ledger,
+                                 PurchaseBatchRepository purchaseBatchRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 PurchaseJournal journal,
+                                 int ringSize,
+                                 int batchSize) throws IOException {
+        if (Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException("wallet.purchase.journal.ring-size must be a power of two: " + ringSize);
+        }
+        this.ledger = ledger;
+        this.purchaseBatchRepository = purchaseBatchRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.journal = journal;
+        this.batchSize = batchSize;
+        this.ring = new Slot[ringSize];
+        for (int i = 0; i < ringSize; i++) {
+            ring[i] = new Slot();
+        }
+        this.mask = ringSize - 1;
+        // Хвост прошлого запуска записывается до приёма новых покупок; при недоступной БД приложение не стартует.
+        // Движок ещё ничего не удерживает: списания хвоста, не попавшие в БД, пишутся только здесь.
+        journal.replay(batchSize, this::write);
+        this.writer = new Thread(this::drain, "purchase-writer");
+        writer.start();
+    }
+
+    // Списывает средства и возвращает управление, когда покупка надёжно записана в журнал.
+    public void submit(PurchaseRow purchase) throws WalletNotFoundException, InsufficientFundsException {
+        Money amount = Money.of(purchase.getAmount());
+        ledger.hold(purchase.getWalletId(), amount);
+        long position;
+        try {
+            position = publish(purchase);
+            journal.awaitDurable(position);
+        } catch (RuntimeException e) {
+            // Покупка не принята: возвращаем удержанное. Если не записалась на диск, в БД её тоже не будет —
+            // фоновый поток берёт только то, что журнал уже сбросил.
+            try {
+                ledger.release(purchase.getWalletId(), amount);
+            } catch (RuntimeException refund) {
+                e.addSuppressed(refund);
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException, IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        journal.close(); // что не успело попасть в БД, останется в журнале до следующего запуска
+    }
+
+    // Под одной блокировкой порядок в кольце совпадает с порядком записей в журнале: checkpoint только растёт.
+    private long publish(PurchaseRow purchase) {
+        synchronized (publishLock) {
+            long sequence = published.get();
+            while (sequence - consumed.get() >= ring.length) {
+                // Кольцо заполнено — БД не успевает. Ждём места: это обратное давление на приём покупок.
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            long position = journal.append(purchase);
+            Slot slot = ring[(int) (sequence & mask)];
+            slot.purchase = purchase;
+            slot.position = position;
+            published.set(sequence + 1);
+            return position;
+        }
+    }
+
+    private void drain() {
+        List<PurchaseRow> batch = new ArrayList<>(batchSize);
+        while (running) {
+            if (!writeNext(batch)) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        // Остановка: дописываем то, что уже сброшено на диск, пока БД отвечает.
+        while (writeNext(batch)) {
+            // следующая пачка
+        }
+    }
+
+    // Записывает одну пачку; false — писать нечего или запись не удалась.
+    private boolean writeNext(List<PurchaseRow> batch) {
+        long from = consumed.get();
+        long available = published.get();
+        long durable = journal.durablePosition();
+        long last = from;
+        long position = 0;
+        batch.clear();
+        while (last < available && batch.size() < batchSize) {
+            Slot slot = ring[(int) (last & mask)];
+            if (slot.position > durable) {
+                break; // ещё не на диске: подтверждения клиенту не было, в БД такой покупке рано
+            }
+            batch.add(slot.purchase);
+            position = slot.position;
+            last++;
+        }
+        if (batch.isEmpty()) {
+            if (last < available) {
+                awaitDurable(ring[(int) (last & mask)].position);
+            }
+            return false;
+        }
+        try {
+            // Удержания снимаются один раз: после неудачного checkpoint та же пачка пишется снова, но уже без них.
+            Map<UUID, Money> amounts = new HashMap<>();
+            for (long sequence = Math.max(from, settled); sequence < last; sequence++) {
+                PurchaseRow purchase = batch.get((int) (sequence - from));
+                amounts.merge(purchase.getWalletId(), Money.of(purchase.getAmount()), Money::plus);
+            }
+            ledger.settle(amounts, () -> write(batch));
+            settled = Math.max(settled, last);
+            journal.checkpoint(position);
+        } catch (RuntimeException | IOException e) {
+            log.error("Failed to write {} purchases from the journal, retrying", batch.size(), e);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RETRY_DELAY_MS));
+            return false;
+        }
+        for (long sequence = from; sequence < last; sequence++) {
+            ring[(int) (sequence & mask)].purchase = null; // не держим покупку до следующего круга
+        }
+        consumed.set(last);
+        return true;
+    }
+
+    // Обычно журнал сбрасывают сами ожидающие запросы; сами сбрасываем, если выложивший покупку поток не дошёл до force.
+    private void awaitDurable(long position) {
+        try {
+            journal.awaitDurable(position);
+        } catch (UncheckedIOException e) {
+            log.error("Purchase journal failed, unsynced purchases stay out of the database", e);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RETRY_DELAY_MS));
+        }
+    }
+
+    private void write(List<PurchaseRow> batch) {
+        transactionTemplate.executeWithoutResult(status ->
+                purchaseBatchRepository.debitWallets(purchaseBatchRepository.insertMissing(batch)));
+    }
+
+    // Только движок с балансами в памяти: в режиме ledger списание — та же синхронная транзакция в БД на покупку.
+    private static ShardedLedgerEngine requireLedger(BalanceLedger ledger) {
+        if (!(ledger instanceof ShardedLedgerEngine)) {
+            throw new IllegalStateException("wallet.purchase.mode=async needs wallet.engine.mode=sharded");
+        }
+        return (ShardedLedgerEngine) ledger;
+    }
+
+    private static final class Slot {
+        private PurchaseRow purchase;
+        private long position; // конец записи в журнале
+    }
+}
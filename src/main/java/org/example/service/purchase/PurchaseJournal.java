@@ -0,0 +1,305 @@
+package org.example.service.purchase;
+
+import org.example.dto.PurchaseView;
+import org.example.entity.Money;
+import org.example.repository.PurchaseBatchRepository.PurchaseRow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Локальный журнал покупок (write-ahead log) в файлах, отображённых в память.
+ * Журнал — последовательность сегментов фиксированного размера; файл сегмента назван позицией его начала,
+ * так что позиция записи — сквозное смещение от начала журнала. Запись: длина, CRC32C и сама покупка;
+ * недописанная при сбое запись не проходит проверку CRC и считается концом журнала.
+ * <p>
+ * Запись становится надёжной после force() отображения: awaitDurable сбрасывает всё накопленное одним вызовом,
+ * поэтому ожидающие параллельно потоки разделяют один сброс. checkpoint — позиция, до которой покупки уже в БД;
+ * она хранится в файле checkpoint, а сегменты целиком до неё удаляются. Перед первой записью журнал обязан
+ * проиграть хвост после checkpoint (replay); новые записи идут в новый сегмент.
+ */
+public final class PurchaseJournal implements Closeable {
+    static final int HEADER_BYTES = 8; // длина и CRC32C
+    // Фиксированная часть записи: id, кошелёк, тип, сумма в копейках, время, длина адреса магазина.
+    private static final int FIXED_BYTES = 16 + 16 + 1 + 8 + 8 + 4 + 4;
+    static final int MAX_STORE_BYTES = 4096;
+    private static final String SUFFIX = ".wal";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FileChannel checkpointChannel;
+    private final ByteBuffer checkpointBuffer = ByteBuffer.allocate(Long.BYTES);
+    private final long checkpoint; // из файла при открытии: с этой позиции replay читает журнал
+    private final Deque<Segment> closed = new ArrayDeque<>(); // сегменты до текущего, по возрастанию начала
+    private final ByteBuffer encoded = ByteBuffer.allocate(FIXED_BYTES + MAX_STORE_BYTES);
+    private final CRC32C crc = new CRC32C();
+    private final AtomicLong durable = new AtomicLong();
+    private final Object forceLock = new Object();
+
+    private Segment current; // null до replay
+    private long written; // сквозная позиция конца последней записи
+    private volatile IOException failure; // после ошибки ввода-вывода журнал больше не принимает записи
+
+    public PurchaseJournal(Path directory, int segmentBytes) throws IOException {
+        if (segmentBytes < HEADER_BYTES + FIXED_BYTES + MAX_STORE_BYTES) {
+            throw new IllegalArgumentException("Journal segment is too small for a record: " + segmentBytes);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.checkpointChannel = FileChannel.open(directory.resolve("checkpoint"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        checkpoint = checkpointChannel.read(checkpointBuffer, 0) == Long.BYTES ? checkpointBuffer.getLong(0) : 0;
+        List<Long> starts = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                starts.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+            }
+        }
+        starts.sort(null);
+        for (long start : starts) {
+            closed.add(new Segment(start, segmentFile(start), null, null));
+        }
+    }
+
+    // Отдаёт пачками покупки, записанные после checkpoint, и открывает новый сегмент для записи.
+    // Хвост, оборванный сбоем, пропускается; какие из отданных покупок уже есть в БД, журнал не знает.
+    public synchronized void replay(int batchSize, Consumer<List<PurchaseRow>> sink) throws IOException {
+        if (current != null) {
+            throw new IllegalStateException("Journal is already replayed");
+        }
+        long next = 0;
+        List<PurchaseRow> batch = new ArrayList<>(batchSize);
+        for (Segment segment : closed) {
+            long size = Files.size(segment.file);
+            next = Math.max(next, segment.start + size);
+            if (segment.start + size <= checkpoint) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                buffer.position((int) Math.max(0, checkpoint - segment.start));
+                PurchaseRow row;
+                while ((row = read(buffer)) != null) {
+                    batch.add(row);
+                    if (batch.size() == batchSize) {
+                        sink.accept(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+        }
+        // Новый сегмент начинается за всеми старыми: недописанный хвост никогда не перезаписывается.
+        current = openSegment(next);
+        written = next;
+        durable.set(next);
+        checkpoint(next);
+    }
+
+    // Дописывает покупку и возвращает позицию конца записи; надёжной она становится после awaitDurable.
+    public synchronized long append(PurchaseRow row) {
+        if (current == null) {
+            throw new IllegalStateException("Journal must be replayed before appending");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Purchase journal failed", failure);
+        }
+        encode(row);
+        int length = encoded.remaining();
+        try {
+            if (written - current.start + HEADER_BYTES + length > segmentBytes) {
+                roll();
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException(e);
+        }
+        crc.reset();
+        crc.update(encoded.duplicate());
+        MappedByteBuffer buffer = current.buffer;
+        buffer.position((int) (written - current.start));
+        buffer.putInt(length).putInt((int) crc.getValue()).put(encoded);
+        written += HEADER_BYTES + length;
+        return written;
+    }
+
+    // Ждёт, пока журнал до position сброшен на диск. Один force() покрывает все записи, сделанные к его началу.
+    public void awaitDurable(long position) {
+        if (durable.get() >= position) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (durable.get() >= position) {
+                return; // пока ждали, сбросил другой поток
+            }
+            MappedByteBuffer buffer;
+            long target;
+            synchronized (this) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Purchase journal failed", failure);
+                }
+                buffer = current.buffer;
+                target = written;
+            }
+            try {
+                buffer.force();
+            } catch (UncheckedIOException e) {
+                failure = e.getCause();
+                throw e;
+            }
+            durable.accumulateAndGet(target, Math::max);
+        }
+    }
+
+    // Позиция, до которой журнал гарантированно на диске.
+    public long durablePosition() {
+        return durable.get();
+    }
+
+    // Покупки до position записаны в БД: запоминаем это и удаляем сегменты, которые целиком до неё.
+    // Файл сбрасывается вне блокировки журнала, чтобы не задерживать запись новых покупок.
+    public void checkpoint(long position) throws IOException {
+        synchronized (checkpointBuffer) {
+            checkpointBuffer.clear();
+            checkpointBuffer.putLong(0, position);
+            checkpointChannel.write(checkpointBuffer, 0);
+            checkpointChannel.force(false);
+        }
+        List<Segment> applied = new ArrayList<>();
+        synchronized (this) {
+            while (!closed.isEmpty() && closed.peekFirst().start + segmentBytes <= position) {
+                applied.add(closed.pollFirst());
+            }
+        }
+        for (Segment segment : applied) {
+            if (segment.channel != null) {
+                segment.channel.close();
+            }
+            Files.deleteIfExists(segment.file);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (current != null) {
+            if (failure == null) {
+                current.buffer.force();
+            }
+            current.channel.close();
+        }
+        for (Segment segment : closed) {
+            if (segment.channel != null) {
+                segment.channel.close();
+            }
+        }
+        checkpointChannel.close();
+    }
+
+    // Текущий сегмент заполнен: сбрасываем его и открываем следующий. Записи старого сегмента становятся надёжными.
+    private void roll() throws IOException {
+        current.buffer.force();
+        durable.accumulateAndGet(written, Math::max);
+        closed.addLast(current);
+        current = openSegment(current.start + segmentBytes);
+        written = current.start;
+    }
+
+    private Segment openSegment(long start) throws IOException {
+        Path file = segmentFile(start);
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Отображение заданного размера само растягивает файл; незаписанная часть читается нулями — концом журнала.
+        return new Segment(start, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+    }
+
+    private Path segmentFile(long start) {
+        return directory.resolve(String.format("%020d", start) + SUFFIX);
+    }
+
+    private void encode(PurchaseRow row) {
+        byte[] store = row.getStore() == null ? null : row.getStore().getBytes(StandardCharsets.UTF_8);
+        if (store != null && store.length > MAX_STORE_BYTES) {
+            throw new IllegalArgumentException("Store is longer than " + MAX_STORE_BYTES + " bytes");
+        }
+        encoded.clear();
+        encoded.putLong(row.getId().getMostSignificantBits()).putLong(row.getId().getLeastSignificantBits())
+                .putLong(row.getWalletId().getMostSignificantBits()).putLong(row.getWalletId().getLeastSignificantBits())
+                .put((byte) row.getType().ordinal())
+                .putLong(Money.of(row.getAmount()).minorUnits())
+                .putLong(row.getCreatedAt().getEpochSecond()).putInt(row.getCreatedAt().getNano())
+                .putInt(store == null ? -1 : store.length);
+        if (store != null) {
+            encoded.put(store);
+        }
+        encoded.flip();
+    }
+
+    // Следующая запись или null в конце сегмента: нули, недописанная запись или несовпадение CRC.
+    private PurchaseRow read(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_BYTES) {
+            return null;
+        }
+        int length = buffer.getInt(buffer.position());
+        if (length < FIXED_BYTES || length > buffer.remaining() - HEADER_BYTES) {
+            return null;
+        }
+        int expected = buffer.getInt(buffer.position() + Integer.BYTES);
+        ByteBuffer record = buffer.duplicate();
+        record.position(buffer.position() + HEADER_BYTES).limit(buffer.position() + HEADER_BYTES + length);
+        crc.reset();
+        crc.update(record.duplicate());
+        if ((int) crc.getValue() != expected) {
+            return null;
+        }
+        buffer.position(record.limit());
+        UUID id = new UUID(record.getLong(), record.getLong());
+        UUID walletId = new UUID(record.getLong(), record.getLong());
+        PurchaseView.Type type = PurchaseView.Type.values()[record.get()];
+        BigDecimal amount = BigDecimal.valueOf(record.getLong(), Money.SCALE);
+        Instant createdAt = Instant.ofEpochSecond(record.getLong(), record.getInt());
+        int storeLength = record.getInt();
+        String store = null;
+        if (storeLength >= 0) {
+            byte[] bytes = new byte[storeLength];
+            record.get(bytes);
+            store = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new PurchaseRow(id, walletId, type, amount, store, createdAt);
+    }
+
+    private static final class Segment {
+        private final long start;
+        private final Path file;
+        private final FileChannel channel; // null у сегментов, оставшихся от прошлого запуска
+        private final MappedByteBuffer buffer;
+
+        private Segment(long start, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.start = start;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.example.service.purchase;
+
+import org.example.repository.SpendAggregateRepository;
+import org.example.service.shard.WalletShards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пересчёт агрегатов трат (wallet_spend) по таблицам покупок — после изменения схемы агрегатов или способа подсчёта.
+ * Кошельки идут частями по wallet.spend.rebuild.chunk-size в порядке id, части пересчитываются параллельно
+ * в wallet.spend.rebuild.threads потоков. У каждой части своя короткая транзакция: пересчёт не держит одну длинную
+ * транзакцию на всю таблицу (она задерживала бы vacuum) и блокирует кошельки части лишь на время её пересчёта.
+ * С wallet.spend.rebuild.on-startup=true пересчёт запускается в фоне после старта приложения.
+ * <p>
+ * Покупки режима database блокируют кошелёк и ждут пересчёта его части. Движки без блокировки строки кошелька
+ * (wallet.engine.mode=sharded) и асинхронный журнал покупок её не ждут: в этих режимах пересчитывают при остановленном
+ * приёме покупок, иначе покупка, вставленная во время пересчёта части, может быть учтена дважды или не учтена.
+ */
+@Component
+public class SpendAggregateRebuilder {
+    private static final Logger log = LoggerFactory.getLogger(SpendAggregateRebuilder.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SpendAggregateRepository spendRepository;
+    private final TransactionTemplate transaction;
+    private final int threads;
+    private final int chunkSize;
+    private final boolean onStartup;
+
+    // Шарды кошельков (wallet.sharding.enabled=true): каждый шард пересчитывается по своим кошелькам.
+    @Autowired(required = false)
+    private WalletShards shards;
+
+    @Autowired
+    public SpendAggregateRebuilder(JdbcTemplate jdbcTemplate,
+                                   SpendAggregateRepository spendRepository,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${wallet.spend.rebuild.threads:4}") int threads,
+                                   @Value("${wallet.spend.rebuild.chunk-size:500}") int chunkSize,
+                                   @Value("${wallet.spend.rebuild.on-startup:false}") boolean onStartup) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.spendRepository = spendRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.onStartup = onStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (!onStartup) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                log.info("Rebuilt spend aggregates of {} wallets", rebuild());
+            } catch (RuntimeException e) {
+                log.error("Spend aggregate rebuild failed", e);
+            }
+        }, "spend-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Пересчитывает агрегаты всех кошельков; возвращает число кошельков.
+    public int rebuild() {
+        AtomicInteger names = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "spend-rebuild-" + names.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            int wallets = 0;
+            for (int shard = 0; shard < (shards == null ? 1 : shards.getShardCount()); shard++) {
+                wallets += rebuild(shard, workers);
+            }
+            return wallets;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private int rebuild(int shard, ExecutorService workers) {
+        // Читающий id поток опережает пересчёт не больше чем на threads частей: в памяти — лишь они.
+        Deque<Future<?>> pending = new ArrayDeque<>();
+        int wallets = 0;
+        UUID after = null;
+        List<UUID> chunk;
+        do {
+            try (WalletShards.Scope scope = enter(shard)) {
+                chunk = page(after);
+            }
+            if (chunk.isEmpty()) {
+                break;
+            }
+            List<UUID> walletIds = chunk;
+            pending.add(workers.submit(() -> {
+                try (WalletShards.Scope scope = enter(shard)) {
+                    transaction.executeWithoutResult(status -> spendRepository.rebuild(walletIds));
+                }
+            }));
+            wallets += chunk.size();
+            after = chunk.get(chunk.size() - 1);
+            while (pending.size() > threads) {
+                await(pending.poll());
+            }
+        } while (chunk.size() == chunkSize);
+        while (!pending.isEmpty()) {
+            await(pending.poll());
+        }
+        return wallets;
+    }
+
+    // null без шардирования: try-with-resources пропускает закрытие null-ресурса.
+    private WalletShards.Scope enter(int shard) {
+        return shards == null ? null : WalletShards.enter(shard);
+    }
+
+    // Следующая часть id кошельков после after (null — первая).
+    private List<UUID> page(UUID after) {
+        if (after == null) {
+            return jdbcTemplate.queryForList("SELECT id FROM wallet ORDER BY id LIMIT " + chunkSize, UUID.class);
+        }
+        return jdbcTemplate.queryForList("SELECT id FROM wallet WHERE id > ? ORDER BY id LIMIT " + chunkSize, UUID.class, after);
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rebuilding spend aggregates", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+        }
+    }
+}
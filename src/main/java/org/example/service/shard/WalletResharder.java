@@ -0,0 +1,205 @@
+package org.example.service.shard;
+
+import org.example.entity.WalletPlacement;
+import org.example.exception.WalletNotFoundException;
+import org.example.repository.WalletPlacementRepository;
+import org.example.service.WalletBalanceCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Перенос кошельков между шардами без остановки приложения.
+ * <p>
+ * Строка кошелька в старом шарде блокируется (FOR UPDATE) до конца переноса: операции с кошельком ждут, а не
+ * пишут в уже скопированные данные. Под блокировкой кошелёк с покупками и агрегатами трат копируется в новый шард
+ * (отдельная транзакция, с commit), справочник wallet_placement обновляется, и только затем строки старого шарда удаляются.
+ * Клиент кошелька копируется в новый шард, если его там нет: шард, подключённый после регистрации клиента, его копии не имеет.
+ * Дождавшиеся блокировки операции не находят кошелёк и повторяются в новом шарде (WalletShards.onWallet).
+ * Чтения без блокировки до удаления видят в старом шарде то же, что скопировано.
+ * <p>
+ * Оборванный перенос безопасно повторить: до обновления справочника кошелёк остаётся в старом шарде, а остатки
+ * прошлой попытки в новом шарде удаляются перед копированием.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.sharding.enabled", havingValue = "true")
+public class WalletResharder {
+    private static final Logger log = LoggerFactory.getLogger(WalletResharder.class);
+    // Строки кошелька в других таблицах: покупки и агрегаты трат.
+    private static final String[] WALLET_TABLES = {"online_purchase", "offline_purchase", "wallet_spend"};
+    private static final int PAGE_SIZE = 500;
+
+    private final WalletShards shards;
+    private final WalletPlacementRepository placementRepository;
+    private final WalletBalanceCache balanceCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    // Новый шард и справочник пишутся своими транзакциями, пока транзакция старого шарда держит блокировку.
+    private final TransactionTemplate separateTransaction;
+
+    @Autowired
+    public WalletResharder(WalletShards shards, WalletPlacementRepository placementRepository, WalletBalanceCache balanceCache,
+                           JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.shards = shards;
+        this.placementRepository = placementRepository;
+        this.balanceCache = balanceCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.separateTransaction = new TransactionTemplate(transactionManager);
+        separateTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // Переносит кошелёк с покупками и агрегатами трат в шард target; кошелёк уже там — ничего не делает.
+    public void move(UUID walletId, int target) throws WalletNotFoundException {
+        if (target < 0 || target >= shards.getShardCount()) {
+            throw new IllegalArgumentException("No shard " + target);
+        }
+        int source = shards.shardOf(walletId);
+        if (source == target) {
+            return;
+        }
+        boolean moved;
+        try (WalletShards.Scope scope = WalletShards.enter(source)) {
+            moved = Boolean.TRUE.equals(transaction.execute(status -> copyAndDelete(walletId, target)));
+        }
+        if (!moved) {
+            throw new WalletNotFoundException(walletId);
+        }
+        balanceCache.invalidate(walletId);
+        log.info("Moved wallet {} from shard {} to shard {}", walletId, source, target);
+    }
+
+    // Переносит кошельки, чей шард по хэшу среди hashShards шардов не тот, где они лежат. Порядок действий при
+    // добавлении шарда: подключить его в wallet.sharding.shards, вызвать rebalance(новое число шардов), затем
+    // поднять wallet.sharding.hash-shards до него — при запуске с ним записи о перенесённых кошельках удаляются
+    // (WalletShards). Возвращает число перенесённых кошельков.
+    public int rebalance(int hashShards) {
+        if (hashShards < 1 || hashShards > shards.getShardCount()) {
+            throw new IllegalArgumentException("hashShards must be within 1.." + shards.getShardCount() + ": " + hashShards);
+        }
+        int moved = 0;
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            UUID after = null;
+            List<UUID> page;
+            do {
+                try (WalletShards.Scope scope = WalletShards.enter(shard)) {
+                    page = page(after);
+                }
+                for (UUID walletId : page) {
+                    int target = WalletShards.hashShard(walletId, hashShards);
+                    if (target == shard || shards.shardOf(walletId) != shard) {
+                        continue; // уже на месте или строка — остаток оборванного переноса
+                    }
+                    try {
+                        move(walletId, target);
+                        moved++;
+                    } catch (WalletNotFoundException e) {
+                        // кошелёк удалён или перенесён другим экземпляром — переносить нечего
+                    }
+                }
+                after = page.isEmpty() ? after : page.get(page.size() - 1);
+            } while (page.size() == PAGE_SIZE);
+        }
+        return moved;
+    }
+
+    // В транзакции старого шарда: false, если кошелька в нём нет.
+    private boolean copyAndDelete(UUID walletId, int target) {
+        List<Map<String, Object>> wallet = jdbcTemplate.queryForList("SELECT * FROM wallet WHERE id = ? FOR UPDATE", walletId);
+        if (wallet.isEmpty()) {
+            return false;
+        }
+        Object clientId = wallet.get(0).get("client_id");
+        List<Map<String, Object>> client = clientId == null ? Collections.<Map<String, Object>>emptyList()
+                : jdbcTemplate.queryForList("SELECT * FROM client WHERE id = ?", clientId);
+        List<List<Map<String, Object>>> rows = new ArrayList<>();
+        for (String table : WALLET_TABLES) {
+            rows.add(jdbcTemplate.queryForList("SELECT * FROM " + table + " WHERE wallet_id = ?", walletId));
+        }
+        try (WalletShards.Scope scope = WalletShards.enter(target)) {
+            separateTransaction.executeWithoutResult(status -> {
+                delete(walletId); // остатки оборванной попытки
+                insertMissingClient(client); // до кошелька: на wallet.client_id внешний ключ
+                insert("wallet", wallet);
+                for (int i = 0; i < WALLET_TABLES.length; i++) {
+                    insert(WALLET_TABLES[i], rows.get(i));
+                }
+            });
+        }
+        try (WalletShards.Scope scope = WalletShards.enter(WalletShards.HOME)) {
+            separateTransaction.executeWithoutResult(status -> {
+                if (shards.needsPlacement(walletId, target)) {
+                    placementRepository.save(new WalletPlacement(walletId, target));
+                } else {
+                    placementRepository.deleteById(walletId); // вернулся в шард по хэшу: запись не нужна
+                }
+            });
+        }
+        shards.place(walletId, target);
+        delete(walletId);
+        return true;
+    }
+
+    private void delete(UUID walletId) {
+        for (String table : WALLET_TABLES) {
+            jdbcTemplate.update("DELETE FROM " + table + " WHERE wallet_id = ?", walletId);
+        }
+        jdbcTemplate.update("DELETE FROM wallet WHERE id = ?", walletId);
+    }
+
+    // Копия клиента, если её ещё нет в шарде (как ProvisioningRepository.insertMissingClients): копии клиента
+    // во всех шардах одинаковы, поэтому существующая не перезаписывается.
+    private void insertMissingClient(List<Map<String, Object>> client) {
+        if (client.isEmpty()) {
+            return;
+        }
+        Map<String, Object> row = client.get(0);
+        List<String> columns = new ArrayList<>(row.keySet());
+        Object[] values = new Object[columns.size() + 1];
+        for (int i = 0; i < columns.size(); i++) {
+            values[i] = row.get(columns.get(i));
+        }
+        values[columns.size()] = row.get("id");
+        jdbcTemplate.update("INSERT INTO client (" + String.join(", ", columns) + ") SELECT "
+                + String.join(", ", Collections.nCopies(columns.size(), "?")) + " WHERE NOT EXISTS (SELECT 1 FROM client WHERE id = ?)", values);
+    }
+
+    // Строки копируются как есть, по именам столбцов: перенос не зависит от набора полей сущностей.
+    private void insert(String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<String> columns = new ArrayList<>(rows.get(0).keySet());
+        String sql = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+                + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+        List<Object[]> values = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Object[] value = new Object[columns.size()];
+            for (int i = 0; i < value.length; i++) {
+                value[i] = row.get(columns.get(i));
+            }
+            values.add(value);
+        }
+        jdbcTemplate.batchUpdate(sql, values);
+    }
+
+    // Следующая страница id кошельков шарда после after (null — первая).
+    private List<UUID> page(UUID after) {
+        if (after == null) {
+            return jdbcTemplate.queryForList("SELECT id FROM wallet ORDER BY id LIMIT " + PAGE_SIZE, UUID.class);
+        }
+        return jdbcTemplate.queryForList("SELECT id FROM wallet WHERE id > ? ORDER BY id LIMIT " + PAGE_SIZE, UUID.class, after);
+    }
+}
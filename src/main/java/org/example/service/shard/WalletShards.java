@@ -0,0 +1,238 @@
+package org.example.service.shard;
+
+import jakarta.annotation.PreDestroy;
+import org.example.config.ShardRoutingDataSource;
+import org.example.entity.WalletPlacement;
+import org.example.exception.WalletNotFoundException;
+import org.example.repository.WalletPlacementRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Шард кошелька (wallet.sharding.enabled=true). Кошелёк и его покупки лежат в одном шарде: по умолчанию — в шарде
+ * по jump consistent hash от id среди первых hash-shards шардов (при добавлении шарда к нему переезжает лишь 1/n
+ * кошельков), а перенесённые решардингом — в шарде из справочника wallet_placement первого шарда.
+ * Справочник целиком держится в памяти: в нём только кошельки, лежащие не в шарде по хэшу. Когда после rebalance
+ * поднимают hash-shards, записи о перенесённых кошельках совпадают с хэшем и удаляются при запуске, а перенос
+ * кошелька обратно в шард по хэшу удаляет свою запись сразу.
+ * <p>
+ * Шард выбирается для потока до начала транзакции (enter) и действует до закрытия Scope. Если кошелька в шарде нет,
+ * его мог перенести другой экземпляр: onWallet перечитывает справочник и повторяет работу в новом шарде.
+ * <p>
+ * Балансы в памяти движков и асинхронный журнал покупок шарды не учитывают, поэтому шардирование работает только с
+ * wallet.engine.mode=database и wallet.purchase.mode=sync.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.sharding.enabled", havingValue = "true")
+public class WalletShards {
+    // Первый шард: справочник переносов и основная копия клиентов; в него идут запросы без выбранного шарда.
+    public static final int HOME = 0;
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private final WalletPlacementRepository placementRepository;
+    private final int shardCount;
+    private final int hashShards;
+    private final Map<UUID, Integer> placements = new ConcurrentHashMap<>();
+    // Запросы по всем шардам: по потоку на шард, чтобы ответ приходил за время самого медленного шарда, а не суммы.
+    private final ExecutorService fanOut;
+
+    @Autowired
+    public WalletShards(DataSource dataSource,
+                        WalletPlacementRepository placementRepository,
+                        @Value("${wallet.sharding.hash-shards:0}") int hashShards,
+                        @Value("${wallet.engine.mode:database}") String engineMode,
+                        @Value("${wallet.purchase.mode:sync}") String purchaseMode) throws SQLException {
+        this(dataSource.unwrap(ShardRoutingDataSource.class).getShardCount(), hashShards, placementRepository);
+        if (!"database".equals(engineMode) || !"sync".equals(purchaseMode)) {
+            throw new IllegalStateException("wallet.sharding needs wallet.engine.mode=database and wallet.purchase.mode=sync");
+        }
+    }
+
+    // hashShards = 0 — все шарды.
+    public WalletShards(int shardCount, int hashShards, WalletPlacementRepository placementRepository) {
+        if (hashShards < 0 || hashShards > shardCount) {
+            throw new IllegalArgumentException("wallet.sharding.hash-shards must be within 1.." + shardCount + ": " + hashShards);
+        }
+        this.placementRepository = placementRepository;
+        this.shardCount = shardCount;
+        this.hashShards = hashShards == 0 ? shardCount : hashShards;
+        AtomicInteger threads = new AtomicInteger();
+        this.fanOut = Executors.newFixedThreadPool(shardCount, task -> {
+            Thread thread = new Thread(task, "shard-query-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<UUID> redundant = new ArrayList<>();
+        try (Scope scope = enter(HOME)) {
+            for (WalletPlacement placement : placementRepository.findAll()) {
+                if (placement.getShard() == hashShard(placement.getWalletId(), this.hashShards)) {
+                    redundant.add(placement.getWalletId());
+                } else {
+                    placements.put(placement.getWalletId(), placement.getShard());
+                }
+            }
+            if (!redundant.isEmpty()) {
+                placementRepository.deleteAllByIdInBatch(redundant);
+            }
+        }
+    }
+
+    // Шард, выбранный в текущем потоке, или null — тогда первый шард.
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    // Выбирает шард для текущего потока; закрытие Scope возвращает прежний выбор.
+    public static Scope enter(int shard) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        return new Scope(previous);
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int shardOf(UUID walletId) {
+        Integer moved = placements.get(walletId);
+        return moved != null ? moved : hashShard(walletId, hashShards);
+    }
+
+    // Нужна ли кошельку в шарде shard запись в справочнике, или его и так найдут по хэшу.
+    public boolean needsPlacement(UUID walletId, int shard) {
+        return shard != hashShard(walletId, hashShards);
+    }
+
+    public Scope enterShardOf(UUID walletId) {
+        return enter(shardOf(walletId));
+    }
+
+    // Выполняет работу в шарде кошелька. WalletNotFoundException приходит обёрнутым в RuntimeException, как из
+    // транзакций WalletService: если кошелёк тем временем перенесли в другой шард, работа повторяется там.
+    public <T> T onWallet(UUID walletId, Supplier<T> work) {
+        while (true) {
+            int shard = shardOf(walletId);
+            try (Scope scope = enter(shard)) {
+                return work.get();
+            } catch (RuntimeException e) {
+                if (!(e.getCause() instanceof WalletNotFoundException) || !relocated(walletId, shard)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // Выполняет запрос в каждом шарде параллельно; результаты — в порядке номеров шардов.
+    public <T> List<T> onEachShard(IntFunction<T> query) {
+        List<Future<T>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int target = shard;
+            futures.add(fanOut.submit(() -> {
+                try (Scope scope = enter(target)) {
+                    return query.apply(target);
+                }
+            }));
+        }
+        List<T> results = new ArrayList<>(shardCount);
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying shards", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    // Запоминает новый шард кошелька; справочник в БД к этому моменту уже обновлён (WalletResharder).
+    public void place(UUID walletId, int shard) {
+        if (needsPlacement(walletId, shard)) {
+            placements.put(walletId, shard);
+        } else {
+            placements.remove(walletId);
+        }
+    }
+
+    // Перечитывает шард кошелька из справочника; true, если он уже не тот, где кошелька не нашлось.
+    public boolean relocated(UUID walletId, int shard) {
+        try (Scope scope = enter(HOME)) {
+            Optional<WalletPlacement> placement = placementRepository.findById(walletId);
+            if (placement.isPresent()) {
+                placements.put(walletId, placement.get().getShard());
+            } else {
+                placements.remove(walletId); // перенесён обратно в шард по хэшу
+            }
+        }
+        return shardOf(walletId) != shard;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanOut.shutdownNow();
+    }
+
+    // Jump consistent hash (Lamping, Veach): при росте buckets на единицу ключ либо остаётся, либо уходит в новый шард.
+    public static int hashShard(UUID walletId, int buckets) {
+        long key = mix(walletId.getMostSignificantBits() ^ walletId.getLeastSignificantBits());
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    // Финализатор MurmurHash3: у UUIDv7 старшие биты — время, без перемешивания соседние id попадали бы в один шард.
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    public static final class Scope implements AutoCloseable {
+        private final Integer previous;
+
+        private Scope(Integer previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
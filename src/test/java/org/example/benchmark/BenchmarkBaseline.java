@@ -0,0 +1,42 @@
+package org.example.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Эталонный прогон WalletServiceBenchmark: для каждого числа потоков из THREADS — все методы и все skew,
+ * с профилировщиком gc (gc.alloc.rate и gc.alloc.rate.norm — байт на операцию). Результаты — JSON
+ * в target/jmh-baseline/threads-N.json, их и прикладываем к предложениям по производительности.
+ * Запуск: mvn -Pbaseline test-compile exec:exec; в jmh.baseline.args — обычные параметры JMH
+ * (например, "-wi 1 -i 2" или "-p skew=hot").
+ */
+public final class BenchmarkBaseline {
+    private static final int[] THREADS = {1, 4, 16, 64};
+
+    private BenchmarkBaseline() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        File output = new File("target/jmh-baseline");
+        output.mkdirs();
+        for (int threads : THREADS) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .include(WalletServiceBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(output, "threads-" + threads + ".json").getPath());
+            new Runner(options.build()).run();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.benchmark;
+
+/**
+ * Общие настройки встроенной H2 для бенчмарков и генератора нагрузки, поднимающих контекст приложения.
+ * Передаются как аргументы командной строки, чтобы перекрыть application.properties.
+ */
+public final class BenchmarkDatabase {
+
+    private BenchmarkDatabase() {
+    }
+
+    public static String[] h2Arguments(String name, String... extra) {
+        String[] common = {
+                "--spring.datasource.url=jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.show-sql=false",
+                "--spring.jpa.properties.hibernate.format_sql=false",
+                "--spring.jpa.hibernate.ddl-auto=create",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--logging.level.org.hibernate=OFF"
+        };
+        String[] arguments = new String[common.length + extra.length];
+        System.arraycopy(common, 0, arguments, 0, common.length);
+        for (int i = 0; i < extra.length; i++) {
+            arguments[common.length + i] = "--" + extra[i];
+        }
+        return arguments;
+    }
+}
@@ -0,0 +1,87 @@
+package org.example.benchmark;
+
+import org.example.App;
+import org.example.dto.WalletOperationRequest;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.example.repository.WalletRepository;
+import org.example.service.WalletService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение стратегий обновления баланса (wallet.concurrency.strategy) через WalletService.processOperation.
+ * walletCount = 1 — высокая конкуренция за одну строку, 1000 — низкая. Операция, отвергнутая из-за конфликта,
+ * повторяется, как повторил бы клиент: в замер попадают только успешные операции.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(16)
+public class ConcurrencyStrategyBenchmark {
+
+    @Param({"pessimistic", "optimistic", "atomic"})
+    public String strategy;
+
+    @Param({"1", "1000"})
+    public int walletCount;
+
+    private ConfigurableApplicationContext context;
+    private WalletService walletService;
+    private UUID[] wallets;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(App.class)
+                .web(WebApplicationType.NONE)
+                .run(BenchmarkDatabase.h2Arguments("strategy-" + strategy,
+                        "wallet.concurrency.strategy=" + strategy,
+                        "wallet.rate-limit.limit-for-period=1000000000"));
+        walletService = context.getBean(WalletService.class);
+        WalletRepository walletRepository = context.getBean(WalletRepository.class);
+        List<Wallet> created = new ArrayList<>(walletCount);
+        for (int i = 0; i < walletCount; i++) {
+            created.add(new Wallet(UUID.randomUUID(), Money.of(1_000_000), null, null));
+        }
+        walletRepository.saveAll(created);
+        wallets = new UUID[walletCount];
+        for (int i = 0; i < walletCount; i++) {
+            wallets[i] = created.get(i).getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void depositOrWithdraw() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UUID walletId = wallets[random.nextInt(wallets.length)];
+        WalletOperationRequest.OperationType type = random.nextBoolean()
+                ? WalletOperationRequest.OperationType.DEPOSIT
+                : WalletOperationRequest.OperationType.WITHDRAW;
+        WalletOperationRequest request = new WalletOperationRequest(walletId, type, Money.of(1));
+        while (true) {
+            try {
+                walletService.processOperation(request);
+                return;
+            } catch (ConcurrencyFailureException e) {
+                // Конфликт сериализации, взаимоблокировка или исчерпанные оптимистичные повторы.
+            }
+        }
+    }
+}
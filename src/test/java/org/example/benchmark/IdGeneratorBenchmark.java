@@ -0,0 +1,44 @@
+package org.example.benchmark;
+
+import org.example.service.id.IdGenerator;
+import org.example.service.id.RandomIdGenerator;
+import org.example.service.id.TimeOrderedIdGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Скорость генерации id из нескольких потоков: UUID.randomUUID() (общий SecureRandom) против UUIDv7
+ * на состоянии потока. Скорость вставки таких ключей в большую таблицу — в PurchaseKeyInsertBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    @Param({"random", "time-ordered"})
+    public String generator;
+
+    private IdGenerator ids;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ids = "random".equals(generator) ? new RandomIdGenerator() : new TimeOrderedIdGenerator();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public UUID oneThread() {
+        return ids.next();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public UUID eightThreads() {
+        return ids.next();
+    }
+}
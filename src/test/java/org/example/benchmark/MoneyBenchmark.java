@@ -0,0 +1,83 @@
+package org.example.benchmark;
+
+import org.example.entity.Money;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Горячий путь операции над балансом на BigDecimal и на Money: разбор суммы из запроса, проверка средств,
+ * списание или пополнение и вывод баланса строкой — как в WalletService и контроллере, без БД.
+ * Разница в мусоре видна с профилировщиком gc: mvn -Pbenchmark test-compile exec:exec -Djmh.args="Money -prof gc"
+ * (gc.alloc.rate.norm — байт на операцию).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class MoneyBenchmark {
+    private static final int AMOUNTS = 1024; // степень двойки: индекс по маске
+
+    private String[] amounts;
+    private int next;
+    private BigDecimal bigDecimalBalance;
+    private Money moneyBalance;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        amounts = new String[AMOUNTS];
+        for (int i = 0; i < AMOUNTS; i++) {
+            amounts[i] = BigDecimal.valueOf(ThreadLocalRandom.current().nextLong(1, 100_000_00), 2).toPlainString();
+        }
+        bigDecimalBalance = new BigDecimal("1000000000.00");
+        moneyBalance = Money.parse("1000000000.00");
+    }
+
+    @Benchmark
+    public String bigDecimal() {
+        String text = amounts[next++ & (AMOUNTS - 1)];
+        BigDecimal amount = new BigDecimal(text);
+        // Чётные — списания, нечётные — пополнения, чтобы баланс не уходил от исходного
+        if ((next & 1) == 0 && bigDecimalBalance.compareTo(amount) >= 0) {
+            bigDecimalBalance = bigDecimalBalance.subtract(amount);
+        } else {
+            bigDecimalBalance = bigDecimalBalance.add(amount);
+        }
+        return String.valueOf(bigDecimalBalance);
+    }
+
+    @Benchmark
+    public String money() {
+        String text = amounts[next++ & (AMOUNTS - 1)];
+        Money amount = Money.parse(text);
+        if ((next & 1) == 0 && !moneyBalance.isLessThan(amount)) {
+            moneyBalance = moneyBalance.minus(amount);
+        } else {
+            moneyBalance = moneyBalance.plus(amount);
+        }
+        return moneyBalance.toString();
+    }
+
+    // Без разбора и вывода: только проверка и арифметика, которые повторяются на каждой операции пачки.
+    @Benchmark
+    public BigDecimal bigDecimalArithmetic() {
+        BigDecimal amount = BigDecimal.valueOf(next++ & (AMOUNTS - 1), 2);
+        if ((next & 1) == 0 && bigDecimalBalance.compareTo(amount) >= 0) {
+            return bigDecimalBalance = bigDecimalBalance.subtract(amount);
+        }
+        return bigDecimalBalance = bigDecimalBalance.add(amount);
+    }
+
+    @Benchmark
+    public Money moneyArithmetic() {
+        Money amount = Money.ofMinor(next++ & (AMOUNTS - 1));
+        if ((next & 1) == 0 && !moneyBalance.isLessThan(amount)) {
+            return moneyBalance = moneyBalance.minus(amount);
+        }
+        return moneyBalance = moneyBalance.plus(amount);
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.benchmark;
+
+import org.example.App;
+import org.example.dto.WalletOperationRequest;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.example.repository.WalletRepository;
+import org.example.service.WalletBalanceCache;
+import org.example.service.engine.GroupCommitEngine;
+import org.example.service.engine.ShardedLedgerEngine;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение пропускной способности пополнений: SERIALIZABLE-транзакция с PESSIMISTIC_WRITE (текущий путь)
+ * против шардированного движка с балансами в памяти и групповой фиксации. Ограничитель запросов в замер не входит.
+ * walletCount = 1 — один горячий кошелёк, 1000 — нагрузка размазана по кошелькам.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(16)
+public class OperationEngineBenchmark {
+
+    @Param({"1", "1000"})
+    public int walletCount;
+
+    private ConfigurableApplicationContext context;
+    private ShardedLedgerEngine engine;
+    private GroupCommitEngine groupCommit;
+    private WalletRepository walletRepository;
+    private TransactionTemplate serializable;
+    private UUID[] lockedWallets;
+    private UUID[] engineWallets;
+    private UUID[] groupCommitWallets;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(App.class)
+                .web(WebApplicationType.NONE)
+                .run(BenchmarkDatabase.h2Arguments("engine", "wallet.engine.mode=sharded"));
+        engine = context.getBean(ShardedLedgerEngine.class);
+        walletRepository = context.getBean(WalletRepository.class);
+        PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+        groupCommit = new GroupCommitEngine(walletRepository, context.getBean(WalletBalanceCache.class), transactionManager, 2000, 256, 8);
+        serializable = new TransactionTemplate(transactionManager);
+        serializable.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+        // Отдельные наборы кошельков, чтобы сброс движка не пересекался с построчными блокировками.
+        lockedWallets = createWallets(walletCount);
+        engineWallets = createWallets(walletCount);
+        groupCommitWallets = createWallets(walletCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        groupCommit.shutdown();
+        context.close();
+    }
+
+    @Benchmark
+    public void databaseLock() {
+        UUID walletId = lockedWallets[ThreadLocalRandom.current().nextInt(lockedWallets.length)];
+        while (true) {
+            try {
+                serializable.executeWithoutResult(status -> {
+                    Wallet wallet = walletRepository.findByIdWithLock(walletId).orElseThrow(IllegalStateException::new);
+                    wallet.setBalance(wallet.getBalance().plus(Money.of(1)));
+                    walletRepository.save(wallet);
+                });
+                return;
+            } catch (ConcurrencyFailureException e) {
+                // Конфликт сериализации: клиент повторил бы запрос, считаем только успешные операции.
+            }
+        }
+    }
+
+    @Benchmark
+    public Money shardedEngine() throws Exception {
+        UUID walletId = engineWallets[ThreadLocalRandom.current().nextInt(engineWallets.length)];
+        return engine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(1)));
+    }
+
+    @Benchmark
+    public Money groupCommit() throws Exception {
+        UUID walletId = groupCommitWallets[ThreadLocalRandom.current().nextInt(groupCommitWallets.length)];
+        return groupCommit.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(1)));
+    }
+
+    private UUID[] createWallets(int count) {
+        List<Wallet> wallets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            wallets.add(new Wallet(UUID.randomUUID(), Money.ZERO, 0L, null));
+        }
+        walletRepository.saveAll(wallets);
+        UUID[] ids = new UUID[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = wallets.get(i).getId();
+        }
+        return ids;
+    }
+}
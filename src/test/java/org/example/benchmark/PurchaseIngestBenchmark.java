@@ -0,0 +1,85 @@
+package org.example.benchmark;
+
+import org.example.App;
+import org.example.dto.PurchaseRequest;
+import org.example.dto.PurchaseView;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.example.repository.WalletRepository;
+import org.example.service.WalletService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Скорость записи покупок в строках в секунду: по одной через addOnlinePurchase (findById, UPDATE кошелька и INSERT
+ * на каждую строку) против пакетного addPurchases (кошелёк списывается один раз на пачку, строки — JDBC batch).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(4)
+public class PurchaseIngestBenchmark {
+    private static final int BATCH_SIZE = 500;
+
+    @Param({"100"})
+    public int walletCount;
+
+    private ConfigurableApplicationContext context;
+    private WalletService walletService;
+    private UUID[] wallets;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(App.class)
+                .web(WebApplicationType.NONE)
+                .run(BenchmarkDatabase.h2Arguments("purchases",
+                        "spring.jpa.properties.hibernate.jdbc.batch_size=100",
+                        "spring.jpa.properties.hibernate.order_updates=true"));
+        walletService = context.getBean(WalletService.class);
+        WalletRepository walletRepository = context.getBean(WalletRepository.class);
+        List<Wallet> created = new ArrayList<>(walletCount);
+        for (int i = 0; i < walletCount; i++) {
+            created.add(new Wallet(UUID.randomUUID(), Money.of(1_000_000_000L), null, null));
+        }
+        walletRepository.saveAll(created);
+        wallets = new UUID[walletCount];
+        for (int i = 0; i < walletCount; i++) {
+            wallets[i] = created.get(i).getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object rowByRow() throws Exception {
+        UUID walletId = wallets[ThreadLocalRandom.current().nextInt(wallets.length)];
+        return walletService.addOnlinePurchase("shop.example", BigDecimal.ONE, walletId);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Object batched() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<PurchaseRequest> purchases = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            purchases.add(new PurchaseRequest(wallets[random.nextInt(wallets.length)],
+                    i % 2 == 0 ? PurchaseView.Type.ONLINE : PurchaseView.Type.OFFLINE, BigDecimal.ONE, "shop.example"));
+        }
+        return walletService.addPurchases(purchases);
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.benchmark;
+
+import org.example.App;
+import org.example.dto.PurchaseView;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.example.repository.PurchaseBatchRepository;
+import org.example.repository.WalletRepository;
+import org.example.service.id.IdGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Скорость вставки покупок в строках в секунду в уже большую таблицу online_purchase в зависимости от вида ключа:
+ * случайные UUID разбрасывают вставки по всему индексу первичного ключа, UUIDv7 дописываются в его правый край.
+ * Таблица заполняется ключами того же вида до замеров; H2 в памяти, поэтому разница отражает работу с B-деревом
+ * без дискового ввода-вывода и на Postgres будет больше.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(4)
+public class PurchaseKeyInsertBenchmark {
+    private static final int BATCH_SIZE = 500;
+
+    @Param({"random", "time-ordered"})
+    public String generator;
+
+    @Param({"1000000"})
+    public int existingRows;
+
+    private ConfigurableApplicationContext context;
+    private PurchaseBatchRepository purchaseBatchRepository;
+    private IdGenerator ids;
+    private UUID walletId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(App.class)
+                .web(WebApplicationType.NONE)
+                .run(BenchmarkDatabase.h2Arguments("keys-" + generator, "wallet.id.generator=" + generator));
+        purchaseBatchRepository = context.getBean(PurchaseBatchRepository.class);
+        ids = context.getBean(IdGenerator.class);
+        walletId = UUID.randomUUID();
+        context.getBean(WalletRepository.class).save(new Wallet(walletId, Money.ZERO, null, null));
+        for (int inserted = 0; inserted < existingRows; inserted += BATCH_SIZE) {
+            purchaseBatchRepository.insertAll(batch());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void insertBatch() {
+        purchaseBatchRepository.insertAll(batch());
+    }
+
+    private List<PurchaseBatchRepository.PurchaseRow> batch() {
+        Instant now = Instant.now();
+        List<PurchaseBatchRepository.PurchaseRow> rows = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            rows.add(new PurchaseBatchRepository.PurchaseRow(ids.next(), walletId, PurchaseView.Type.ONLINE,
+                    BigDecimal.ONE, "shop.example", now));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.benchmark;
+
+import org.example.App;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.example.repository.WalletRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Задержки HTTP API при перегрузке в двух режимах потоков: пул платформенных потоков Tomcat (200) против виртуальных
+ * потоков с перегородкой перед пулом соединений. 224 писателя пополняют один кошелёк (ждут блокировку строки и
+ * соединение), 16 читателей запрашивают закэшированные балансы других кошельков, которым БД не нужна.
+ * В платформенном режиме читатели стоят в очереди пула за писателями; в виртуальном ждут только писатели — у перегородки.
+ * Смотреть p0.99 в выводе SampleTime. Виртуальный режим требует JDK 21 (как в Docker-образе).
+ * <p>
+ * H2 работает внутри процесса и ждёт блокировок под монитором, прикрепляя виртуальный поток к потоку-носителю;
+ * носителей по умолчанию столько же, сколько ядер, поэтому на малом числе ядер их число поднято до 16.
+ * Драйвер Postgres и Hikari монитором не пользуются, в рабочем окружении это не требуется.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djdk.virtualThreadScheduler.parallelism=16")
+public class ThreadModeLatencyBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private String baseUrl;
+    private String depositBody;
+    private UUID[] readWallets;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        boolean virtual = "virtual".equals(threads);
+        if (virtual && Integer.parseInt(System.getProperty("java.specification.version").replaceFirst("^1\\.", "")) < 21) {
+            throw new IllegalStateException("Virtual threads need JDK 21+");
+        }
+        context = new SpringApplicationBuilder(App.class)
+                .web(WebApplicationType.SERVLET)
+                .run(BenchmarkDatabase.h2Arguments("threads-" + threads,
+                        "server.port=0",
+                        "spring.threads.virtual.enabled=" + virtual,
+                        "wallet.rate-limit.limit-for-period=1000000000",
+                        "wallet.balance-cache.expire-after-write-ms=600000",
+                        "wallet.db-bulkhead.max-wait-ms=60000"));
+        baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/v1/wallet";
+        WalletRepository walletRepository = context.getBean(WalletRepository.class);
+        UUID hotWallet = UUID.randomUUID();
+        walletRepository.save(new Wallet(hotWallet, Money.ZERO, null, null));
+        depositBody = "{\"walletId\":\"" + hotWallet + "\",\"operationType\":\"DEPOSIT\",\"amount\":1}";
+        readWallets = new UUID[100];
+        for (int i = 0; i < readWallets.length; i++) {
+            readWallets[i] = UUID.randomUUID();
+            walletRepository.save(new Wallet(readWallets[i], Money.of(10), null, null));
+        }
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        for (UUID walletId : readWallets) {
+            readBalance(walletId); // балансы читателей попадают в кэш до замеров
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Group("overload")
+    @GroupThreads(224)
+    public int deposit() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(depositBody))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Benchmark
+    @Group("overload")
+    @GroupThreads(16)
+    public int cachedRead() throws Exception {
+        return readBalance(readWallets[ThreadLocalRandom.current().nextInt(readWallets.length)]);
+    }
+
+    private int readBalance(UUID walletId) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/" + walletId)).GET().build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
@@ -0,0 +1,39 @@
+package org.example.benchmark;
+
+import org.example.load.ZipfDistribution;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Выбор кошелька для очередной операции с заданным перекосом нагрузки:
+ * uniform — все кошельки равновероятны, zipf — закон Ципфа с показателем 1 (k-й по популярности кошелёк
+ * выбирается в k раз реже первого), hot — все операции на один кошелёк.
+ */
+final class WalletPicker {
+    private final UUID[] wallets;
+    private final String skew;
+    private final ZipfDistribution zipf; // только для zipf
+
+    WalletPicker(UUID[] wallets, String skew) {
+        this.wallets = wallets;
+        this.skew = skew;
+        if ("zipf".equals(skew)) {
+            zipf = new ZipfDistribution(wallets.length, 1.0);
+        } else if ("uniform".equals(skew) || "hot".equals(skew)) {
+            zipf = null;
+        } else {
+            throw new IllegalArgumentException("Unknown skew: " + skew);
+        }
+    }
+
+    UUID next() {
+        if ("hot".equals(skew)) {
+            return wallets[0];
+        }
+        if (zipf == null) {
+            return wallets[ThreadLocalRandom.current().nextInt(wallets.length)];
+        }
+        return wallets[zipf.sample()];
+    }
+}
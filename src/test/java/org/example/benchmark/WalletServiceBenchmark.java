@@ -0,0 +1,110 @@
+package org.example.benchmark;
+
+import org.example.App;
+import org.example.dto.ClientDto;
+import org.example.dto.WalletOperationRequest;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.example.repository.WalletRepository;
+import org.example.service.WalletService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Общая точка отсчёта для горячих путей WalletService на встроенной H2 с настройками по умолчанию
+ * (пессимистичная стратегия, кэш балансов). Ограничитель запросов отключён высоким лимитом.
+ * skew задаёт распределение операций по кошелькам (см. WalletPicker). Число потоков перебирает BenchmarkBaseline
+ * (1–64, вместе со скоростью выделения памяти через -prof gc); при запуске напрямую — @Threads или -t.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(16)
+public class WalletServiceBenchmark {
+    private static final int WALLET_COUNT = 1000;
+
+    @Param({"uniform", "zipf", "hot"})
+    public String skew;
+
+    private ConfigurableApplicationContext context;
+    private WalletService walletService;
+    private WalletPicker picker;
+    private final AtomicLong clients = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(App.class)
+                .web(WebApplicationType.NONE)
+                .run(BenchmarkDatabase.h2Arguments("service-" + skew,
+                        "wallet.rate-limit.limit-for-period=1000000000",
+                        "wallet.db-bulkhead.max-wait-ms=60000"));
+        walletService = context.getBean(WalletService.class);
+        List<Wallet> created = new ArrayList<>(WALLET_COUNT);
+        for (int i = 0; i < WALLET_COUNT; i++) {
+            created.add(new Wallet(UUID.randomUUID(), Money.of(1_000_000_000_000L), null, null));
+        }
+        context.getBean(WalletRepository.class).saveAll(created);
+        UUID[] wallets = new UUID[WALLET_COUNT];
+        for (int i = 0; i < WALLET_COUNT; i++) {
+            wallets[i] = created.get(i).getId();
+        }
+        picker = new WalletPicker(wallets, skew);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void processOperation() throws Exception {
+        WalletOperationRequest.OperationType type = ThreadLocalRandom.current().nextBoolean()
+                ? WalletOperationRequest.OperationType.DEPOSIT
+                : WalletOperationRequest.OperationType.WITHDRAW;
+        WalletOperationRequest request = new WalletOperationRequest(picker.next(), type, Money.of(1));
+        while (true) {
+            try {
+                walletService.processOperation(request);
+                return;
+            } catch (ConcurrencyFailureException e) {
+                // Конфликт сериализации: клиент повторил бы запрос, считаем только успешные операции.
+            }
+        }
+    }
+
+    @Benchmark
+    public Money getBalance() throws Exception {
+        return walletService.getBalance(picker.next());
+    }
+
+    @Benchmark
+    public Object addOnlinePurchase() throws Exception {
+        return walletService.addOnlinePurchase("shop.example", BigDecimal.ONE, picker.next());
+    }
+
+    @Benchmark
+    public Object addOfflinePurchase() throws Exception {
+        return walletService.addOfflinePurchase("Moscow", BigDecimal.ONE, picker.next());
+    }
+
+    // Клиенты не зависят от кошельков, поэтому skew на этот замер не влияет.
+    @Benchmark
+    public Object createUser() throws Exception {
+        long number = clients.incrementAndGet();
+        return walletService.createUser(new ClientDto(null, "client" + number + "@example.com", "Client", "Number" + number));
+    }
+}
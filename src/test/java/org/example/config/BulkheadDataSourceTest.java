@@ -0,0 +1,66 @@
+package org.example.config;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BulkheadDataSourceTest {
+
+    private DataSource pool;
+    private BulkheadDataSource dataSource;
+
+    @BeforeEach
+    public void setup() throws SQLException {
+        pool = mock(DataSource.class);
+        when(pool.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+        dataSource = new BulkheadDataSource(pool, Bulkhead.of("test", BulkheadConfig.custom()
+                .maxConcurrentCalls(2)
+                .maxWaitDuration(Duration.ofMillis(50))
+                .build()));
+    }
+
+    @Test
+    public void testThirdConnectionIsRejectedUntilOneIsClosed() throws SQLException {
+        Connection first = dataSource.getConnection();
+        dataSource.getConnection();
+
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection); // ждали 50 мс и получили отказ
+
+        first.close();
+        first.close(); // повторное закрытие не возвращает разрешение второй раз
+        dataSource.getConnection();
+        assertEquals(0, dataSource.getBulkhead().getMetrics().getAvailableConcurrentCalls());
+    }
+
+    @Test
+    public void testPermitIsReturnedWhenPoolFails() throws SQLException {
+        when(pool.getConnection()).thenThrow(new SQLException("pool timeout"));
+
+        assertThrows(SQLException.class, dataSource::getConnection);
+
+        assertEquals(2, dataSource.getBulkhead().getMetrics().getAvailableConcurrentCalls());
+    }
+
+    @Test
+    public void testCallsAreDelegatedToPooledConnection() throws SQLException {
+        Connection pooled = mock(Connection.class);
+        when(pool.getConnection()).thenReturn(pooled);
+
+        dataSource.getConnection().setAutoCommit(false);
+
+        verify(pooled).setAutoCommit(false);
+    }
+}
@@ -0,0 +1,145 @@
+package org.example.config;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.test.context.ConfigDataApplicationContextInitializer;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ReadReplicaConfigTest {
+
+    // Две встроенные H2: в каждой таблица с одной строкой — именем базы, из которой прочитали.
+    private final String primaryUrl = database("primary");
+    private final String replicaUrl = database("replica");
+
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class,
+                    DataSourceTransactionManagerAutoConfiguration.class, JdbcTemplateAutoConfiguration.class))
+            .withUserConfiguration(DatabaseBulkheadConfig.class, ReadReplicaConfig.class)
+            .withPropertyValues("spring.datasource.url=" + primaryUrl, "spring.datasource.username=sa",
+                    "spring.datasource.hikari.maximum-pool-size=4");
+
+    @Test
+    public void testReadOnlyTransactionsGoToReplica() {
+        runner.withPropertyValues("wallet.datasource.replica.jdbc-url=" + replicaUrl, "wallet.datasource.replica.username=sa",
+                "wallet.datasource.replica.maximum-pool-size=2").run(context -> {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+
+            assertEquals("replica", readOnly.execute(status -> node(jdbcTemplate)));
+            assertEquals("primary", new TransactionTemplate(transactionManager).execute(status -> node(jdbcTemplate)));
+            assertEquals("primary", node(jdbcTemplate)); // вне транзакции — тоже основная БД
+
+            // У каждого пула своя перегородка по его размеру; прокси, выбирающий пул, не обёрнут.
+            assertInstanceOf(LazyConnectionDataSourceProxy.class, context.getBean(DataSource.class));
+            assertEquals(4, context.getBean("primaryDataSource", BulkheadDataSource.class).getBulkhead().getBulkheadConfig().getMaxConcurrentCalls());
+            assertEquals(2, context.getBean("replicaDataSource", BulkheadDataSource.class).getBulkhead().getBulkheadConfig().getMaxConcurrentCalls());
+        });
+    }
+
+    @Test
+    public void testReplicaUrlAloneIsEnough() {
+        runner.withPropertyValues("wallet.datasource.replica.jdbc-url=" + replicaUrl, "wallet.datasource.replica.username=sa").run(context -> {
+            assertNull(context.getStartupFailure());
+            TransactionTemplate readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+            readOnly.setReadOnly(true);
+
+            assertEquals("replica", readOnly.execute(status -> node(context.getBean(JdbcTemplate.class))));
+            // Размер пула реплики не задан — как у основного пула
+            assertEquals(4, context.getBean("replicaDataSource", BulkheadDataSource.class).getBulkhead().getBulkheadConfig().getMaxConcurrentCalls());
+        });
+    }
+
+    // Как в приложении: JPA, настройки из application.properties и веб-контекст. Если бы сессия JPA держалась
+    // весь запрос (open-in-view), чтение из основной БД после чтения с реплики получило бы соединение реплики.
+    @Test
+    public void testPrimaryReadAfterReplicaReadInOneRequestUsesPrimary() {
+        new WebApplicationContextRunner()
+                .withInitializer(new ConfigDataApplicationContextInitializer())
+                .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class))
+                .withUserConfiguration(DatabaseBulkheadConfig.class, ReadReplicaConfig.class)
+                .withPropertyValues("spring.datasource.url=" + primaryUrl, "spring.datasource.driver-class-name=org.h2.Driver",
+                        "spring.datasource.username=sa", "spring.datasource.password=",
+                        "spring.jpa.hibernate.ddl-auto=none",
+                        "wallet.datasource.replica.jdbc-url=" + replicaUrl, "wallet.datasource.replica.username=sa")
+                .run(context -> {
+                    assertInstanceOf(JpaTransactionManager.class, context.getBean(PlatformTransactionManager.class));
+                    EntityManager entityManager = SharedEntityManagerCreator.createSharedEntityManager(context.getBean(EntityManagerFactory.class));
+                    TransactionTemplate readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+                    readOnly.setReadOnly(true);
+                    TransactionTemplate primary = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+                    WebRequest request = new ServletWebRequest(new MockHttpServletRequest());
+                    Collection<OpenEntityManagerInViewInterceptor> inView = context.getBeansOfType(OpenEntityManagerInViewInterceptor.class).values();
+                    for (OpenEntityManagerInViewInterceptor interceptor : inView) {
+                        interceptor.preHandle(request);
+                    }
+                    try {
+                        assertEquals("replica", readOnly.execute(status -> entityManager.createNativeQuery("SELECT name FROM node").getSingleResult()));
+                        assertEquals("primary", primary.execute(status -> entityManager.createNativeQuery("SELECT name FROM node").getSingleResult()));
+                    } finally {
+                        for (OpenEntityManagerInViewInterceptor interceptor : inView) {
+                            interceptor.afterCompletion(request, null);
+                        }
+                    }
+                });
+    }
+
+    @Test
+    public void testWithoutReplicaEverythingGoesToPrimary() {
+        runner.run(context -> {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            TransactionTemplate readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+            readOnly.setReadOnly(true);
+
+            assertEquals("primary", readOnly.execute(status -> node(jdbcTemplate)));
+            assertFalse(context.containsBean("replicaDataSource"));
+        });
+    }
+
+    private static String node(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject("SELECT name FROM node", String.class);
+    }
+
+    private static String database(String name) {
+        String url = "jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE node (name VARCHAR(16))");
+            statement.execute("INSERT INTO node VALUES ('" + name + "')");
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        return url;
+    }
+}
@@ -0,0 +1,57 @@
+package org.example.controller;
+
+import org.example.dto.ClientPortfolio;
+import org.example.dto.WalletSummary;
+import org.example.entity.Money;
+import org.example.exception.ClientNotFoundException;
+import org.example.service.WalletService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(ClientController.class)
+public class ClientControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private WalletService walletService;
+
+    @Test
+    public void testGetPortfolio_Success() throws Exception {
+        UUID clientId = UUID.randomUUID();
+        UUID walletId = UUID.randomUUID();
+        when(walletService.getPortfolio(clientId)).thenReturn(new ClientPortfolio(clientId, "Roman", "Roman",
+                Money.of(100), BigDecimal.valueOf(50),
+                Collections.singletonList(new WalletSummary(walletId, Money.of(100), 2, BigDecimal.valueOf(50)))));
+
+        mockMvc.perform(get("/api/v1/clients/{clientId}/portfolio", clientId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalBalance").value(100))
+                .andExpect(jsonPath("$.wallets[0].walletId").value(walletId.toString()))
+                .andExpect(jsonPath("$.wallets[0].purchaseCount").value(2));
+    }
+
+    @Test
+    public void testGetPortfolio_ClientNotFound() throws Exception {
+        UUID clientId = UUID.randomUUID();
+        when(walletService.getPortfolio(clientId)).thenThrow(new ClientNotFoundException(clientId));
+
+        mockMvc.perform(get("/api/v1/clients/{clientId}/portfolio", clientId))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Client not found with UUID: " + clientId));
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.controller;
+
+import org.example.dto.ClientPortfolio;
+import org.example.entity.Money;
+import org.example.service.WalletMetrics;
+import org.example.service.WalletService;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.method.HandlerMethod;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class MetricsInterceptorTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPortfolioRequestsAreRecorded() throws Exception {
+        WalletService walletService = mock(WalletService.class);
+        WalletMetrics metrics = new WalletMetrics();
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new ClientController(walletService))
+                .addInterceptors(new MetricsInterceptor(metrics))
+                .build();
+        UUID clientId = UUID.randomUUID();
+        when(walletService.getPortfolio(clientId)).thenReturn(new ClientPortfolio(clientId, "Roman", "Roman",
+                Money.ZERO, BigDecimal.ZERO, Collections.emptyList()));
+
+        mockMvc.perform(get("/api/v1/clients/{clientId}/portfolio", clientId)).andExpect(status().isOk());
+
+        Map<String, Object> portfolio = (Map<String, Object>) metrics.snapshot().get("PORTFOLIO");
+        assertEquals(1L, ((Map<String, Long>) portfolio.get("outcomes")).get("SUCCESS"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testEachRequestIsRecordedOnce() throws Exception {
+        WalletService walletService = mock(WalletService.class);
+        WalletMetrics metrics = new WalletMetrics();
+        MetricsInterceptor interceptor = new MetricsInterceptor(metrics);
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new ClientController(walletService))
+                .addInterceptors(interceptor)
+                .build();
+        UUID clientId = UUID.randomUUID();
+        when(walletService.getPortfolio(clientId)).thenReturn(new ClientPortfolio(clientId, "Roman", "Roman",
+                Money.ZERO, BigDecimal.ZERO, Collections.emptyList()));
+        HandlerMethod handler = new HandlerMethod(new ClientController(walletService), "getPortfolio", UUID.class);
+
+        mockMvc.perform(get("/api/v1/clients/{clientId}/portfolio", clientId)).andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/clients/{clientId}/portfolio", clientId)).andExpect(status().isOk());
+        // Без preHandle в этом потоке записывать нечего: время начала предыдущего запроса не переиспользуется.
+        interceptor.afterCompletion(new MockHttpServletRequest(), new MockHttpServletResponse(), handler, null);
+
+        Map<String, Object> portfolio = (Map<String, Object>) metrics.snapshot().get("PORTFOLIO");
+        assertEquals(2L, ((Map<String, Long>) portfolio.get("outcomes")).get("SUCCESS"));
+    }
+}
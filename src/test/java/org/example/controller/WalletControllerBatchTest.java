@@ -0,0 +1,135 @@
+package org.example.controller;
+
+import org.example.dto.PurchaseRequest;
+import org.example.dto.PurchaseResult;
+import org.example.dto.PurchaseView;
+import org.example.dto.WalletOperationRequest;
+import org.example.dto.WalletOperationResult;
+import org.example.service.WalletService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(WalletController.class)
+public class WalletControllerBatchTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private WalletService walletService;
+
+    private final UUID first = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private final UUID second = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        // Сервис-заглушка: первый кошелёк пополняется, второй не найден.
+        doAnswer(invocation -> {
+            Iterator<WalletOperationRequest> requests = invocation.getArgument(0);
+            Consumer<WalletOperationResult> results = invocation.getArgument(1);
+            long index = 0;
+            while (requests.hasNext()) {
+                WalletOperationRequest request = requests.next();
+                results.accept(first.equals(request.getWalletId())
+                        ? new WalletOperationResult(index++, request.getWalletId(), WalletOperationResult.Status.SUCCESS, request.getAmount(), null)
+                        : new WalletOperationResult(index++, request.getWalletId(), WalletOperationResult.Status.NOT_FOUND, null, "not found"));
+            }
+            return null;
+        }).when(walletService).processBatch(any(Iterator.class), any(Consumer.class));
+    }
+
+    @Test
+    public void testNdjsonBatchStreamsOneLinePerOperation() throws Exception {
+        String body = "{\"walletId\":\"" + first + "\",\"operationType\":\"DEPOSIT\",\"amount\":10}\n"
+                + "{\"walletId\":\"" + second + "\",\"operationType\":\"WITHDRAW\",\"amount\":5}\n";
+
+        mockMvc.perform(post("/api/v1/wallet/batch").contentType(MediaType.APPLICATION_NDJSON).content(body))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(
+                        "{\"index\":0,\"walletId\":\"" + first + "\",\"status\":\"SUCCESS\",\"balance\":10.00,\"message\":null}\n"
+                                + "{\"index\":1,\"walletId\":\"" + second + "\",\"status\":\"NOT_FOUND\",\"balance\":null,\"message\":\"not found\"}\n"));
+    }
+
+    @Test
+    public void testJsonArrayBatchIsAccepted() throws Exception {
+        String body = "[{\"walletId\":\"" + first + "\",\"operationType\":\"DEPOSIT\",\"amount\":1},"
+                + "{\"walletId\":\"" + first + "\",\"operationType\":\"DEPOSIT\",\"amount\":2}]";
+
+        mockMvc.perform(post("/api/v1/wallet/batch").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isOk())
+                .andExpect(content().string(
+                        "{\"index\":0,\"walletId\":\"" + first + "\",\"status\":\"SUCCESS\",\"balance\":1.00,\"message\":null}\n"
+                                + "{\"index\":1,\"walletId\":\"" + first + "\",\"status\":\"SUCCESS\",\"balance\":2.00,\"message\":null}\n"));
+    }
+
+    @Test
+    public void testMalformedInputEndsWithErrorLine() throws Exception {
+        String body = "{\"walletId\":\"" + first + "\",\"operationType\":\"DEPOSIT\",\"amount\":1}\n{\"walletId\":";
+
+        mockMvc.perform(post("/api/v1/wallet/batch").contentType(MediaType.APPLICATION_NDJSON).content(body))
+                .andExpect(status().isOk())
+                .andExpect(content().string(
+                        "{\"index\":0,\"walletId\":\"" + first + "\",\"status\":\"SUCCESS\",\"balance\":1.00,\"message\":null}\n"
+                                + "{\"index\":0,\"walletId\":null,\"status\":\"ERROR\",\"balance\":null,\"message\":\"Malformed batch input\"}\n"));
+    }
+
+    @Test
+    public void testUnmappableOperationEndsWithErrorLine() throws Exception {
+        String body = "{\"walletId\":\"" + first + "\",\"operationType\":\"STEAL\",\"amount\":1}\n";
+
+        mockMvc.perform(post("/api/v1/wallet/batch").contentType(MediaType.APPLICATION_NDJSON).content(body))
+                .andExpect(status().isOk())
+                .andExpect(content().string(
+                        "{\"index\":0,\"walletId\":null,\"status\":\"ERROR\",\"balance\":null,\"message\":\"Malformed batch input\"}\n"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testServiceFailureIsNotReportedAsMalformedInput() throws Exception {
+        doThrow(new DataAccessResourceFailureException("database is down"))
+                .when(walletService).processBatch(any(Iterator.class), any(Consumer.class));
+        String body = "{\"walletId\":\"" + first + "\",\"operationType\":\"DEPOSIT\",\"amount\":1}\n";
+
+        mockMvc.perform(post("/api/v1/wallet/batch").contentType(MediaType.APPLICATION_NDJSON).content(body))
+                .andExpect(status().isInternalServerError())
+                .andExpect(content().string("An unexpected error occurred"));
+    }
+
+    @Test
+    public void testPurchaseBatchReturnsResultPerPurchase() throws Exception {
+        UUID purchaseId = UUID.randomUUID();
+        when(walletService.addPurchases(Collections.singletonList(
+                new PurchaseRequest(first, PurchaseView.Type.OFFLINE, BigDecimal.valueOf(5), "Moscow"))))
+                .thenReturn(Arrays.asList(new PurchaseResult(0, purchaseId, first, WalletOperationResult.Status.SUCCESS, null)));
+
+        mockMvc.perform(post("/api/v1/wallet/purchases").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"walletId\":\"" + first + "\",\"type\":\"OFFLINE\",\"amount\":5,\"store\":\"Moscow\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].purchaseId").value(purchaseId.toString()))
+                .andExpect(jsonPath("$[0].status").value("SUCCESS"));
+    }
+}
@@ -1,4 +1,10 @@
 package org.example.controller;
+import org.example.dto.PurchasePage;
+import org.example.dto.PurchaseView;
+import org.example.dto.SpendBucket;
+import org.example.dto.SpendSummary;
+import org.example.entity.Money;
+import org.example.exception.InvalidCursorException;
 import org.example.exception.WalletNotFoundException;
 import org.example.service.WalletService;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,8 +16,12 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.CannotCreateTransactionException;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
 import java.util.UUID;
 
 import static org.mockito.Mockito.when;
@@ -19,6 +29,8 @@ import static org.mockito.Mockito.doThrow;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 
 @WebMvcTest(WalletController.class)
 public class WalletControllerGetTest {
@@ -38,10 +50,10 @@ public class WalletControllerGetTest {
     @Test
     public void testGetBalance_Success() throws Exception {
         UUID walletId = UUID.randomUUID();
-        String balance = String.valueOf(BigDecimal.valueOf(100));
+        String balance = String.valueOf(Money.of(100));
 
-        // Устанавливаем поведение mock-сервиса: при вызове getBalance с указанным walletId возвращать BigDecimal.valueOf(100)
-        when(walletService.getBalance(walletId)).thenReturn(BigDecimal.valueOf(100));
+        // Устанавливаем поведение mock-сервиса: при вызове getBalance с указанным walletId возвращать Money.of(100)
+        when(walletService.getBalance(walletId)).thenReturn(Money.of(100));
 
         // Выполняем GET запрос к API с указанным walletId
         mockMvc.perform(get("/api/v1/wallet/{walletId}", walletId)
@@ -67,4 +79,61 @@ public class WalletControllerGetTest {
                 // Ожидаем, что тело ответа будет строкой, представляющей сообщение об ошибке
                 .andExpect(content().string("Wallet not found with UUID: " + walletId));
     }
+
+    @Test
+    public void testGetPurchases_PageWithCursor() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        PurchaseView purchase = new PurchaseView(UUID.randomUUID(), PurchaseView.Type.ONLINE, BigDecimal.TEN, "ozon.ru", Instant.parse("2024-01-01T00:00:00Z"));
+
+        // Размер страницы больше допустимого урезается до 500
+        when(walletService.getPurchases(walletId, "abc", 500)).thenReturn(new PurchasePage(Collections.singletonList(purchase), "next"));
+
+        mockMvc.perform(get("/api/v1/wallet/{walletId}/purchases", walletId)
+                        .param("cursor", "abc")
+                        .param("limit", "10000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].store").value("ozon.ru"))
+                .andExpect(jsonPath("$.items[0].type").value("ONLINE"))
+                .andExpect(jsonPath("$.nextCursor").value("next"));
+    }
+
+    @Test
+    public void testGetPurchases_InvalidCursor() throws Exception {
+        UUID walletId = UUID.randomUUID();
+
+        doThrow(new InvalidCursorException("bad")).when(walletService).getPurchases(walletId, "bad", 50);
+
+        mockMvc.perform(get("/api/v1/wallet/{walletId}/purchases", walletId).param("cursor", "bad"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Invalid page cursor: bad"));
+    }
+
+    @Test
+    public void testGetBalance_DatabaseBusy() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        when(walletService.getBalance(walletId)).thenThrow(new CannotCreateTransactionException("Database bulkhead is full"));
+
+        // Нет свободного соединения — 503 и подсказка, когда повторить
+        mockMvc.perform(get("/api/v1/wallet/{walletId}", walletId))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+    }
+
+    @Test
+    public void testGetSpend_WindowDefaultsAndIsBounded() throws Exception {
+        UUID walletId = UUID.randomUUID();
+        Instant to = Instant.parse("2024-02-01T00:00:00Z");
+        SpendSummary summary = new SpendSummary(walletId, 1, BigDecimal.TEN, Collections.emptyList(), SpendSummary.Granularity.HOUR,
+                Collections.singletonList(new SpendBucket(Instant.parse("2024-01-31T10:00:00Z"), 1, BigDecimal.TEN)));
+        // Окно с 2020 года по часам длиннее допустимого: начало сдвигается к 1000 часам до конца.
+        when(walletService.getSpend(walletId, SpendSummary.Granularity.HOUR, to.minus(1000, ChronoUnit.HOURS), to)).thenReturn(summary);
+
+        mockMvc.perform(get("/api/v1/wallet/{walletId}/spend", walletId)
+                        .param("granularity", "HOUR")
+                        .param("from", "2020-01-01T00:00:00Z")
+                        .param("to", to.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.purchaseCount").value(1))
+                .andExpect(jsonPath("$.buckets[0].purchaseCount").value(1));
+    }
 }
@@ -2,7 +2,9 @@ package org.example.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.example.dto.WalletOperationRequest;
+import org.example.entity.Money;
 import org.example.exception.InsufficientFundsException;
+import org.example.exception.InvalidAmountException;
 import org.example.exception.WalletNotFoundException;
 import org.example.service.WalletService;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,10 +13,10 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
-import java.math.BigDecimal;
 import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -22,6 +24,7 @@ import static org.mockito.Mockito.doThrow;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 
 @WebMvcTest(WalletController.class) // Аннотация для тестирования только слоя Web MVC (контроллеров) в Spring Boot
 public class WalletControllerTest {
@@ -45,7 +48,7 @@ public class WalletControllerTest {
     public void testPerformOperation_Success() throws Exception {
         // Создание объекта WalletOperationRequest с случайным UUID, типом операции DEPOSIT и суммой 100
         WalletOperationRequest request = new WalletOperationRequest(
-                UUID.randomUUID(), WalletOperationRequest.OperationType.DEPOSIT, BigDecimal.valueOf(100)
+                UUID.randomUUID(), WalletOperationRequest.OperationType.DEPOSIT, Money.of(100)
         );
 
         // Выполнение HTTP POST запроса к "/api/v1/wallet"
@@ -60,7 +63,7 @@ public class WalletControllerTest {
     public void testPerformOperation_WalletNotFound() throws Exception {
         // Создание объекта WalletOperationRequest с случайным UUID, типом операции DEPOSIT и суммой 100
         WalletOperationRequest request = new WalletOperationRequest(
-                UUID.randomUUID(), WalletOperationRequest.OperationType.DEPOSIT, BigDecimal.valueOf(100)
+                UUID.randomUUID(), WalletOperationRequest.OperationType.DEPOSIT, Money.of(100)
         );
 
         // Настройка мока для броска исключения WalletNotFoundException при вызове processOperation
@@ -78,7 +81,7 @@ public class WalletControllerTest {
     public void testPerformOperation_InsufficientFunds() throws Exception {
         // Создание объекта WalletOperationRequest с случайным UUID, типом операции WITHDRAW и суммой 100
         WalletOperationRequest request = new WalletOperationRequest(
-                UUID.randomUUID(), WalletOperationRequest.OperationType.WITHDRAW, BigDecimal.valueOf(100)
+                UUID.randomUUID(), WalletOperationRequest.OperationType.WITHDRAW, Money.of(100)
         );
 
         // Настройка мока для броска исключения InsufficientFundsException при вызове processOperation
@@ -91,4 +94,50 @@ public class WalletControllerTest {
                 .andExpect(status().isBadRequest()) // Ожидание HTTP статуса 400 (Bad Request)
                 .andExpect(content().string("Insufficient funds for amount: " + request.getAmount())); // Ожидание текста ошибки
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPerformOperation_RetriesExhausted() throws Exception {
+        WalletOperationRequest request = new WalletOperationRequest(
+                UUID.randomUUID(), WalletOperationRequest.OperationType.DEPOSIT, Money.of(100)
+        );
+
+        // Конфликт блокировок не разрешился серверными повторами
+        doThrow(new CannotAcquireLockException("lock timeout")).when(walletService).processOperation(any());
+
+        mockMvc.perform(post("/api/v1/wallet")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isServiceUnavailable()) // не 500: запрос корректен, повторить позже
+                .andExpect(header().string("Retry-After", "1"));
+    }
+
+    @Test
+    public void testPerformOperation_InvalidAmount() throws Exception {
+        WalletOperationRequest request = new WalletOperationRequest(
+                UUID.randomUUID(), WalletOperationRequest.OperationType.DEPOSIT, Money.of(100)
+        );
+
+        // Баланс переполнился бы после пополнения — ошибка запроса, а не сервера
+        doThrow(new InvalidAmountException("Amount out of range")).when(walletService).processOperation(any());
+
+        mockMvc.perform(post("/api/v1/wallet")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Invalid amount: Amount out of range"));
+    }
+
+    @Test
+    public void testPerformOperation_OtherArithmeticErrorIsNotBadRequest() throws Exception {
+        WalletOperationRequest request = new WalletOperationRequest(
+                UUID.randomUUID(), WalletOperationRequest.OperationType.DEPOSIT, Money.of(100)
+        );
+
+        doThrow(new ArithmeticException("/ by zero")).when(walletService).processOperation(any());
+
+        mockMvc.perform(post("/api/v1/wallet")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isInternalServerError());
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.entity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import org.example.dto.WalletOperationRequest;
+import org.example.exception.InvalidAmountException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MoneyTest {
+
+    @Test
+    public void testParseAndFormat() {
+        assertEquals(15025, Money.parse("150.25").minorUnits());
+        assertEquals(15000, Money.parse("150").minorUnits());
+        assertEquals(15050, Money.parse("150.5").minorUnits());
+        assertEquals(15050, Money.parse("150.5000").minorUnits()); // незначащие нули после копеек допустимы
+        assertEquals(-5, Money.parse("-0.05").minorUnits());
+        assertEquals(15000, Money.parse("1.5E2").minorUnits());
+
+        assertEquals("150.00", Money.of(150).toString());
+        assertEquals("-0.05", Money.ofMinor(-5).toString());
+        assertEquals("-92233720368547758.08", Money.ofMinor(Long.MIN_VALUE).toString());
+
+        assertThrows(ArithmeticException.class, () -> Money.parse("0.001")); // доли копейки не округляются молча
+        assertThrows(NumberFormatException.class, () -> Money.parse("12a"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("-"));
+    }
+
+    @Test
+    public void testArithmeticIsCheckedAndMatchesBigDecimal() {
+        Money balance = Money.parse("100.10").minus(Money.parse("0.20")).plus(Money.of(1));
+        assertEquals(0, new BigDecimal("100.90").compareTo(balance.toBigDecimal()));
+        assertEquals(balance, Money.of(new BigDecimal("100.9")));
+        assertTrue(Money.of(1).isLessThan(Money.parse("1.01")));
+
+        Money max = Money.ofMinor(Long.MAX_VALUE);
+        assertThrows(ArithmeticException.class, () -> max.plus(Money.ofMinor(1)));
+        assertThrows(ArithmeticException.class, () -> Money.ofMinor(Long.MIN_VALUE).negate());
+        assertThrows(ArithmeticException.class, () -> Money.parse("92233720368547758.08"));
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("1.234")));
+    }
+
+    @Test
+    public void testHugeExponentIsRejectedBeforeExpansion() {
+        // Без проверки порядка до setScale каждый из этих разборов строил бы число из миллиарда цифр.
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+            assertThrows(InvalidAmountException.class, () -> Money.parse("1e999999999"));
+            assertThrows(InvalidAmountException.class, () -> Money.parse("-1E999999999"));
+            assertThrows(InvalidAmountException.class, () -> Money.parse("1e-999999999"));
+            assertThrows(InvalidAmountException.class, () -> Money.of(new BigDecimal("1E+19")));
+        });
+        assertEquals(Money.of(0), Money.parse("0e-999999999"));
+        assertEquals(Money.ofMinor(9223372036854775800L), Money.parse("9.2233720368547758E16"));
+        assertThrows(InvalidAmountException.class, () -> Money.ofMinor(Long.MAX_VALUE).plus(Money.ofMinor(1)));
+        assertThrows(InvalidAmountException.class, () -> Money.ofMinor(Long.MIN_VALUE).minus(Money.ofMinor(1)));
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        UUID walletId = UUID.randomUUID();
+
+        WalletOperationRequest request = mapper.readValue("{\"walletId\":\"" + walletId
+                + "\",\"operationType\":\"DEPOSIT\",\"amount\":150.25}", WalletOperationRequest.class);
+        assertEquals(Money.parse("150.25"), request.getAmount());
+        // Сумма строкой тоже принимается, а в ответе — число с двумя знаками
+        assertEquals(Money.of(7), mapper.readValue("\"7\"", Money.class));
+        assertEquals("150.25", mapper.writeValueAsString(Money.parse("150.25")));
+        assertEquals("3.00", mapper.writeValueAsString(Money.of(3)));
+
+        assertThrows(InvalidFormatException.class, () -> mapper.readValue("0.001", Money.class));
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Задержки и коды ответов по эндпоинтам. Эндпоинт — метод и путь без query-строки, UUID в пути заменены на {id}.
+ * Гистограммы в микросекундах, до 10 минут с тремя значащими цифрами.
+ */
+public class LatencyReport {
+    private static final Pattern UUID_IN_PATH = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    public static String endpointOf(String method, String path) {
+        int query = path.indexOf('?');
+        return method + " " + UUID_IN_PATH.matcher(query < 0 ? path : path.substring(0, query)).replaceAll("{id}");
+    }
+
+    public void record(String endpoint, int status, long latencyNanos) {
+        Endpoint stats = endpoints.computeIfAbsent(endpoint, key -> new Endpoint());
+        stats.latency.recordValue(Math.min(Math.max(1, TimeUnit.NANOSECONDS.toMicros(latencyNanos)), MAX_MICROS));
+        stats.statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+    }
+
+    public long count(String endpoint) {
+        Endpoint stats = endpoints.get(endpoint);
+        return stats == null ? 0 : stats.latency.getTotalCount();
+    }
+
+    public void print(PrintStream out, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%-36s %9s %9s %9s %9s %9s %9s %9s  %s%n",
+                "endpoint", "requests", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "statuses");
+        for (Map.Entry<String, Endpoint> entry : new TreeMap<>(endpoints).entrySet()) {
+            Histogram latency = entry.getValue().latency;
+            out.printf("%-36s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f  %s%n",
+                    entry.getKey(), latency.getTotalCount(), latency.getTotalCount() / seconds,
+                    millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(90)),
+                    millis(latency.getValueAtPercentile(99)), millis(latency.getValueAtPercentile(99.9)),
+                    millis(latency.getMaxValue()), new TreeMap<>(entry.getValue().statuses));
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static final class Endpoint {
+        private final Histogram latency = new ConcurrentHistogram(MAX_MICROS, 3);
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,327 @@
+package org.example.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.App;
+import org.example.benchmark.BenchmarkDatabase;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.example.repository.WalletRepository;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Генератор нагрузки на HTTP API кошельков: воспроизведение NDJSON-трассы (см. TraceEntry) или синтетический поток
+ * с перекосом по Ципфу (см. SyntheticTraffic). Печатает пропускную способность и перцентили задержки по эндпоинтам.
+ * <p>
+ * Открытая модель (трасса с --speed > 0 или --rate > 0): запросы уходят по расписанию, задержка считается
+ * от запланированного момента, поэтому очередь перед перегруженным сервером в ней видна.
+ * Замкнутая модель (--speed=0 или без --rate): --concurrency клиентов шлют запросы один за другим.
+ * <p>
+ * Параметры (--имя=значение):
+ * <ul>
+ *   <li>--target=http://host:8080 или --in-process — приложение в этом же процессе на встроенной H2 и случайном порту;
+ *       --app.&lt;свойство&gt;=значение передаёт ему свойство (например, --app.wallet.concurrency.strategy=atomic);</li>
+ *   <li>--trace=файл.ndjson и --speed=1 (1 — исходный темп, 2 — вдвое быстрее, 0 — без пауз);</li>
+ *   <li>без --trace: --zipf=1.1, --mix=deposit:40,withdraw:20,read:30,purchase:10, --rate=0 (запросов в секунду),
+ *       --duration=30 (секунд), --wallets=1000 (создаются в --in-process) или --wallet-ids=файл (по UUID на строку),
+ *       --record=файл.ndjson — сохранить сгенерированный поток как трассу;</li>
+ *   <li>--concurrency=64 — число одновременных запросов.</li>
+ * </ul>
+ * Ограничитель запросов в --in-process отключён; у внешнего экземпляра отказы видны как 429 в колонке statuses.
+ */
+public final class LoadGenerator {
+    private static final Pattern UUID_PATTERN = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LatencyReport report = new LatencyReport();
+    private final String baseUrl;
+
+    LoadGenerator(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        ObjectMapper objectMapper = new ObjectMapper();
+        ConfigurableApplicationContext context = null;
+        String baseUrl = options.get("target");
+        String trace = options.get("trace");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        if (options.containsKey("in-process")) {
+            context = startInProcess(options);
+            baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+        if (baseUrl == null) {
+            throw new IllegalArgumentException("Either --target=<url> or --in-process is required");
+        }
+        try {
+            LoadGenerator generator = new LoadGenerator(baseUrl);
+            long elapsed;
+            if (trace != null) {
+                if (context != null) {
+                    seedWallets(context, walletsInTrace(trace));
+                }
+                double speed = Double.parseDouble(options.getOrDefault("speed", "1"));
+                try (BufferedReader reader = Files.newBufferedReader(Paths.get(trace), StandardCharsets.UTF_8)) {
+                    Source source = () -> {
+                        String line;
+                        try {
+                            do {
+                                line = reader.readLine();
+                            } while (line != null && line.trim().isEmpty());
+                            return line == null ? null : objectMapper.readValue(line, TraceEntry.class);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    };
+                    elapsed = speed > 0
+                            ? generator.runOpen(source, speed, concurrency, Long.MAX_VALUE)
+                            : generator.runClosed(source, concurrency, Long.MAX_VALUE);
+                }
+            } else {
+                UUID[] wallets = options.containsKey("wallet-ids")
+                        ? readWalletIds(options.get("wallet-ids"))
+                        : seedWallets(context, Integer.parseInt(options.getOrDefault("wallets", "1000")));
+                SyntheticTraffic traffic = new SyntheticTraffic(wallets,
+                        Double.parseDouble(options.getOrDefault("zipf", "1.1")),
+                        options.getOrDefault("mix", "deposit:40,withdraw:20,read:30,purchase:10"),
+                        Double.parseDouble(options.getOrDefault("rate", "0")), objectMapper);
+                long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "30")));
+                ZipfDistribution zipf = new ZipfDistribution(wallets.length, Double.parseDouble(options.getOrDefault("zipf", "1.1")));
+                System.out.printf("%d wallets, top 1%% of wallets receive %.0f%% of requests%n",
+                        wallets.length, 100 * zipf.share(Math.max(1, wallets.length / 100)));
+                try (TraceRecorder recorder = new TraceRecorder(options.get("record"), objectMapper)) {
+                    AtomicLong sequence = new AtomicLong();
+                    long start = System.nanoTime();
+                    Source source = () -> {
+                        TraceEntry entry = traffic.next(sequence.getAndIncrement());
+                        if (!traffic.scheduled()) {
+                            entry.setAtMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)); // фактический момент отправки
+                        }
+                        return recorder.write(entry);
+                    };
+                    elapsed = traffic.scheduled()
+                            ? generator.runOpen(source, 1, concurrency, durationNanos)
+                            : generator.runClosed(source, concurrency, durationNanos);
+                }
+            }
+            generator.report.print(System.out, elapsed);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    // Запросы по расписанию atMs / speed; возвращает длительность прогона в наносекундах.
+    long runOpen(Source source, double speed, int concurrency, long durationNanos) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        TraceEntry entry;
+        while ((entry = source.next()) != null) {
+            long intended = start + (long) (TimeUnit.MILLISECONDS.toNanos(entry.getAtMs()) / speed);
+            if (intended - start > durationNanos) {
+                break;
+            }
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            TraceEntry scheduled = entry;
+            workers.execute(() -> send(scheduled, intended));
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+        return System.nanoTime() - start;
+    }
+
+    // concurrency клиентов шлют запросы без пауз, пока есть запросы и не истекло время.
+    long runClosed(Source source, int concurrency, long durationNanos) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(() -> {
+                TraceEntry entry;
+                while (System.nanoTime() - start < durationNanos && (entry = nextOf(source)) != null) {
+                    send(entry, System.nanoTime());
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+        return System.nanoTime() - start;
+    }
+
+    LatencyReport report() {
+        return report;
+    }
+
+    private void send(TraceEntry entry, long intendedNanos) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + entry.getPath()))
+                .timeout(Duration.ofSeconds(30));
+        if (entry.getBody() != null) {
+            request.header("Content-Type", "application/json")
+                    .method(entry.getMethod(), HttpRequest.BodyPublishers.ofString(entry.getBody().toString()));
+        } else {
+            request.method(entry.getMethod(), HttpRequest.BodyPublishers.noBody());
+        }
+        int status;
+        try {
+            status = client.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            status = -1; // соединение не установлено или оборвано
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        report.record(LatencyReport.endpointOf(entry.getMethod(), entry.getPath()), status, System.nanoTime() - intendedNanos);
+    }
+
+    private static TraceEntry nextOf(Source source) {
+        synchronized (source) { // чтение трассы построчно не потокобезопасно
+            return source.next();
+        }
+    }
+
+    private static ConfigurableApplicationContext startInProcess(Map<String, String> options) {
+        List<String> properties = new ArrayList<>();
+        properties.add("server.port=0");
+        properties.add("wallet.rate-limit.limit-for-period=1000000000");
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (option.getKey().startsWith("app.")) {
+                properties.add(option.getKey().substring("app.".length()) + "=" + option.getValue());
+            }
+        }
+        return new SpringApplicationBuilder(App.class)
+                .web(WebApplicationType.SERVLET)
+                .run(BenchmarkDatabase.h2Arguments("load", properties.toArray(new String[0])));
+    }
+
+    private static UUID[] seedWallets(ConfigurableApplicationContext context, int count) {
+        if (context == null) {
+            throw new IllegalArgumentException("Synthetic traffic against --target needs --wallet-ids=<file>");
+        }
+        Set<UUID> wallets = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            wallets.add(UUID.randomUUID());
+        }
+        return seedWallets(context, wallets);
+    }
+
+    private static UUID[] seedWallets(ConfigurableApplicationContext context, Set<UUID> ids) {
+        WalletRepository walletRepository = context.getBean(WalletRepository.class);
+        List<Wallet> wallets = new ArrayList<>();
+        for (UUID id : ids) {
+            wallets.add(new Wallet(id, Money.of(1_000_000_000L), null, null));
+            if (wallets.size() == 1000) {
+                walletRepository.saveAll(wallets);
+                wallets.clear();
+            }
+        }
+        walletRepository.saveAll(wallets);
+        return ids.toArray(new UUID[0]);
+    }
+
+    // Все UUID, встречающиеся в трассе: для --in-process кошельки нужно создать до воспроизведения.
+    private static Set<UUID> walletsInTrace(String trace) throws IOException {
+        Set<UUID> ids = new LinkedHashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(trace), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher = UUID_PATTERN.matcher(line);
+                while (matcher.find()) {
+                    ids.add(UUID.fromString(matcher.group()));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static UUID[] readWalletIds(String file) throws IOException {
+        List<UUID> ids = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                ids.add(UUID.fromString(line.trim()));
+            }
+        }
+        return ids.toArray(new UUID[0]);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int equals = arg.indexOf('=');
+            options.put(equals < 0 ? arg.substring(2) : arg.substring(2, equals), equals < 0 ? "" : arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    interface Source {
+        TraceEntry next();
+    }
+
+    // Пишет сгенерированные запросы в NDJSON-трассу, если задан файл.
+    private static final class TraceRecorder implements AutoCloseable {
+        private final BufferedWriter writer;
+        private final ObjectMapper objectMapper;
+
+        private TraceRecorder(String file, ObjectMapper objectMapper) throws IOException {
+            this.writer = file == null ? null : Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8);
+            this.objectMapper = objectMapper;
+        }
+
+        private synchronized TraceEntry write(TraceEntry entry) {
+            if (writer != null) {
+                try {
+                    writer.write(objectMapper.writeValueAsString(entry));
+                    writer.newLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return entry;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
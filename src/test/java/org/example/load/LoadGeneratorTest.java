@@ -0,0 +1,37 @@
+package org.example.load;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void testSamplesFollowRankWeights() {
+        ZipfDistribution zipf = new ZipfDistribution(1000, 1.2);
+        int[] hits = new int[1000];
+        int samples = 200_000;
+        for (int i = 0; i < samples; i++) {
+            hits[zipf.sample()]++;
+        }
+
+        assertEquals(zipf.share(1), hits[0] / (double) samples, 0.01); // самый популярный кошелёк
+        assertTrue(hits[0] > hits[1] && hits[1] > hits[9]);
+    }
+
+    @Test
+    public void testZeroExponentIsUniform() {
+        ZipfDistribution uniform = new ZipfDistribution(100, 0);
+
+        assertEquals(0.1, uniform.share(10), 1e-9);
+    }
+
+    @Test
+    public void testEndpointGroupsPathsByTemplate() {
+        assertEquals("GET /api/v1/wallet/{id}",
+                LatencyReport.endpointOf("GET", "/api/v1/wallet/4a4108a1-af54-4528-85b7-fb160b3feeae"));
+        assertEquals("POST /api/v1/wallet/online",
+                LatencyReport.endpointOf("POST", "/api/v1/wallet/online?storeUrl=a&walletId=4a4108a1-af54-4528-85b7-fb160b3feeae"));
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Синтетический поток запросов: кошелёк — по распределению Ципфа (первые кошельки — «торговые», на них большая
+ * часть записи), вид запроса — по заданной смеси deposit/withdraw/read/purchase.
+ * Смесь задаётся весами: "deposit:40,withdraw:20,read:30,purchase:10".
+ */
+public class SyntheticTraffic {
+    private static final String WALLET_PATH = "/api/v1/wallet";
+
+    private final UUID[] wallets;
+    private final ZipfDistribution zipf;
+    private final ObjectMapper objectMapper;
+    private final int[] thresholds = new int[4]; // накопленные веса deposit, withdraw, read, purchase
+    private final long intervalMicros; // для открытой модели: шаг между запросами; 0 — без расписания
+
+    public SyntheticTraffic(UUID[] wallets, double zipfExponent, String mix, double ratePerSecond, ObjectMapper objectMapper) {
+        this.wallets = wallets;
+        this.zipf = new ZipfDistribution(wallets.length, zipfExponent);
+        this.objectMapper = objectMapper;
+        this.intervalMicros = ratePerSecond > 0 ? (long) (1_000_000 / ratePerSecond) : 0;
+        String[] kinds = {"deposit", "withdraw", "read", "purchase"};
+        int[] weights = new int[kinds.length];
+        for (String part : mix.split(",")) {
+            String[] kindAndWeight = part.trim().split(":");
+            int kind = indexOf(kinds, kindAndWeight[0]);
+            if (kind < 0 || kindAndWeight.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry: " + part);
+            }
+            weights[kind] = Integer.parseInt(kindAndWeight[1]);
+        }
+        int total = 0;
+        for (int i = 0; i < kinds.length; i++) {
+            total += weights[i];
+            thresholds[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Empty mix: " + mix);
+        }
+    }
+
+    // sequence — номер запроса; по нему считается atMs при заданной частоте.
+    public TraceEntry next(long sequence) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UUID walletId = wallets[zipf.sample()];
+        long atMs = intervalMicros * sequence / 1000;
+        int roll = random.nextInt(thresholds[thresholds.length - 1]);
+        if (roll < thresholds[1]) {
+            ObjectNode body = objectMapper.createObjectNode();
+            body.put("walletId", walletId.toString());
+            body.put("operationType", roll < thresholds[0] ? "DEPOSIT" : "WITHDRAW");
+            body.put("amount", 1 + random.nextInt(100));
+            return new TraceEntry(atMs, "POST", WALLET_PATH, body);
+        }
+        if (roll < thresholds[2]) {
+            return new TraceEntry(atMs, "GET", WALLET_PATH + "/" + walletId, null);
+        }
+        return new TraceEntry(atMs, "POST", WALLET_PATH + "/online?storeUrl=shop.example&amount=" + (1 + random.nextInt(50))
+                + "&walletId=" + walletId, null);
+    }
+
+    public boolean scheduled() {
+        return intervalMicros > 0;
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
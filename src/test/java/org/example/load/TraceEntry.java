@@ -0,0 +1,23 @@
+package org.example.load;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Одна строка NDJSON-трассы: когда (мс от начала записи) и какой запрос отправить.
+ * Пример: {"atMs":12,"method":"POST","path":"/api/v1/wallet","body":{"walletId":"…","operationType":"DEPOSIT","amount":10}}
+ * path — вместе с query-строкой; body можно не указывать.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TraceEntry {
+    private long atMs;
+    private String method;
+    private String path;
+    private JsonNode body;
+}
@@ -0,0 +1,46 @@
+package org.example.load;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Распределение Ципфа на рангах 0..n-1: вероятность ранга k пропорциональна 1 / (k+1)^exponent.
+ * exponent = 0 — равномерное распределение; чем больше exponent, тем больше нагрузки приходится на первые ранги.
+ */
+public final class ZipfDistribution {
+    private final double[] cumulative;
+
+    public ZipfDistribution(int n, double exponent) {
+        if (n <= 0 || exponent < 0) {
+            throw new IllegalArgumentException("Invalid Zipf distribution: n=" + n + ", exponent=" + exponent);
+        }
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    public int sample() {
+        double point = ThreadLocalRandom.current().nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) { // первый ранг, чья накопленная вероятность не меньше point
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] < point) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Доля всех выборок, приходящаяся на первые top рангов.
+    public double share(int top) {
+        return top <= 0 ? 0 : cumulative[Math.min(top, cumulative.length) - 1];
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.repository;
+
+import org.example.dto.ClientPortfolio;
+import org.example.entity.Client;
+import org.example.entity.Money;
+import org.example.entity.OfflinePurchase;
+import org.example.entity.OnlinePurchase;
+import org.example.entity.Purchase;
+import org.example.entity.Wallet;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
+@Import(ClientPortfolioRepository.class)
+public class ClientPortfolioRepositoryTest {
+
+    @Autowired
+    private ClientPortfolioRepository portfolioRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private WalletRepository walletRepository;
+    @Autowired
+    private OnlinePurchaseRepository onlinePurchaseRepository;
+    @Autowired
+    private OfflinePurchaseRepository offlinePurchaseRepository;
+
+    @Test
+    public void testPortfolioAggregatesEveryWalletInOneQuery() {
+        Client client = userRepository.save(new Client(UUID.randomUUID(), "Roman", "Roman", "portfolio@mail.ru"));
+        Wallet first = walletRepository.save(new Wallet(new UUID(0, 1), Money.of(100), null, client));
+        Wallet second = walletRepository.save(new Wallet(new UUID(0, 2), Money.of(40), null, client));
+        OnlinePurchase online = new OnlinePurchase("ozon.ru");
+        fill(online, BigDecimal.valueOf(30), first);
+        onlinePurchaseRepository.save(online);
+        OfflinePurchase offline = new OfflinePurchase("Moscow");
+        fill(offline, BigDecimal.valueOf(20), first);
+        offlinePurchaseRepository.saveAndFlush(offline);
+
+        ClientPortfolio portfolio = portfolioRepository.find(client.getId());
+
+        assertEquals("Roman", portfolio.getUsername());
+        assertEquals(Arrays.asList(first.getId(), second.getId()),
+                Arrays.asList(portfolio.getWallets().get(0).getWalletId(), portfolio.getWallets().get(1).getWalletId()));
+        assertEquals(2, portfolio.getWallets().get(0).getPurchaseCount()); // онлайн и офлайн вместе
+        assertEquals(0, BigDecimal.valueOf(50).compareTo(portfolio.getWallets().get(0).getPurchaseTotal()));
+        assertEquals(0, portfolio.getWallets().get(1).getPurchaseCount());
+        assertEquals(0, BigDecimal.ZERO.compareTo(portfolio.getWallets().get(1).getPurchaseTotal()));
+        assertEquals(0, Money.of(140).compareTo(portfolio.getTotalBalance()));
+        assertEquals(0, BigDecimal.valueOf(50).compareTo(portfolio.getPurchaseTotal()));
+    }
+
+    @Test
+    public void testClientWithoutWalletsAndMissingClient() {
+        Client client = userRepository.saveAndFlush(new Client(UUID.randomUUID(), "Roman", "Roman", "empty@mail.ru"));
+
+        assertTrue(portfolioRepository.find(client.getId()).getWallets().isEmpty());
+        assertNull(portfolioRepository.find(UUID.randomUUID()));
+    }
+
+    @Test
+    public void testEntityCycleDoesNotRecurse() {
+        Client client = new Client(UUID.randomUUID(), "Roman", "Roman", "cycle@mail.ru");
+        Wallet wallet = new Wallet(UUID.randomUUID(), Money.of(10), null, client);
+        OnlinePurchase purchase = new OnlinePurchase("ozon.ru");
+        fill(purchase, BigDecimal.ONE, wallet);
+        client.setWallets(Collections.singletonList(wallet));
+        wallet.setPurchases(Collections.singletonList(purchase));
+
+        // client → wallets → client и wallet → purchases → wallet больше не обходятся
+        assertTrue(purchase.toString().contains("ozon.ru"));
+        assertTrue(client.toString().contains("Roman"));
+        assertEquals(purchase.hashCode(), purchase.hashCode());
+        assertEquals(client.hashCode(), client.hashCode());
+    }
+
+    private static void fill(Purchase purchase, BigDecimal amount, Wallet wallet) {
+        purchase.setId(UUID.randomUUID());
+        purchase.setAmount(amount);
+        purchase.setWallet(wallet);
+        purchase.setCreatedAt(Instant.parse("2024-01-01T00:00:00Z"));
+    }
+}
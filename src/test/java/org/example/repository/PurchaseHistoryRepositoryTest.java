@@ -0,0 +1,130 @@
+package org.example.repository;
+
+import org.example.dto.PurchaseView;
+import org.example.entity.Money;
+import org.example.entity.OfflinePurchase;
+import org.example.entity.OnlinePurchase;
+import org.example.entity.Wallet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
+@Import({PurchaseHistoryRepository.class, PurchaseBatchRepository.class, SpendAggregateRepository.class})
+public class PurchaseHistoryRepositoryTest {
+
+    @Autowired
+    private PurchaseHistoryRepository purchaseHistoryRepository;
+    @Autowired
+    private PurchaseBatchRepository purchaseBatchRepository;
+    @Autowired
+    private WalletRepository walletRepository;
+    @Autowired
+    private OnlinePurchaseRepository onlinePurchaseRepository;
+    @Autowired
+    private OfflinePurchaseRepository offlinePurchaseRepository;
+
+    private Wallet wallet;
+    private final Instant start = Instant.parse("2024-01-01T00:00:00Z");
+
+    @BeforeEach
+    public void setup() {
+        wallet = walletRepository.save(new Wallet(UUID.randomUUID(), Money.of(100), null, null));
+        Wallet other = walletRepository.save(new Wallet(UUID.randomUUID(), Money.of(100), null, null));
+        for (int i = 0; i < 25; i++) {
+            // Каждые две покупки — в одну микросекунду и в разных таблицах: порядок решает id.
+            Instant createdAt = start.plusSeconds(i / 2);
+            if (i % 2 == 0) {
+                OnlinePurchase purchase = new OnlinePurchase("shop-" + i);
+                fill(purchase, createdAt, wallet);
+                onlinePurchaseRepository.save(purchase);
+            } else {
+                OfflinePurchase purchase = new OfflinePurchase("street-" + i);
+                fill(purchase, createdAt, wallet);
+                offlinePurchaseRepository.save(purchase);
+            }
+        }
+        OnlinePurchase foreign = new OnlinePurchase("foreign");
+        fill(foreign, start.plusSeconds(100), other);
+        onlinePurchaseRepository.saveAndFlush(foreign);
+    }
+
+    @Test
+    public void testPagesCoverHistoryNewestFirstWithoutGapsOrDuplicates() {
+        List<PurchaseView> seen = new ArrayList<>();
+        Instant createdAt = PurchaseHistoryRepository.NEWEST;
+        UUID id = PurchaseHistoryRepository.MAX_ID;
+        int pages = 0;
+        while (true) {
+            List<PurchaseView> page = purchaseHistoryRepository.findOlderThan(wallet.getId(), createdAt, id, 10);
+            pages++;
+            boolean more = page.size() > 10;
+            List<PurchaseView> items = more ? page.subList(0, 10) : page;
+            seen.addAll(items);
+            if (!more) {
+                break;
+            }
+            createdAt = items.get(9).getCreatedAt();
+            id = items.get(9).getId();
+        }
+
+        assertEquals(3, pages);
+        assertEquals(25, seen.size());
+        Set<UUID> ids = new HashSet<>();
+        for (int i = 0; i < seen.size(); i++) {
+            assertTrue(ids.add(seen.get(i).getId()));
+            if (i > 0) {
+                assertTrue(PurchaseHistoryRepository.NEWEST_FIRST.compare(seen.get(i - 1), seen.get(i)) < 0);
+            }
+        }
+        assertEquals(start.plusSeconds(12), seen.get(0).getCreatedAt()); // покупка другого кошелька не попала
+    }
+
+    @Test
+    public void testProjectionCarriesTypeAndStore() {
+        List<PurchaseView> page = purchaseHistoryRepository.findOlderThan(
+                wallet.getId(), PurchaseHistoryRepository.NEWEST, PurchaseHistoryRepository.MAX_ID, 1);
+
+        PurchaseView newest = page.get(0);
+        assertEquals(PurchaseView.Type.ONLINE, newest.getType()); // единственная покупка последней секунды — № 24
+        assertEquals("shop-24", newest.getStore());
+        assertEquals(0, BigDecimal.ONE.compareTo(newest.getAmount()));
+    }
+
+    @Test
+    public void testBatchInsertedPurchasesAppearInHistory() {
+        Wallet fresh = walletRepository.saveAndFlush(new Wallet(UUID.randomUUID(), Money.of(100), null, null)); // JDBC-вставке нужна строка кошелька в БД
+        Instant createdAt = Instant.parse("2024-02-01T00:00:00.000001Z");
+        purchaseBatchRepository.insertAll(Arrays.asList(
+                new PurchaseBatchRepository.PurchaseRow(UUID.randomUUID(), fresh.getId(), PurchaseView.Type.ONLINE, BigDecimal.ONE, "ozon.ru", createdAt),
+                new PurchaseBatchRepository.PurchaseRow(UUID.randomUUID(), fresh.getId(), PurchaseView.Type.OFFLINE, BigDecimal.TEN, "Moscow", createdAt)));
+
+        List<PurchaseView> page = purchaseHistoryRepository.findOlderThan(
+                fresh.getId(), PurchaseHistoryRepository.NEWEST, PurchaseHistoryRepository.MAX_ID, 10);
+        assertEquals(2, page.size());
+        assertEquals(createdAt, page.get(0).getCreatedAt());
+    }
+
+    private static void fill(org.example.entity.Purchase purchase, Instant createdAt, Wallet wallet) {
+        purchase.setId(UUID.randomUUID());
+        purchase.setAmount(BigDecimal.ONE);
+        purchase.setWallet(wallet);
+        purchase.setCreatedAt(createdAt);
+    }
+}
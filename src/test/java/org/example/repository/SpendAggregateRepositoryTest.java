@@ -0,0 +1,103 @@
+package org.example.repository;
+
+import org.example.dto.PurchaseView;
+import org.example.dto.SpendSummary;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
+@Import({PurchaseBatchRepository.class, SpendAggregateRepository.class})
+public class SpendAggregateRepositoryTest {
+
+    @Autowired
+    private SpendAggregateRepository spendRepository;
+    @Autowired
+    private PurchaseBatchRepository purchaseBatchRepository;
+    @Autowired
+    private WalletRepository walletRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Instant start = Instant.parse("2024-01-01T10:15:00Z");
+    private UUID walletId;
+    private List<PurchaseBatchRepository.PurchaseRow> purchases;
+
+    @BeforeEach
+    public void setup() {
+        walletId = walletRepository.saveAndFlush(new Wallet(UUID.randomUUID(), Money.of(100), null, null)).getId();
+        // Две покупки в 10-м часу, одна в 11-м и одна на следующий день; два магазина, один из них дважды.
+        purchases = Arrays.asList(
+                row(PurchaseView.Type.ONLINE, "ozon.ru", "10.00", start),
+                row(PurchaseView.Type.ONLINE, "ozon.ru", "5.50", start.plusSeconds(600)),
+                row(PurchaseView.Type.OFFLINE, "Moscow", "2.25", start.plusSeconds(3600)),
+                row(PurchaseView.Type.OFFLINE, "Moscow", "1.00", start.plusSeconds(86400)));
+    }
+
+    @Test
+    public void testInsertedPurchasesAreAggregated() {
+        purchaseBatchRepository.insertAll(purchases);
+
+        SpendSummary hours = spendRepository.find(walletId, SpendSummary.Granularity.HOUR, start.minusSeconds(3600), start.plusSeconds(7200));
+        SpendSummary days = spendRepository.find(walletId, SpendSummary.Granularity.DAY, Instant.parse("2024-01-01T00:00:00Z"), Instant.parse("2024-01-03T00:00:00Z"));
+
+        assertEquals(4, hours.getPurchaseCount());
+        assertEquals(new BigDecimal("18.75"), hours.getPurchaseTotal());
+        assertEquals(2, hours.getStores().size());
+        assertEquals(2, hours.getStores().get(1).getPurchaseCount()); // ONLINE после OFFLINE
+        assertEquals(new BigDecimal("15.50"), hours.getStores().get(1).getPurchaseTotal());
+        // Окно в 3 часа: покупки следующего дня в него не попадают.
+        assertEquals(2, hours.getBuckets().size());
+        assertEquals(Instant.parse("2024-01-01T10:00:00Z"), hours.getBuckets().get(0).getStart());
+        assertEquals(2, hours.getBuckets().get(0).getPurchaseCount());
+        assertEquals(Arrays.asList(3L, 1L), Arrays.asList(days.getBuckets().get(0).getPurchaseCount(), days.getBuckets().get(1).getPurchaseCount()));
+    }
+
+    @Test
+    public void testReplayedBatchIsCountedOnce() {
+        purchaseBatchRepository.insertMissing(purchases);
+        purchaseBatchRepository.insertMissing(purchases.subList(0, 2)); // повтор после сбоя до checkpoint
+
+        SpendSummary summary = spendRepository.find(walletId, SpendSummary.Granularity.DAY, start.minusSeconds(86400), start.plusSeconds(2 * 86400));
+
+        assertEquals(4, summary.getPurchaseCount());
+        assertEquals(new BigDecimal("18.75"), summary.getPurchaseTotal());
+    }
+
+    @Test
+    public void testRebuildRecomputesFromPurchases() {
+        purchaseBatchRepository.insertAll(purchases);
+        SpendSummary maintained = spendRepository.find(walletId, SpendSummary.Granularity.HOUR, start.minusSeconds(3600), start.plusSeconds(2 * 86400));
+        jdbcTemplate.update("UPDATE wallet_spend SET amount = 0, purchase_count = 0 WHERE wallet_id = ?", walletId);
+
+        spendRepository.rebuild(Collections.singletonList(walletId));
+
+        assertEquals(maintained, spendRepository.find(walletId, SpendSummary.Granularity.HOUR, start.minusSeconds(3600), start.plusSeconds(2 * 86400)));
+    }
+
+    @Test
+    public void testWalletWithoutPurchasesHasNoAggregates() {
+        assertNull(spendRepository.find(walletId, SpendSummary.Granularity.DAY, start, start.plusSeconds(86400)));
+    }
+
+    private PurchaseBatchRepository.PurchaseRow row(PurchaseView.Type type, String store, String amount, Instant createdAt) {
+        return new PurchaseBatchRepository.PurchaseRow(UUID.randomUUID(), walletId, type, new BigDecimal(amount), store, createdAt);
+    }
+}
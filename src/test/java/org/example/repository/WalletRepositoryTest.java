@@ -2,6 +2,7 @@ package org.example.repository;
 
 import org.apache.catalina.User;
 import org.example.entity.*;
+import org.example.entity.Money;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
@@ -50,7 +51,7 @@ public class WalletRepositoryTest { // Объявление класса WalletR
     public void testSaveAndFindWallet() { // Метод для тестирования сохранения и поиска кошелька.
         Client client = new Client(UUID.randomUUID(), "Roman", "Roman", "rom@mail.ru");
         userRepository.save(client);
-        Wallet wallet = new Wallet(UUID.randomUUID(), BigDecimal.valueOf(100), 1L, client); // Создание нового объекта Wallet с уникальным UUID, балансом 100 и версией 1.
+        Wallet wallet = new Wallet(UUID.randomUUID(), Money.of(100), 1L, client); // Создание нового объекта Wallet с уникальным UUID, балансом 100 и версией 1.
         walletRepository.save(wallet); // Сохранение объекта Wallet в базе данных.
 
         Wallet foundWallet = walletRepository.findByIdWithLock(wallet.getId()).orElse(null); // Поиск сохраненного Wallet по его ID.
@@ -62,12 +63,22 @@ public class WalletRepositoryTest { // Объявление класса WalletR
     public void testChangeBalanceInWallet() { // Метод для тестирования изменения баланса в кошельке.
         Client client = new Client(UUID.randomUUID(), "Roman", "Roman", "rom@mail.ru");
         userRepository.save(client);
-        Wallet wallet = new Wallet(UUID.randomUUID(), BigDecimal.valueOf(100), 1L, client); // Создание нового объекта Wallet с уникальным UUID, балансом 100 и версией 1.
+        Wallet wallet = new Wallet(UUID.randomUUID(), Money.of(100), 1L, client); // Создание нового объекта Wallet с уникальным UUID, балансом 100 и версией 1.
         walletRepository.save(wallet); // Сохранение объекта Wallet в базе данных.
 
         Wallet foundWallet = walletRepository.findByIdWithLock(wallet.getId()).orElse(null); // Поиск сохраненного Wallet по его ID.
-        foundWallet.setBalance(BigDecimal.valueOf(200)); // Изменение баланса найденного кошелька на 200.
-        assertEquals(foundWallet.getBalance(), BigDecimal.valueOf(200)); // Проверка, что новый баланс найденного кошелька равен 200.
+        foundWallet.setBalance(Money.of(200)); // Изменение баланса найденного кошелька на 200.
+        assertEquals(foundWallet.getBalance(), Money.of(200)); // Проверка, что новый баланс найденного кошелька равен 200.
+    }
+    @Test
+    public void testFindAllByIdWithLockSkipsMissingWallets() {
+        Client client = new Client(UUID.randomUUID(), "Roman", "Roman", "rom@mail.ru");
+        userRepository.save(client);
+        Wallet first = walletRepository.save(new Wallet(UUID.randomUUID(), Money.of(100), 1L, client));
+        Wallet second = walletRepository.save(new Wallet(UUID.randomUUID(), Money.of(200), 1L, client));
+
+        List<Wallet> locked = walletRepository.findAllByIdWithLock(Arrays.asList(first.getId(), second.getId(), UUID.randomUUID()));
+        assertEquals(2, locked.size()); // несуществующий кошелёк просто отсутствует в выборке
     }
     @Test
     public void testAddOnlinePurchase() {
@@ -102,7 +113,7 @@ public class WalletRepositoryTest { // Объявление класса WalletR
    public OfflinePurchase setOfflinePurchase() {
        Client client = new Client(UUID.randomUUID(), "Roman", "Roman", "rom@mail.ru");
        userRepository.save(client);
-       Wallet wallet = new Wallet(UUID.randomUUID(), BigDecimal.valueOf(100), 1L, client);
+       Wallet wallet = new Wallet(UUID.randomUUID(), Money.of(100), 1L, client);
        walletRepository.save(wallet);
 
        // Создаем онлайн-покупку и ассоциируем ее с кошельком
@@ -115,9 +126,9 @@ public class WalletRepositoryTest { // Объявление класса WalletR
        return offlinePurchase;
    }
     public OnlinePurchase setOnlinePurchase() {
-        Client client = new Client(UUID.randomUUID(), "Roman", "Roman", "rom@mail.ru");
+        Client client = new Client(UUID.randomUUID(), "Roman", "Roman", "rom.online@mail.ru"); // email клиента уникален
         userRepository.save(client);
-        Wallet wallet = new Wallet(UUID.randomUUID(), BigDecimal.valueOf(100), 1L, client);
+        Wallet wallet = new Wallet(UUID.randomUUID(), Money.of(100), 1L, client);
         walletRepository.save(wallet);
 
         // Создаем онлайн-покупку и ассоциируем ее с кошельком
@@ -0,0 +1,21 @@
+package org.example.service;
+
+import org.example.service.engine.ConditionalUpdateEngine;
+import org.example.service.engine.OperationEngine;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+@TestPropertySource(properties = "wallet.concurrency.strategy=atomic")
+public class AtomicStrategyTest extends BalanceUpdateStrategyContract {
+
+    @Autowired
+    private OperationEngine engine;
+
+    @Test
+    public void testUsesConditionalUpdate() {
+        assertInstanceOf(ConditionalUpdateEngine.class, engine);
+    }
+}
@@ -0,0 +1,167 @@
+package org.example.service;
+
+import org.example.dto.TransferRequest;
+import org.example.dto.TransferResult;
+import org.example.dto.WalletOperationRequest;
+import org.example.dto.WalletOperationResult;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.example.exception.InsufficientFundsException;
+import org.example.exception.WalletNotFoundException;
+import org.example.repository.WalletRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Общие проверки корректности для всех стратегий обновления баланса (wallet.concurrency.strategy).
+ * Наследник задаёт стратегию через @TestPropertySource; операции идут через WalletService на встроенной H2.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {"wallet.rate-limit.limit-for-period=1000000", "spring.jpa.show-sql=false"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
+abstract class BalanceUpdateStrategyContract {
+
+    @Autowired
+    protected WalletService walletService;
+    @Autowired
+    protected WalletRepository walletRepository;
+
+    private UUID walletId;
+
+    @BeforeEach
+    public void createWallet() {
+        walletId = UUID.randomUUID();
+        walletRepository.save(new Wallet(walletId, Money.of(100), null, null));
+    }
+
+    @Test
+    public void testDepositAndWithdrawAreVisibleToReads() throws Exception {
+        walletService.processOperation(deposit(Money.of(50)));
+        walletService.processOperation(withdraw(Money.of(30)));
+
+        assertEquals(0, Money.of(120).compareTo(walletService.getBalance(walletId)));
+    }
+
+    @Test
+    public void testOverdraftIsRejectedAndBalanceUnchanged() throws Exception {
+        walletService.processOperation(withdraw(Money.of(60)));
+
+        assertThrows(InsufficientFundsException.class, () -> walletService.processOperation(withdraw(Money.of(60))));
+        assertEquals(0, Money.of(40).compareTo(walletService.getBalance(walletId)));
+    }
+
+    @Test
+    public void testUnknownWalletIsNotFound() {
+        assertThrows(WalletNotFoundException.class, () -> walletService.processOperation(
+                new WalletOperationRequest(UUID.randomUUID(), WalletOperationRequest.OperationType.DEPOSIT, Money.of(1))));
+    }
+
+    @Test
+    public void testConcurrentOperationsLoseNoUpdates() throws Exception {
+        AtomicInteger deposited = new AtomicInteger();
+        AtomicInteger withdrawn = new AtomicInteger();
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            boolean isDeposit = i % 3 == 0; // 100 пополнений и 200 списаний по 1
+            Callable<Void> operation = () -> {
+                start.await();
+                try {
+                    walletService.processOperation(isDeposit ? deposit(Money.of(1)) : withdraw(Money.of(1)));
+                    (isDeposit ? deposited : withdrawn).incrementAndGet();
+                } catch (InsufficientFundsException | ConcurrencyFailureException e) {
+                    // Отказ допустим: важно, что он не оставил следов в балансе.
+                }
+                return null;
+            };
+            results.add(callers.submit(operation));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        callers.shutdown();
+
+        Money balance = walletService.getBalance(walletId); // через сервис: в режиме журнала wallet.balance — лишь база
+        assertTrue(withdrawn.get() > 0);
+        assertTrue(balance.signum() >= 0);
+        // Каждая успешная операция отражена в балансе ровно один раз.
+        assertEquals(0, Money.of(100 + deposited.get() - withdrawn.get()).compareTo(balance));
+    }
+
+    @Test
+    public void testOppositeTransfersDoNotDeadlock() throws Exception {
+        UUID otherId = UUID.randomUUID();
+        walletRepository.save(new Wallet(otherId, Money.of(100), null, null));
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // Встречные переводы: половина A→B, половина B→A
+            TransferRequest transfer = i % 2 == 0
+                    ? new TransferRequest(walletId, otherId, Money.of(1))
+                    : new TransferRequest(otherId, walletId, Money.of(1));
+            results.add(callers.submit(() -> {
+                start.await();
+                walletService.transfer(transfer); // взаимоблокировка пришла бы сюда исключением
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        callers.shutdown();
+
+        // Деньги только перемещались: 100 переводов в каждую сторону вернули балансы к исходным.
+        assertEquals(0, Money.of(100).compareTo(walletService.getBalance(walletId)));
+        assertEquals(0, Money.of(100).compareTo(walletService.getBalance(otherId)));
+    }
+
+    @Test
+    public void testTransferBatchAppliesInOrderAndRejectsSeparately() throws Exception {
+        UUID otherId = UUID.randomUUID();
+        walletRepository.save(new Wallet(otherId, Money.ZERO, null, null));
+
+        List<TransferResult> results = walletService.transfers(Arrays.asList(
+                new TransferRequest(walletId, otherId, Money.of(70)),
+                new TransferRequest(walletId, otherId, Money.of(70)), // после первого не хватает средств
+                new TransferRequest(otherId, walletId, Money.of(20)), // видит зачисление первого перевода
+                new TransferRequest(otherId, UUID.randomUUID(), Money.of(1))));
+
+        assertEquals(WalletOperationResult.Status.SUCCESS, results.get(0).getStatus());
+        assertEquals(WalletOperationResult.Status.INSUFFICIENT_FUNDS, results.get(1).getStatus());
+        assertEquals(WalletOperationResult.Status.SUCCESS, results.get(2).getStatus());
+        assertEquals(WalletOperationResult.Status.NOT_FOUND, results.get(3).getStatus());
+        assertEquals(0, Money.of(50).compareTo(walletService.getBalance(walletId)));
+        assertEquals(0, Money.of(50).compareTo(walletService.getBalance(otherId)));
+    }
+
+    private WalletOperationRequest deposit(Money amount) {
+        return new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, amount);
+    }
+
+    private WalletOperationRequest withdraw(Money amount) {
+        return new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, amount);
+    }
+}
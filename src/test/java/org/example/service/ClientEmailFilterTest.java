@@ -0,0 +1,41 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClientEmailFilterTest {
+
+    @Test
+    public void testAnswersMaybeUntilWarm() {
+        ClientEmailFilter filter = new ClientEmailFilter(1000, 0.01);
+
+        assertTrue(filter.mightContain("new@mail.ru")); // до прогрева — всегда в БД
+
+        filter.markWarm();
+        assertFalse(filter.mightContain("new@mail.ru"));
+    }
+
+    @Test
+    public void testNoFalseNegativesAndFalsePositivesNearTarget() {
+        int clients = 100_000;
+        ClientEmailFilter filter = new ClientEmailFilter(clients, 0.01);
+        for (int i = 0; i < clients; i++) {
+            filter.add("client" + i + "@mail.ru");
+        }
+        filter.markWarm();
+
+        for (int i = 0; i < clients; i++) {
+            assertTrue(filter.mightContain("client" + i + "@mail.ru"));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < clients; i++) {
+            if (filter.mightContain("stranger" + i + "@mail.ru")) {
+                falsePositives++;
+            }
+        }
+        // Заданная доля 1%; запас на разброс, но не на порядок
+        assertTrue(falsePositives < clients * 0.02, "false positives: " + falsePositives);
+    }
+}
@@ -0,0 +1,169 @@
+package org.example.service;
+
+import org.example.dto.ClientPortfolio;
+import org.example.dto.WalletOperationRequest;
+import org.example.dto.WalletSummary;
+import org.example.entity.Client;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.example.repository.UserRepository;
+import org.example.service.engine.EventLedgerEngine;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Журнал проходит общий набор проверок; уплотнение вызывается вручную, фоновый проход отключён длинным интервалом.
+@TestPropertySource(properties = {"wallet.engine.mode=ledger", "wallet.ledger.compaction-interval-ms=3600000",
+        "wallet.ledger.compaction-threshold=1"})
+public class EventLedgerEngineTest extends BalanceUpdateStrategyContract {
+
+    @Autowired
+    private EventLedgerEngine ledger;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testOperationsAreAppendedAndCompactedIntoSnapshot() throws Exception {
+        UUID walletId = newWallet(100);
+        walletService.processOperation(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(50)));
+        walletService.processOperation(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, Money.of(20)));
+
+        assertEquals(0, Money.of(100).compareTo(storedBalance(walletId))); // строка кошелька не обновлялась
+        assertEquals(0, Money.of(130).compareTo(walletService.getBalance(walletId)));
+
+        ledger.compact(walletId);
+
+        assertEquals(0, Money.of(130).compareTo(Money.of(jdbcTemplate.queryForObject(
+                "SELECT balance FROM wallet_snapshot WHERE wallet_id = ?", BigDecimal.class, walletId))));
+        assertEquals(0, Money.of(130).compareTo(storedBalance(walletId)));
+        assertEquals(2, operationCount(walletId)); // журнал остаётся для аудита
+
+        walletService.processOperation(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(1)));
+        assertEquals(0, Money.of(131).compareTo(walletService.getBalance(walletId)));
+    }
+
+    @Test
+    public void testCompactionDuringWritesLosesNoOperations() throws Exception {
+        UUID walletId = newWallet(0);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService pool = Executors.newFixedThreadPool(9);
+        Future<?> compaction = pool.submit(() -> {
+            while (writing.get()) {
+                ledger.compactPending();
+            }
+        });
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            writers.add(pool.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    walletService.processOperation(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(1)));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        writing.set(false);
+        compaction.get();
+        pool.shutdown();
+
+        assertEquals(0, Money.of(400).compareTo(walletService.getBalance(walletId)));
+        ledger.compact(walletId);
+        assertEquals(0, Money.of(400).compareTo(storedBalance(walletId)));
+    }
+
+    @Test
+    public void testOperationsSpreadAcrossPassesAreCompactedAtThreshold() throws Exception {
+        // Свой уплотнитель с порогом 3: за каждый проход у кошелька появляется одна операция.
+        EventLedgerEngine compactor = new EventLedgerEngine(jdbcTemplate, transactionManager, 3600000, 3, 500);
+        try {
+            UUID walletId = newWallet(10);
+            for (int pass = 1; pass <= 2; pass++) {
+                walletService.processOperation(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(1)));
+                compactor.compactPending();
+                assertEquals(0, snapshotCount(walletId)); // порог ещё не набран
+            }
+            walletService.processOperation(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(1)));
+            compactor.compactPending();
+
+            assertEquals(1, snapshotCount(walletId));
+            assertEquals(0, Money.of(13).compareTo(storedBalance(walletId)));
+            assertEquals(0, Money.of(13).compareTo(walletService.getBalance(walletId)));
+        } finally {
+            compactor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPurchaseIsDebitedThroughLedger() throws Exception {
+        UUID walletId = newWallet(100);
+
+        walletService.addOnlinePurchase("https://shop.example", BigDecimal.valueOf(40), walletId);
+
+        assertEquals(0, Money.of(60).compareTo(walletService.getBalance(walletId)));
+        assertEquals(1, operationCount(walletId));
+    }
+
+    @Test
+    public void testPortfolioBalancesComeFromLedger() throws Exception {
+        Client client = userRepository.save(new Client(UUID.randomUUID(), "Roman", "Roman", "ledger-portfolio@mail.ru"));
+        UUID compacted = UUID.randomUUID();
+        UUID fresh = UUID.randomUUID();
+        walletRepository.save(new Wallet(compacted, Money.of(100), null, client));
+        walletRepository.save(new Wallet(fresh, Money.of(10), null, client));
+        walletService.processOperation(new WalletOperationRequest(compacted, WalletOperationRequest.OperationType.DEPOSIT, Money.of(50)));
+        ledger.compact(compacted);
+        walletService.processOperation(new WalletOperationRequest(compacted, WalletOperationRequest.OperationType.WITHDRAW, Money.of(20)));
+        walletService.processOperation(new WalletOperationRequest(fresh, WalletOperationRequest.OperationType.DEPOSIT, Money.of(5)));
+
+        ClientPortfolio portfolio = walletService.getPortfolio(client.getId());
+
+        // Снимок плюс операции после него — в самом запросе сводки, строки кошельков по-прежнему исходные
+        Map<UUID, Money> balances = new HashMap<>();
+        for (WalletSummary wallet : portfolio.getWallets()) {
+            balances.put(wallet.getWalletId(), wallet.getBalance());
+        }
+        assertEquals(0, Money.of(130).compareTo(balances.get(compacted)));
+        assertEquals(0, Money.of(15).compareTo(balances.get(fresh)));
+        assertEquals(0, Money.of(145).compareTo(portfolio.getTotalBalance()));
+        assertEquals(0, Money.of(10).compareTo(storedBalance(fresh)));
+    }
+
+    private UUID newWallet(long balance) {
+        UUID walletId = UUID.randomUUID();
+        walletRepository.save(new Wallet(walletId, Money.of(balance), null, null));
+        return walletId;
+    }
+
+    private Money storedBalance(UUID walletId) {
+        return walletRepository.findBalanceById(walletId).orElseThrow(IllegalStateException::new);
+    }
+
+    private int snapshotCount(UUID walletId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM wallet_snapshot WHERE wallet_id = ?", Integer.class, walletId);
+    }
+
+    private int operationCount(UUID walletId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM wallet_operation WHERE wallet_id = ?", Integer.class, walletId);
+    }
+}
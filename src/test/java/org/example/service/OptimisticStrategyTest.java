@@ -0,0 +1,21 @@
+package org.example.service;
+
+import org.example.service.engine.OperationEngine;
+import org.example.service.engine.OptimisticVersionEngine;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+@TestPropertySource(properties = "wallet.concurrency.strategy=optimistic")
+public class OptimisticStrategyTest extends BalanceUpdateStrategyContract {
+
+    @Autowired
+    private OperationEngine engine;
+
+    @Test
+    public void testUsesVersionCheckedUpdates() {
+        assertInstanceOf(OptimisticVersionEngine.class, engine);
+    }
+}
@@ -0,0 +1,21 @@
+package org.example.service;
+
+import org.example.service.engine.OperationEngine;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@TestPropertySource(properties = "wallet.concurrency.strategy=pessimistic")
+public class PessimisticStrategyTest extends BalanceUpdateStrategyContract {
+
+    @Autowired
+    private ObjectProvider<OperationEngine> engine;
+
+    @Test
+    public void testUsesBuiltInRowLockPath() {
+        assertNull(engine.getIfAvailable()); // без движка WalletService блокирует строку сам
+    }
+}
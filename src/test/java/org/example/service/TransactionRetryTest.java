@@ -0,0 +1,85 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.jpa.JpaSystemException;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransactionRetryTest {
+
+    private final WalletMetrics metrics = new WalletMetrics();
+    private final TransactionRetry retry = new TransactionRetry(5, 1000, 1, 5, metrics);
+
+    @Test
+    public void testExecute_RetriesLockConflictUntilSuccess() {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = retry.execute(WalletMetrics.Endpoint.OPERATION, TransactionOperations.withoutTransaction(), status -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new CannotAcquireLockException("lock timeout");
+            }
+            return "done";
+        });
+
+        assertEquals("done", result);
+        assertEquals(3, calls.get());
+        assertEquals(2L, ((Map<?, ?>) metrics.snapshot().get("OPERATION")).get("retries"));
+    }
+
+    @Test
+    public void testExecute_GivesUpAfterMaxAttempts() {
+        AtomicInteger calls = new AtomicInteger();
+        // Ошибка сериализации от драйвера, не переведённая Spring в ConcurrencyFailureException
+        JpaSystemException failure = new JpaSystemException(new RuntimeException(new SQLException("could not serialize", "40001")));
+
+        ConcurrencyFailureException e = assertThrows(ConcurrencyFailureException.class,
+                () -> retry.execute(WalletMetrics.Endpoint.BATCH, TransactionOperations.withoutTransaction(), status -> {
+                    calls.incrementAndGet();
+                    throw failure;
+                }));
+
+        assertEquals(5, calls.get());
+        assertSame(failure, e.getCause());
+    }
+
+    @Test
+    public void testExecute_StopsWhenBudgetIsSpent() {
+        TransactionRetry slow = new TransactionRetry(100, 0, 50, 50, metrics); // бюджет меньше любой паузы
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(CannotAcquireLockException.class,
+                () -> slow.execute(WalletMetrics.Endpoint.OPERATION, TransactionOperations.withoutTransaction(), status -> {
+                    calls.incrementAndGet();
+                    throw new CannotAcquireLockException("lock timeout");
+                }));
+
+        assertTrue(calls.get() < 100);
+    }
+
+    @Test
+    public void testExecute_DoesNotRetryOtherFailures() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(DataIntegrityViolationException.class,
+                () -> retry.execute(WalletMetrics.Endpoint.OPERATION, TransactionOperations.withoutTransaction(), status -> {
+                    calls.incrementAndGet();
+                    throw new DataIntegrityViolationException("duplicate key");
+                }));
+
+        assertEquals(1, calls.get());
+        assertFalse(TransactionRetry.isRetryable(new RuntimeException(new SQLException("duplicate key", "23505"))));
+        assertTrue(TransactionRetry.isRetryable(new RuntimeException(new SQLException("deadlock detected", "40P01"))));
+    }
+}
@@ -0,0 +1,102 @@
+package org.example.service;
+
+import org.example.entity.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WalletBalanceCacheTest {
+
+    private WalletBalanceCache cache;
+    private UUID walletId;
+
+    @BeforeEach
+    public void setup() {
+        cache = new WalletBalanceCache(1000, 60_000);
+        walletId = UUID.randomUUID();
+    }
+
+    @Test
+    public void testConcurrentMissesCollapseIntoOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        ExecutorService readers = Executors.newFixedThreadPool(16);
+        List<Future<Money>> results = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            results.add(readers.submit(() -> cache.get(walletId, id -> {
+                loads.incrementAndGet();
+                await(loading); // держим загрузку, пока остальные читатели не придут за тем же кошельком
+                return Money.of(10);
+            })));
+        }
+        Thread.sleep(100);
+        loading.countDown();
+        for (Future<Money> result : results) {
+            assertEquals(Money.of(10), result.get());
+        }
+        readers.shutdown();
+
+        assertEquals(1, loads.get()); // в БД сходили один раз
+    }
+
+    @Test
+    public void testInvalidationDuringLoadDropsStaleValue() throws Exception {
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch commitDone = new CountDownLatch(1);
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        // Читатель прочитал баланс до commit писателя и ещё не положил его в кэш.
+        Future<Money> stale = reader.submit(() -> cache.get(walletId, id -> {
+            loadStarted.countDown();
+            await(commitDone);
+            return Money.of(1);
+        }));
+        loadStarted.await();
+        commitDone.countDown();
+        cache.invalidate(walletId); // писатель зафиксировал новый баланс
+        assertEquals(Money.of(1), stale.get());
+        reader.shutdown();
+
+        // Следующее чтение обязано сходить в БД и увидеть новое значение.
+        assertEquals(Money.of(10), cache.get(walletId, id -> Money.of(10)));
+    }
+
+    @Test
+    public void testMissingWalletIsNotCached() {
+        assertNull(cache.get(walletId, id -> null));
+        assertEquals(Money.of(10), cache.get(walletId, id -> Money.of(10))); // кошелёк появился — загрузка повторяется
+    }
+
+    @Test
+    public void testWrittenWalletIsRecentForReadYourWritesWindow() throws InterruptedException {
+        WalletBalanceCache shortWindow = new WalletBalanceCache(1000, 60_000, 50);
+        assertFalse(shortWindow.isRecentlyWritten(walletId));
+
+        shortWindow.invalidateAfterCommit(walletId); // вне транзакции — сброс сразу
+
+        assertTrue(shortWindow.isRecentlyWritten(walletId)); // реплика может ещё не видеть запись
+        Thread.sleep(100);
+        assertFalse(shortWindow.isRecentlyWritten(walletId)); // окно прошло — снова читаем с реплики
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
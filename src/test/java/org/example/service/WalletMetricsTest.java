@@ -0,0 +1,95 @@
+package org.example.service;
+
+import org.example.entity.Money;
+import org.example.exception.InsufficientFundsException;
+import org.example.exception.RateLimitExceededException;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WalletMetricsTest {
+
+    @Test
+    public void testOutcomeOf_LooksThroughWrappers() {
+        assertEquals(WalletMetrics.Outcome.SUCCESS, WalletMetrics.outcomeOf(null));
+        assertEquals(WalletMetrics.Outcome.INSUFFICIENT_FUNDS,
+                WalletMetrics.outcomeOf(new RuntimeException(new InsufficientFundsException(Money.of(1)))));
+        assertEquals(WalletMetrics.Outcome.RATE_LIMITED, WalletMetrics.outcomeOf(new RateLimitExceededException(UUID.randomUUID(), 1)));
+        assertEquals(WalletMetrics.Outcome.LOCK_TIMEOUT,
+                WalletMetrics.outcomeOf(new PessimisticLockingFailureException("lock timeout")));
+        // CannotAcquireLockException — тоже PessimisticLockingFailureException
+        assertEquals(WalletMetrics.Outcome.LOCK_TIMEOUT, WalletMetrics.outcomeOf(new CannotAcquireLockException("deadlock")));
+        assertEquals(WalletMetrics.Outcome.SERIALIZATION_FAILURE,
+                WalletMetrics.outcomeOf(new ObjectOptimisticLockingFailureException("Wallet", "id")));
+        assertEquals(WalletMetrics.Outcome.DATABASE_BUSY,
+                WalletMetrics.outcomeOf(new CannotCreateTransactionException("bulkhead is full")));
+        assertEquals(WalletMetrics.Outcome.ERROR, WalletMetrics.outcomeOf(new IllegalStateException()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSnapshot_PercentilesAndOutcomes() {
+        WalletMetrics metrics = new WalletMetrics();
+        long now = System.nanoTime();
+        for (int i = 0; i < 99; i++) {
+            metrics.record(WalletMetrics.Endpoint.OPERATION, WalletMetrics.Phase.LOCK_WAIT, now);
+        }
+        // Одно долгое ожидание — начато «секунду назад»
+        metrics.record(WalletMetrics.Endpoint.OPERATION, WalletMetrics.Phase.LOCK_WAIT, now - TimeUnit.SECONDS.toNanos(1));
+        metrics.recordRequest(WalletMetrics.Endpoint.OPERATION, now, null);
+        metrics.recordRequest(WalletMetrics.Endpoint.OPERATION, now, new InsufficientFundsException(Money.of(1)));
+        metrics.recordRetry(WalletMetrics.Endpoint.OPERATION);
+
+        Map<String, Object> snapshot = metrics.snapshot();
+
+        assertEquals(1, snapshot.size()); // эндпоинты без событий не выводятся
+        Map<String, Object> operation = (Map<String, Object>) snapshot.get("OPERATION");
+        Map<String, Object> lockWait = (Map<String, Object>) ((Map<String, Object>) operation.get("phases")).get("LOCK_WAIT");
+        assertEquals(100L, lockWait.get("count"));
+        assertTrue((Double) lockWait.get("p99Ms") < 1000); // 99 быстрых ожиданий
+        assertTrue((Double) lockWait.get("p999Ms") >= 1000); // верхняя граница корзины не меньше самого значения
+        assertTrue((Double) lockWait.get("maxMs") >= 1000);
+        Map<String, Long> outcomes = (Map<String, Long>) operation.get("outcomes");
+        assertEquals(1L, outcomes.get("SUCCESS"));
+        assertEquals(1L, outcomes.get("INSUFFICIENT_FUNDS"));
+        assertEquals(1L, operation.get("retries"));
+    }
+
+    @Test
+    public void testRecord_DoesNotAllocate() {
+        WalletMetrics metrics = new WalletMetrics();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Throwable failure = new InsufficientFundsException(Money.of(1));
+        for (int i = 0; i < 100_000; i++) { // прогрев: JIT и ячейки LongAdder под этот поток
+            recordAll(metrics, failure);
+        }
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            recordAll(metrics, failure);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // Допуск на служебные выделения самого замера, но не по байту на запись
+        assertTrue(allocated < 10_000, "allocated " + allocated + " bytes");
+    }
+
+    private static void recordAll(WalletMetrics metrics, Throwable failure) {
+        long started = System.nanoTime();
+        metrics.record(WalletMetrics.Endpoint.OPERATION, WalletMetrics.Phase.RATE_LIMIT, started);
+        metrics.record(WalletMetrics.Endpoint.OPERATION, WalletMetrics.Phase.LOCK_WAIT, started);
+        metrics.recordRequest(WalletMetrics.Endpoint.OPERATION, started, failure);
+        metrics.recordRetry(WalletMetrics.Endpoint.OPERATION);
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.service;
+
+import org.example.exception.RateLimitExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WalletRateLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong(); // управляемое время в наносекундах
+    private final UUID walletId = UUID.randomUUID();
+
+    @Test
+    public void testRejectsImmediatelyOverLimitWithRetryAfter() {
+        WalletRateLimiter limiter = new WalletRateLimiter(10, TimeUnit.MINUTES.toNanos(1), 1024, clock::get);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(walletId);
+        }
+
+        RateLimitExceededException e = assertThrows(RateLimitExceededException.class, () -> limiter.acquire(walletId));
+        assertEquals(6, e.getRetryAfterSeconds()); // одно разрешение восстанавливается за минуту / 10
+        limiter.acquire(UUID.randomUUID()); // другие кошельки лимит не задевает
+    }
+
+    @Test
+    public void testLimitRefillsOverTime() {
+        WalletRateLimiter limiter = new WalletRateLimiter(10, TimeUnit.MINUTES.toNanos(1), 1024, clock::get);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(walletId);
+        }
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(6));
+        limiter.acquire(walletId);
+        assertThrows(RateLimitExceededException.class, () -> limiter.acquire(walletId));
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(1)); // простой: лимит восстановился полностью, но не больше
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(walletId);
+        }
+        assertThrows(RateLimitExceededException.class, () -> limiter.acquire(walletId));
+    }
+
+    @Test
+    public void testMemoryStaysFlatAfterTenMillionWallets() {
+        WalletRateLimiter limiter = new WalletRateLimiter(10, TimeUnit.MINUTES.toNanos(1), 1 << 16, clock::get);
+        long before = usedHeap();
+        for (long i = 0; i < 10_000_000L; i++) {
+            limiter.acquire(new UUID(i, ~i));
+            if (i % 1000 == 0) {
+                clock.incrementAndGet();
+            }
+        }
+        long after = usedHeap();
+
+        assertEquals(1 << 16, limiter.capacity());
+        assertTrue(limiter.trackedWallets() <= limiter.capacity());
+        // Таблица выделена заранее; UUID запросов — короткоживущий мусор, который собирается.
+        assertTrue(after - before < 8L * 1024 * 1024, "heap grew by " + (after - before) + " bytes");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -1,22 +1,58 @@
 package org.example.service;
 
+import org.example.dto.ClientDto;
+import org.example.dto.ClientPortfolio;
+import org.example.dto.PurchasePage;
+import org.example.dto.PurchaseRequest;
+import org.example.dto.PurchaseResult;
+import org.example.dto.PurchaseView;
+import org.example.dto.TransferRequest;
+import org.example.dto.TransferResult;
 import org.example.dto.WalletOperationRequest;
+import org.example.dto.WalletOperationResult;
+import org.example.dto.WalletSummary;
 import org.example.entity.Client;
+import org.example.entity.Money;
 import org.example.entity.Wallet;
+import org.example.exception.AlreadyExistWIthThisEmail;
+import org.example.exception.ClientAlreadyExistsException;
 import org.example.exception.InsufficientFundsException;
+import org.example.exception.InvalidTransferException;
 import org.example.exception.WalletNotFoundException;
+import org.example.repository.ClientPortfolioRepository;
+import org.example.repository.OnlinePurchaseRepository;
+import org.example.repository.PurchaseBatchRepository;
+import org.example.repository.PurchaseHistoryRepository;
+import org.example.repository.UserRepository;
 import org.example.repository.WalletRepository;
+import org.example.service.engine.BalanceLedger;
+import org.example.service.engine.ShardedLedgerEngine;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
@@ -24,6 +60,18 @@ import static org.mockito.Mockito.*;
 public class WalletServiceTest {
     @Mock
     private WalletRepository walletRepository; // Создаем мок объект для WalletRepository
+    @Mock
+    private UserRepository userRepository; // Мок клиентов: проверка email и сохранение
+    @Mock
+    private OnlinePurchaseRepository onlinePurchaseRepository; // Мок построчного сохранения покупок
+    @Mock
+    private WalletBalanceCache balanceCache; // Мок кэша балансов, который сбрасывается после записи
+    @Mock
+    private WalletRateLimiter rateLimiter; // Мок ограничителя запросов: пропускает все операции
+    @Mock
+    private PurchaseHistoryRepository purchaseHistoryRepository; // Мок постраничного чтения истории покупок
+    @Mock
+    private PurchaseBatchRepository purchaseBatchRepository; // Мок пакетной вставки покупок
 
     @InjectMocks
     private WalletService walletService; // Внедряем моки в WalletService
@@ -36,37 +84,37 @@ public class WalletServiceTest {
         MockitoAnnotations.openMocks(this); // Инициализируем моки перед каждым тестом
         walletId = UUID.randomUUID(); // Создаем уникальный UUID для кошелька
         Client client = new Client(UUID.randomUUID(), "Roman", "Roman", "rom@mail.ru");
-        wallet = new Wallet(UUID.randomUUID(), BigDecimal.valueOf(100), 1L, client); // Создание нового объекта Wallet с уникальным UUID, балансом 100 и версией 1.
+        wallet = new Wallet(UUID.randomUUID(), Money.of(100), 1L, client); // Создание нового объекта Wallet с уникальным UUID, балансом 100 и версией 1.
 
     }
 
     @Test
     public void testProcessOperation_Deposit() throws WalletNotFoundException, InsufficientFundsException {
-        WalletOperationRequest request = new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, BigDecimal.valueOf(50)); // Создаем запрос на депозит
+        WalletOperationRequest request = new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(50)); // Создаем запрос на депозит
 
         when(walletRepository.findByIdWithLock(walletId)).thenReturn(Optional.of(wallet)); // Настраиваем мок, чтобы вернуть созданный кошелек
 
         walletService.processOperation(request); // Выполняем операцию депозита
 
-        assertEquals(BigDecimal.valueOf(150), wallet.getBalance()); // Проверяем, что баланс увеличился на 50
+        assertEquals(Money.of(150), wallet.getBalance()); // Проверяем, что баланс увеличился на 50
         verify(walletRepository, times(1)).save(wallet); // Проверяем, что метод save был вызван один раз
     }
 
     @Test
     public void testProcessOperation_Withdraw() throws WalletNotFoundException, InsufficientFundsException {
-        WalletOperationRequest request = new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, BigDecimal.valueOf(50)); // Создаем запрос на снятие
+        WalletOperationRequest request = new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, Money.of(50)); // Создаем запрос на снятие
 
         when(walletRepository.findByIdWithLock(walletId)).thenReturn(Optional.of(wallet)); // Настраиваем мок, чтобы вернуть созданный кошелек
 
         walletService.processOperation(request); // Выполняем операцию снятия
 
-        assertEquals(BigDecimal.valueOf(50), wallet.getBalance()); // Проверяем, что баланс уменьшился на 50
+        assertEquals(Money.of(50), wallet.getBalance()); // Проверяем, что баланс уменьшился на 50
         verify(walletRepository, times(1)).save(wallet); // Проверяем, что метод save был вызван один раз
     }
 
     @Test
     public void testProcessOperation_InsufficientFunds() {
-        WalletOperationRequest request = new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, BigDecimal.valueOf(150)); // Создаем запрос на снятие больше текущего баланса
+        WalletOperationRequest request = new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, Money.of(150)); // Создаем запрос на снятие больше текущего баланса
 
         when(walletRepository.findByIdWithLock(walletId)).thenReturn(Optional.of(wallet)); // Настраиваем мок, чтобы вернуть созданный кошелек
 
@@ -79,7 +127,7 @@ public class WalletServiceTest {
 
     @Test
     public void testProcessOperation_WalletNotFound() {
-        WalletOperationRequest request = new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, BigDecimal.valueOf(50)); // Создаем запрос на депозит
+        WalletOperationRequest request = new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(50)); // Создаем запрос на депозит
 
         when(walletRepository.findByIdWithLock(walletId)).thenReturn(Optional.empty()); // Настраиваем мок, чтобы не возвращать кошелек
 
@@ -89,4 +137,303 @@ public class WalletServiceTest {
 
         verify(walletRepository, never()).save(any(Wallet.class)); // Проверяем, что метод save не был вызван
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testProcessBatch_LocksEachWalletOncePerChunk() {
+        ReflectionTestUtils.setField(walletService, "batchChunkSize", 3); // три операции на транзакцию
+        UUID missing = UUID.randomUUID();
+        when(walletRepository.findAllByIdWithLock(any())).thenReturn(Arrays.asList(wallet));
+        List<WalletOperationRequest> requests = Arrays.asList(
+                new WalletOperationRequest(wallet.getId(), WalletOperationRequest.OperationType.WITHDRAW, Money.of(60)),
+                new WalletOperationRequest(wallet.getId(), WalletOperationRequest.OperationType.WITHDRAW, Money.of(60)), // не хватает средств
+                new WalletOperationRequest(missing, WalletOperationRequest.OperationType.DEPOSIT, Money.of(10)),
+                new WalletOperationRequest(wallet.getId(), WalletOperationRequest.OperationType.DEPOSIT, Money.of(5)),
+                new WalletOperationRequest(wallet.getId(), WalletOperationRequest.OperationType.DEPOSIT, Money.of(-5))); // некорректная сумма
+        List<WalletOperationResult> results = new ArrayList<>();
+
+        walletService.processBatch(requests.iterator(), results::add);
+
+        assertEquals(5, results.size());
+        assertEquals(WalletOperationResult.Status.SUCCESS, results.get(0).getStatus());
+        assertEquals(Money.of(40), results.get(0).getBalance());
+        assertEquals(WalletOperationResult.Status.INSUFFICIENT_FUNDS, results.get(1).getStatus());
+        assertEquals(WalletOperationResult.Status.NOT_FOUND, results.get(2).getStatus());
+        assertEquals(WalletOperationResult.Status.SUCCESS, results.get(3).getStatus());
+        assertEquals(3, results.get(3).getIndex());
+        assertEquals(WalletOperationResult.Status.ERROR, results.get(4).getStatus());
+        assertEquals(Money.of(45), wallet.getBalance());
+        verify(walletRepository, times(2)).findAllByIdWithLock(any()); // одна блокирующая выборка на часть
+        verify(walletRepository, never()).findByIdWithLock(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testProcessBatch_SavesChangedWalletsOnce() {
+        when(walletRepository.findAllByIdWithLock(any())).thenReturn(Arrays.asList(wallet));
+        List<WalletOperationRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            requests.add(new WalletOperationRequest(wallet.getId(), WalletOperationRequest.OperationType.DEPOSIT, Money.of(1)));
+        }
+
+        walletService.processBatch(requests.iterator(), result -> { });
+
+        assertEquals(Money.of(110), wallet.getBalance());
+        verify(walletRepository, times(1)).saveAll(argThat(wallets -> ((Collection<Wallet>) wallets).size() == 1));
+        verify(balanceCache, times(1)).invalidateAfterCommit(wallet.getId());
+    }
+
+    @Test
+    public void testGetPurchases_CursorPointsAfterLastItem() throws Exception {
+        PurchaseView newer = new PurchaseView(UUID.randomUUID(), PurchaseView.Type.ONLINE, BigDecimal.ONE, "ozon.ru", Instant.parse("2024-01-02T00:00:00.123456Z"));
+        PurchaseView older = new PurchaseView(UUID.randomUUID(), PurchaseView.Type.OFFLINE, BigDecimal.ONE, "Moscow", Instant.parse("2024-01-01T00:00:00Z"));
+        when(purchaseHistoryRepository.findOlderThan(walletId, PurchaseHistoryRepository.NEWEST, PurchaseHistoryRepository.MAX_ID, 1))
+                .thenReturn(new ArrayList<>(Arrays.asList(newer, older))); // лишняя строка означает, что есть следующая страница
+        when(purchaseHistoryRepository.findOlderThan(walletId, newer.getCreatedAt(), newer.getId(), 1))
+                .thenReturn(new ArrayList<>(Arrays.asList(older)));
+
+        PurchasePage first = walletService.getPurchases(walletId, null, 1);
+        PurchasePage second = walletService.getPurchases(walletId, first.getNextCursor(), 1);
+
+        assertEquals(Arrays.asList(newer), first.getItems());
+        assertEquals(Arrays.asList(older), second.getItems()); // курсор раскодирован в точные время и id
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAddPurchases_DebitsEachWalletOnceAndInsertsInOneBatch() {
+        when(walletRepository.findAllByIdWithLock(any())).thenReturn(Arrays.asList(wallet));
+        List<PurchaseRequest> purchases = Arrays.asList(
+                new PurchaseRequest(wallet.getId(), PurchaseView.Type.ONLINE, BigDecimal.valueOf(30), "ozon.ru"),
+                new PurchaseRequest(wallet.getId(), PurchaseView.Type.OFFLINE, BigDecimal.valueOf(30), "Moscow"),
+                new PurchaseRequest(wallet.getId(), PurchaseView.Type.ONLINE, BigDecimal.valueOf(50), "ozon.ru"), // не хватает средств
+                new PurchaseRequest(UUID.randomUUID(), PurchaseView.Type.ONLINE, BigDecimal.ONE, "ozon.ru"));
+
+        List<PurchaseResult> results = walletService.addPurchases(purchases);
+
+        assertEquals(WalletOperationResult.Status.SUCCESS, results.get(0).getStatus());
+        assertEquals(WalletOperationResult.Status.SUCCESS, results.get(1).getStatus());
+        assertEquals(WalletOperationResult.Status.INSUFFICIENT_FUNDS, results.get(2).getStatus());
+        assertEquals(WalletOperationResult.Status.NOT_FOUND, results.get(3).getStatus());
+        assertEquals(Money.of(40), wallet.getBalance());
+        verify(walletRepository, times(1)).saveAll(argThat(wallets -> ((Collection<Wallet>) wallets).size() == 1)); // один UPDATE кошелька
+        verify(purchaseBatchRepository, times(1)).insertAll(argThat(rows -> rows.size() == 2)); // одна пакетная вставка
+        verify(onlinePurchaseRepository, never()).save(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTransfers_LocksEachWalletOnceAndSavesOnce() {
+        Wallet other = new Wallet(UUID.randomUUID(), Money.ZERO, 1L, wallet.getClient());
+        when(walletRepository.findAllByIdWithLock(any())).thenReturn(Arrays.asList(wallet, other));
+        List<TransferRequest> transfers = Arrays.asList(
+                new TransferRequest(wallet.getId(), other.getId(), Money.of(30)),
+                new TransferRequest(other.getId(), wallet.getId(), Money.of(10)),
+                new TransferRequest(wallet.getId(), wallet.getId(), Money.of(1))); // на себя — некорректно
+
+        List<TransferResult> results = walletService.transfers(transfers);
+
+        assertEquals(WalletOperationResult.Status.SUCCESS, results.get(0).getStatus());
+        assertEquals(WalletOperationResult.Status.SUCCESS, results.get(1).getStatus());
+        assertEquals(WalletOperationResult.Status.ERROR, results.get(2).getStatus());
+        assertEquals(Money.of(80), wallet.getBalance());
+        assertEquals(Money.of(20), other.getBalance());
+        verify(walletRepository, times(1)).findAllByIdWithLock(argThat(ids -> ids.size() == 2)); // оба кошелька — одним запросом
+        verify(walletRepository, times(1)).saveAll(argThat(wallets -> ((Collection<Wallet>) wallets).size() == 2));
+    }
+
+    @Test
+    public void testShardedEnginePurchase_RefundedWhenInsertFails() throws Exception {
+        ShardedLedgerEngine engine = shardedEngine();
+        try {
+            when(onlinePurchaseRepository.save(any())).thenThrow(new DataIntegrityViolationException("store_url too long"));
+
+            assertThrows(DataIntegrityViolationException.class, () -> walletService.addOnlinePurchase("ozon.ru", BigDecimal.valueOf(30), walletId));
+
+            assertEquals(Money.of(100), engine.getBalance(walletId)); // списание вне транзакции возвращено
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testAddOnlinePurchase_RetriedAfterLockTimeout() throws Exception {
+        when(walletRepository.findByIdWithLock(walletId)).thenReturn(Optional.of(wallet));
+        when(onlinePurchaseRepository.save(any())).thenThrow(new CannotAcquireLockException("lock timeout"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        walletService.addOnlinePurchase("ozon.ru", BigDecimal.valueOf(30), walletId);
+
+        verify(onlinePurchaseRepository, times(2)).save(any());
+        verify(walletRepository, times(2)).findByIdWithLock(walletId); // кошелёк заново блокируется в новой транзакции
+    }
+
+    @Test
+    public void testShardedEnginePurchase_DebitedOnceAcrossRetries() throws Exception {
+        ShardedLedgerEngine engine = shardedEngine();
+        try {
+            when(onlinePurchaseRepository.save(any())).thenThrow(new CannotAcquireLockException("lock timeout"))
+                    .thenAnswer(invocation -> invocation.getArgument(0));
+
+            walletService.addOnlinePurchase("ozon.ru", BigDecimal.valueOf(30), walletId);
+
+            assertEquals(Money.of(70), engine.getBalance(walletId)); // повтор транзакции не списал второй раз
+            verify(onlinePurchaseRepository, times(2)).save(any());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testGetPortfolio_LedgerBalancesAreNotQueriedPerWallet() throws Exception {
+        BalanceLedger ledger = mock(BalanceLedger.class);
+        when(ledger.joinsTransaction()).thenReturn(true);
+        ReflectionTestUtils.setField(walletService, "ledgerEngine", ledger);
+        ClientPortfolioRepository portfolioRepository = portfolioRepository();
+        UUID clientId = UUID.randomUUID();
+        when(portfolioRepository.find(clientId)).thenReturn(new ClientPortfolio(clientId, "Roman", "Roman", Money.of(130), BigDecimal.ZERO,
+                new ArrayList<>(Arrays.asList(new WalletSummary(walletId, Money.of(130), 0, BigDecimal.ZERO)))));
+
+        assertEquals(Money.of(130), walletService.getPortfolio(clientId).getTotalBalance());
+        verify(ledger, never()).getBalance(any()); // баланс журнала уже посчитан запросом сводки
+    }
+
+    @Test
+    public void testGetPortfolio_ShardedBalancesComeFromMemory() throws Exception {
+        ShardedLedgerEngine engine = shardedEngine();
+        try {
+            engine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, Money.of(30)));
+            ClientPortfolioRepository portfolioRepository = portfolioRepository();
+            UUID clientId = UUID.randomUUID();
+            when(portfolioRepository.find(clientId)).thenReturn(new ClientPortfolio(clientId, "Roman", "Roman", Money.of(100), BigDecimal.ZERO,
+                    new ArrayList<>(Arrays.asList(new WalletSummary(walletId, Money.of(100), 0, BigDecimal.ZERO)))));
+
+            assertEquals(Money.of(70), walletService.getPortfolio(clientId).getTotalBalance()); // ещё не сброшено в БД
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testShardedEngineBatchPurchase_DebitedOnceAcrossRetries() throws Exception {
+        ShardedLedgerEngine engine = shardedEngine();
+        try {
+            doThrow(new CannotAcquireLockException("lock timeout")).doNothing().when(purchaseBatchRepository).insertAll(any());
+
+            List<PurchaseResult> results = walletService.addPurchases(Arrays.asList(
+                    new PurchaseRequest(walletId, PurchaseView.Type.ONLINE, BigDecimal.valueOf(30), "ozon.ru")));
+
+            assertEquals(WalletOperationResult.Status.SUCCESS, results.get(0).getStatus());
+            assertEquals(Money.of(70), engine.getBalance(walletId)); // повтор транзакции не списал второй раз
+            verify(purchaseBatchRepository, times(2)).insertAll(any());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testShardedEngineBatchPurchase_RefundedWhenInsertFails() throws Exception {
+        ShardedLedgerEngine engine = shardedEngine();
+        try {
+            doThrow(new DataIntegrityViolationException("store too long")).when(purchaseBatchRepository).insertAll(any());
+
+            List<PurchaseResult> results = walletService.addPurchases(Arrays.asList(
+                    new PurchaseRequest(walletId, PurchaseView.Type.ONLINE, BigDecimal.valueOf(30), "ozon.ru"),
+                    new PurchaseRequest(walletId, PurchaseView.Type.OFFLINE, BigDecimal.valueOf(20), "Moscow")));
+
+            assertEquals(WalletOperationResult.Status.ERROR, results.get(0).getStatus());
+            assertEquals(WalletOperationResult.Status.ERROR, results.get(1).getStatus());
+            assertEquals(Money.of(100), engine.getBalance(walletId));
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testShardedEngineTransfers_AreRejected() throws Exception {
+        ShardedLedgerEngine engine = shardedEngine();
+        try {
+            UUID other = UUID.randomUUID();
+
+            assertThrows(InvalidTransferException.class, () -> walletService.transfer(new TransferRequest(walletId, other, Money.of(10))));
+            List<TransferResult> results = walletService.transfers(Arrays.asList(new TransferRequest(walletId, other, Money.of(10))));
+
+            assertEquals(WalletOperationResult.Status.ERROR, results.get(0).getStatus());
+            assertEquals(Money.of(100), engine.getBalance(walletId));
+            verify(walletRepository, never()).findAllByIdWithLock(any());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testCreateUser_SkipsLookupForEmailTheFilterHasNotSeen() throws Exception {
+        ClientEmailFilter filter = new ClientEmailFilter(1000, 0.01);
+        filter.markWarm();
+        ReflectionTestUtils.setField(walletService, "emailFilter", filter);
+        when(userRepository.saveAndFlush(any(Client.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Client client = walletService.createUser(new ClientDto(null, "new@mail.ru", "Roman", "Roman"));
+
+        assertEquals("new@mail.ru", client.getEmail()); // email сохраняется
+        verify(userRepository, never()).existsByEmail(any()); // «точно свободен» — без запроса
+        assertThrows(AlreadyExistWIthThisEmail.class, () -> {
+            when(userRepository.existsByEmail("new@mail.ru")).thenReturn(true);
+            walletService.createUser(new ClientDto(null, "new@mail.ru", "Roman", "Roman")); // теперь фильтр его знает
+        });
+    }
+
+    @Test
+    public void testCreateUser_ExistingIdIsRejected() {
+        ReflectionTestUtils.setField(walletService, "emailFilter", new ClientEmailFilter(1000, 0.01));
+        UUID clientId = UUID.randomUUID();
+        when(userRepository.existsById(clientId)).thenReturn(true);
+
+        assertThrows(ClientAlreadyExistsException.class, () ->
+                walletService.createUser(new ClientDto(clientId, "other@mail.ru", "Roman", "Roman")));
+
+        verify(userRepository, never()).saveAndFlush(any()); // save слил бы новые данные в существующего клиента
+    }
+
+    @Test
+    public void testGetBalance_RecentlyWrittenWalletIsReadFromPrimary() throws WalletNotFoundException {
+        TransactionOperations replica = passThroughTransaction();
+        TransactionOperations primary = passThroughTransaction();
+        ReflectionTestUtils.setField(walletService, "readOnlyTransaction", replica);
+        ReflectionTestUtils.setField(walletService, "primaryReadTransaction", primary);
+        when(balanceCache.get(any(), any())).thenAnswer(invocation ->
+                invocation.<Function<UUID, Money>>getArgument(1).apply(invocation.getArgument(0)));
+        when(walletRepository.findBalanceById(walletId)).thenReturn(Optional.of(Money.of(100)));
+
+        assertEquals(Money.of(100), walletService.getBalance(walletId));
+        verify(replica, times(1)).execute(any()); // давно не писали — с реплики
+
+        when(balanceCache.isRecentlyWritten(walletId)).thenReturn(true);
+        assertEquals(Money.of(100), walletService.getBalance(walletId));
+        verify(primary, times(1)).execute(any()); // только что писали — из основной БД
+        verify(replica, times(1)).execute(any());
+    }
+
+    // Настоящий движок с балансами в памяти: кошелёк walletId с балансом 100, сброс в БД только при остановке.
+    private ShardedLedgerEngine shardedEngine() {
+        when(walletRepository.findBalanceById(walletId)).thenReturn(Optional.of(Money.of(100)));
+        ShardedLedgerEngine engine = new ShardedLedgerEngine(walletRepository, mock(JdbcTemplate.class),
+                mock(PlatformTransactionManager.class), 2, 60_000);
+        ReflectionTestUtils.setField(walletService, "ledgerEngine", engine);
+        return engine;
+    }
+
+    private ClientPortfolioRepository portfolioRepository() {
+        ClientPortfolioRepository portfolioRepository = mock(ClientPortfolioRepository.class);
+        ReflectionTestUtils.setField(walletService, "portfolioRepository", portfolioRepository);
+        return portfolioRepository;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TransactionOperations passThroughTransaction() {
+        TransactionOperations transaction = mock(TransactionOperations.class);
+        when(transaction.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<Object>>getArgument(0).doInTransaction(null));
+        return transaction;
+    }
+}
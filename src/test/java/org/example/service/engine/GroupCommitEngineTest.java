@@ -0,0 +1,135 @@
+package org.example.service.engine;
+
+import org.example.dto.WalletOperationRequest;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.example.exception.InsufficientFundsException;
+import org.example.exception.WalletNotFoundException;
+import org.example.repository.WalletRepository;
+import org.example.service.WalletBalanceCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class GroupCommitEngineTest {
+    @Mock
+    private WalletRepository walletRepository;
+    @Mock
+    private WalletBalanceCache balanceCache;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private GroupCommitEngine engine;
+    private ExecutorService callers;
+    private Wallet wallet;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        wallet = new Wallet(UUID.randomUUID(), Money.of(50), 1L, null);
+        when(walletRepository.findByIdWithLock(wallet.getId())).thenReturn(Optional.of(wallet));
+        callers = Executors.newFixedThreadPool(100); // по потоку на каждую операцию, чтобы все успели в одно окно
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        callers.shutdownNow();
+        engine.shutdown();
+    }
+
+    @Test
+    public void testNonPositiveSettingsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new GroupCommitEngine(walletRepository, balanceCache, transactionManager, 0, 256, 8));
+        assertThrows(IllegalArgumentException.class, () ->
+                new GroupCommitEngine(walletRepository, balanceCache, transactionManager, 2000, 0, 8));
+        assertThrows(IllegalArgumentException.class, () ->
+                new GroupCommitEngine(walletRepository, balanceCache, transactionManager, 2000, 256, 0));
+        engine = new GroupCommitEngine(walletRepository, balanceCache, transactionManager, 2000, 256, 8);
+    }
+
+    @Test
+    public void testConcurrentOperationsShareOneTransaction() throws Exception {
+        // Длинное окно: все операции гарантированно попадают в одну пачку.
+        engine = new GroupCommitEngine(walletRepository, balanceCache, transactionManager, 300_000, 1000, 1);
+
+        List<Future<Boolean>> results = submitWithdrawals(100);
+        int succeeded = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get()) {
+                succeeded++;
+            }
+        }
+
+        assertEquals(50, succeeded); // сверх баланса списания отклоняются по отдельности
+        assertEquals(0, wallet.getBalance().signum());
+        verify(walletRepository, times(1)).findByIdWithLock(wallet.getId()); // одна блокировка на всю пачку
+        verify(walletRepository, times(1)).save(wallet); // и один UPDATE
+    }
+
+    @Test
+    public void testFullBatchIsCommittedWithoutWaitingForWindow() throws Exception {
+        // Окно в минуту: фиксация может произойти только по заполнению пачки.
+        engine = new GroupCommitEngine(walletRepository, balanceCache, transactionManager, 60_000_000, 5, 1);
+
+        List<Future<Money>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(callers.submit(() -> engine.apply(
+                    new WalletOperationRequest(wallet.getId(), WalletOperationRequest.OperationType.DEPOSIT, Money.of(1)))));
+        }
+        for (Future<Money> result : results) {
+            result.get();
+        }
+
+        assertEquals(Money.of(70), wallet.getBalance());
+        verify(walletRepository, times(4)).save(any(Wallet.class));
+    }
+
+    @Test
+    public void testUnknownWalletFailsEveryCaller() {
+        engine = new GroupCommitEngine(walletRepository, balanceCache, transactionManager, 1000, 100, 1);
+        UUID unknown = UUID.randomUUID();
+        when(walletRepository.findByIdWithLock(unknown)).thenReturn(Optional.empty());
+
+        assertThrows(WalletNotFoundException.class, () -> engine.apply(
+                new WalletOperationRequest(unknown, WalletOperationRequest.OperationType.DEPOSIT, Money.of(1))));
+        verify(walletRepository, never()).save(any(Wallet.class));
+    }
+
+    private List<Future<Boolean>> submitWithdrawals(int count) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Callable<Boolean> withdraw = () -> {
+                start.await();
+                try {
+                    engine.apply(new WalletOperationRequest(wallet.getId(), WalletOperationRequest.OperationType.WITHDRAW, Money.of(1)));
+                    return true;
+                } catch (InsufficientFundsException e) {
+                    return false;
+                }
+            };
+            results.add(callers.submit(withdraw));
+        }
+        start.countDown();
+        return results;
+    }
+}
@@ -0,0 +1,224 @@
+package org.example.service.engine;
+
+import org.example.dto.WalletOperationRequest;
+import org.example.entity.Money;
+import org.example.exception.InsufficientFundsException;
+import org.example.exception.WalletNotFoundException;
+import org.example.repository.WalletRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ShardedLedgerEngineTest {
+    @Mock
+    private WalletRepository walletRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ShardedLedgerEngine engine;
+    private UUID walletId;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        walletId = UUID.randomUUID();
+        when(walletRepository.findBalanceById(walletId)).thenReturn(Optional.of(Money.of(100)));
+        // Большой интервал сброса, чтобы тесты сами решали, когда писать в БД.
+        engine = new ShardedLedgerEngine(walletRepository, jdbcTemplate, transactionManager, 4, 60_000);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        engine.shutdown();
+    }
+
+    @Test
+    public void testDepositAndWithdrawUpdateInMemoryBalance() throws Exception {
+        engine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(50)));
+        Money balance = engine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, Money.of(30)));
+
+        assertEquals(Money.of(120), balance); // 100 + 50 - 30
+        assertEquals(Money.of(120), engine.getBalance(walletId));
+        verify(walletRepository, times(1)).findBalanceById(walletId); // баланс поднимается из БД только один раз
+    }
+
+    @Test
+    public void testWithdrawMoreThanBalanceIsRejected() throws Exception {
+        assertThrows(InsufficientFundsException.class, () ->
+                engine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, Money.of(150))));
+
+        assertEquals(Money.of(100), engine.getBalance(walletId)); // баланс не изменился
+    }
+
+    @Test
+    public void testUnknownWalletIsNotFound() {
+        UUID unknown = UUID.randomUUID();
+        when(walletRepository.findBalanceById(unknown)).thenReturn(Optional.empty());
+
+        assertThrows(WalletNotFoundException.class, () ->
+                engine.apply(new WalletOperationRequest(unknown, WalletOperationRequest.OperationType.DEPOSIT, Money.of(10))));
+    }
+
+    @Test
+    public void testConcurrentWithdrawalsNeverOverdraw() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                try {
+                    engine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.WITHDRAW, Money.of(1)));
+                    return true;
+                } catch (InsufficientFundsException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        int succeeded = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get()) {
+                succeeded++;
+            }
+        }
+        pool.shutdown();
+
+        assertEquals(100, succeeded); // ровно столько, сколько позволял баланс
+        assertEquals(0, engine.getBalance(walletId).signum());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFlushWritesLatestBalanceOnce() throws Exception {
+        engine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(1)));
+        engine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(1)));
+
+        engine.flushAll();
+        engine.flushAll(); // повторный сброс без новых операций ничего не пишет
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(eq("UPDATE wallet SET balance = ? WHERE id = ?"), rows.capture());
+        assertEquals(1, rows.getValue().size());
+        assertArrayEquals(new Object[]{Money.of(102).toBigDecimal(), walletId}, rows.getValue().get(0));
+    }
+
+    @Test
+    public void testFlushedWalletIsEvictedFromMemory() throws Exception {
+        when(walletRepository.findBalanceById(walletId)).thenReturn(Optional.of(Money.of(100)), Optional.of(Money.of(101)));
+        engine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(1)));
+
+        engine.flushAll();
+
+        // Записанный баланс больше не держится в памяти и читается из БД
+        assertEquals(Money.of(101), engine.getBalance(walletId));
+        verify(walletRepository, times(2)).findBalanceById(walletId);
+    }
+
+    @Test
+    public void testReadDoesNotLoadWalletIntoMemory() throws Exception {
+        assertEquals(Money.of(100), engine.getBalance(walletId));
+        assertEquals(Money.of(100), engine.getBalance(walletId));
+
+        verify(walletRepository, times(2)).findBalanceById(walletId);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedFlushKeepsBalanceInMemory() throws Exception {
+        engine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(1)));
+        when(jdbcTemplate.batchUpdate(eq("UPDATE wallet SET balance = ? WHERE id = ?"), any(List.class)))
+                .thenThrow(new IllegalStateException("database down")).thenReturn(new int[]{1});
+
+        engine.flushAll(); // ошибка записи: изменение возвращается в очередь сброса
+        assertEquals(Money.of(101), engine.getBalance(walletId));
+        engine.flushAll();
+
+        verify(jdbcTemplate, times(2)).batchUpdate(eq("UPDATE wallet SET balance = ? WHERE id = ?"), any(List.class));
+        verify(walletRepository, times(1)).findBalanceById(walletId);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testHeldDebitIsNotFlushed() throws Exception {
+        assertEquals(Money.of(70), engine.hold(walletId, Money.of(30)));
+        engine.apply(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(1)));
+
+        engine.flushAll();
+
+        // В памяти 71, но удержанные 30 спишет в БД вызывающий вместе с покупкой
+        assertEquals(Money.of(71), engine.getBalance(walletId));
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(eq("UPDATE wallet SET balance = ? WHERE id = ?"), rows.capture());
+        assertArrayEquals(new Object[]{Money.of(101).toBigDecimal(), walletId}, rows.getValue().get(0));
+        verify(walletRepository, times(1)).findBalanceById(walletId); // с удержанием кошелёк не вытесняется
+    }
+
+    @Test
+    public void testSettledWalletIsEvictedFromMemory() throws Exception {
+        when(walletRepository.findBalanceById(walletId)).thenReturn(Optional.of(Money.of(100)), Optional.of(Money.of(70)));
+        engine.hold(walletId, Money.of(30));
+        Runnable write = mock(Runnable.class);
+
+        engine.settle(Collections.singletonMap(walletId, Money.of(30)), write);
+
+        verify(write).run();
+        assertEquals(Money.of(70), engine.getBalance(walletId)); // уже из БД, куда списание записал write
+        verify(walletRepository, times(2)).findBalanceById(walletId);
+        engine.flushAll();
+        verify(jdbcTemplate, never()).batchUpdate(any(String.class), any(List.class));
+    }
+
+    @Test
+    public void testFailedSettleKeepsHold() throws Exception {
+        engine.hold(walletId, Money.of(30));
+
+        assertThrows(IllegalStateException.class, () -> engine.settle(Collections.singletonMap(walletId, Money.of(30)), () -> {
+            throw new IllegalStateException("database down");
+        }));
+        engine.release(walletId, Money.of(30));
+
+        assertEquals(Money.of(100), engine.getBalance(walletId));
+        verify(walletRepository, times(1)).findBalanceById(walletId);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReleasedHoldReturnsAmount() throws Exception {
+        engine.hold(walletId, Money.of(30));
+        engine.release(walletId, Money.of(30));
+
+        assertEquals(Money.of(100), engine.getBalance(walletId));
+        engine.flushAll(); // баланс в БД не менялся, сброс пишет его же и вытесняет кошелёк
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(eq("UPDATE wallet SET balance = ? WHERE id = ?"), rows.capture());
+        assertArrayEquals(new Object[]{Money.of(100).toBigDecimal(), walletId}, rows.getValue().get(0));
+        assertEquals(Money.of(100), engine.getBalance(walletId));
+        verify(walletRepository, times(2)).findBalanceById(walletId);
+    }
+}
@@ -0,0 +1,156 @@
+package org.example.service.export;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Выгрузка на файловой H2 (LAZY_QUERY_EXECUTION — курсор, а не весь результат в памяти, как у Postgres с fetch size).
+ */
+public class DataExporterTest {
+    private static final int MILLIONS = 2_000_000;
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setup() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:file:" + directory.resolve("export")
+                + ";LAZY_QUERY_EXECUTION=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE wallet (id UUID PRIMARY KEY, balance NUMERIC(19, 2) NOT NULL, version BIGINT, client_id UUID)");
+        jdbcTemplate.execute("CREATE TABLE online_purchase (id UUID PRIMARY KEY, amount NUMERIC(19, 2), wallet_id UUID, "
+                + "created_at TIMESTAMP(6) WITH TIME ZONE NOT NULL, store_url VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE offline_purchase (id UUID PRIMARY KEY, amount NUMERIC(19, 2), wallet_id UUID, "
+                + "created_at TIMESTAMP(6) WITH TIME ZONE NOT NULL, store_address VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE wallet_operation (id BIGINT AUTO_INCREMENT PRIMARY KEY, wallet_id UUID, "
+                + "operation_type VARCHAR(16), amount NUMERIC(19, 2))");
+        jdbcTemplate.execute("CREATE TABLE wallet_snapshot (wallet_id UUID PRIMARY KEY, balance NUMERIC(19, 2), last_operation_id BIGINT)");
+    }
+
+    @AfterEach
+    public void shutdown() {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    @Test
+    public void testPurchasesOfBothTablesAreExportedAsCsvAndNdjson() throws IOException {
+        UUID walletId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO online_purchase VALUES (?, 10.50, ?, TIMESTAMP WITH TIME ZONE '2024-05-01 10:00:00+00', ?)",
+                UUID.randomUUID(), walletId, "shop, \"best\"");
+        jdbcTemplate.update("INSERT INTO offline_purchase VALUES (?, 3.00, ?, TIMESTAMP WITH TIME ZONE '2024-05-01 12:00:00+03', NULL)",
+                UUID.randomUUID(), walletId);
+        DataExporter exporter = exporter("database");
+
+        String[] csv = export(exporter, DataExporter.Dataset.PURCHASES, DataExporter.Format.CSV).split("\r\n");
+        String[] ndjson = export(exporter, DataExporter.Dataset.PURCHASES, DataExporter.Format.NDJSON).split("\n");
+
+        assertEquals(3, csv.length);
+        assertEquals("purchase_id,wallet_id,type,amount,store,created_at", csv[0]);
+        assertTrue(csv[1].endsWith("," + walletId + ",ONLINE,10.50,\"shop, \"\"best\"\"\",2024-05-01T10:00:00Z"));
+        assertTrue(csv[2].endsWith("," + walletId + ",OFFLINE,3.00,,2024-05-01T09:00:00Z"));
+        assertEquals(2, ndjson.length);
+        JsonNode online = objectMapper.readTree(ndjson[0]);
+        JsonNode offline = objectMapper.readTree(ndjson[1]);
+        assertEquals("shop, \"best\"", online.get("store").asText());
+        assertEquals(0, new BigDecimal("10.50").compareTo(online.get("amount").decimalValue()));
+        assertEquals("OFFLINE", offline.get("type").asText());
+        assertTrue(offline.get("store").isNull());
+        assertEquals(walletId.toString(), offline.get("wallet_id").asText());
+    }
+
+    @Test
+    public void testLedgerModeExportsBalanceFromSnapshotAndOperations() throws IOException {
+        UUID walletId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO wallet VALUES (?, 100.00, 0, NULL)", walletId);
+        jdbcTemplate.update("INSERT INTO wallet_operation (wallet_id, operation_type, amount) VALUES (?, 'DEPOSIT', 5.00)", walletId);
+        jdbcTemplate.update("INSERT INTO wallet_operation (wallet_id, operation_type, amount) VALUES (?, 'WITHDRAW', 1.50)", walletId);
+
+        String[] database = export(exporter("database"), DataExporter.Dataset.WALLETS, DataExporter.Format.CSV).split("\r\n");
+        String[] ledger = export(exporter("ledger"), DataExporter.Dataset.WALLETS, DataExporter.Format.CSV).split("\r\n");
+
+        assertEquals("wallet_id,client_id,balance", ledger[0]);
+        assertEquals(walletId + ",,100.00", database[1]);
+        assertEquals(walletId + ",,103.50", ledger[1]);
+    }
+
+    @Test
+    public void testMillionsOfRowsAreStreamedWithFlatHeap() throws IOException {
+        // Возрастающие id: строки дописываются в конец индекса, вставка миллионов строк не упирается в диск.
+        jdbcTemplate.update("INSERT INTO wallet (id, balance, version, client_id) "
+                + "SELECT CAST('00000000-0000-4000-8000-' || LPAD(X, 12, '0') AS UUID), X / 100.0, 0, RANDOM_UUID() "
+                + "FROM SYSTEM_RANGE(1, " + MILLIONS + ")");
+        HeapSamplingSink sink = new HeapSamplingSink();
+
+        long rows = exporter("database").export(DataExporter.Dataset.WALLETS, DataExporter.Format.NDJSON, sink);
+
+        assertEquals(MILLIONS, rows);
+        assertEquals(MILLIONS, sink.lines);
+        // ~200 МБ вывода: копившая бы строки выгрузка выросла бы на сотни мегабайт между замерами.
+        long growth = sink.late - sink.early;
+        assertTrue(growth < 32 * 1024 * 1024, "heap grew by " + growth + " bytes while streaming");
+    }
+
+    private DataExporter exporter(String engineMode) {
+        return new DataExporter(jdbcTemplate, new DataSourceTransactionManager(dataSource), objectMapper, 1000, engineMode);
+    }
+
+    private static String export(DataExporter exporter, DataExporter.Dataset dataset, DataExporter.Format format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(dataset, format, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    // Считает строки и меряет занятую кучу после сборки мусора в начале и в конце выгрузки; сами байты не хранит.
+    private static final class HeapSamplingSink extends OutputStream {
+        private long lines;
+        private long early;
+        private long late;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                lines++;
+                if (lines == MILLIONS / 10) {
+                    early = usedHeap();
+                } else if (lines == MILLIONS - MILLIONS / 10) {
+                    late = usedHeap();
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+
+        private static long usedHeap() {
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.service.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimeOrderedIdGeneratorTest {
+
+    @Test
+    public void testIdIsVersion7WithTimestampPrefix() {
+        long millis = 1_700_000_000_123L;
+        UUID id = new TimeOrderedIdGenerator(() -> millis).next();
+
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        assertEquals(millis, id.getMostSignificantBits() >>> 16); // первые 48 бит — время создания
+    }
+
+    @Test
+    public void testIdsIncreaseWhenClockStallsOrGoesBack() {
+        AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(clock::get);
+        UUID previous = generator.next();
+        for (int i = 0; i < 20_000; i++) { // больше, чем помещается в счётчик одной миллисекунды
+            if (i == 10_000) {
+                clock.addAndGet(-5_000); // часы отступили назад
+            }
+            UUID next = generator.next();
+            assertTrue(Long.compareUnsigned(previous.getMostSignificantBits(), next.getMostSignificantBits()) < 0);
+            previous = next;
+        }
+    }
+
+    @Test
+    public void testConcurrentThreadsProduceUniqueIds() throws Exception {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<List<UUID>>> batches = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            batches.add(threads.submit(() -> {
+                List<UUID> ids = new ArrayList<>();
+                for (int i = 0; i < 50_000; i++) {
+                    ids.add(generator.next());
+                }
+                return ids;
+            }));
+        }
+        Set<UUID> unique = new HashSet<>();
+        for (Future<List<UUID>> batch : batches) {
+            unique.addAll(batch.get());
+        }
+        threads.shutdown();
+
+        assertEquals(8 * 50_000, unique.size());
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.service.provision;
+
+import org.example.dto.ClientDto;
+import org.example.dto.ClientPortfolio;
+import org.example.dto.ImportResult;
+import org.example.entity.Money;
+import org.example.exception.AlreadyExistWIthThisEmail;
+import org.example.service.WalletService;
+import org.example.service.export.DataExporter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Импорт через встроенную H2 (JDBC batch вместо COPY); части по три строки, чтобы проверка и загрузка частей перекрывались.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "wallet.rate-limit.limit-for-period=1000000", "spring.jpa.show-sql=false",
+        "wallet.import.chunk-size=3", "wallet.import.threads=2"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.ANY)
+public class ProvisioningImporterTest {
+
+    @Autowired
+    private ProvisioningImporter importer;
+    @Autowired
+    private WalletService walletService;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testCsvCreatesClientsWithWalletsAndRejectsBadRows() throws Exception {
+        String prefix = UUID.randomUUID().toString();
+        walletService.createUser(new ClientDto(null, prefix + "-taken@mail.ru", "Roman", "Roman"));
+        UUID clientId = UUID.randomUUID();
+        UUID walletId = UUID.randomUUID();
+        String csv = "balance,email,username,userSurname,clientId,walletId\n"
+                + "100.50," + prefix + "-a@mail.ru,Anna,\"Ivanova, Jr.\"," + clientId + "," + walletId + "\n"
+                + "20,,,," + clientId + ",\n"                                          // второй кошелёк того же клиента
+                + "-1," + prefix + "-b@mail.ru,Boris,Petrov,,\n"                       // отрицательный баланс
+                + "5," + prefix + "-taken@mail.ru,Roman,Roman,,\n"                     // email занят в БД
+                + "\n"
+                + "7," + prefix + "-a@mail.ru,Anna,Ivanova,,\n"                        // email уже выше в файле
+                + "1.234," + prefix + "-c@mail.ru,Clara,Sidorova,,\n"                  // три знака после точки
+                + "3,,,," + UUID.randomUUID() + ",\n"                                  // клиента нет
+                + "0," + prefix + "-d@mail.ru,Denis,\"Orlov\n";                        // незакрытая кавычка
+        Path rejectFile = directory.resolve("rejects.csv");
+
+        ImportResult result = importer.importRecords(stream(csv), DataExporter.Format.CSV, rejectFile);
+
+        assertEquals(1, result.getClients());
+        assertEquals(2, result.getWallets());
+        assertEquals(6, result.getRejected());
+        assertEquals(rejectFile.toString(), result.getRejectFile());
+        List<String> rejects = Files.readAllLines(rejectFile);
+        assertEquals("line,reason,record", rejects.get(0));
+        assertTrue(rejects.get(1).startsWith("4,\"balance must not be negative\","));
+        assertTrue(rejects.get(2).startsWith("5,\"Account with email: " + prefix + "-taken@mail.ru already exist!\""));
+        assertTrue(rejects.get(3).startsWith("7,\"Account with email: " + prefix + "-a@mail.ru already exist!\""));
+        assertTrue(rejects.get(4).startsWith("8,\"malformed: "));
+        assertTrue(rejects.get(5).contains("not found"));
+        assertTrue(rejects.get(6).startsWith("10,\"malformed: unterminated quoted field\""));
+
+        ClientPortfolio portfolio = walletService.getPortfolio(clientId);
+        assertEquals("Ivanova, Jr.", portfolio.getUserSurname());
+        assertEquals(2, portfolio.getWallets().size());
+        assertEquals(0, Money.ofMinor(12050).compareTo(portfolio.getTotalBalance()));
+        assertEquals(0, Money.ofMinor(10050).compareTo(walletService.getBalance(walletId)));
+        // Импортированный адрес знают и фильтр, и уникальный индекс: регистрация через API отклоняется.
+        assertThrows(AlreadyExistWIthThisEmail.class,
+                () -> walletService.createUser(new ClientDto(null, prefix + "-a@mail.ru", "Anna", "Ivanova")));
+    }
+
+    @Test
+    public void testNdjsonRerunRejectsEverythingAlreadyImported() throws Exception {
+        String prefix = UUID.randomUUID().toString();
+        StringBuilder ndjson = new StringBuilder();
+        UUID[] walletIds = new UUID[7];
+        for (int i = 0; i < walletIds.length; i++) {
+            walletIds[i] = UUID.randomUUID();
+            ndjson.append("{\"email\":\"").append(prefix).append('-').append(i).append("@mail.ru\",\"username\":\"User\",")
+                    .append("\"walletId\":\"").append(walletIds[i]).append("\",\"balance\":").append(i).append(".25}\n");
+        }
+        ndjson.append("{\"balance\":\"ten\"}\n").append("not json\n").append("{\"balance\":1}\n"); // последний — кошелёк без клиента
+
+        ImportResult first = importer.importRecords(stream(ndjson.toString()), DataExporter.Format.NDJSON, directory.resolve("first.csv"));
+        ImportResult second = importer.importRecords(stream(ndjson.toString()), DataExporter.Format.NDJSON, directory.resolve("second.csv"));
+
+        assertEquals(7, first.getClients());
+        assertEquals(8, first.getWallets());
+        assertEquals(2, first.getRejected());
+        for (int i = 0; i < walletIds.length; i++) {
+            assertEquals(0, Money.parse(i + ".25").compareTo(walletService.getBalance(walletIds[i])));
+        }
+        // Повтор того же файла: все клиенты и кошельки уже есть, новым становится только кошелёк без id и клиента.
+        assertEquals(0, second.getClients());
+        assertEquals(1, second.getWallets());
+        assertEquals(9, second.getRejected());
+        assertTrue(Files.readAllLines(directory.resolve("second.csv")).get(1).startsWith("1,\"Account with email: "));
+    }
+
+    @Test
+    public void testWithoutRejectsNoRejectFileIsLeft() throws Exception {
+        Path rejectFile = directory.resolve("rejects.csv");
+
+        ImportResult result = importer.importRecords(stream("balance\n1\n2\n"), DataExporter.Format.CSV, rejectFile);
+
+        assertEquals(2, result.getWallets());
+        assertEquals(0, result.getRejected());
+        assertNull(result.getRejectFile());
+        assertFalse(Files.exists(rejectFile));
+    }
+
+    @Test
+    public void testUnknownCsvColumnFailsBeforeAnyRow() {
+        assertThrows(IllegalArgumentException.class, () -> importer.importRecords(stream("balance,iban\n1,DE00\n"),
+                DataExporter.Format.CSV, directory.resolve("rejects.csv")));
+    }
+
+    private static ByteArrayInputStream stream(String text) throws IOException {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
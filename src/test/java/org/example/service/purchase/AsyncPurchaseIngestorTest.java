@@ -0,0 +1,188 @@
+package org.example.service.purchase;
+
+import org.example.dto.PurchaseView;
+import org.example.entity.Money;
+import org.example.exception.InsufficientFundsException;
+import org.example.repository.PurchaseBatchRepository;
+import org.example.repository.PurchaseBatchRepository.PurchaseRow;
+import org.example.service.engine.ShardedLedgerEngine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class AsyncPurchaseIngestorTest {
+    private static final int SEGMENT_BYTES = 1 << 16;
+
+    @Mock
+    private ShardedLedgerEngine ledger;
+    @Mock
+    private PurchaseBatchRepository purchaseBatchRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path directory;
+
+    // Что записано в БД: insertMissing получает переиспользуемый список, поэтому копируем.
+    private final List<PurchaseRow> inserted = Collections.synchronizedList(new ArrayList<>());
+    // С каких кошельков списано в БД вместе со вставкой.
+    private final List<PurchaseRow> debited = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        stubDatabase();
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(1).run();
+            return null;
+        }).when(ledger).settle(any(), any());
+    }
+
+    @Test
+    public void testAcknowledgedPurchasesReachDatabaseInBackground() throws Exception {
+        AsyncPurchaseIngestor ingestor = ingestor();
+        PurchaseRow first = purchase(1);
+        PurchaseRow second = purchase(2);
+
+        ingestor.submit(first);
+        ingestor.submit(second);
+
+        verify(ledger, times(2)).hold(new UUID(2, 0), Money.of(5));
+        awaitInserted(2);
+        ingestor.shutdown();
+        assertEquals(Arrays.asList(first, second), inserted);
+        assertEquals(Arrays.asList(first, second), debited); // списание — той же транзакцией, что и вставка
+        Money settled = Money.ZERO;
+        for (Map<UUID, Money> amounts : settledAmounts()) {
+            settled = settled.plus(amounts.get(new UUID(2, 0)));
+        }
+        assertEquals(Money.of(10), settled); // удержание снято ровно на записанное
+    }
+
+    @Test
+    public void testRejectedPurchaseIsNotJournaled() throws Exception {
+        PurchaseRow rejected = purchase(1);
+        when(ledger.hold(any(), any())).thenThrow(new InsufficientFundsException(Money.of(5)));
+        AsyncPurchaseIngestor ingestor = ingestor();
+
+        assertThrows(InsufficientFundsException.class, () -> ingestor.submit(rejected));
+        ingestor.shutdown();
+
+        // Ни при работе, ни после перезапуска отклонённая покупка в БД не попадает.
+        ingestor().shutdown();
+        assertTrue(inserted.isEmpty());
+    }
+
+    @Test
+    public void testJournalIsReplayedAfterDatabaseOutage() throws Exception {
+        doThrow(new DataAccessResourceFailureException("database is down"))
+                .when(purchaseBatchRepository).insertMissing(any());
+        AsyncPurchaseIngestor down = ingestor();
+        down.submit(purchase(1));
+        down.submit(purchase(2)); // подтверждены, хотя БД недоступна
+        down.shutdown();
+        assertTrue(inserted.isEmpty());
+
+        reset(purchaseBatchRepository);
+        stubDatabase();
+        AsyncPurchaseIngestor restarted = ingestor();
+
+        // Проигрывание — при создании, до приёма новых покупок; удержание в памяти прошлого запуска пропало,
+        // и списание записывается в БД вместе со вставкой, а в памяти движка повторно не делается.
+        assertEquals(Arrays.asList(purchase(1), purchase(2)), inserted);
+        assertEquals(Arrays.asList(purchase(1), purchase(2)), debited);
+        verify(ledger, times(2)).hold(any(), any());
+        restarted.shutdown();
+    }
+
+    @Test
+    public void testReplayDoesNotDebitPurchasesAlreadyInDatabase() throws Exception {
+        doThrow(new DataAccessResourceFailureException("database is down"))
+                .when(purchaseBatchRepository).insertMissing(any());
+        AsyncPurchaseIngestor down = ingestor();
+        down.submit(purchase(1));
+        down.submit(purchase(2));
+        down.shutdown();
+
+        // Первая покупка успела записаться со своим списанием, но checkpoint до сбоя не сохранился.
+        reset(purchaseBatchRepository);
+        stubDatabase();
+        inserted.add(purchase(1));
+        ingestor().shutdown();
+
+        assertEquals(Arrays.asList(purchase(1), purchase(2)), inserted);
+        assertEquals(Collections.singletonList(purchase(2)), debited);
+    }
+
+    @Test
+    public void testFailedPurchaseReleasesHold() throws Exception {
+        PurchaseRow tooLong = new PurchaseRow(new UUID(1, 1), new UUID(2, 0), PurchaseView.Type.ONLINE, BigDecimal.valueOf(500, 2),
+                String.join("", Collections.nCopies(PurchaseJournal.MAX_STORE_BYTES + 1, "x")), Instant.ofEpochSecond(1_700_000_000L));
+        AsyncPurchaseIngestor ingestor = ingestor();
+
+        assertThrows(IllegalArgumentException.class, () -> ingestor.submit(tooLong));
+        ingestor.shutdown();
+
+        verify(ledger).release(new UUID(2, 0), Money.of(5));
+        assertTrue(inserted.isEmpty());
+    }
+
+    // insertMissing пропускает уже вставленные покупки и возвращает остальные, как в БД.
+    private void stubDatabase() {
+        when(purchaseBatchRepository.insertMissing(any())).thenAnswer(invocation -> {
+            List<PurchaseRow> missing = new ArrayList<>();
+            for (PurchaseRow purchase : invocation.<List<PurchaseRow>>getArgument(0)) {
+                if (!inserted.contains(purchase)) {
+                    missing.add(purchase);
+                }
+            }
+            inserted.addAll(missing);
+            return missing;
+        });
+        doAnswer(invocation -> debited.addAll(invocation.getArgument(0))).when(purchaseBatchRepository).debitWallets(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<UUID, Money>> settledAmounts() {
+        ArgumentCaptor<Map<UUID, Money>> amounts = ArgumentCaptor.forClass(Map.class);
+        verify(ledger, atLeastOnce()).settle(amounts.capture(), any());
+        return amounts.getAllValues();
+    }
+
+    private AsyncPurchaseIngestor ingestor() throws Exception {
+        return new AsyncPurchaseIngestor(ledger, purchaseBatchRepository, transactionManager,
+                new PurchaseJournal(directory, SEGMENT_BYTES), 4, 10);
+    }
+
+    private void awaitInserted(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && inserted.size() < count; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static PurchaseRow purchase(int i) {
+        return new PurchaseRow(new UUID(1, i), new UUID(2, 0), PurchaseView.Type.ONLINE, BigDecimal.valueOf(500, 2),
+                "ozon.ru", Instant.ofEpochSecond(1_700_000_000L + i));
+    }
+}
@@ -0,0 +1,123 @@
+package org.example.service.purchase;
+
+import org.example.dto.PurchaseView;
+import org.example.repository.PurchaseBatchRepository.PurchaseRow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PurchaseJournalTest {
+    private static final int SEGMENT_BYTES = 8192; // одна запись с самым длинным адресом магазина и ещё немного
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testReplayReturnsRecordsAfterCheckpointAcrossSegments() throws IOException {
+        List<PurchaseRow> purchases = new ArrayList<>();
+        long checkpoint;
+        try (PurchaseJournal journal = new PurchaseJournal(directory, SEGMENT_BYTES)) {
+            journal.replay(10, batch -> {
+                throw new AssertionError("empty journal has nothing to replay");
+            });
+            long position = 0;
+            for (int i = 0; i < 200; i++) { // ~80 байт на запись — несколько сегментов
+                PurchaseRow purchase = purchase(i);
+                purchases.add(purchase);
+                position = journal.append(purchase);
+            }
+            journal.awaitDurable(position);
+            assertTrue(journal.durablePosition() >= position);
+            checkpoint = positionAfter(journal, 50); // первые 50 уже в БД
+        }
+
+        List<PurchaseRow> replayed = new ArrayList<>();
+        try (PurchaseJournal journal = new PurchaseJournal(directory, SEGMENT_BYTES)) {
+            journal.replay(16, replayed::addAll);
+        }
+
+        assertTrue(checkpoint > 0);
+        assertEquals(purchases.subList(50, 200), replayed);
+    }
+
+    @Test
+    public void testTornTailIsIgnoredAndNotOverwritten() throws IOException {
+        try (PurchaseJournal journal = new PurchaseJournal(directory, SEGMENT_BYTES)) {
+            journal.replay(10, batch -> { });
+            journal.append(purchase(1));
+            journal.awaitDurable(journal.append(purchase(2)));
+        }
+        // Сбой посреди второй записи: портим её последний байт.
+        Path segment = segments().get(0);
+        long secondEnd = 2L * recordBytes(purchase(1));
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(secondEnd - 1);
+            int last = file.read();
+            file.seek(secondEnd - 1);
+            file.write(last ^ 0xFF);
+        }
+
+        List<PurchaseRow> replayed = new ArrayList<>();
+        try (PurchaseJournal journal = new PurchaseJournal(directory, SEGMENT_BYTES)) {
+            journal.replay(10, replayed::addAll);
+            journal.awaitDurable(journal.append(purchase(3)));
+        }
+        assertEquals(1, replayed.size());
+        assertEquals(purchase(1), replayed.get(0));
+
+        // Новая запись ушла в новый сегмент, а проигранные сегменты удалены по checkpoint.
+        List<PurchaseRow> next = new ArrayList<>();
+        try (PurchaseJournal journal = new PurchaseJournal(directory, SEGMENT_BYTES)) {
+            journal.replay(10, next::addAll);
+        }
+        assertEquals(1, next.size());
+        assertEquals(purchase(3), next.get(0));
+    }
+
+    @Test
+    public void testAppendRequiresReplay() throws IOException {
+        try (PurchaseJournal journal = new PurchaseJournal(directory, SEGMENT_BYTES)) {
+            assertThrows(IllegalStateException.class, () -> journal.append(purchase(1)));
+        }
+    }
+
+    // Позиция конца записи count: длина каждой записи одинакова, сегмент заполняется, пока влезает целая запись.
+    private static long positionAfter(PurchaseJournal journal, int count) throws IOException {
+        int record = recordBytes(purchase(0));
+        int perSegment = SEGMENT_BYTES / record;
+        long position = (long) (count / perSegment) * SEGMENT_BYTES + (long) (count % perSegment) * record;
+        journal.checkpoint(position);
+        return position;
+    }
+
+    private static int recordBytes(PurchaseRow purchase) {
+        return PurchaseJournal.HEADER_BYTES + 57 + purchase.getStore().length();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = new ArrayList<>();
+            files.filter(file -> file.toString().endsWith(".wal")).sorted().forEach(segments::add);
+            return segments;
+        }
+    }
+
+    private static PurchaseRow purchase(int i) {
+        return new PurchaseRow(new UUID(1, i), new UUID(2, i % 3), i % 2 == 0 ? PurchaseView.Type.ONLINE : PurchaseView.Type.OFFLINE,
+                BigDecimal.valueOf(100 + i, 2), String.format("shop-%04d", i), Instant.ofEpochSecond(1_700_000_000L + i, 123_000));
+    }
+}
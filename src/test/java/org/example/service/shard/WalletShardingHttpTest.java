@@ -0,0 +1,157 @@
+package org.example.service.shard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.example.repository.WalletRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Запросы, затрагивающие оба шарда, через MockMvc: каждая транзакция внутри одного HTTP-запроса должна брать
+ * соединение своего шарда, а не соединение, взятое первой транзакцией запроса.
+ */
+@SpringBootTest(properties = {
+        "wallet.rate-limit.limit-for-period=1000000", "spring.jpa.show-sql=false", "wallet.sharding.enabled=true",
+        "wallet.sharding.shards[0].jdbc-url=jdbc:h2:mem:wallet-http-shard-0;DB_CLOSE_DELAY=-1", "wallet.sharding.shards[0].username=sa",
+        "wallet.sharding.shards[1].jdbc-url=jdbc:h2:mem:wallet-http-shard-1;DB_CLOSE_DELAY=-1", "wallet.sharding.shards[1].username=sa"})
+@AutoConfigureMockMvc
+public class WalletShardingHttpTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private WalletRepository walletRepository;
+    @Autowired
+    private WalletShards shards;
+    @Autowired
+    private ApplicationContext context;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testSessionConnectionIsNotHeldForTheWholeRequest() {
+        assertEquals(0, context.getBeanNamesForType(OpenEntityManagerInViewInterceptor.class).length);
+    }
+
+    @Test
+    public void testBatchAppliesOperationsInEveryShard() throws Exception {
+        UUID first = createWallet(0, 10);
+        UUID second = createWallet(1, 10);
+        String ndjson = operation(first) + "\n" + operation(second) + "\n";
+
+        String[] results = mockMvc.perform(post("/api/v1/wallet/batch").contentType(MediaType.APPLICATION_NDJSON).content(ndjson))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString().split("\n");
+
+        assertEquals(2, results.length);
+        assertEquals("SUCCESS", objectMapper.readTree(results[0]).get("status").asText());
+        assertEquals("SUCCESS", objectMapper.readTree(results[1]).get("status").asText());
+        mockMvc.perform(get("/api/v1/wallet/" + second)).andExpect(content().string("15.00"));
+    }
+
+    @Test
+    public void testPurchasesAndTransfersInEveryShard() throws Exception {
+        UUID first = createWallet(0, 10);
+        UUID firstPeer = createWallet(0, 0);
+        UUID second = createWallet(1, 10);
+        UUID secondPeer = createWallet(1, 0);
+
+        JsonNode purchases = objectMapper.readTree(mockMvc.perform(post("/api/v1/wallet/purchases")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + purchase(first) + "," + purchase(second) + "]"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+        JsonNode transfers = objectMapper.readTree(mockMvc.perform(post("/api/v1/wallet/transfers")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + transfer(first, firstPeer) + "," + transfer(second, secondPeer) + "]"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals("SUCCESS", purchases.get(i).get("status").asText());
+            assertEquals("SUCCESS", transfers.get(i).get("status").asText());
+        }
+        mockMvc.perform(get("/api/v1/wallet/" + second)).andExpect(content().string("7.00"));
+        mockMvc.perform(get("/api/v1/wallet/" + secondPeer)).andExpect(content().string("2.00"));
+    }
+
+    @Test
+    public void testExportReadsEachShardOnce() throws Exception {
+        UUID first = createWallet(0, 1);
+        UUID second = createWallet(1, 2);
+
+        String export = mockMvc.perform(get("/api/v1/export/wallets").param("format", "CSV"))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+
+        assertEquals(1, occurrences(export, first.toString()));
+        assertEquals(1, occurrences(export, second.toString()));
+        assertTrue(export.contains(second + ",,2.00"));
+    }
+
+    @Test
+    public void testImportWritesWalletsIntoTheirShards() throws Exception {
+        UUID first = walletOf(0);
+        UUID second = walletOf(1);
+        String ndjson = "{\"walletId\":\"" + first + "\",\"balance\":3}\n{\"walletId\":\"" + second + "\",\"balance\":4}\n";
+
+        JsonNode result = objectMapper.readTree(mockMvc.perform(post("/api/v1/import/clients")
+                        .contentType(MediaType.APPLICATION_NDJSON).content(ndjson))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+
+        assertEquals(2, result.get("wallets").asInt());
+        mockMvc.perform(get("/api/v1/wallet/" + first)).andExpect(content().string("3.00"));
+        mockMvc.perform(get("/api/v1/wallet/" + second)).andExpect(content().string("4.00"));
+    }
+
+    // Кошелёк, чей шард по хэшу — shard.
+    private UUID createWallet(int shard, long balance) {
+        UUID walletId = walletOf(shard);
+        try (WalletShards.Scope scope = WalletShards.enter(shard)) {
+            walletRepository.save(new Wallet(walletId, Money.of(balance), null, null));
+        }
+        return walletId;
+    }
+
+    // Новый id кошелька, чей шард по хэшу — shard.
+    private UUID walletOf(int shard) {
+        UUID walletId;
+        do {
+            walletId = UUID.randomUUID();
+        } while (shards.shardOf(walletId) != shard);
+        return walletId;
+    }
+
+    private static String operation(UUID walletId) {
+        return "{\"walletId\":\"" + walletId + "\",\"operationType\":\"DEPOSIT\",\"amount\":5}";
+    }
+
+    private static String purchase(UUID walletId) {
+        return "{\"walletId\":\"" + walletId + "\",\"type\":\"ONLINE\",\"amount\":1,\"store\":\"ozon.ru\"}";
+    }
+
+    private static String transfer(UUID from, UUID to) {
+        return "{\"fromWalletId\":\"" + from + "\",\"toWalletId\":\"" + to + "\",\"amount\":2}";
+    }
+
+    private static int occurrences(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,286 @@
+package org.example.service.shard;
+
+import org.example.dto.ClientDto;
+import org.example.dto.ClientPortfolio;
+import org.example.dto.ImportResult;
+import org.example.dto.PurchaseRequest;
+import org.example.dto.PurchaseView;
+import org.example.dto.SpendSummary;
+import org.example.dto.TransferRequest;
+import org.example.dto.TransferResult;
+import org.example.dto.WalletOperationRequest;
+import org.example.dto.WalletOperationResult;
+import org.example.entity.Client;
+import org.example.entity.Money;
+import org.example.entity.Wallet;
+import org.example.exception.InvalidTransferException;
+import org.example.repository.WalletPlacementRepository;
+import org.example.repository.WalletRepository;
+import org.example.service.WalletService;
+import org.example.service.export.DataExporter;
+import org.example.service.provision.ProvisioningImporter;
+import org.example.service.purchase.SpendAggregateRebuilder;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Три встроенные H2 за ShardRoutingDataSource; кошельки по хэшу распределены по первым двум, третий — для решардинга.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "wallet.rate-limit.limit-for-period=1000000", "spring.jpa.show-sql=false",
+        "wallet.sharding.enabled=true", "wallet.sharding.hash-shards=2",
+        "wallet.sharding.shards[0].jdbc-url=jdbc:h2:mem:wallet-shard-0;DB_CLOSE_DELAY=-1", "wallet.sharding.shards[0].username=sa",
+        "wallet.sharding.shards[1].jdbc-url=jdbc:h2:mem:wallet-shard-1;DB_CLOSE_DELAY=-1", "wallet.sharding.shards[1].username=sa",
+        "wallet.sharding.shards[2].jdbc-url=jdbc:h2:mem:wallet-shard-2;DB_CLOSE_DELAY=-1", "wallet.sharding.shards[2].username=sa"})
+public class WalletShardingTest {
+
+    @Autowired
+    private WalletService walletService;
+    @Autowired
+    private WalletRepository walletRepository;
+    @Autowired
+    private WalletShards shards;
+    @Autowired
+    private WalletResharder resharder;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private WalletPlacementRepository placementRepository;
+    @Autowired
+    private SpendAggregateRebuilder spendRebuilder;
+    @Autowired
+    private ProvisioningImporter importer;
+
+    @Test
+    public void testWalletRowsAndClientCopiesLiveInTheirShards() throws Exception {
+        Client client = walletService.createUser(new ClientDto(null, "shards@mail.ru", "Roman", "Roman"));
+        UUID first = createWallet(0, client, 100);
+        UUID second = createWallet(1, client, 100);
+
+        walletService.processOperation(new WalletOperationRequest(second, WalletOperationRequest.OperationType.WITHDRAW, Money.of(30)));
+        walletService.addOnlinePurchase("ozon.ru", BigDecimal.TEN, second);
+
+        assertEquals(0, Money.of(60).compareTo(walletService.getBalance(second)));
+        assertEquals(1, walletService.getPurchases(second, null, 10).getItems().size());
+        assertEquals(Arrays.asList(1, 0, 0), count("SELECT COUNT(*) FROM wallet WHERE id = ?", first));
+        assertEquals(Arrays.asList(0, 1, 0), count("SELECT COUNT(*) FROM wallet WHERE id = ?", second));
+        assertEquals(Arrays.asList(0, 1, 0), count("SELECT COUNT(*) FROM online_purchase WHERE wallet_id = ?", second));
+        assertEquals(Arrays.asList(1, 1, 1), count("SELECT COUNT(*) FROM client WHERE id = ?", client.getId()));
+    }
+
+    @Test
+    public void testPortfolioMergesWalletsFromEveryShard() throws Exception {
+        Client client = walletService.createUser(new ClientDto(null, "portfolio-shards@mail.ru", "Roman", "Roman"));
+        UUID first = createWallet(0, client, 100);
+        UUID second = createWallet(1, client, 40);
+
+        ClientPortfolio portfolio = walletService.getPortfolio(client.getId());
+
+        assertEquals(2, portfolio.getWallets().size());
+        assertTrue(portfolio.getWallets().stream().anyMatch(wallet -> wallet.getWalletId().equals(first)));
+        assertTrue(portfolio.getWallets().stream().anyMatch(wallet -> wallet.getWalletId().equals(second)));
+        assertEquals(0, Money.of(140).compareTo(portfolio.getTotalBalance()));
+    }
+
+    @Test
+    public void testBatchSpansShardsAndTransfersStayWithinOne() throws Exception {
+        UUID first = createWallet(0, null, 100);
+        UUID second = createWallet(1, null, 100);
+        UUID sameShard = createWallet(1, null, 0);
+        List<WalletOperationResult> results = new ArrayList<>();
+
+        walletService.processBatch(Arrays.asList(
+                new WalletOperationRequest(first, WalletOperationRequest.OperationType.DEPOSIT, Money.of(5)),
+                new WalletOperationRequest(second, WalletOperationRequest.OperationType.DEPOSIT, Money.of(7))).iterator(), results::add);
+        List<TransferResult> transfers = walletService.transfers(Arrays.asList(
+                new TransferRequest(first, second, Money.of(1)), new TransferRequest(second, sameShard, Money.of(2))));
+
+        assertTrue(results.stream().allMatch(result -> result.getStatus() == WalletOperationResult.Status.SUCCESS));
+        assertEquals(WalletOperationResult.Status.ERROR, transfers.get(0).getStatus());
+        assertEquals(WalletOperationResult.Status.SUCCESS, transfers.get(1).getStatus());
+        assertThrows(InvalidTransferException.class, () -> walletService.transfer(new TransferRequest(first, second, Money.of(1))));
+        assertEquals(0, Money.of(105).compareTo(walletService.getBalance(first)));
+        assertEquals(0, Money.of(105).compareTo(walletService.getBalance(second)));
+        assertEquals(0, Money.of(2).compareTo(walletService.getBalance(sameShard)));
+    }
+
+    @Test
+    public void testMovedWalletIsFoundEvenWithStaleDirectory() throws Exception {
+        UUID walletId = createWallet(0, null, 100);
+        walletService.addOfflinePurchase("Moscow", BigDecimal.ONE, walletId);
+
+        resharder.move(walletId, 2);
+
+        assertEquals(2, shards.shardOf(walletId));
+        assertEquals(Arrays.asList(0, 0, 1), count("SELECT COUNT(*) FROM wallet WHERE id = ?", walletId));
+        assertEquals(Arrays.asList(0, 0, 1), count("SELECT COUNT(*) FROM offline_purchase WHERE wallet_id = ?", walletId));
+
+        // Другой экземпляр ещё не знает о переносе: кошелька в старом шарде нет, справочник перечитывается.
+        shards.place(walletId, 0);
+        walletService.processOperation(new WalletOperationRequest(walletId, WalletOperationRequest.OperationType.DEPOSIT, Money.of(1)));
+
+        assertEquals(2, shards.shardOf(walletId));
+        assertEquals(0, Money.of(100).compareTo(walletService.getBalance(walletId)));
+    }
+
+    @Test
+    public void testSpendAggregatesAreKeptAndRebuiltInEachShard() throws Exception {
+        UUID first = createWallet(0, null, 100);
+        UUID second = createWallet(1, null, 100);
+        walletService.addOnlinePurchase("ozon.ru", BigDecimal.TEN, first);
+        walletService.addPurchases(Arrays.asList(new PurchaseRequest(first, PurchaseView.Type.OFFLINE, BigDecimal.ONE, "Moscow"),
+                new PurchaseRequest(second, PurchaseView.Type.ONLINE, BigDecimal.ONE, "ozon.ru")));
+        Instant to = Instant.now().plusSeconds(3600);
+        SpendSummary maintained = walletService.getSpend(first, SpendSummary.Granularity.HOUR, to.minusSeconds(86400), to);
+
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            try (WalletShards.Scope scope = WalletShards.enter(shard)) {
+                jdbcTemplate.update("DELETE FROM wallet_spend");
+            }
+        }
+        spendRebuilder.rebuild();
+
+        assertEquals(2, maintained.getPurchaseCount());
+        assertEquals(2, maintained.getStores().size());
+        assertEquals(maintained, walletService.getSpend(first, SpendSummary.Granularity.HOUR, to.minusSeconds(86400), to));
+        assertEquals(1, walletService.getSpend(second, SpendSummary.Granularity.DAY, to.minusSeconds(86400), to).getPurchaseCount());
+    }
+
+    @Test
+    public void testImportPutsWalletsInTheirShardsAndClientsEverywhere() throws Exception {
+        UUID clientId = UUID.randomUUID();
+        UUID first = walletOf(0);
+        UUID second = walletOf(1);
+        String ndjson = "{\"clientId\":\"" + clientId + "\",\"email\":\"import-shards@mail.ru\",\"walletId\":\"" + first + "\",\"balance\":10}\n"
+                + "{\"clientId\":\"" + clientId + "\",\"walletId\":\"" + second + "\",\"balance\":20}\n";
+
+        ImportResult result = importer.importRecords(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)),
+                DataExporter.Format.NDJSON, Files.createTempFile("import-", ".rejects.csv"));
+
+        assertEquals(1, result.getClients());
+        assertEquals(2, result.getWallets());
+        assertEquals(Arrays.asList(1, 1, 1), count("SELECT COUNT(*) FROM client WHERE id = ?", clientId));
+        assertEquals(Arrays.asList(1, 0, 0), count("SELECT COUNT(*) FROM wallet WHERE id = ?", first));
+        assertEquals(Arrays.asList(0, 1, 0), count("SELECT COUNT(*) FROM wallet WHERE id = ?", second));
+        assertEquals(0, Money.of(30).compareTo(walletService.getPortfolio(clientId).getTotalBalance()));
+    }
+
+    @Test
+    public void testRebalanceMovesWalletsToNewShard() throws Exception {
+        List<UUID> walletIds = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            UUID walletId = UUID.randomUUID();
+            try (WalletShards.Scope scope = shards.enterShardOf(walletId)) {
+                walletRepository.save(new Wallet(walletId, Money.of(10), null, null));
+            }
+            walletIds.add(walletId);
+        }
+
+        assertTrue(resharder.rebalance(3) > 0);
+
+        for (UUID walletId : walletIds) {
+            int shard = WalletShards.hashShard(walletId, 3);
+            assertEquals(shard, shards.shardOf(walletId));
+            assertEquals(1, count("SELECT COUNT(*) FROM wallet WHERE id = ?", walletId).get(shard).intValue());
+            assertEquals(0, Money.of(10).compareTo(walletService.getBalance(walletId)));
+        }
+    }
+
+    @Test
+    public void testPlacementsMatchingHashAreDropped() throws Exception {
+        UUID walletId;
+        do {
+            walletId = walletOf(0);
+        } while (WalletShards.hashShard(walletId, 3) != 2); // из тех, что rebalance(3) переносит в новый шард
+        try (WalletShards.Scope scope = WalletShards.enter(0)) {
+            walletRepository.save(new Wallet(walletId, Money.of(10), null, null));
+        }
+        UUID movedBack = createWallet(0, null, 20);
+        resharder.move(walletId, 2);
+        resharder.move(movedBack, 2);
+        assertEquals(1, placementCount(movedBack));
+
+        resharder.move(movedBack, 0); // обратно в шард по хэшу — запись больше не нужна
+        assertEquals(0, placementCount(movedBack));
+        assertEquals(0, shards.shardOf(movedBack));
+
+        // Запуск с поднятым hash-shards: запись совпала с новым хэшем и удаляется, кошелёк находится по хэшу.
+        assertEquals(1, placementCount(walletId));
+        WalletShards raised = new WalletShards(3, 3, placementRepository);
+        try {
+            assertEquals(0, placementCount(walletId));
+            assertEquals(2, raised.shardOf(walletId));
+        } finally {
+            raised.shutdown();
+        }
+    }
+
+    @Test
+    public void testMovedWalletBringsItsClientToShardAddedLater() throws Exception {
+        Client client = walletService.createUser(new ClientDto(null, "later-shard@mail.ru", "Roman", "Roman"));
+        UUID walletId = createWallet(0, client, 100);
+        // Шард подключён после регистрации клиента: копии клиента в нём нет.
+        try (WalletShards.Scope scope = WalletShards.enter(2)) {
+            jdbcTemplate.update("DELETE FROM client WHERE id = ?", client.getId());
+        }
+
+        resharder.move(walletId, 2);
+        UUID otherWallet = createWallet(1, client, 5);
+        resharder.move(otherWallet, 2); // копия уже есть и не дублируется
+
+        assertEquals(Arrays.asList(1, 1, 1), count("SELECT COUNT(*) FROM client WHERE id = ?", client.getId()));
+        assertEquals(Arrays.asList(0, 0, 1), count("SELECT COUNT(*) FROM wallet WHERE id = ?", walletId));
+        assertEquals(Arrays.asList(0, 0, 2), count("SELECT COUNT(*) FROM wallet WHERE client_id = ?", client.getId()));
+        assertEquals(0, Money.of(105).compareTo(walletService.getPortfolio(client.getId()).getTotalBalance()));
+    }
+
+    // Кошелёк, чей шард по хэшу — shard.
+    private UUID createWallet(int shard, Client client, long balance) {
+        UUID walletId = walletOf(shard);
+        try (WalletShards.Scope scope = WalletShards.enter(shard)) {
+            walletRepository.save(new Wallet(walletId, Money.of(balance), null, client));
+        }
+        return walletId;
+    }
+
+    // Новый id кошелька, чей шард по хэшу — shard.
+    private UUID walletOf(int shard) {
+        UUID walletId;
+        do {
+            walletId = UUID.randomUUID();
+        } while (shards.shardOf(walletId) != shard);
+        return walletId;
+    }
+
+    private int placementCount(UUID walletId) {
+        try (WalletShards.Scope scope = WalletShards.enter(WalletShards.HOME)) {
+            return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM wallet_placement WHERE wallet_id = ?", Integer.class, walletId);
+        }
+    }
+
+    private List<Integer> count(String sql, UUID id) {
+        List<Integer> counts = new ArrayList<>();
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            try (WalletShards.Scope scope = WalletShards.enter(shard)) {
+                counts.add(jdbcTemplate.queryForObject(sql, Integer.class, id));
+            }
+        }
+        return counts;
+    }
+}